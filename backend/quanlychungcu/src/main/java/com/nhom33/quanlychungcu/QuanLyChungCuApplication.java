@@ -2,12 +2,14 @@ package com.nhom33.quanlychungcu;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Main Application Class cho hệ thống Quản lý Chung cư
  * Nhóm 33 - CNPM
  */
 @SpringBootApplication
+@EnableScheduling
 public class QuanLyChungCuApplication {
 
     public static void main(String[] args) {
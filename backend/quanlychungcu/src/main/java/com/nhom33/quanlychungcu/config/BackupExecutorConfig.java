@@ -0,0 +1,32 @@
+package com.nhom33.quanlychungcu.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Cấu hình thread pool nén / kiểm tra checksum các chunk backup.
+ *
+ * Worker chỉ dùng CPU (dữ liệu chunk đã đọc xong từ DB trên thread gọi), nên mặc định
+ * số thread bằng số CPU. BackupService giới hạn số chunk đang xử lý cùng lúc,
+ * hàng đợi của pool không bao giờ dài.
+ */
+@Configuration
+public class BackupExecutorConfig {
+
+    @Bean(name = "backupExecutor")
+    public ThreadPoolTaskExecutor backupExecutor(@Value("${app.backup.threads:0}") int maxThreads) {
+        int threads = maxThreads > 0 ? maxThreads : Runtime.getRuntime().availableProcessors();
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("backup-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+}
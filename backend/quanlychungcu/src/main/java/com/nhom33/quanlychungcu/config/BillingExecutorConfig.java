@@ -0,0 +1,36 @@
+package com.nhom33.quanlychungcu.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Cấu hình thread pool cho tính tiền hàng loạt (chốt sổ nhiều tòa nhà).
+ *
+ * Mỗi worker giữ 1 connection DB trong suốt transaction tính tiền của một tòa nhà,
+ * nên số thread bị giới hạn bởi cả số CPU và kích thước connection pool
+ * (chừa lại 2 connection cho các request thường).
+ */
+@Configuration
+public class BillingExecutorConfig {
+
+    @Bean(name = "billingExecutor")
+    public ThreadPoolTaskExecutor billingExecutor(
+            @Value("${app.billing.max-threads:0}") int maxThreads,
+            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int dbPoolSize) {
+        int threads = maxThreads > 0
+                ? maxThreads
+                : Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), dbPoolSize - 2));
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("billing-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -1,11 +1,14 @@
 package com.nhom33.quanlychungcu.config;
 
+import com.nhom33.quanlychungcu.service.ThuHoiTokenService;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -17,15 +20,32 @@ import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 
+/**
+ * Xác thực request theo JWT (header Authorization: Bearer ...).
+ *
+ * - app.jwt.xac-thuc-theo-claims=true (mặc định): token có claim role được xác thực chỉ từ
+ *   claims (JwtPrincipal), không đọc bảng Users. Token cũ không có claims vẫn đọc Users.
+ * - Mọi token đều được đối chiếu danh sách thu hồi (ThuHoiTokenService, trong bộ nhớ),
+ *   kể cả khi trúng cache: thu hồi không phụ thuộc vào việc xóa cache kịp thời.
+ * - Kết quả được cache theo token (JwtPrincipalCache); cache bị xóa khi token / tài khoản bị thu hồi.
+ */
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
     private final UserDetailsService userDetailsService;
+    private final JwtPrincipalCache principalCache;
+    private final ThuHoiTokenService thuHoiTokenService;
+    private final boolean xacThucTheoClaims;
 
-    public JwtAuthenticationFilter(JwtService jwtService, UserDetailsService userDetailsService) {
+    public JwtAuthenticationFilter(JwtService jwtService, UserDetailsService userDetailsService,
+                                   JwtPrincipalCache principalCache, ThuHoiTokenService thuHoiTokenService,
+                                   @Value("${app.jwt.xac-thuc-theo-claims:true}") boolean xacThucTheoClaims) {
         this.jwtService = jwtService;
         this.userDetailsService = userDetailsService;
+        this.principalCache = principalCache;
+        this.thuHoiTokenService = thuHoiTokenService;
+        this.xacThucTheoClaims = xacThucTheoClaims;
     }
 
     @Override
@@ -34,7 +54,6 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                                     @NonNull FilterChain filterChain) throws ServletException, IOException {
         final String authHeader = request.getHeader("Authorization");
         final String jwt;
-        final String username;
 
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
             filterChain.doFilter(request, response);
@@ -42,24 +61,54 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         jwt = authHeader.substring(7);
-        
-        try {
-            username = jwtService.extractUsername(jwt);
-        } catch (ExpiredJwtException e) {
-            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-            response.setContentType("application/json");
-            response.getWriter().write("{\"error\": \"Token expired\", \"message\": \"Please login again\"}");
-            return;
-        } catch (JwtException e) {
-            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-            response.setContentType("application/json");
-            response.getWriter().write("{\"error\": \"Invalid token\", \"message\": \"Please login again\"}");
-            return;
-        }
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
-            if (jwtService.isTokenValid(jwt, userDetails)) {
+        if (SecurityContextHolder.getContext().getAuthentication() == null) {
+            long batDau = System.nanoTime();
+            // Trúng cache: token đã được verify trước đó, không parse lại và không đọc DB
+            JwtPrincipalCache.DaXacThuc daXacThuc = principalCache.get(jwt);
+            boolean trungCache = daXacThuc != null;
+            UserDetails userDetails = null;
+            if (trungCache) {
+                // Chỉ tra Map trong bộ nhớ
+                if (thuHoiTokenService.daThuHoi(daXacThuc.jti(), daXacThuc.subject(), daXacThuc.phienBan())) {
+                    principalCache.xoa(jwt);
+                    tuChoi(response, "Token revoked");
+                    return;
+                }
+                userDetails = daXacThuc.principal();
+            } else {
+                final Claims claims;
+                try {
+                    claims = jwtService.extractAllClaims(jwt);
+                } catch (ExpiredJwtException e) {
+                    tuChoi(response, "Token expired");
+                    return;
+                } catch (JwtException e) {
+                    tuChoi(response, "Invalid token");
+                    return;
+                }
+                if (claims.getSubject() != null) {
+                    int phienBan = jwtService.getPhienBan(claims);
+                    if (thuHoiTokenService.daThuHoi(claims.getId(), claims.getSubject(), phienBan)) {
+                        tuChoi(response, "Token revoked");
+                        return;
+                    }
+                    userDetails = xacThucTheoClaims ? jwtService.toPrincipal(claims) : null;
+                    if (userDetails == null) {
+                        userDetails = this.userDetailsService.loadUserByUsername(claims.getSubject());
+                    }
+                    if (userDetails != null && jwtService.isTokenValid(claims, userDetails)) {
+                        principalCache.put(jwt,
+                            new JwtPrincipalCache.DaXacThuc(userDetails, claims.getId(), claims.getSubject(), phienBan),
+                            claims.getExpiration());
+                    } else {
+                        userDetails = null;
+                    }
+                }
+            }
+            principalCache.ghiNhan(trungCache, System.nanoTime() - batDau);
+
+            if (userDetails != null) {
                 UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                         userDetails,
                         null,
@@ -72,4 +121,10 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         filterChain.doFilter(request, response);
     }
+
+    private static void tuChoi(HttpServletResponse response, String error) throws IOException {
+        response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+        response.setContentType("application/json");
+        response.getWriter().write("{\"error\": \"" + error + "\", \"message\": \"Please login again\"}");
+    }
 }
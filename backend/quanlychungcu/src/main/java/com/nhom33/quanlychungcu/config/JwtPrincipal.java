@@ -0,0 +1,87 @@
+package com.nhom33.quanlychungcu.config;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Principal dựng hoàn toàn từ claims của JWT (không đọc bảng Users).
+ *
+ * - role: claim "role" (tên enum Role), quyết định authority ROLE_{role}.
+ * - userId / hoGiaDinhId: claim "uid" / "hgd" (hgd null nếu tài khoản chưa gắn hộ gia đình).
+ * - phienBanToken: claim "ver", so với danh sách thu hồi khi đổi role / mật khẩu.
+ * Không giữ mật khẩu.
+ */
+public class JwtPrincipal implements UserDetails {
+
+    private final String username;
+    private final String role;
+    private final Integer userId;
+    private final Integer hoGiaDinhId;
+    private final int phienBanToken;
+    private final List<GrantedAuthority> authorities;
+
+    public JwtPrincipal(String username, String role, Integer userId, Integer hoGiaDinhId, int phienBanToken) {
+        this.username = username;
+        this.role = role;
+        this.userId = userId;
+        this.hoGiaDinhId = hoGiaDinhId;
+        this.phienBanToken = phienBanToken;
+        this.authorities = List.of(new SimpleGrantedAuthority("ROLE_" + role));
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public Integer getHoGiaDinhId() {
+        return hoGiaDinhId;
+    }
+
+    public int getPhienBanToken() {
+        return phienBanToken;
+    }
+
+    // UserDetails implementation
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public String getPassword() {
+        return null;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        return true;
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+}
@@ -0,0 +1,176 @@
+package com.nhom33.quanlychungcu.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Cache principal đã xác thực theo JWT cho JwtAuthenticationFilter.
+ *
+ * - Khóa là chuỗi token: trúng cache nghĩa là đúng token đã được kiểm tra chữ ký trước đó,
+ *   nên request không cần parse / verify lại token và không cần đọc Users từ DB.
+ * - Mỗi mục sống tối đa app.jwt.principal-cache-ttl-seconds giây và không quá hạn của token.
+ * - Tối đa app.jwt.principal-cache-max-size mục; đầy thì dọn mục hết hạn, vẫn đầy thì không thêm.
+ * - UserService gọi xoaTheoUsername khi sửa / xóa tài khoản (đổi role, mật khẩu),
+ *   xoaHet khi dữ liệu Users bị thay cả bảng (restore, reset dữ liệu), xoa khi đăng xuất.
+ * - Mục cache giữ jti / subject / phiên bản của token để filter đối chiếu lại danh sách thu hồi
+ *   mỗi lần trúng cache: request nạp cache song song với lúc thu hồi vẫn không giữ được token đã thu hồi.
+ */
+@Component
+public class JwtPrincipalCache {
+
+    /** Principal đã xác thực cùng các claim cần để kiểm tra thu hồi. */
+    public record DaXacThuc(UserDetails principal, String jti, String subject, int phienBan) {}
+
+    private record MucCache(DaXacThuc daXacThuc, long hetHanMs) {}
+
+    private final Map<String, MucCache> cache = new ConcurrentHashMap<>();
+    private final long ttlMs;
+    private final int maxSize;
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong cacheEvictions = new AtomicLong();
+    private final AtomicLong thoiGianHitNs = new AtomicLong();
+    private final AtomicLong thoiGianMissNs = new AtomicLong();
+
+    public JwtPrincipalCache(@Value("${app.jwt.principal-cache-ttl-seconds:60}") long ttlSeconds,
+                             @Value("${app.jwt.principal-cache-max-size:10000}") int maxSize) {
+        this.ttlMs = ttlSeconds * 1000;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Principal của token nếu còn trong cache và chưa hết hạn, ngược lại null.
+     */
+    public DaXacThuc get(String token) {
+        MucCache muc = cache.get(token);
+        if (muc == null) {
+            return null;
+        }
+        if (muc.hetHanMs() <= System.currentTimeMillis()) {
+            cache.remove(token, muc);
+            return null;
+        }
+        return muc.daXacThuc();
+    }
+
+    public void put(String token, DaXacThuc daXacThuc, Date hetHanToken) {
+        if (ttlMs <= 0 || maxSize <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long hetHan = now + ttlMs;
+        if (hetHanToken != null) {
+            hetHan = Math.min(hetHan, hetHanToken.getTime());
+        }
+        if (hetHan <= now) {
+            return;
+        }
+        if (cache.size() >= maxSize) {
+            removeFromCache(muc -> muc.hetHanMs() <= now);
+            if (cache.size() >= maxSize) {
+                return;
+            }
+        }
+        cache.put(token, new MucCache(daXacThuc, hetHan));
+    }
+
+    /**
+     * Ghi nhận một lần xác thực request (trúng / trượt cache) và thời gian xử lý.
+     */
+    public void ghiNhan(boolean trung, long thoiGianNs) {
+        if (trung) {
+            cacheHits.incrementAndGet();
+            thoiGianHitNs.addAndGet(thoiGianNs);
+        } else {
+            cacheMisses.incrementAndGet();
+            thoiGianMissNs.addAndGet(thoiGianNs);
+        }
+    }
+
+    /**
+     * Xóa một token (đăng xuất). Như evict: xóa lại sau commit, khi token đã vào danh sách thu hồi.
+     */
+    public void xoa(String token) {
+        removeToken(token);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    removeToken(token);
+                }
+            });
+        }
+    }
+
+    /**
+     * Xóa mọi token của một tài khoản.
+     */
+    public void xoaTheoUsername(String username) {
+        evict(muc -> Objects.equals(muc.daXacThuc().principal().getUsername(), username));
+    }
+
+    public void xoaHet() {
+        evict(muc -> true);
+    }
+
+    /**
+     * Thống kê cache (hit/miss/eviction) và thời gian xác thực trung bình mỗi request (micro giây).
+     */
+    public Map<String, Object> getThongKe() {
+        long hits = cacheHits.get();
+        long misses = cacheMisses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("soPhanTu", cache.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", cacheEvictions.get());
+        stats.put("tiLeHit", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        stats.put("thoiGianHitTrungBinhUs", hits == 0 ? 0.0 : thoiGianHitNs.get() / 1000.0 / hits);
+        stats.put("thoiGianMissTrungBinhUs", misses == 0 ? 0.0 : thoiGianMissNs.get() / 1000.0 / misses);
+        return stats;
+    }
+
+    /**
+     * Xóa ngay, và xóa lại sau khi transaction commit: một request song song có thể đã
+     * nạp lại tài khoản cũ trong lúc transaction ghi chưa commit.
+     */
+    private void evict(Predicate<MucCache> dieuKien) {
+        removeFromCache(dieuKien);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    removeFromCache(dieuKien);
+                }
+            });
+        }
+    }
+
+    private void removeToken(String token) {
+        if (cache.remove(token) != null) {
+            cacheEvictions.incrementAndGet();
+        }
+    }
+
+    private void removeFromCache(Predicate<MucCache> dieuKien) {
+        cache.values().removeIf(muc -> {
+            if (dieuKien.test(muc)) {
+                cacheEvictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        });
+    }
+}
@@ -1,6 +1,9 @@
 package com.nhom33.quanlychungcu.config;
 
+import com.nhom33.quanlychungcu.entity.UserAccount;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import org.springframework.beans.factory.annotation.Value;
@@ -10,18 +13,34 @@ import org.springframework.stereotype.Service;
 import java.security.Key;
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
+import java.util.UUID;
 import java.util.function.Function;
 import io.jsonwebtoken.security.Keys;
 
+/**
+ * Phát hành / kiểm tra JWT (HS256).
+ *
+ * Token của UserAccount mang thêm các claim để xác thực không cần đọc bảng Users:
+ * - jti: mã token (thu hồi khi đăng xuất)
+ * - role, uid, hgd (hộ gia đình, nếu có), ver (PhienBanToken của tài khoản lúc phát hành)
+ */
 @Service
 public class JwtService {
 
+    public static final String CLAIM_ROLE = "role";
+    public static final String CLAIM_USER_ID = "uid";
+    public static final String CLAIM_HO_GIA_DINH = "hgd";
+    public static final String CLAIM_PHIEN_BAN = "ver";
+
     @Value("${app.jwt.secret}")
     private String jwtSecret;
 
     @Value("${app.jwt.expiration-ms}")
     private long jwtExpirationMs;
 
+    // Parser (kèm khóa ký) dựng một lần, dùng chung giữa các thread
+    private volatile JwtParser parser;
+
     public String extractUsername(String token) {
         return extractClaim(token, Claims::getSubject);
     }
@@ -34,17 +53,62 @@ public class JwtService {
     public String generateToken(UserDetails userDetails) {
         Date now = new Date();
         Date expiry = new Date(now.getTime() + jwtExpirationMs);
-        return Jwts.builder()
+        JwtBuilder builder = Jwts.builder()
+                .setId(UUID.randomUUID().toString())
                 .setSubject(userDetails.getUsername())
                 .setIssuedAt(now)
-                .setExpiration(expiry)
+                .setExpiration(expiry);
+        if (userDetails instanceof UserAccount user && user.getRole() != null) {
+            builder.claim(CLAIM_ROLE, user.getRole().name())
+                    .claim(CLAIM_USER_ID, user.getId())
+                    .claim(CLAIM_PHIEN_BAN, user.getPhienBanToken());
+            if (user.getHoGiaDinhId() != null) {
+                builder.claim(CLAIM_HO_GIA_DINH, user.getHoGiaDinhId());
+            }
+        }
+        return builder
                 .signWith(getSignKey(), SignatureAlgorithm.HS256)
                 .compact();
     }
 
+    /**
+     * Principal dựng từ claims của token đã verify, null nếu token không có claim role
+     * (token phát hành trước khi có claims, phải đọc Users như cũ).
+     */
+    public JwtPrincipal toPrincipal(Claims claims) {
+        String role = claims.get(CLAIM_ROLE, String.class);
+        if (role == null || claims.getSubject() == null) {
+            return null;
+        }
+        return new JwtPrincipal(
+                claims.getSubject(),
+                role,
+                claims.get(CLAIM_USER_ID, Integer.class),
+                claims.get(CLAIM_HO_GIA_DINH, Integer.class),
+                getPhienBan(claims));
+    }
+
+    /**
+     * Claim "ver", 0 với token không có claim này.
+     */
+    public int getPhienBan(Claims claims) {
+        Integer phienBan = claims.get(CLAIM_PHIEN_BAN, Integer.class);
+        return phienBan != null ? phienBan : 0;
+    }
+
+    public long getExpirationMs() {
+        return jwtExpirationMs;
+    }
+
     public boolean isTokenValid(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return username.equals(userDetails.getUsername()) && !isTokenExpired(token);
+        return isTokenValid(extractAllClaims(token), userDetails);
+    }
+
+    /**
+     * Như isTokenValid(token, userDetails) nhưng dùng claims đã parse, không verify lại chữ ký.
+     */
+    public boolean isTokenValid(Claims claims, UserDetails userDetails) {
+        return claims.getSubject().equals(userDetails.getUsername()) && !claims.getExpiration().before(new Date());
     }
 
     private boolean isTokenExpired(String token) {
@@ -55,12 +119,18 @@ public class JwtService {
         return extractClaim(token, Claims::getExpiration);
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSignKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+    /**
+     * Parse và verify token một lần (ExpiredJwtException / JwtException nếu không hợp lệ).
+     */
+    public Claims extractAllClaims(String token) {
+        JwtParser p = parser;
+        if (p == null) {
+            p = Jwts.parserBuilder()
+                    .setSigningKey(getSignKey())
+                    .build();
+            parser = p;
+        }
+        return p.parseClaimsJws(token).getBody();
     }
 
     private Key getSignKey() {
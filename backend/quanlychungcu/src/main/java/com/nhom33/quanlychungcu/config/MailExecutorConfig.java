@@ -0,0 +1,30 @@
+package com.nhom33.quanlychungcu.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Cấu hình thread pool gửi email từ hàng đợi HangDoiEmail.
+ *
+ * Số thread cố định (mỗi thread giữ một kết nối SMTP khi gửi). Hàng đợi của pool không giới hạn
+ * nhưng EmailOutboxService chỉ lấy từ DB đủ số email cho các thread rảnh, nên email chờ
+ * nằm trong bảng chứ không nằm trong bộ nhớ.
+ */
+@Configuration
+public class MailExecutorConfig {
+
+    @Bean(name = "mailExecutor")
+    public ThreadPoolTaskExecutor mailExecutor(@Value("${app.mail.threads:4}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, threads));
+        executor.setMaxPoolSize(Math.max(1, threads));
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("mail-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+}
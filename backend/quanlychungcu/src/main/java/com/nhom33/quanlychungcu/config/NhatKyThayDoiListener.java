@@ -0,0 +1,133 @@
+package com.nhom33.quanlychungcu.config;
+
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ghi nhật ký thay đổi (NhatKyThayDoi) cho mọi entity được thêm / sửa / xóa qua Hibernate.
+ *
+ * - Khóa thay đổi được gom theo session (mỗi transaction một session), bỏ trùng.
+ * - Ghi xuống DB một lần bằng JDBC batch ngay trước khi commit (sau lần flush cuối),
+ *   trên cùng connection nên nhật ký commit / rollback cùng dữ liệu.
+ * - Các câu lệnh JDBC / JPQL hàng loạt không qua event này, phải tự ghi nhận qua
+ *   NhatKyThayDoiRepository (dùng chung hàng đợi theo session).
+ *
+ * Không phụ thuộc bean nào khác vì được tạo trước EntityManagerFactory (xem NhatKyThayDoiConfig).
+ */
+@Component
+public class NhatKyThayDoiListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    public static final String BANG_NHAT_KY = "NhatKyThayDoi";
+
+    private static final String SQL_INSERT =
+        "INSERT INTO NhatKyThayDoi (TenBang, KhoaChinh, TuKhoa, ThoiGian) VALUES (?, ?, ?, ?)";
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * Một thay đổi: khoa = một dòng, tuKhoa = các dòng có khóa lớn hơn, cả hai null = cả bảng.
+     */
+    public record ThayDoi(String bang, String khoa, Long tuKhoa) {}
+
+    private final Map<SessionImplementor, Set<ThayDoi>> choGhi = new ConcurrentHashMap<>();
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        ghiNhan(event.getSession(), event.getPersister(), event.getId());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        ghiNhan(event.getSession(), event.getPersister(), event.getId());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        ghiNhan(event.getSession(), event.getPersister(), event.getId());
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    private void ghiNhan(SessionImplementor session, EntityPersister persister, Object id) {
+        if (id == null || !(persister instanceof AbstractEntityPersister p)) {
+            return;
+        }
+        String bang = tenBang(p.getIdentifierTableName());
+        if (!BANG_NHAT_KY.equalsIgnoreCase(bang)) {
+            them(session, new ThayDoi(bang, String.valueOf(id), null));
+        }
+    }
+
+    /**
+     * Thêm thay đổi vào hàng đợi của session; lần đầu trong transaction thì đăng ký ghi trước commit.
+     */
+    public void them(SessionImplementor session, ThayDoi thayDoi) {
+        Set<ThayDoi> hangDoi = choGhi.computeIfAbsent(session, s -> {
+            s.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) this::ghiTruocCommit);
+            s.getActionQueue().registerProcess((AfterTransactionCompletionProcess) (thanhCong, x) -> choGhi.remove(s));
+            return new LinkedHashSet<>();
+        });
+        hangDoi.add(thayDoi);
+    }
+
+    private void ghiTruocCommit(SessionImplementor session) {
+        Set<ThayDoi> hangDoi = choGhi.remove(session);
+        if (hangDoi != null && !hangDoi.isEmpty()) {
+            session.doWork(con -> ghi(con, hangDoi));
+        }
+    }
+
+    /**
+     * Batch INSERT nhật ký trên connection cho sẵn.
+     */
+    public static void ghi(Connection con, Collection<ThayDoi> thayDoi) throws SQLException {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        try (PreparedStatement ps = con.prepareStatement(SQL_INSERT)) {
+            int trongBatch = 0;
+            for (ThayDoi t : thayDoi) {
+                ps.setString(1, t.bang());
+                ps.setString(2, t.khoa());
+                ps.setObject(3, t.tuKhoa(), Types.BIGINT);
+                ps.setTimestamp(4, now);
+                ps.addBatch();
+                if (++trongBatch == BATCH_SIZE) {
+                    ps.executeBatch();
+                    trongBatch = 0;
+                }
+            }
+            if (trongBatch > 0) {
+                ps.executeBatch();
+            }
+        }
+    }
+
+    // Tên bảng vật lý có thể kèm schema hoặc dấu quote ([dbo].[HoaDon], "HoaDon")
+    private static String tenBang(String ten) {
+        String t = ten.substring(ten.lastIndexOf('.') + 1);
+        return t.replace("[", "").replace("]", "").replace("\"", "").replace("`", "");
+    }
+}
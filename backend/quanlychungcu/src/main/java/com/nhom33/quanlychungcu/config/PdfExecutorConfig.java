@@ -0,0 +1,32 @@
+package com.nhom33.quanlychungcu.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Cấu hình thread pool render PDF hóa đơn (in hàng loạt theo đợt thu).
+ *
+ * Render PDF chỉ dùng CPU (dữ liệu đã đọc xong trước khi giao cho worker),
+ * nên mặc định số thread bằng số CPU. InvoicePdfService giới hạn số hóa đơn
+ * đang render cùng lúc, hàng đợi của pool không bao giờ dài.
+ */
+@Configuration
+public class PdfExecutorConfig {
+
+    @Bean(name = "pdfExecutor")
+    public ThreadPoolTaskExecutor pdfExecutor(@Value("${app.invoice.pdf-threads:0}") int maxThreads) {
+        int threads = maxThreads > 0 ? maxThreads : Runtime.getRuntime().availableProcessors();
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("pdf-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+}
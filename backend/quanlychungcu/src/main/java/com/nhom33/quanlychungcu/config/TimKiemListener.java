@@ -0,0 +1,95 @@
+package com.nhom33.quanlychungcu.config;
+
+import com.nhom33.quanlychungcu.entity.HoGiaDinh;
+import com.nhom33.quanlychungcu.entity.NhanKhau;
+import com.nhom33.quanlychungcu.service.TimKiemService;
+import com.nhom33.quanlychungcu.util.ChiMucTimKiem.TaiLieu;
+import com.nhom33.quanlychungcu.util.GoiYTuDong.MucHoGiaDinh;
+import com.nhom33.quanlychungcu.util.GoiYTuDong.MucNhanKhau;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cập nhật chỉ mục tìm kiếm và gợi ý tự động (TimKiemService) khi NhanKhau / HoGiaDinh được thêm / sửa / xóa qua Hibernate.
+ *
+ * - Giá trị entity được chụp lại ngay lúc event (sau flush), gom theo session, giữ thay đổi cuối của mỗi dòng.
+ * - Chỉ áp vào chỉ mục khi transaction commit thành công; rollback thì bỏ.
+ *
+ * Được tạo trước EntityManagerFactory (xem NhatKyThayDoiConfig), nên TimKiemService được inject @Lazy.
+ */
+@Component
+public class TimKiemListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private final TimKiemService timKiemService;
+
+    private final Map<SessionImplementor, Map<String, Runnable>> choApDung = new ConcurrentHashMap<>();
+
+    public TimKiemListener(@Lazy TimKiemService timKiemService) {
+        this.timKiemService = timKiemService;
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        ghiNhan(event.getSession(), event.getEntity(), false);
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        ghiNhan(event.getSession(), event.getEntity(), false);
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        ghiNhan(event.getSession(), event.getEntity(), true);
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    private void ghiNhan(SessionImplementor session, Object entity, boolean xoa) {
+        // Chụp giá trị ngay: entity có thể bị sửa tiếp sau event này
+        if (entity instanceof NhanKhau nk && nk.getId() != null) {
+            int id = nk.getId();
+            TaiLieu taiLieu = xoa ? null : TimKiemService.taiLieu(nk);
+            MucNhanKhau mucGoiY = xoa ? null : TimKiemService.mucGoiY(nk);
+            them(session, "NhanKhau:" + id, xoa
+                ? () -> timKiemService.xoaNhanKhau(id)
+                : () -> timKiemService.capNhatNhanKhau(taiLieu, mucGoiY));
+        } else if (entity instanceof HoGiaDinh hgd && hgd.getId() != null) {
+            int id = hgd.getId();
+            TaiLieu taiLieu = xoa ? null : TimKiemService.taiLieu(hgd);
+            MucHoGiaDinh mucGoiY = xoa ? null : TimKiemService.mucGoiY(hgd);
+            them(session, "HoGiaDinh:" + id, xoa
+                ? () -> timKiemService.xoaHoGiaDinh(id)
+                : () -> timKiemService.capNhatHoGiaDinh(taiLieu, mucGoiY));
+        }
+    }
+
+    private void them(SessionImplementor session, String khoa, Runnable apDung) {
+        Map<String, Runnable> hangDoi = choApDung.computeIfAbsent(session, s -> {
+            s.getActionQueue().registerProcess((AfterTransactionCompletionProcess) (thanhCong, x) -> {
+                Map<String, Runnable> daGom = choApDung.remove(s);
+                if (thanhCong && daGom != null) {
+                    daGom.values().forEach(Runnable::run);
+                }
+            });
+            return new LinkedHashMap<>();
+        });
+        hangDoi.put(khoa, apDung);
+    }
+}
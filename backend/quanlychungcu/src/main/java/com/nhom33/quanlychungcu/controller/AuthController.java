@@ -37,6 +37,17 @@ public class AuthController {
         return ResponseEntity.ok(new AuthResponse(result.username(), result.role(), result.token()));
     }
 
+    /**
+     * Thu hồi token hiện tại (header Authorization: Bearer ...).
+     */
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logout(@RequestHeader(value = "Authorization", required = false) String authHeader) {
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            authService.logout(authHeader.substring(7));
+        }
+        return ResponseEntity.noContent().build();
+    }
+
     // ===== DTOs =====
     public record SignupRequest(
             @NotBlank @Size(min = 4, max = 100) String username,
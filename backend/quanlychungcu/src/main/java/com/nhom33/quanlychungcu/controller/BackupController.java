@@ -27,15 +27,15 @@ public class BackupController {
 
     @PostMapping("/create")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<Map<String, String>> createBackup() {
+    public ResponseEntity<Map<String, Object>> createBackup(
+            @RequestParam(defaultValue = "false") boolean incremental) {
         try {
-            String backupPath = service.createBackup();
-            Map<String, String> response = new HashMap<>();
-            response.put("message", "Tạo backup thành công");
-            response.put("backupPath", backupPath);
+            Map<String, Object> response = new HashMap<>(
+                incremental ? service.createIncrementalBackup() : service.createBackup());
+            response.put("message", incremental ? "Tạo backup tăng dần thành công" : "Tạo backup thành công");
             return ResponseEntity.ok(response);
         } catch (IOException e) {
-            Map<String, String> response = new HashMap<>();
+            Map<String, Object> response = new HashMap<>();
             response.put("message", "Lỗi tạo backup: " + e.getMessage());
             return ResponseEntity.badRequest().body(response);
         }
@@ -59,19 +59,46 @@ public class BackupController {
 
     @PostMapping("/restore")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<Map<String, String>> restoreBackup(@RequestParam String fileName) {
+    public ResponseEntity<Map<String, Object>> restoreBackup(
+            @RequestParam String fileName,
+            @RequestParam(required = false) List<String> bang) {
         try {
-            service.restoreBackup(fileName);
-            Map<String, String> response = new HashMap<>();
+            Map<String, Object> response = new HashMap<>(service.restoreBackup(fileName, bang));
             response.put("message", "Khôi phục backup thành công");
             return ResponseEntity.ok(response);
         } catch (IOException e) {
-            Map<String, String> response = new HashMap<>();
+            Map<String, Object> response = new HashMap<>();
             response.put("message", "Lỗi khôi phục backup: " + e.getMessage());
             return ResponseEntity.badRequest().body(response);
         }
     }
 
+    @GetMapping("/manifest")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getManifest(@RequestParam String fileName) {
+        try {
+            return ResponseEntity.ok(service.getManifest(fileName));
+        } catch (IOException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", "Lỗi đọc backup: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    @PostMapping("/verify")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> verifyBackup(@RequestParam String fileName) {
+        try {
+            Map<String, Object> response = new HashMap<>(service.kiemTraBackup(fileName));
+            response.put("message", "Backup toàn vẹn");
+            return ResponseEntity.ok(response);
+        } catch (IOException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", "Lỗi kiểm tra backup: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
     @GetMapping("/list")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<List<String>> listBackups() {
@@ -11,7 +11,6 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
-import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,7 +24,10 @@ import java.util.Map;
  * - GET  /api/bang-gia              : Lấy tất cả bảng giá
  * - GET  /api/bang-gia/toa-nha/{id} : Lấy bảng giá của một tòa nhà
  * - GET  /api/bang-gia/don-gia      : Lấy đơn giá áp dụng
+ * - GET  /api/bang-gia/lich-su      : Lịch sử giá theo thời gian hiệu lực
  * - DELETE /api/bang-gia/{id}       : Xóa một bảng giá
+ * - GET  /api/bang-gia/cache        : Thống kê cache giá áp dụng
+ * - DELETE /api/bang-gia/cache      : Xóa toàn bộ cache giá áp dụng
  */
 @RestController
 @RequestMapping("/api/bang-gia")
@@ -145,22 +147,55 @@ public class BangGiaController {
             @RequestParam Integer loaiPhiId,
             @RequestParam Integer toaNhaId) {
         
-        BigDecimal donGia = bangGiaService.getDonGiaApDung(loaiPhiId, toaNhaId);
-        
-        // Kiểm tra có phải giá riêng không
-        boolean hasCustomPrice = bangGiaService
-                .findByLoaiPhiAndToaNha(loaiPhiId, toaNhaId)
-                .isPresent();
+        BangGiaService.GiaApDung gia = bangGiaService.getGiaApDung(loaiPhiId, toaNhaId);
         
         Map<String, Object> response = new HashMap<>();
         response.put("loaiPhiId", loaiPhiId);
         response.put("toaNhaId", toaNhaId);
-        response.put("donGia", donGia);
-        response.put("isCustomPrice", hasCustomPrice);
+        response.put("donGia", gia.donGia());
+        response.put("isCustomPrice", gia.isGiaRieng());
+        response.put("nguon", gia.nguon());
         
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Lịch sử giá của một loại phí tại một tòa nhà.
+     * Không truyền toaNhaId -> lịch sử giá mặc định (LoaiPhi.DonGia).
+     */
+    @GetMapping("/lich-su")
+    @PreAuthorize("hasAnyRole('ADMIN','ACCOUNTANT')")
+    public ResponseEntity<List<Map<String, Object>>> getLichSuGia(
+            @RequestParam Integer loaiPhiId,
+            @RequestParam(required = false) Integer toaNhaId) {
+        return ResponseEntity.ok(bangGiaService.getLichSuGia(loaiPhiId, toaNhaId));
+    }
+
+    // ===== CACHE =====
+
+    /**
+     * Thống kê cache giá áp dụng (hits, misses, evictions, số phần tử).
+     */
+    @GetMapping("/cache")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        return ResponseEntity.ok(bangGiaService.getGiaCacheStats());
+    }
+
+    /**
+     * Xóa toàn bộ cache giá áp dụng (ví dụ sau khi sửa dữ liệu trực tiếp trong DB).
+     */
+    @DeleteMapping("/cache")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> clearCache() {
+        bangGiaService.clearGiaCache();
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", "Đã xóa cache giá áp dụng");
+        response.put("thongKe", bangGiaService.getGiaCacheStats());
+        return ResponseEntity.ok(response);
+    }
+
     // ===== DELETE =====
 
     /**
@@ -66,12 +66,14 @@ public class ChiSoDienNuocController {
      */
     @PostMapping("/save-all")
     public ResponseEntity<Map<String, Object>> saveAll(@Valid @RequestBody SaveChiSoRequestDTO request) {
-        int savedCount = service.saveAll(request);
+        Map<String, Object> response = new HashMap<>(service.saveAll(request));
+        int savedCount = (Integer) response.get("savedCount");
+        int soLoi = (Integer) response.get("soLoi");
         
-        Map<String, Object> response = new HashMap<>();
-        response.put("success", true);
-        response.put("message", "Đã lưu " + savedCount + " chỉ số thành công");
-        response.put("savedCount", savedCount);
+        response.put("success", soLoi == 0);
+        response.put("message", soLoi == 0
+                ? "Đã lưu " + savedCount + " chỉ số thành công"
+                : "Đã lưu " + savedCount + " chỉ số, " + soLoi + " dòng bị lỗi");
         
         return ResponseEntity.ok(response);
     }
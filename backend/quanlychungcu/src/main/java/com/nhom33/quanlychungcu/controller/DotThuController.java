@@ -1,9 +1,13 @@
 package com.nhom33.quanlychungcu.controller;
 
+import com.nhom33.quanlychungcu.dto.BangKeDTO;
 import com.nhom33.quanlychungcu.dto.DotThuLoaiPhiDTO;
 import com.nhom33.quanlychungcu.entity.DotThu;
 import com.nhom33.quanlychungcu.entity.DotThuLoaiPhi;
+import com.nhom33.quanlychungcu.service.BangKeExportService;
+import com.nhom33.quanlychungcu.service.BillingRunService;
 import com.nhom33.quanlychungcu.service.DotThuService;
+import com.nhom33.quanlychungcu.service.InvoiceJobService;
 import jakarta.validation.Valid;
 import lombok.NonNull;
 import org.springframework.data.domain.Page;
@@ -13,7 +17,9 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.security.Principal;
 import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.List;
@@ -24,9 +30,16 @@ import java.util.Map;
 public class DotThuController {
 
     private final DotThuService service;
+    private final BillingRunService billingRunService;
+    private final InvoiceJobService invoiceJobService;
+    private final BangKeExportService bangKeExportService;
 
-    public DotThuController(DotThuService service) {
+    public DotThuController(DotThuService service, BillingRunService billingRunService,
+                            InvoiceJobService invoiceJobService, BangKeExportService bangKeExportService) {
         this.service = service;
+        this.billingRunService = billingRunService;
+        this.invoiceJobService = invoiceJobService;
+        this.bangKeExportService = bangKeExportService;
     }
 
     @PostMapping
@@ -181,35 +194,163 @@ public class DotThuController {
     }
     
     /**
-     * Lấy bảng kê chi tiết các khoản phí cho tất cả hộ trong đợt thu.
+     * Tính lại tăng dần: chỉ xử lý các hộ có dữ liệu thay đổi (chỉ số, định mức, bảng giá, loại phí).
+     * 
+     * @param id ID đợt thu
+     * @return Kết quả kèm danhSachThayDoi { hoaDonId, maHoGiaDinh, tongTienCu, tongTienMoi, chenhLech, chiTiet[] }
+     */
+    @PostMapping("/{id}/recalculate-changed")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> recalculateChanged(@PathVariable @NonNull Integer id) {
+        return ResponseEntity.ok(service.recalculateChangedInvoices(id));
+    }
+    
+    /**
+     * Số hộ đang chờ tính lại trong đợt thu.
+     */
+    @GetMapping("/{id}/pending-recalculation")
+    @PreAuthorize("hasAnyRole('ADMIN','ACCOUNTANT')")
+    public ResponseEntity<Map<String, Object>> getPendingRecalculation(@PathVariable @NonNull Integer id) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("dotThuId", id);
+        response.put("soHoCanTinhLai", service.countPendingRecalculation(id));
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * Tính tiền chạy nền: trả về jobId ngay, không giữ HTTP request trong lúc tính.
      * 
      * @param id ID đợt thu
-     * @return Bảng kê { dotThuId, tenDotThu, toaNha, danhSach[], tongCong }
+     * @return Trạng thái ban đầu của job { jobId, trangThai, ... }
+     */
+    @PostMapping("/{id}/calculate-invoices/async")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> calculateInvoicesAsync(
+            @PathVariable @NonNull Integer id,
+            Principal principal) {
+        String nguoiTao = principal != null ? principal.getName() : null;
+        Map<String, Object> result = invoiceJobService.submit(id, nguoiTao);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(result);
+    }
+    
+    /**
+     * Lịch sử các job tính tiền của đợt thu.
+     */
+    @GetMapping("/{id}/calculate-jobs")
+    @PreAuthorize("hasAnyRole('ADMIN','ACCOUNTANT')")
+    public ResponseEntity<List<Map<String, Object>>> getCalculateJobs(@PathVariable @NonNull Integer id) {
+        return ResponseEntity.ok(invoiceJobService.getHistory(id));
+    }
+    
+    /**
+     * Trạng thái job tính tiền: soHoDaXuLy/tongSoHo, danh sách hộ thiếu chỉ số.
+     * 
+     * @param tuViTri Chỉ lấy danhSachThieuChiSo từ vị trí này (dùng viTriTiepTheo của lần poll trước)
+     */
+    @GetMapping("/calculate-jobs/{jobId}")
+    @PreAuthorize("hasAnyRole('ADMIN','ACCOUNTANT')")
+    public ResponseEntity<Map<String, Object>> getCalculateJobStatus(
+            @PathVariable @NonNull String jobId,
+            @RequestParam(defaultValue = "0") int tuViTri) {
+        return ResponseEntity.ok(invoiceJobService.getStatus(jobId, tuViTri));
+    }
+    
+    /**
+     * Hủy job tính tiền đang chạy (không có hóa đơn nào bị thay đổi).
+     */
+    @DeleteMapping("/calculate-jobs/{jobId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> cancelCalculateJob(@PathVariable @NonNull String jobId) {
+        return ResponseEntity.ok(invoiceJobService.cancel(jobId));
+    }
+    
+    /**
+     * Chốt sổ tháng: tính tiền song song tất cả đợt thu của tháng/năm trên mọi tòa nhà.
+     * Trả về ngay runId, dùng GET /chot-so-thang/{runId} để theo dõi tiến độ.
+     * 
+     * @param thang Tháng (1-12)
+     * @param nam Năm
+     * @return Trạng thái ban đầu { runId, tongSoToaNha, trangThai, ... }
+     */
+    @PostMapping("/chot-so-thang")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> closeMonth(
+            @RequestParam Integer thang,
+            @RequestParam Integer nam) {
+        Map<String, Object> result = billingRunService.startCloseMonth(thang, nam);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(result);
+    }
+    
+    /**
+     * Tiến độ và kết quả tổng hợp của một lần chốt sổ tháng.
+     */
+    @GetMapping("/chot-so-thang/{runId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getCloseMonthStatus(@PathVariable @NonNull String runId) {
+        return ResponseEntity.ok(billingRunService.getRunStatus(runId));
+    }
+    
+    /**
+     * Lấy bảng kê chi tiết các khoản phí cho tất cả hộ trong đợt thu.
+     * 
+     * @param id    ID đợt thu
+     * @param page  Trang (bắt đầu từ 0)
+     * @param size  Số hóa đơn mỗi trang (tối đa 500)
+     * @param pivot true: thành tiền theo cột loại phí thay cho danh sách chi tiết
+     * @return Bảng kê { dotThuId, tenDotThu, toaNha, loaiPhiOrder, danhSach[], tongCong, totalPages }
      */
     @GetMapping("/{id}/bang-ke")
     @PreAuthorize("hasAnyRole('ADMIN','ACCOUNTANT')")
-    public ResponseEntity<Map<String, Object>> getBangKe(@PathVariable @NonNull Integer id) {
-        Map<String, Object> result = service.getBangKe(id);
+    public ResponseEntity<BangKeDTO> getBangKe(
+            @PathVariable @NonNull Integer id,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "100") int size,
+            @RequestParam(defaultValue = "false") boolean pivot) {
+        BangKeDTO result = service.getBangKe(id, page, size, pivot);
         return ResponseEntity.ok(result);
     }
 
     /**
      * Export Bảng kê ra file CSV (Excel-compatible).
      * 
+     * Nội dung được stream trực tiếp ra response (không dựng cả file trong bộ nhớ).
+     * 
      * @param id ID đợt thu
      * @return File CSV để download
      */
     @GetMapping("/{id}/export-excel")
     @PreAuthorize("hasAnyRole('ADMIN','ACCOUNTANT')")
-    public ResponseEntity<byte[]> exportExcel(@PathVariable @NonNull Integer id) {
-        byte[] csvData = service.exportBangKeToCSV(id);
+    public ResponseEntity<StreamingResponseBody> exportExcel(@PathVariable @NonNull Integer id) {
+        StreamingResponseBody body = bangKeExportService.exportDotThu(id);
         
         String filename = "BangKe_DotThu_" + id + "_" + java.time.LocalDate.now() + ".csv";
         
         return ResponseEntity.ok()
             .header("Content-Disposition", "attachment; filename=\"" + filename + "\"")
             .header("Content-Type", "text/csv; charset=UTF-8")
-            .body(csvData);
+            .body(body);
+    }
+
+    /**
+     * Export bảng kê gộp của tất cả đợt thu (mọi tòa nhà) trong một tháng.
+     * 
+     * @param thang Tháng
+     * @param nam   Năm
+     * @return File CSV để download
+     */
+    @GetMapping("/export-excel")
+    @PreAuthorize("hasAnyRole('ADMIN','ACCOUNTANT')")
+    public ResponseEntity<StreamingResponseBody> exportExcelThang(
+            @RequestParam Integer thang,
+            @RequestParam Integer nam) {
+        StreamingResponseBody body = bangKeExportService.exportThang(thang, nam);
+        
+        String filename = "BangKe_Thang_" + thang + "_" + nam + "_" + java.time.LocalDate.now() + ".csv";
+        
+        return ResponseEntity.ok()
+            .header("Content-Disposition", "attachment; filename=\"" + filename + "\"")
+            .header("Content-Type", "text/csv; charset=UTF-8")
+            .body(body);
     }
 }
 
@@ -1,6 +1,7 @@
 package com.nhom33.quanlychungcu.controller;
 
 import com.nhom33.quanlychungcu.dto.HoGiaDinhRequestDTO;
+import com.nhom33.quanlychungcu.dto.TrangConTroDTO;
 import com.nhom33.quanlychungcu.entity.HoGiaDinh;
 import com.nhom33.quanlychungcu.service.HoGiaDinhService;
 import jakarta.validation.Valid;
@@ -125,6 +126,25 @@ public class HoGiaDinhController {
         return ResponseEntity.ok(result);
     }
 
+    /**
+     * Lấy danh sách hộ gia đình phân trang theo con trỏ (sắp theo id, không OFFSET / COUNT)
+     * GET /api/ho-gia-dinh/theo-con-tro?size=50&sortDir=asc          (trang đầu)
+     * GET /api/ho-gia-dinh/theo-con-tro?size=50&conTro={conTroTiep}  (trang sau)
+     * dem=true để kèm tổng số bản ghi.
+     */
+    @GetMapping("/theo-con-tro")
+    @PreAuthorize("hasAnyRole('ADMIN','ACCOUNTANT','RESIDENT')")
+    public ResponseEntity<TrangConTroDTO<HoGiaDinh>> findAllTheoConTro(
+            @RequestParam(required = false) String conTro,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "asc") String sortDir,
+            @RequestParam(defaultValue = "false") boolean dem) {
+        
+        TrangConTroDTO<HoGiaDinh> result = service.findAllTheoConTro(
+            conTro, size, sortDir.equalsIgnoreCase("desc"), dem);
+        return ResponseEntity.ok(result);
+    }
+
     /**
      * Tìm kiếm hộ gia đình theo tên chủ hộ
      * GET /api/ho-gia-dinh/search/ten-chu-ho?tenChuHo=Nguyen&page=0&size=10
@@ -1,5 +1,6 @@
 package com.nhom33.quanlychungcu.controller;
 
+import com.nhom33.quanlychungcu.dto.TrangConTroDTO;
 import com.nhom33.quanlychungcu.entity.HoaDon;
 import com.nhom33.quanlychungcu.entity.LichSuThanhToan;
 import com.nhom33.quanlychungcu.service.HoaDonService;
@@ -79,6 +80,35 @@ public class HoaDonController {
         return ResponseEntity.ok(result);
     }
 
+    /**
+     * Hóa đơn mới nhất trước, phân trang theo con trỏ (truyền conTroTiep của trang trước qua conTro).
+     */
+    @GetMapping("/theo-con-tro")
+    @PreAuthorize("hasAnyRole('ADMIN','ACCOUNTANT')")
+    public ResponseEntity<TrangConTroDTO<HoaDon>> findAllTheoConTro(
+            @RequestParam(required = false) String conTro,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "false") boolean dem) {
+        
+        return ResponseEntity.ok(service.findAllTheoConTro(conTro, size, dem));
+    }
+
+    /**
+     * Lịch sử thanh toán của mọi hóa đơn (hoặc một hóa đơn qua idHoaDon), mới nhất trước,
+     * phân trang theo con trỏ. Dùng cho xem / xuất lịch sử giao dịch.
+     */
+    @GetMapping("/lich-su-thanh-toan")
+    @PreAuthorize("hasAnyRole('ADMIN','ACCOUNTANT')")
+    public ResponseEntity<TrangConTroDTO<LichSuThanhToan>> getLichSuThanhToanTheoConTro(
+            @RequestParam(required = false) Integer idHoaDon,
+            @RequestParam(required = false) String hinhThuc,
+            @RequestParam(required = false) String conTro,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "false") boolean dem) {
+        
+        return ResponseEntity.ok(service.getLichSuThanhToanTheoConTro(idHoaDon, hinhThuc, conTro, size, dem));
+    }
+
     @GetMapping("/ho-gia-dinh/{idHoGiaDinh}")
     @PreAuthorize("hasAnyRole('ADMIN','ACCOUNTANT')")
     public ResponseEntity<Page<HoaDon>> findByHoGiaDinh(
@@ -1,5 +1,6 @@
 package com.nhom33.quanlychungcu.controller;
 
+import com.nhom33.quanlychungcu.service.InvoicePdfService;
 import com.nhom33.quanlychungcu.service.InvoiceService;
 import lombok.NonNull;
 import org.springframework.http.HttpHeaders;
@@ -7,8 +8,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
-
-import java.io.IOException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/invoice")
@@ -31,12 +31,31 @@ public class InvoiceController {
 
     @GetMapping("/{idHoaDon}/pdf")
     @PreAuthorize("hasAnyRole('ADMIN','ACCOUNTANT')")
-    public ResponseEntity<byte[]> getInvoicePdf(@PathVariable @NonNull Integer idHoaDon) throws IOException {
+    public ResponseEntity<byte[]> getInvoicePdf(@PathVariable @NonNull Integer idHoaDon) {
         byte[] pdf = service.generateInvoicePdf(idHoaDon);
         return ResponseEntity.ok()
             .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_PDF_VALUE)
             .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=hoa-don-" + idHoaDon + ".pdf")
             .body(pdf);
     }
-}
 
+    /**
+     * In toàn bộ hóa đơn của đợt thu.
+     * format=zip: mỗi hóa đơn một file PDF (stream dần, không giới hạn số hóa đơn);
+     * format=pdf: một file PDF nhiều trang, tối đa app.invoice.pdf-merge-max hóa đơn
+     * (đợt thu lớn hơn -> 400, dùng format=zip).
+     */
+    @GetMapping("/dot-thu/{idDotThu}/pdf")
+    @PreAuthorize("hasAnyRole('ADMIN','ACCOUNTANT')")
+    public ResponseEntity<StreamingResponseBody> exportDotThuPdf(
+            @PathVariable @NonNull Integer idDotThu,
+            @RequestParam(defaultValue = "zip") String format) {
+        StreamingResponseBody body = service.exportDotThuPdf(idDotThu, format);
+        boolean zip = InvoicePdfService.DINH_DANG_ZIP.equals(format);
+        return ResponseEntity.ok()
+            .header(HttpHeaders.CONTENT_TYPE, zip ? "application/zip" : MediaType.APPLICATION_PDF_VALUE)
+            .header(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=hoa-don-dot-thu-" + idDotThu + (zip ? ".zip" : ".pdf"))
+            .body(body);
+    }
+}
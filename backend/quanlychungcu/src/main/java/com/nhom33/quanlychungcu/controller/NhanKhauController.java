@@ -1,6 +1,7 @@
 package com.nhom33.quanlychungcu.controller;
 
 import com.nhom33.quanlychungcu.dto.NhanKhauRequestDTO;
+import com.nhom33.quanlychungcu.dto.TrangConTroDTO;
 import com.nhom33.quanlychungcu.entity.NhanKhau;
 import com.nhom33.quanlychungcu.service.NhanKhauService;
 import jakarta.validation.Valid;
@@ -128,6 +129,25 @@ public class NhanKhauController {
         return ResponseEntity.ok(result);
     }
 
+    /**
+     * Lấy danh sách nhân khẩu phân trang theo con trỏ (sắp theo id, không OFFSET / COUNT)
+     * GET /api/nhan-khau/theo-con-tro?size=50&sortDir=asc          (trang đầu)
+     * GET /api/nhan-khau/theo-con-tro?size=50&conTro={conTroTiep}  (trang sau)
+     * dem=true để kèm tổng số bản ghi.
+     */
+    @GetMapping("/theo-con-tro")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<TrangConTroDTO<NhanKhau>> findAllTheoConTro(
+            @RequestParam(required = false) String conTro,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "asc") String sortDir,
+            @RequestParam(defaultValue = "false") boolean dem) {
+        
+        TrangConTroDTO<NhanKhau> result = service.findAllTheoConTro(
+            conTro, size, sortDir.equalsIgnoreCase("desc"), dem);
+        return ResponseEntity.ok(result);
+    }
+
     /**
      * Lấy danh sách nhân khẩu theo hộ gia đình
      * GET /api/nhan-khau/ho-gia-dinh/{idHoGiaDinh}
@@ -48,11 +48,18 @@ public class NotificationController {
     @PostMapping("/nhac-han-hang-loat/{idDotThu}")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<Map<String, Object>> sendBulkPaymentReminder(@PathVariable @NonNull Integer idDotThu) {
-        int sentCount = service.sendBulkPaymentReminder(idDotThu);
-        Map<String, Object> response = new HashMap<>();
-        response.put("message", "Đã gửi thông báo");
-        response.put("sentCount", sentCount);
-        return ResponseEntity.ok(response);
+        Map<String, Object> response = service.sendBulkPaymentReminder(idDotThu);
+        response.put("message", "Đã xếp hàng gửi thông báo");
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+    }
+
+    /**
+     * Tiến độ gửi của một lượt nhắc hạn hàng loạt (số email chờ gửi / đã gửi / lỗi).
+     */
+    @GetMapping("/nhac-han-hang-loat/tien-do/{luotGuiId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getBulkReminderProgress(@PathVariable @NonNull String luotGuiId) {
+        return ResponseEntity.ok(service.getBulkReminderProgress(luotGuiId));
     }
 
     @PostMapping("/gui-hoa-don/{idHoaDon}")
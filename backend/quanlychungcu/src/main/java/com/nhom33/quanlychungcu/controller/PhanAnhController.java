@@ -1,5 +1,6 @@
 package com.nhom33.quanlychungcu.controller;
 
+import com.nhom33.quanlychungcu.dto.TrangConTroDTO;
 import com.nhom33.quanlychungcu.entity.PhanAnh;
 import com.nhom33.quanlychungcu.entity.PhanHoi;
 import com.nhom33.quanlychungcu.service.PhanAnhService;
@@ -67,6 +68,17 @@ public class PhanAnhController {
         return ResponseEntity.ok(result);
     }
 
+    /**
+     * Phản ánh mới nhất trước, phân trang theo con trỏ (truyền conTroTiep của trang trước qua conTro).
+     */
+    @GetMapping("/theo-con-tro")
+    public ResponseEntity<TrangConTroDTO<PhanAnh>> findAllTheoConTro(
+            @RequestParam(required = false) String conTro,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "false") boolean dem) {
+        return ResponseEntity.ok(service.findAllTheoConTro(conTro, size, dem));
+    }
+
     @GetMapping("/ho-gia-dinh/{idHoGiaDinh}")
     public ResponseEntity<Page<PhanAnh>> findByHoGiaDinh(
             @PathVariable @NonNull Integer idHoGiaDinh,
@@ -1,11 +1,17 @@
 package com.nhom33.quanlychungcu.controller;
 
+import com.nhom33.quanlychungcu.entity.SoCaiCongNo;
 import com.nhom33.quanlychungcu.service.ReportService;
 import lombok.NonNull;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.Map;
 
 @RestController
@@ -25,6 +31,15 @@ public class ReportController {
         return ResponseEntity.ok(result);
     }
 
+    /**
+     * Đối soát bảng tổng hợp đợt thu với HoaDon, sửa các dòng bị lệch.
+     */
+    @PostMapping("/dot-thu/doi-soat")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> doiSoatTongHop() {
+        return ResponseEntity.ok(service.doiSoatTongHop());
+    }
+
     @GetMapping("/ho-gia-dinh/{idHoGiaDinh}/cong-no")
     @PreAuthorize("hasAnyRole('ADMIN','ACCOUNTANT')")
     public ResponseEntity<Map<String, Object>> getCongNoByHoGiaDinh(@PathVariable @NonNull Integer idHoGiaDinh) {
@@ -32,6 +47,53 @@ public class ReportController {
         return ResponseEntity.ok(result);
     }
 
+    /**
+     * Công nợ của hộ tại cuối một ngày (tra trên sổ cái công nợ).
+     */
+    @GetMapping("/ho-gia-dinh/{idHoGiaDinh}/cong-no-tai-ngay")
+    @PreAuthorize("hasAnyRole('ADMIN','ACCOUNTANT')")
+    public ResponseEntity<Map<String, Object>> getCongNoTaiNgay(
+            @PathVariable @NonNull Integer idHoGiaDinh,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate ngay) {
+        return ResponseEntity.ok(service.getCongNoTaiNgay(idHoGiaDinh, ngay));
+    }
+
+    /**
+     * Sổ cái công nợ của hộ: phát sinh, thanh toán, điều chỉnh và số dư sau mỗi bút toán.
+     */
+    @GetMapping("/ho-gia-dinh/{idHoGiaDinh}/so-cai")
+    @PreAuthorize("hasAnyRole('ADMIN','ACCOUNTANT')")
+    public ResponseEntity<Page<SoCaiCongNo>> getSoCaiCongNo(
+            @PathVariable @NonNull Integer idHoGiaDinh,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(service.getSoCaiCongNo(idHoGiaDinh, PageRequest.of(page, size)));
+    }
+
+    /**
+     * Xếp hạng hộ nợ theo số dư giảm dần.
+     * nhomTuoiNo: 0-30, 31-60, 61-90, 90+ (tính theo khoản nợ cũ nhất chưa trả).
+     */
+    @GetMapping("/cong-no/xep-hang")
+    @PreAuthorize("hasAnyRole('ADMIN','ACCOUNTANT')")
+    public ResponseEntity<Page<Map<String, Object>>> getXepHangCongNo(
+            @RequestParam(required = false) Integer toaNhaId,
+            @RequestParam(required = false) BigDecimal soTienToiThieu,
+            @RequestParam(required = false) String nhomTuoiNo,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(service.getXepHangCongNo(toaNhaId, soTienToiThieu, nhomTuoiNo, PageRequest.of(page, size)));
+    }
+
+    /**
+     * Dựng lại sổ cái công nợ từ hóa đơn và lịch sử thanh toán (sau khi sửa dữ liệu trực tiếp trong DB).
+     */
+    @PostMapping("/cong-no/xay-dung-lai")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> xayDungLaiSoCai() {
+        return ResponseEntity.ok(service.xayDungLaiSoCai());
+    }
+
     @GetMapping("/thang")
     @PreAuthorize("hasAnyRole('ADMIN','ACCOUNTANT')")
     public ResponseEntity<Map<String, Object>> getStatisticsByMonth(
@@ -40,5 +102,16 @@ public class ReportController {
         Map<String, Object> result = service.getStatisticsByMonth(year, month);
         return ResponseEntity.ok(result);
     }
-}
 
+    /**
+     * Doanh thu 12 tháng trong năm theo từng tòa nhà (một truy vấn cho cả biểu đồ).
+     */
+    @GetMapping("/doanh-thu")
+    @PreAuthorize("hasAnyRole('ADMIN','ACCOUNTANT')")
+    public ResponseEntity<Map<String, Object>> getDoanhThuTheoNam(
+            @RequestParam int nam,
+            @RequestParam(required = false) Integer toaNhaId) {
+        Map<String, Object> result = service.getDoanhThuTheoNam(nam, toaNhaId);
+        return ResponseEntity.ok(result);
+    }
+}
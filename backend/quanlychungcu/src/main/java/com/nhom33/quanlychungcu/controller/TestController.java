@@ -1,8 +1,10 @@
 package com.nhom33.quanlychungcu.controller;
 
 import com.github.javafaker.Faker;
+import com.nhom33.quanlychungcu.config.JwtPrincipalCache;
 import com.nhom33.quanlychungcu.entity.*;
 import com.nhom33.quanlychungcu.repository.*;
+import com.nhom33.quanlychungcu.service.CongNoService;
 import com.nhom33.quanlychungcu.service.HoaDonService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -33,13 +35,16 @@ public class TestController {
     
     private final PasswordEncoder passwordEncoder;
     private final HoaDonService hoaDonService;
+    private final CongNoService congNoService;
+    private final JwtPrincipalCache principalCache;
 
     public TestController(HoGiaDinhRepository hoGiaDinhRepo, NhanKhauRepository nhanKhauRepo,
                           UserAccountRepository userRepo, LoaiPhiRepository loaiPhiRepo,
                           DotThuRepository dotThuRepo, HoaDonRepository hoaDonRepo,
                           ChiTietHoaDonRepository chiTietRepo, DinhMucThuRepository dinhMucRepo,
                           TamTruRepository tamTruRepo, TamVangRepository tamVangRepo,
-                          PasswordEncoder passwordEncoder, HoaDonService hoaDonService) {
+                          PasswordEncoder passwordEncoder, HoaDonService hoaDonService,
+                          CongNoService congNoService, JwtPrincipalCache principalCache) {
         this.hoGiaDinhRepo = hoGiaDinhRepo;
         this.nhanKhauRepo = nhanKhauRepo;
         this.userRepo = userRepo;
@@ -52,6 +57,8 @@ public class TestController {
         this.tamVangRepo = tamVangRepo;
         this.passwordEncoder = passwordEncoder;
         this.hoaDonService = hoaDonService;
+        this.congNoService = congNoService;
+        this.principalCache = principalCache;
     }
 
     @PostMapping("/reset-data")
@@ -73,6 +80,7 @@ public class TestController {
         // Let's keep existing users or reset to default? The requirement says "don het data".
         // Let's reset users to default only.
         userRepo.deleteAll();
+        principalCache.xoaHet();
 
         // 2. Seed Users
         seedUsers();
@@ -88,6 +96,8 @@ public class TestController {
 
         // 6. Generate Invoices
         seedInvoices(households, dotThus, loaiPhis);
+        // Hóa đơn mẫu được ghi thẳng qua repository -> dựng lại sổ cái công nợ
+        congNoService.xayDungLai();
 
         return ResponseEntity.ok("Reset and Seed Data Successful! Created 20 households and sample data.");
     }
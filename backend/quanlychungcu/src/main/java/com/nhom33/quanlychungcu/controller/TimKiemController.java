@@ -0,0 +1,121 @@
+package com.nhom33.quanlychungcu.controller;
+
+import com.nhom33.quanlychungcu.entity.HoGiaDinh;
+import com.nhom33.quanlychungcu.entity.NhanKhau;
+import com.nhom33.quanlychungcu.service.HoGiaDinhService;
+import com.nhom33.quanlychungcu.service.NhanKhauService;
+import com.nhom33.quanlychungcu.service.TimKiemService;
+import com.nhom33.quanlychungcu.util.GoiYTuDong.GoiY;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Controller: Tìm kiếm nhanh nhân khẩu và hộ gia đình (chỉ mục tìm kiếm trong bộ nhớ).
+ *
+ * API ENDPOINTS:
+ * - GET  /api/tim-kiem?q=nguyen van&size=5 : Tìm đồng thời nhân khẩu và hộ gia đình
+ * - GET  /api/tim-kiem/goi-y/ho-gia-dinh?q=a1&toaNhaId=1&soLuong=10 : Gợi ý hộ gia đình cho ô chọn
+ * - GET  /api/tim-kiem/goi-y/nhan-khau?q=ngu&toaNhaId=1&soLuong=10  : Gợi ý nhân khẩu cho ô chọn
+ * - GET  /api/tim-kiem/thong-ke            : Thống kê chỉ mục
+ * - POST /api/tim-kiem/xay-dung-lai        : Dựng lại chỉ mục từ DB (sau khi sửa dữ liệu trực tiếp trong DB)
+ */
+@RestController
+@RequestMapping("/api/tim-kiem")
+@PreAuthorize("hasRole('ADMIN')")
+public class TimKiemController {
+
+    private static final int SO_GOI_Y_TOI_DA = 50;
+
+    private final TimKiemService timKiemService;
+    private final NhanKhauService nhanKhauService;
+    private final HoGiaDinhService hoGiaDinhService;
+
+    public TimKiemController(TimKiemService timKiemService, NhanKhauService nhanKhauService,
+                             HoGiaDinhService hoGiaDinhService) {
+        this.timKiemService = timKiemService;
+        this.nhanKhauService = nhanKhauService;
+        this.hoGiaDinhService = hoGiaDinhService;
+    }
+
+    /**
+     * Tìm theo họ tên / CCCD / số điện thoại (nhân khẩu) và mã hộ / căn hộ / chủ hộ (hộ gia đình),
+     * không phân biệt dấu, khớp tiền tố, xếp theo mức độ khớp.
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> timKiem(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "5") int size) {
+        if (q.isBlank()) {
+            throw new IllegalArgumentException("Từ khóa tìm kiếm không được để trống");
+        }
+        PageRequest pageable = PageRequest.of(0, size);
+        Page<NhanKhau> nhanKhau = nhanKhauService.searchByHoTen(q, pageable);
+        Page<HoGiaDinh> hoGiaDinh = hoGiaDinhService.searchByTenChuHo(q, pageable);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("nhanKhau", nhanKhau.getContent());
+        response.put("tongSoNhanKhau", nhanKhau.getTotalElements());
+        response.put("hoGiaDinh", hoGiaDinh.getContent());
+        response.put("tongSoHoGiaDinh", hoGiaDinh.getTotalElements());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Gợi ý hộ gia đình theo tiền tố mã hộ / số căn hộ / tên chủ hộ (không đếm tổng số, dùng cho mỗi lần gõ phím).
+     */
+    @GetMapping("/goi-y/ho-gia-dinh")
+    @PreAuthorize("hasAnyRole('ADMIN','ACCOUNTANT')")
+    public ResponseEntity<Map<String, Object>> goiYHoGiaDinh(
+            @RequestParam String q,
+            @RequestParam(required = false) Integer toaNhaId,
+            @RequestParam(defaultValue = "10") int soLuong) {
+        return ResponseEntity.ok(ketQuaGoiY(timKiemService.goiYHoGiaDinh(q, toaNhaId, gioiHan(soLuong))));
+    }
+
+    /**
+     * Gợi ý nhân khẩu theo tiền tố họ tên, tên đệm hoặc tên.
+     */
+    @GetMapping("/goi-y/nhan-khau")
+    public ResponseEntity<Map<String, Object>> goiYNhanKhau(
+            @RequestParam String q,
+            @RequestParam(required = false) Integer toaNhaId,
+            @RequestParam(defaultValue = "10") int soLuong) {
+        return ResponseEntity.ok(ketQuaGoiY(timKiemService.goiYNhanKhau(q, toaNhaId, gioiHan(soLuong))));
+    }
+
+    @GetMapping("/thong-ke")
+    public ResponseEntity<Map<String, Object>> getThongKe() {
+        return ResponseEntity.ok(timKiemService.getThongKe());
+    }
+
+    @PostMapping("/xay-dung-lai")
+    public ResponseEntity<Map<String, Object>> xayDungLai() {
+        timKiemService.xayDungLai();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", "Đã dựng lại chỉ mục tìm kiếm");
+        response.put("thongKe", timKiemService.getThongKe());
+        return ResponseEntity.ok(response);
+    }
+
+    private static int gioiHan(int soLuong) {
+        if (soLuong < 1 || soLuong > SO_GOI_Y_TOI_DA) {
+            throw new IllegalArgumentException("Số gợi ý phải từ 1 đến " + SO_GOI_Y_TOI_DA);
+        }
+        return soLuong;
+    }
+
+    private static Map<String, Object> ketQuaGoiY(List<GoiY> goiY) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("sanSang", goiY != null);
+        response.put("goiY", goiY != null ? goiY : List.of());
+        return response;
+    }
+}
@@ -1,7 +1,9 @@
 package com.nhom33.quanlychungcu.controller;
 
+import com.nhom33.quanlychungcu.config.JwtPrincipalCache;
 import com.nhom33.quanlychungcu.entity.Role;
 import com.nhom33.quanlychungcu.entity.UserAccount;
+import com.nhom33.quanlychungcu.service.ThuHoiTokenService;
 import com.nhom33.quanlychungcu.service.UserService;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Email;
@@ -11,7 +13,10 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/users")
@@ -19,9 +24,14 @@ import java.util.List;
 public class UserController {
 
     private final UserService userService;
+    private final JwtPrincipalCache principalCache;
+    private final ThuHoiTokenService thuHoiTokenService;
 
-    public UserController(UserService userService) {
+    public UserController(UserService userService, JwtPrincipalCache principalCache,
+                          ThuHoiTokenService thuHoiTokenService) {
         this.userService = userService;
+        this.principalCache = principalCache;
+        this.thuHoiTokenService = thuHoiTokenService;
     }
 
     @GetMapping
@@ -36,7 +46,8 @@ public class UserController {
                 request.fullName(),
                 request.email(),
                 request.role(),
-                request.password()
+                request.password(),
+                request.hoGiaDinhId()
         );
         return ResponseEntity.ok(updatedUser);
     }
@@ -47,10 +58,37 @@ public class UserController {
         return ResponseEntity.noContent().build();
     }
 
+    // ===== CACHE XÁC THỰC =====
+
+    /**
+     * Thống kê cache principal theo JWT (tỉ lệ hit, thời gian xác thực trung bình hit / miss)
+     * và danh sách thu hồi token.
+     */
+    @GetMapping("/auth-cache")
+    public ResponseEntity<Map<String, Object>> getAuthCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(principalCache.getThongKe());
+        stats.put("thuHoiToken", thuHoiTokenService.getThongKe());
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * Xóa toàn bộ cache principal (ví dụ sau khi sửa bảng Users trực tiếp trong DB).
+     */
+    @DeleteMapping("/auth-cache")
+    public ResponseEntity<Map<String, Object>> clearAuthCache() {
+        principalCache.xoaHet();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", "Đã xóa cache xác thực");
+        response.put("thongKe", principalCache.getThongKe());
+        return ResponseEntity.ok(response);
+    }
+
     public record UpdateUserRequest(
             @NotBlank @Size(max = 100) String fullName,
             @Email @NotBlank @Size(max = 150) String email,
             Role role,
-            String password // Optional, can be null/empty
+            String password, // Optional, can be null/empty
+            Integer hoGiaDinhId // Optional, null = giữ nguyên
     ) {}
 }
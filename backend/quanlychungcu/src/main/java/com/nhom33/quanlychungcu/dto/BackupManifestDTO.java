@@ -0,0 +1,37 @@
+package com.nhom33.quanlychungcu.dto;
+
+import java.util.List;
+
+/**
+ * DTO: Manifest của một file backup (manifest.json trong file ZIP).
+ *
+ * - loai: "Full" (toàn bộ dữ liệu) hoặc "Incremental" (chỉ các dòng thay đổi từ backup backupTruoc).
+ * - taoLuc: thời điểm bắt đầu đọc dữ liệu; backup tăng dần kế tiếp lấy thay đổi từ mốc này
+ *   (trừ một khoảng trễ, xem nhatKyTu).
+ * - bang: theo thứ tự khóa ngoại lúc backup (bảng cha trước), restore chèn theo đúng thứ tự này.
+ * - Mỗi bảng chia thành các chunk (data/{bảng}/{số thứ tự}.bin), mỗi chunk có số dòng và
+ *   SHA-256 của dữ liệu chưa nén để kiểm tra khi restore.
+ */
+public record BackupManifestDTO(int phienBan,
+                                String loai,
+                                String taoLuc,
+                                String database,
+                                String heQuanTri,
+                                String backupTruoc,
+                                String nhatKyTu,
+                                List<BangBackup> bang,
+                                long tongSoDong,
+                                long thoiGianMs) {
+
+    /** kieu: tên BackupRowCodec.Kieu */
+    public record CotBackup(String ten, String kieu, boolean identity) {}
+
+    public record ChunkBackup(String file, long soDong, String sha256) {}
+
+    /**
+     * caBang: dữ liệu là toàn bộ bảng (luôn đúng với backup đầy đủ), restore thay cả bảng.
+     * Ngược lại là trạng thái mới nhất của các dòng thay đổi, khoaXoa là khóa các dòng đã bị xóa.
+     */
+    public record BangBackup(String ten, List<CotBackup> cot, long soDong, List<ChunkBackup> chunk,
+                             boolean caBang, List<String> khoaXoa) {}
+}
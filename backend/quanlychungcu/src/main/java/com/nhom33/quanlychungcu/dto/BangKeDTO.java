@@ -0,0 +1,244 @@
+package com.nhom33.quanlychungcu.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * DTO: Bảng kê các khoản phí của một đợt thu (một trang).
+ * Dùng cho API GET /api/dot-thu/{id}/bang-ke
+ *
+ * - tongCong / tongDaDong / soHoaDon tính trên toàn đợt thu, không chỉ trang hiện tại.
+ * - pivot = true: mỗi dòng có theoLoaiPhi (thành tiền theo thứ tự loaiPhiOrder), không có chiTiet.
+ */
+public class BangKeDTO {
+
+    private Integer dotThuId;
+    private String tenDotThu;
+    private String toaNha;
+    private List<String> loaiPhiOrder;
+    private List<Integer> loaiPhiIds;
+    private List<DongBangKe> danhSach;
+    private BigDecimal tongCong;
+    private BigDecimal tongDaDong;
+    private long soHoaDon;
+    private int page;
+    private int size;
+    private int totalPages;
+
+    // Inner class: một hóa đơn (một hộ)
+    public static class DongBangKe {
+
+        private Integer hoaDonId;
+        private String maHoGiaDinh;
+        private String soCanHo;
+        private String chuHo;
+        private List<ChiTietBangKe> chiTiet;
+        private List<BigDecimal> theoLoaiPhi;
+        private BigDecimal tongTien;
+        private BigDecimal daDong;
+        private BigDecimal conNo;
+        private String trangThai;
+
+        public DongBangKe(Integer hoaDonId, String maHoGiaDinh, String soCanHo, String chuHo,
+                          BigDecimal tongTien, BigDecimal daDong, String trangThai) {
+            this.hoaDonId = hoaDonId;
+            this.maHoGiaDinh = maHoGiaDinh;
+            this.soCanHo = soCanHo;
+            this.chuHo = chuHo;
+            this.tongTien = tongTien;
+            this.daDong = daDong;
+            this.conNo = tongTien.subtract(daDong);
+            this.trangThai = trangThai;
+        }
+
+        public Integer getHoaDonId() {
+            return hoaDonId;
+        }
+
+        public String getMaHoGiaDinh() {
+            return maHoGiaDinh;
+        }
+
+        public String getSoCanHo() {
+            return soCanHo;
+        }
+
+        public String getChuHo() {
+            return chuHo;
+        }
+
+        public List<ChiTietBangKe> getChiTiet() {
+            return chiTiet;
+        }
+
+        public void setChiTiet(List<ChiTietBangKe> chiTiet) {
+            this.chiTiet = chiTiet;
+        }
+
+        public List<BigDecimal> getTheoLoaiPhi() {
+            return theoLoaiPhi;
+        }
+
+        public void setTheoLoaiPhi(List<BigDecimal> theoLoaiPhi) {
+            this.theoLoaiPhi = theoLoaiPhi;
+        }
+
+        public BigDecimal getTongTien() {
+            return tongTien;
+        }
+
+        public BigDecimal getDaDong() {
+            return daDong;
+        }
+
+        public BigDecimal getConNo() {
+            return conNo;
+        }
+
+        public String getTrangThai() {
+            return trangThai;
+        }
+    }
+
+    // Inner class: một dòng chi tiết hóa đơn
+    public static class ChiTietBangKe {
+
+        private Integer loaiPhiId;
+        private String tenLoaiPhi;
+        private String donViTinh;
+        private Double soLuong;
+        private BigDecimal donGia;
+        private BigDecimal thanhTien;
+
+        public ChiTietBangKe(Integer loaiPhiId, String tenLoaiPhi, String donViTinh,
+                             Double soLuong, BigDecimal donGia, BigDecimal thanhTien) {
+            this.loaiPhiId = loaiPhiId;
+            this.tenLoaiPhi = tenLoaiPhi;
+            this.donViTinh = donViTinh;
+            this.soLuong = soLuong;
+            this.donGia = donGia;
+            this.thanhTien = thanhTien;
+        }
+
+        public Integer getLoaiPhiId() {
+            return loaiPhiId;
+        }
+
+        public String getTenLoaiPhi() {
+            return tenLoaiPhi;
+        }
+
+        public String getDonViTinh() {
+            return donViTinh;
+        }
+
+        public Double getSoLuong() {
+            return soLuong;
+        }
+
+        public BigDecimal getDonGia() {
+            return donGia;
+        }
+
+        public BigDecimal getThanhTien() {
+            return thanhTien;
+        }
+    }
+
+    // Getters and Setters
+    public Integer getDotThuId() {
+        return dotThuId;
+    }
+
+    public void setDotThuId(Integer dotThuId) {
+        this.dotThuId = dotThuId;
+    }
+
+    public String getTenDotThu() {
+        return tenDotThu;
+    }
+
+    public void setTenDotThu(String tenDotThu) {
+        this.tenDotThu = tenDotThu;
+    }
+
+    public String getToaNha() {
+        return toaNha;
+    }
+
+    public void setToaNha(String toaNha) {
+        this.toaNha = toaNha;
+    }
+
+    public List<String> getLoaiPhiOrder() {
+        return loaiPhiOrder;
+    }
+
+    public void setLoaiPhiOrder(List<String> loaiPhiOrder) {
+        this.loaiPhiOrder = loaiPhiOrder;
+    }
+
+    public List<Integer> getLoaiPhiIds() {
+        return loaiPhiIds;
+    }
+
+    public void setLoaiPhiIds(List<Integer> loaiPhiIds) {
+        this.loaiPhiIds = loaiPhiIds;
+    }
+
+    public List<DongBangKe> getDanhSach() {
+        return danhSach;
+    }
+
+    public void setDanhSach(List<DongBangKe> danhSach) {
+        this.danhSach = danhSach;
+    }
+
+    public BigDecimal getTongCong() {
+        return tongCong;
+    }
+
+    public void setTongCong(BigDecimal tongCong) {
+        this.tongCong = tongCong;
+    }
+
+    public BigDecimal getTongDaDong() {
+        return tongDaDong;
+    }
+
+    public void setTongDaDong(BigDecimal tongDaDong) {
+        this.tongDaDong = tongDaDong;
+    }
+
+    public long getSoHoaDon() {
+        return soHoaDon;
+    }
+
+    public void setSoHoaDon(long soHoaDon) {
+        this.soHoaDon = soHoaDon;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public void setPage(int page) {
+        this.page = page;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public int getTotalPages() {
+        return totalPages;
+    }
+
+    public void setTotalPages(int totalPages) {
+        this.totalPages = totalPages;
+    }
+}
@@ -0,0 +1,70 @@
+package com.nhom33.quanlychungcu.dto;
+
+import java.util.List;
+
+/**
+ * DTO: Một trang danh sách phân trang theo con trỏ (keyset).
+ * Dùng cho các API GET .../theo-con-tro
+ *
+ * - conTroTiep: truyền lại qua tham số conTro để lấy trang sau; null khi đã hết dữ liệu.
+ * - tongSo: chỉ có khi gọi với dem=true (cần thêm một câu COUNT), ngược lại null.
+ */
+public class TrangConTroDTO<T> {
+
+    private List<T> noiDung;
+    private int size;
+    private String conTroTiep;
+    private boolean coTrangTiep;
+    private Long tongSo;
+
+    public TrangConTroDTO() {
+    }
+
+    public TrangConTroDTO(List<T> noiDung, int size, String conTroTiep, Long tongSo) {
+        this.noiDung = noiDung;
+        this.size = size;
+        this.conTroTiep = conTroTiep;
+        this.coTrangTiep = conTroTiep != null;
+        this.tongSo = tongSo;
+    }
+
+    public List<T> getNoiDung() {
+        return noiDung;
+    }
+
+    public void setNoiDung(List<T> noiDung) {
+        this.noiDung = noiDung;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public String getConTroTiep() {
+        return conTroTiep;
+    }
+
+    public void setConTroTiep(String conTroTiep) {
+        this.conTroTiep = conTroTiep;
+    }
+
+    public boolean isCoTrangTiep() {
+        return coTrangTiep;
+    }
+
+    public void setCoTrangTiep(boolean coTrangTiep) {
+        this.coTrangTiep = coTrangTiep;
+    }
+
+    public Long getTongSo() {
+        return tongSo;
+    }
+
+    public void setTongSo(Long tongSo) {
+        this.tongSo = tongSo;
+    }
+}
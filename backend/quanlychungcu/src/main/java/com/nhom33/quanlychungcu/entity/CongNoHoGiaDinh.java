@@ -0,0 +1,95 @@
+package com.nhom33.quanlychungcu.entity;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Entity: Số dư công nợ hiện tại của một hộ gia đình (một dòng / hộ).
+ *
+ * Được cộng dồn cùng lúc với mỗi bút toán trong SoCaiCongNo, nên đọc công nợ hiện tại
+ * chỉ cần một dòng. SoDu < 0 nghĩa là hộ đã trả thừa.
+ *
+ * NgayNoCuNhat: ngày phát sinh của khoản nợ cũ nhất chưa trả (tiền nộp trả nợ cũ trước),
+ * NULL khi hết nợ. Cùng với SoDu dùng để xếp hạng hộ nợ và lọc theo tuổi nợ qua index.
+ */
+@Entity
+@Table(name = "CongNoHoGiaDinh", indexes = {
+    @Index(name = "IX_CongNoHoGiaDinh_SoDu", columnList = "SoDu"),
+    @Index(name = "IX_CongNoHoGiaDinh_NgayNoCuNhat", columnList = "NgayNoCuNhat")
+})
+public class CongNoHoGiaDinh {
+
+    @Id
+    @Column(name = "ID_HoGiaDinh")
+    private Integer idHoGiaDinh;
+
+    @Column(name = "SoDu", nullable = false, precision = 18, scale = 0)
+    private BigDecimal soDu = BigDecimal.ZERO;
+
+    @Column(name = "TongPhatSinh", nullable = false, precision = 18, scale = 0)
+    private BigDecimal tongPhatSinh = BigDecimal.ZERO;
+
+    @Column(name = "TongThanhToan", nullable = false, precision = 18, scale = 0)
+    private BigDecimal tongThanhToan = BigDecimal.ZERO;
+
+    @Column(name = "NgayNoCuNhat")
+    private LocalDate ngayNoCuNhat;
+
+    @Column(name = "NgayCapNhat")
+    private LocalDateTime ngayCapNhat;
+
+    // Constructors
+    public CongNoHoGiaDinh() {
+    }
+
+    // Getters and Setters
+    public Integer getIdHoGiaDinh() {
+        return idHoGiaDinh;
+    }
+
+    public void setIdHoGiaDinh(Integer idHoGiaDinh) {
+        this.idHoGiaDinh = idHoGiaDinh;
+    }
+
+    public BigDecimal getSoDu() {
+        return soDu;
+    }
+
+    public void setSoDu(BigDecimal soDu) {
+        this.soDu = soDu;
+    }
+
+    public BigDecimal getTongPhatSinh() {
+        return tongPhatSinh;
+    }
+
+    public void setTongPhatSinh(BigDecimal tongPhatSinh) {
+        this.tongPhatSinh = tongPhatSinh;
+    }
+
+    public BigDecimal getTongThanhToan() {
+        return tongThanhToan;
+    }
+
+    public void setTongThanhToan(BigDecimal tongThanhToan) {
+        this.tongThanhToan = tongThanhToan;
+    }
+
+    public LocalDate getNgayNoCuNhat() {
+        return ngayNoCuNhat;
+    }
+
+    public void setNgayNoCuNhat(LocalDate ngayNoCuNhat) {
+        this.ngayNoCuNhat = ngayNoCuNhat;
+    }
+
+    public LocalDateTime getNgayCapNhat() {
+        return ngayCapNhat;
+    }
+
+    public void setNgayCapNhat(LocalDateTime ngayCapNhat) {
+        this.ngayCapNhat = ngayCapNhat;
+    }
+}
@@ -0,0 +1,154 @@
+package com.nhom33.quanlychungcu.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Entity: Lịch sử công việc tính tiền chạy nền.
+ *
+ * Ghi lại trạng thái cuối của mỗi job tính tiền để không mất lịch sử khi restart.
+ * Tiến độ chi tiết (đang chạy) chỉ giữ trong bộ nhớ, xem InvoiceJobService.
+ */
+@Entity
+@Table(name = "CongViecTinhTien", indexes = {
+    @Index(name = "IX_CongViecTinhTien_DotThu", columnList = "ID_DotThu")
+})
+public class CongViecTinhTien {
+
+    @Id
+    @Column(name = "ID_CongViec", length = 36)
+    private String id;
+
+    // Không dùng FK để giữ lịch sử kể cả khi đợt thu bị xóa
+    @Column(name = "ID_DotThu", nullable = false)
+    private Integer idDotThu;
+
+    @Column(name = "TrangThai", length = 30, nullable = false)
+    private String trangThai; // 'DangChay', 'HoanThanh', 'Loi', 'DaHuy', 'BiGianDoan'
+
+    @Column(name = "TongSoHo")
+    private Integer tongSoHo;
+
+    @Column(name = "SoHoDaXuLy")
+    private Integer soHoDaXuLy;
+
+    @Column(name = "SoHoThieuChiSo")
+    private Integer soHoThieuChiSo;
+
+    // Danh sách mã hộ thiếu chỉ số, phân cách bởi dấu phẩy
+    @Column(name = "DanhSachThieuChiSo", columnDefinition = "NVARCHAR(MAX)")
+    private String danhSachThieuChiSo;
+
+    @Column(name = "ThongBaoLoi", length = 1000)
+    private String thongBaoLoi;
+
+    @Column(name = "NguoiTao", length = 100)
+    private String nguoiTao;
+
+    @Column(name = "NgayBatDau")
+    private LocalDateTime ngayBatDau;
+
+    @Column(name = "NgayKetThuc")
+    private LocalDateTime ngayKetThuc;
+
+    // Constructors
+    public CongViecTinhTien() {
+    }
+
+    public CongViecTinhTien(String id, Integer idDotThu, String nguoiTao) {
+        this.id = id;
+        this.idDotThu = idDotThu;
+        this.nguoiTao = nguoiTao;
+        this.trangThai = "DangChay";
+        this.ngayBatDau = LocalDateTime.now();
+    }
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Integer getIdDotThu() {
+        return idDotThu;
+    }
+
+    public void setIdDotThu(Integer idDotThu) {
+        this.idDotThu = idDotThu;
+    }
+
+    public String getTrangThai() {
+        return trangThai;
+    }
+
+    public void setTrangThai(String trangThai) {
+        this.trangThai = trangThai;
+    }
+
+    public Integer getTongSoHo() {
+        return tongSoHo;
+    }
+
+    public void setTongSoHo(Integer tongSoHo) {
+        this.tongSoHo = tongSoHo;
+    }
+
+    public Integer getSoHoDaXuLy() {
+        return soHoDaXuLy;
+    }
+
+    public void setSoHoDaXuLy(Integer soHoDaXuLy) {
+        this.soHoDaXuLy = soHoDaXuLy;
+    }
+
+    public Integer getSoHoThieuChiSo() {
+        return soHoThieuChiSo;
+    }
+
+    public void setSoHoThieuChiSo(Integer soHoThieuChiSo) {
+        this.soHoThieuChiSo = soHoThieuChiSo;
+    }
+
+    public String getDanhSachThieuChiSo() {
+        return danhSachThieuChiSo;
+    }
+
+    public void setDanhSachThieuChiSo(String danhSachThieuChiSo) {
+        this.danhSachThieuChiSo = danhSachThieuChiSo;
+    }
+
+    public String getThongBaoLoi() {
+        return thongBaoLoi;
+    }
+
+    public void setThongBaoLoi(String thongBaoLoi) {
+        this.thongBaoLoi = thongBaoLoi;
+    }
+
+    public String getNguoiTao() {
+        return nguoiTao;
+    }
+
+    public void setNguoiTao(String nguoiTao) {
+        this.nguoiTao = nguoiTao;
+    }
+
+    public LocalDateTime getNgayBatDau() {
+        return ngayBatDau;
+    }
+
+    public void setNgayBatDau(LocalDateTime ngayBatDau) {
+        this.ngayBatDau = ngayBatDau;
+    }
+
+    public LocalDateTime getNgayKetThuc() {
+        return ngayKetThuc;
+    }
+
+    public void setNgayKetThuc(LocalDateTime ngayKetThuc) {
+        this.ngayKetThuc = ngayKetThuc;
+    }
+}
@@ -0,0 +1,176 @@
+package com.nhom33.quanlychungcu.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Entity: Hàng đợi email (outbox).
+ *
+ * Email được ghi vào bảng trong request, thread gửi mail đọc ra gửi dần (giới hạn tốc độ,
+ * thử lại khi lỗi). Mỗi lần gửi hàng loạt có một ID_LuotGui để theo dõi tiến độ.
+ * KhoaChongTrung: cùng một nội dung cho cùng người nhận chỉ được xếp hàng một lần.
+ */
+@Entity
+@Table(name = "HangDoiEmail", indexes = {
+    @Index(name = "IX_HangDoiEmail_TrangThai_LanThu", columnList = "TrangThai, LanThuTiepTheo"),
+    @Index(name = "IX_HangDoiEmail_LuotGui", columnList = "ID_LuotGui"),
+    @Index(name = "UX_HangDoiEmail_KhoaChongTrung", columnList = "KhoaChongTrung", unique = true)
+})
+public class HangDoiEmail {
+
+    public static final String CHO_GUI = "ChoGui";
+    public static final String DANG_GUI = "DangGui";
+    public static final String DA_GUI = "DaGui";
+    public static final String LOI = "Loi";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "ID_Email")
+    private Long id;
+
+    @Column(name = "ID_LuotGui", length = 36, nullable = false)
+    private String idLuotGui;
+
+    @Column(name = "KhoaChongTrung", length = 200, nullable = false)
+    private String khoaChongTrung;
+
+    @Column(name = "EmailNguoiNhan", length = 100, nullable = false)
+    private String emailNguoiNhan;
+
+    @Column(name = "TieuDe", length = 200, nullable = false)
+    private String tieuDe;
+
+    @Column(name = "NoiDung", columnDefinition = "NVARCHAR(MAX)")
+    private String noiDung;
+
+    // Khác null -> lưu một ThongBao với loại này sau khi gửi xong
+    @Column(name = "LoaiThongBao", length = 50)
+    private String loaiThongBao;
+
+    @Column(name = "TrangThai", length = 20, nullable = false)
+    private String trangThai; // 'ChoGui', 'DangGui', 'DaGui', 'Loi'
+
+    @Column(name = "SoLanThu", nullable = false)
+    private Integer soLanThu = 0;
+
+    @Column(name = "LanThuTiepTheo", nullable = false)
+    private LocalDateTime lanThuTiepTheo;
+
+    @Column(name = "LoiCuoi", length = 1000)
+    private String loiCuoi;
+
+    @Column(name = "NgayTao", nullable = false)
+    private LocalDateTime ngayTao;
+
+    @Column(name = "NgayGui")
+    private LocalDateTime ngayGui;
+
+    // Constructors
+    public HangDoiEmail() {
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getIdLuotGui() {
+        return idLuotGui;
+    }
+
+    public void setIdLuotGui(String idLuotGui) {
+        this.idLuotGui = idLuotGui;
+    }
+
+    public String getKhoaChongTrung() {
+        return khoaChongTrung;
+    }
+
+    public void setKhoaChongTrung(String khoaChongTrung) {
+        this.khoaChongTrung = khoaChongTrung;
+    }
+
+    public String getEmailNguoiNhan() {
+        return emailNguoiNhan;
+    }
+
+    public void setEmailNguoiNhan(String emailNguoiNhan) {
+        this.emailNguoiNhan = emailNguoiNhan;
+    }
+
+    public String getTieuDe() {
+        return tieuDe;
+    }
+
+    public void setTieuDe(String tieuDe) {
+        this.tieuDe = tieuDe;
+    }
+
+    public String getNoiDung() {
+        return noiDung;
+    }
+
+    public void setNoiDung(String noiDung) {
+        this.noiDung = noiDung;
+    }
+
+    public String getLoaiThongBao() {
+        return loaiThongBao;
+    }
+
+    public void setLoaiThongBao(String loaiThongBao) {
+        this.loaiThongBao = loaiThongBao;
+    }
+
+    public String getTrangThai() {
+        return trangThai;
+    }
+
+    public void setTrangThai(String trangThai) {
+        this.trangThai = trangThai;
+    }
+
+    public Integer getSoLanThu() {
+        return soLanThu;
+    }
+
+    public void setSoLanThu(Integer soLanThu) {
+        this.soLanThu = soLanThu;
+    }
+
+    public LocalDateTime getLanThuTiepTheo() {
+        return lanThuTiepTheo;
+    }
+
+    public void setLanThuTiepTheo(LocalDateTime lanThuTiepTheo) {
+        this.lanThuTiepTheo = lanThuTiepTheo;
+    }
+
+    public String getLoiCuoi() {
+        return loiCuoi;
+    }
+
+    public void setLoiCuoi(String loiCuoi) {
+        this.loiCuoi = loiCuoi;
+    }
+
+    public LocalDateTime getNgayTao() {
+        return ngayTao;
+    }
+
+    public void setNgayTao(LocalDateTime ngayTao) {
+        this.ngayTao = ngayTao;
+    }
+
+    public LocalDateTime getNgayGui() {
+        return ngayGui;
+    }
+
+    public void setNgayGui(LocalDateTime ngayGui) {
+        this.ngayGui = ngayGui;
+    }
+}
@@ -8,7 +8,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "HoaDon")
+@Table(name = "HoaDon", uniqueConstraints = {
+    @UniqueConstraint(name = "UQ_HoaDon_HoGiaDinh_DotThu", columnNames = {"ID_HoGiaDinh", "ID_DotThu"})
+})
 public class HoaDon {
 
     @Id
@@ -0,0 +1,70 @@
+package com.nhom33.quanlychungcu.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Entity: Cặp (hộ gia đình, đợt thu) cần tính lại tiền.
+ *
+ * Được đánh dấu khi ChiSoDienNuoc, DinhMucThu, BangGiaDichVu hoặc danh sách phí của đợt thu thay đổi.
+ * Tính lại tăng dần chỉ xử lý các cặp này, sau đó xóa dấu.
+ */
+@Entity
+@Table(name = "HoaDonCanTinhLai", uniqueConstraints = {
+    @UniqueConstraint(name = "UQ_HoaDonCanTinhLai", columnNames = {"ID_HoGiaDinh", "ID_DotThu"})
+}, indexes = {
+    @Index(name = "IX_HoaDonCanTinhLai_DotThu", columnList = "ID_DotThu")
+})
+public class HoaDonCanTinhLai {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "ID")
+    private Integer id;
+
+    @Column(name = "ID_HoGiaDinh", nullable = false)
+    private Integer idHoGiaDinh;
+
+    @Column(name = "ID_DotThu", nullable = false)
+    private Integer idDotThu;
+
+    @Column(name = "NgayDanhDau")
+    private LocalDateTime ngayDanhDau;
+
+    // Constructors
+    public HoaDonCanTinhLai() {
+    }
+
+    // Getters and Setters
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public Integer getIdHoGiaDinh() {
+        return idHoGiaDinh;
+    }
+
+    public void setIdHoGiaDinh(Integer idHoGiaDinh) {
+        this.idHoGiaDinh = idHoGiaDinh;
+    }
+
+    public Integer getIdDotThu() {
+        return idDotThu;
+    }
+
+    public void setIdDotThu(Integer idDotThu) {
+        this.idDotThu = idDotThu;
+    }
+
+    public LocalDateTime getNgayDanhDau() {
+        return ngayDanhDau;
+    }
+
+    public void setNgayDanhDau(LocalDateTime ngayDanhDau) {
+        this.ngayDanhDau = ngayDanhDau;
+    }
+}
@@ -0,0 +1,101 @@
+package com.nhom33.quanlychungcu.entity;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Entity: Một phiên bản giá có thời hạn hiệu lực.
+ *
+ * LOGIC NGHIỆP VỤ:
+ * - ID_ToaNha = NULL: giá mặc định của loại phí (LoaiPhi.DonGia).
+ * - ID_ToaNha khác NULL: giá riêng của tòa nhà (BangGiaDichVu).
+ * - Hiệu lực trong khoảng [HieuLucTu, HieuLucDen); HieuLucDen = NULL là phiên bản đang áp dụng.
+ * - Mỗi lần đổi giá: đóng phiên bản đang mở và mở phiên bản mới, không ghi đè lịch sử.
+ */
+@Entity
+@Table(name = "LichSuGia", indexes = {
+    @Index(name = "IX_LichSuGia_LoaiPhi_ToaNha", columnList = "ID_LoaiPhi, ID_ToaNha, HieuLucTu")
+})
+public class LichSuGia {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "ID_LichSuGia")
+    private Integer id;
+
+    @Column(name = "ID_LoaiPhi", nullable = false)
+    private Integer idLoaiPhi;
+
+    @Column(name = "ID_ToaNha")
+    private Integer idToaNha;
+
+    @Column(name = "DonGia", nullable = false, precision = 18, scale = 0)
+    private BigDecimal donGia;
+
+    @Column(name = "HieuLucTu", nullable = false)
+    private LocalDateTime hieuLucTu;
+
+    @Column(name = "HieuLucDen")
+    private LocalDateTime hieuLucDen;
+
+    // Constructors
+    public LichSuGia() {
+    }
+
+    public LichSuGia(Integer idLoaiPhi, Integer idToaNha, BigDecimal donGia, LocalDateTime hieuLucTu) {
+        this.idLoaiPhi = idLoaiPhi;
+        this.idToaNha = idToaNha;
+        this.donGia = donGia;
+        this.hieuLucTu = hieuLucTu;
+    }
+
+    // Getters and Setters
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public Integer getIdLoaiPhi() {
+        return idLoaiPhi;
+    }
+
+    public void setIdLoaiPhi(Integer idLoaiPhi) {
+        this.idLoaiPhi = idLoaiPhi;
+    }
+
+    public Integer getIdToaNha() {
+        return idToaNha;
+    }
+
+    public void setIdToaNha(Integer idToaNha) {
+        this.idToaNha = idToaNha;
+    }
+
+    public BigDecimal getDonGia() {
+        return donGia;
+    }
+
+    public void setDonGia(BigDecimal donGia) {
+        this.donGia = donGia;
+    }
+
+    public LocalDateTime getHieuLucTu() {
+        return hieuLucTu;
+    }
+
+    public void setHieuLucTu(LocalDateTime hieuLucTu) {
+        this.hieuLucTu = hieuLucTu;
+    }
+
+    public LocalDateTime getHieuLucDen() {
+        return hieuLucDen;
+    }
+
+    public void setHieuLucDen(LocalDateTime hieuLucDen) {
+        this.hieuLucDen = hieuLucDen;
+    }
+}
@@ -0,0 +1,82 @@
+package com.nhom33.quanlychungcu.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Entity: Nhật ký thay đổi dữ liệu, dùng cho backup tăng dần (incremental).
+ *
+ * Mỗi dòng cho biết một bảng đã thay đổi từ thời điểm ThoiGian:
+ * - KhoaChinh khác null: dòng có khóa chính đó đã được thêm / sửa / xóa.
+ * - TuKhoa khác null: các dòng có khóa chính > TuKhoa (thêm hàng loạt bằng JDBC batch).
+ * - Cả hai null: cả bảng thay đổi (câu lệnh hàng loạt không biết khóa).
+ * Chỉ ghi bằng NhatKyThayDoiRepository (JDBC), không ghi qua JPA.
+ */
+@Entity
+@Table(name = "NhatKyThayDoi", indexes = {
+    @Index(name = "IX_NhatKyThayDoi_ThoiGian", columnList = "ThoiGian")
+})
+public class NhatKyThayDoi {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "ID")
+    private Long id;
+
+    @Column(name = "TenBang", length = 128, nullable = false)
+    private String tenBang;
+
+    @Column(name = "KhoaChinh", length = 100)
+    private String khoaChinh;
+
+    @Column(name = "TuKhoa")
+    private Long tuKhoa;
+
+    @Column(name = "ThoiGian", nullable = false)
+    private LocalDateTime thoiGian;
+
+    // Constructors
+    public NhatKyThayDoi() {
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTenBang() {
+        return tenBang;
+    }
+
+    public void setTenBang(String tenBang) {
+        this.tenBang = tenBang;
+    }
+
+    public String getKhoaChinh() {
+        return khoaChinh;
+    }
+
+    public void setKhoaChinh(String khoaChinh) {
+        this.khoaChinh = khoaChinh;
+    }
+
+    public Long getTuKhoa() {
+        return tuKhoa;
+    }
+
+    public void setTuKhoa(Long tuKhoa) {
+        this.tuKhoa = tuKhoa;
+    }
+
+    public LocalDateTime getThoiGian() {
+        return thoiGian;
+    }
+
+    public void setThoiGian(LocalDateTime thoiGian) {
+        this.thoiGian = thoiGian;
+    }
+}
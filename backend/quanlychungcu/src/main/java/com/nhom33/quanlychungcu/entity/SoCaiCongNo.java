@@ -0,0 +1,147 @@
+package com.nhom33.quanlychungcu.entity;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Entity: Một bút toán trong sổ cái công nợ của hộ gia đình.
+ *
+ * LOGIC NGHIỆP VỤ:
+ * - SoTien > 0: phát sinh phải thu (hóa đơn mới, tính lại tăng tiền).
+ * - SoTien < 0: thanh toán (LichSuThanhToan), tính lại giảm tiền, hủy hóa đơn.
+ * - SoDu: số dư công nợ của hộ ngay sau bút toán (số dư lũy kế), nên công nợ tại một
+ *   thời điểm là SoDu của bút toán cuối cùng trước thời điểm đó.
+ * - NgayPhatSinh: ngày của khoản phải thu (ngày bắt đầu đợt thu) hoặc ngày nộp tiền,
+ *   dùng để tính tuổi nợ. NgayGhiSo: thời điểm ghi bút toán.
+ * - Bút toán không bao giờ bị sửa/xóa; sai sót được điều chỉnh bằng bút toán mới.
+ */
+@Entity
+@Table(name = "SoCaiCongNo", indexes = {
+    @Index(name = "IX_SoCaiCongNo_Ho_NgayGhiSo", columnList = "ID_HoGiaDinh, NgayGhiSo"),
+    @Index(name = "IX_SoCaiCongNo_Ho_NgayPhatSinh", columnList = "ID_HoGiaDinh, NgayPhatSinh")
+})
+public class SoCaiCongNo {
+
+    public static final String PHAT_SINH = "PhatSinh";
+    public static final String THANH_TOAN = "ThanhToan";
+    public static final String DIEU_CHINH = "DieuChinh";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "ID_ButToan")
+    private Long id;
+
+    @Column(name = "ID_HoGiaDinh", nullable = false)
+    private Integer idHoGiaDinh;
+
+    @Column(name = "ID_HoaDon")
+    private Integer idHoaDon;
+
+    @Column(name = "ID_GiaoDich")
+    private Integer idGiaoDich;
+
+    @Column(name = "LoaiButToan", nullable = false, length = 20)
+    private String loaiButToan;
+
+    @Column(name = "SoTien", nullable = false, precision = 18, scale = 0)
+    private BigDecimal soTien;
+
+    @Column(name = "SoDu", nullable = false, precision = 18, scale = 0)
+    private BigDecimal soDu;
+
+    @Column(name = "NgayPhatSinh", nullable = false)
+    private LocalDate ngayPhatSinh;
+
+    @Column(name = "NgayGhiSo", nullable = false)
+    private LocalDateTime ngayGhiSo;
+
+    @Column(name = "DienGiai", length = 255)
+    private String dienGiai;
+
+    // Constructors
+    public SoCaiCongNo() {
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Integer getIdHoGiaDinh() {
+        return idHoGiaDinh;
+    }
+
+    public void setIdHoGiaDinh(Integer idHoGiaDinh) {
+        this.idHoGiaDinh = idHoGiaDinh;
+    }
+
+    public Integer getIdHoaDon() {
+        return idHoaDon;
+    }
+
+    public void setIdHoaDon(Integer idHoaDon) {
+        this.idHoaDon = idHoaDon;
+    }
+
+    public Integer getIdGiaoDich() {
+        return idGiaoDich;
+    }
+
+    public void setIdGiaoDich(Integer idGiaoDich) {
+        this.idGiaoDich = idGiaoDich;
+    }
+
+    public String getLoaiButToan() {
+        return loaiButToan;
+    }
+
+    public void setLoaiButToan(String loaiButToan) {
+        this.loaiButToan = loaiButToan;
+    }
+
+    public BigDecimal getSoTien() {
+        return soTien;
+    }
+
+    public void setSoTien(BigDecimal soTien) {
+        this.soTien = soTien;
+    }
+
+    public BigDecimal getSoDu() {
+        return soDu;
+    }
+
+    public void setSoDu(BigDecimal soDu) {
+        this.soDu = soDu;
+    }
+
+    public LocalDate getNgayPhatSinh() {
+        return ngayPhatSinh;
+    }
+
+    public void setNgayPhatSinh(LocalDate ngayPhatSinh) {
+        this.ngayPhatSinh = ngayPhatSinh;
+    }
+
+    public LocalDateTime getNgayGhiSo() {
+        return ngayGhiSo;
+    }
+
+    public void setNgayGhiSo(LocalDateTime ngayGhiSo) {
+        this.ngayGhiSo = ngayGhiSo;
+    }
+
+    public String getDienGiai() {
+        return dienGiai;
+    }
+
+    public void setDienGiai(String dienGiai) {
+        this.dienGiai = dienGiai;
+    }
+}
@@ -0,0 +1,98 @@
+package com.nhom33.quanlychungcu.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Entity: Danh sách thu hồi JWT (đăng xuất, đổi role / mật khẩu, xóa tài khoản).
+ *
+ * - Jti khác null: thu hồi đúng một token (đăng xuất).
+ * - Username + PhienBan: thu hồi mọi token của tài khoản có claim "ver" nhỏ hơn PhienBan.
+ * Sau HetHan mọi token bị thu hồi đều đã hết hạn, dòng có thể xóa.
+ */
+@Entity
+@Table(name = "ThuHoiToken", indexes = {
+    @Index(name = "IX_ThuHoiToken_HetHan", columnList = "HetHan")
+})
+public class ThuHoiToken {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "ID")
+    private Long id;
+
+    @Column(name = "Jti", length = 64)
+    private String jti;
+
+    @Column(name = "Username", length = 100)
+    private String username;
+
+    @Column(name = "PhienBan")
+    private Integer phienBan;
+
+    @Column(name = "HetHan", nullable = false)
+    private LocalDateTime hetHan;
+
+    @Column(name = "NgayTao", nullable = false)
+    private LocalDateTime ngayTao;
+
+    // Constructors
+    public ThuHoiToken() {
+    }
+
+    @PrePersist
+    public void onCreate() {
+        if (ngayTao == null) {
+            ngayTao = LocalDateTime.now();
+        }
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getJti() {
+        return jti;
+    }
+
+    public void setJti(String jti) {
+        this.jti = jti;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public Integer getPhienBan() {
+        return phienBan;
+    }
+
+    public void setPhienBan(Integer phienBan) {
+        this.phienBan = phienBan;
+    }
+
+    public LocalDateTime getHetHan() {
+        return hetHan;
+    }
+
+    public void setHetHan(LocalDateTime hetHan) {
+        this.hetHan = hetHan;
+    }
+
+    public LocalDateTime getNgayTao() {
+        return ngayTao;
+    }
+
+    public void setNgayTao(LocalDateTime ngayTao) {
+        this.ngayTao = ngayTao;
+    }
+}
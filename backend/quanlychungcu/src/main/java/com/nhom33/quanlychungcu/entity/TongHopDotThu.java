@@ -0,0 +1,131 @@
+package com.nhom33.quanlychungcu.entity;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Entity: Số liệu tổng hợp của một đợt thu (một dòng / đợt thu).
+ *
+ * Được cộng dồn mỗi khi hóa đơn của đợt thu thay đổi (tính tiền, nộp tiền, VNPAY),
+ * để dashboard chỉ cần đọc một dòng thay vì SUM/COUNT trên bảng HoaDon.
+ * Job đối soát định kỳ so sánh với dữ liệu HoaDon thực tế và sửa nếu lệch.
+ */
+@Entity
+@Table(name = "TongHopDotThu")
+public class TongHopDotThu {
+
+    @Id
+    @Column(name = "ID_DotThu")
+    private Integer idDotThu;
+
+    @Column(name = "TongPhaiThu", precision = 18, scale = 2, nullable = false)
+    private BigDecimal tongPhaiThu = BigDecimal.ZERO;
+
+    @Column(name = "TongDaThu", precision = 18, scale = 2, nullable = false)
+    private BigDecimal tongDaThu = BigDecimal.ZERO;
+
+    @Column(name = "SoHoaDon", nullable = false)
+    private Long soHoaDon = 0L;
+
+    @Column(name = "SoChuaDong", nullable = false)
+    private Long soChuaDong = 0L;
+
+    @Column(name = "SoDangNo", nullable = false)
+    private Long soDangNo = 0L;
+
+    @Column(name = "SoDaDong", nullable = false)
+    private Long soDaDong = 0L;
+
+    @Column(name = "TongSoHo", nullable = false)
+    private Long tongSoHo = 0L;
+
+    @Column(name = "NgayCapNhat")
+    private LocalDateTime ngayCapNhat;
+
+    // Constructors
+    public TongHopDotThu() {
+    }
+
+    public TongHopDotThu(Integer idDotThu) {
+        this.idDotThu = idDotThu;
+    }
+
+    // Getters and Setters
+    public Integer getIdDotThu() {
+        return idDotThu;
+    }
+
+    public void setIdDotThu(Integer idDotThu) {
+        this.idDotThu = idDotThu;
+    }
+
+    public BigDecimal getTongPhaiThu() {
+        return tongPhaiThu;
+    }
+
+    public void setTongPhaiThu(BigDecimal tongPhaiThu) {
+        this.tongPhaiThu = tongPhaiThu;
+    }
+
+    public BigDecimal getTongDaThu() {
+        return tongDaThu;
+    }
+
+    public void setTongDaThu(BigDecimal tongDaThu) {
+        this.tongDaThu = tongDaThu;
+    }
+
+    public Long getSoHoaDon() {
+        return soHoaDon;
+    }
+
+    public void setSoHoaDon(Long soHoaDon) {
+        this.soHoaDon = soHoaDon;
+    }
+
+    public Long getSoChuaDong() {
+        return soChuaDong;
+    }
+
+    public void setSoChuaDong(Long soChuaDong) {
+        this.soChuaDong = soChuaDong;
+    }
+
+    public Long getSoDangNo() {
+        return soDangNo;
+    }
+
+    public void setSoDangNo(Long soDangNo) {
+        this.soDangNo = soDangNo;
+    }
+
+    public Long getSoDaDong() {
+        return soDaDong;
+    }
+
+    public void setSoDaDong(Long soDaDong) {
+        this.soDaDong = soDaDong;
+    }
+
+    public Long getTongSoHo() {
+        return tongSoHo;
+    }
+
+    public void setTongSoHo(Long tongSoHo) {
+        this.tongSoHo = tongSoHo;
+    }
+
+    public LocalDateTime getNgayCapNhat() {
+        return ngayCapNhat;
+    }
+
+    public void setNgayCapNhat(LocalDateTime ngayCapNhat) {
+        this.ngayCapNhat = ngayCapNhat;
+    }
+
+    // Helper
+    public BigDecimal getTongConNo() {
+        return tongPhaiThu.subtract(tongDaThu);
+    }
+}
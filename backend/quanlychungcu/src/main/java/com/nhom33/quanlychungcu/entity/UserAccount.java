@@ -50,6 +50,14 @@ public class UserAccount implements UserDetails {
     @Column(name = "Role", nullable = false, length = 50)
     private Role role;
 
+    // Hộ gia đình của tài khoản cư dân (null với tài khoản quản lý), ghi vào claim "hgd" của token
+    @Column(name = "ID_HoGiaDinh")
+    private Integer hoGiaDinhId;
+
+    // Tăng khi đổi role / mật khẩu / hộ gia đình: token có claim "ver" cũ hơn bị thu hồi
+    @Column(name = "PhienBanToken", nullable = false, columnDefinition = "INT DEFAULT 0")
+    private int phienBanToken;
+
     @Column(name = "CreatedAt", updatable = false)
     private LocalDateTime createdAt;
 
@@ -98,6 +106,20 @@ public class UserAccount implements UserDetails {
         this.role = role;
     }
 
+    public Integer getHoGiaDinhId() {
+        return hoGiaDinhId;
+    }
+    public void setHoGiaDinhId(Integer hoGiaDinhId) {
+        this.hoGiaDinhId = hoGiaDinhId;
+    }
+
+    public int getPhienBanToken() {
+        return phienBanToken;
+    }
+    public void setPhienBanToken(int phienBanToken) {
+        this.phienBanToken = phienBanToken;
+    }
+
     // UserDetails implementation
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
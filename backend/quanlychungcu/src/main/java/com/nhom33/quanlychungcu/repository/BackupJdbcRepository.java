@@ -0,0 +1,418 @@
+package com.nhom33.quanlychungcu.repository;
+
+import com.nhom33.quanlychungcu.util.BackupRowCodec;
+import com.nhom33.quanlychungcu.util.BackupRowCodec.Kieu;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Repository: Đọc / ghi dữ liệu thô của mọi bảng cho backup / restore (JDBC).
+ *
+ * - Danh sách bảng và cột lấy từ DatabaseMetaData của schema hiện tại, sắp theo khóa ngoại
+ *   (bảng cha trước), nên bảng mới thêm vào entity tự có trong backup.
+ * - Đọc bảng bằng cursor forward-only với fetch size cố định, không nạp cả bảng vào bộ nhớ.
+ * - Ghi bằng batch INSERT giữ nguyên giá trị cột IDENTITY:
+ *   SQL Server dùng SET IDENTITY_INSERT + DBCC CHECKIDENT, H2 (chạy thử cục bộ) dùng ALTER ... RESTART.
+ * - Backup tăng dần: đọc / xóa theo danh sách khóa chính, ghi bằng UPDATE theo khóa rồi INSERT
+ *   các dòng chưa có (chỉ hỗ trợ bảng có khóa chính một cột).
+ * Các hàm ghi phải được gọi trong transaction của service (cùng một connection).
+ */
+@Repository
+public class BackupJdbcRepository {
+
+    private static final int FETCH_SIZE = 1000;
+    private static final int BATCH_SIZE = 500;
+    // Nhật ký thay đổi gắn với database đang chạy, không backup / restore
+    private static final Set<String> BANG_BO_QUA = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        BANG_BO_QUA.addAll(List.of("sysdiagrams", "NhatKyThayDoi"));
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public BackupJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public enum HeQuanTri { SQL_SERVER, H2, KHAC }
+
+    public record CotInfo(String ten, int sqlType, Kieu kieu, boolean identity) {}
+
+    /** khoaChinh: tên cột khóa chính nếu khóa chính chỉ có một cột, ngược lại null. */
+    public record BangInfo(String ten, List<CotInfo> cot, String khoaChinh) {
+        public Optional<CotInfo> cotIdentity() {
+            return cot.stream().filter(CotInfo::identity).findFirst();
+        }
+
+        public Optional<CotInfo> cotKhoa() {
+            return cot.stream().filter(c -> c.ten().equalsIgnoreCase(khoaChinh)).findFirst();
+        }
+    }
+
+    /**
+     * Đọc tuần tự từ backup rồi gán vào câu INSERT cho một dòng.
+     */
+    @FunctionalInterface
+    public interface GanDong {
+        void gan(PreparedStatement ps) throws SQLException, IOException;
+    }
+
+    /**
+     * Đọc tuần tự từ backup giá trị các cột của một dòng.
+     */
+    @FunctionalInterface
+    public interface DocDong {
+        Object[] doc() throws IOException;
+    }
+
+    public HeQuanTri getHeQuanTri() {
+        return jdbcTemplate.execute((ConnectionCallback<HeQuanTri>) con -> {
+            String ten = con.getMetaData().getDatabaseProductName();
+            if (ten.contains("SQL Server")) {
+                return HeQuanTri.SQL_SERVER;
+            }
+            return ten.contains("H2") ? HeQuanTri.H2 : HeQuanTri.KHAC;
+        });
+    }
+
+    /**
+     * Các bảng của schema hiện tại, bảng được tham chiếu (khóa ngoại) đứng trước.
+     * Bỏ qua cột tính toán (computed column) vì không INSERT được.
+     */
+    public List<BangInfo> findBangTheoThuTuKhoaNgoai() {
+        return jdbcTemplate.execute((ConnectionCallback<List<BangInfo>>) con -> {
+            DatabaseMetaData md = con.getMetaData();
+            String catalog = con.getCatalog();
+            String schema = con.getSchema();
+
+            Map<String, BangInfo> bangs = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            List<String> tenBang = new ArrayList<>();
+            try (ResultSet rs = md.getTables(catalog, schema, "%", new String[]{"TABLE"})) {
+                while (rs.next()) {
+                    String ten = rs.getString("TABLE_NAME");
+                    if (!BANG_BO_QUA.contains(ten)) {
+                        tenBang.add(ten);
+                    }
+                }
+            }
+            for (String ten : tenBang) {
+                List<String> khoa = new ArrayList<>();
+                try (ResultSet rs = md.getPrimaryKeys(catalog, schema, ten)) {
+                    while (rs.next()) {
+                        khoa.add(rs.getString("COLUMN_NAME"));
+                    }
+                }
+                bangs.put(ten, new BangInfo(ten, new ArrayList<>(), khoa.size() == 1 ? khoa.get(0) : null));
+            }
+            for (BangInfo bang : bangs.values()) {
+                try (ResultSet rs = md.getColumns(catalog, schema, bang.ten(), "%")) {
+                    while (rs.next()) {
+                        boolean identity = "YES".equalsIgnoreCase(rs.getString("IS_AUTOINCREMENT"));
+                        boolean tinhToan = "YES".equalsIgnoreCase(rs.getString("IS_GENERATEDCOLUMN"));
+                        if (tinhToan && !identity) {
+                            continue;
+                        }
+                        int sqlType = rs.getInt("DATA_TYPE");
+                        bang.cot().add(new CotInfo(rs.getString("COLUMN_NAME"), sqlType, Kieu.tuJdbc(sqlType), identity));
+                    }
+                }
+            }
+
+            // Bảng cha của từng bảng (bỏ tự tham chiếu)
+            Map<String, Set<String>> bangCha = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (BangInfo bang : bangs.values()) {
+                Set<String> cha = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+                try (ResultSet rs = md.getImportedKeys(catalog, schema, bang.ten())) {
+                    while (rs.next()) {
+                        String pk = rs.getString("PKTABLE_NAME");
+                        if (!pk.equalsIgnoreCase(bang.ten()) && bangs.containsKey(pk)) {
+                            cha.add(pk);
+                        }
+                    }
+                }
+                bangCha.put(bang.ten(), cha);
+            }
+            return sapTheoKhoaNgoai(bangs, bangCha);
+        });
+    }
+
+    private static List<BangInfo> sapTheoKhoaNgoai(Map<String, BangInfo> bangs, Map<String, Set<String>> bangCha) {
+        List<BangInfo> ketQua = new ArrayList<>(bangs.size());
+        Set<String> daXep = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        while (daXep.size() < bangs.size()) {
+            boolean coThem = false;
+            for (BangInfo bang : bangs.values()) {
+                if (!daXep.contains(bang.ten()) && daXep.containsAll(bangCha.get(bang.ten()))) {
+                    ketQua.add(bang);
+                    daXep.add(bang.ten());
+                    coThem = true;
+                }
+            }
+            if (!coThem) {
+                // Vòng khóa ngoại: giữ thứ tự tên cho phần còn lại
+                for (BangInfo bang : bangs.values()) {
+                    if (daXep.add(bang.ten())) {
+                        ketQua.add(bang);
+                    }
+                }
+            }
+        }
+        return ketQua;
+    }
+
+    // ===== Đọc =====
+
+    /**
+     * Duyệt mọi dòng của bảng (cột theo thứ tự bang.cot()).
+     */
+    public void docBang(BangInfo bang, RowCallbackHandler handler) {
+        String sql = "SELECT " + danhSachCot(bang.cot()) + " FROM " + quote(bang.ten());
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(FETCH_SIZE);
+            return ps;
+        }, handler);
+    }
+
+    /**
+     * Các dòng có khóa chính > tuKhoa (khóa kiểu số).
+     */
+    public void docBangTuKhoa(BangInfo bang, long tuKhoa, RowCallbackHandler handler) {
+        String sql = "SELECT " + danhSachCot(bang.cot()) + " FROM " + quote(bang.ten()) +
+            " WHERE " + quote(bang.khoaChinh()) + " > ?";
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setLong(1, tuKhoa);
+            return ps;
+        }, handler);
+    }
+
+    /**
+     * Các dòng có khóa chính trong danh sách (khóa không còn thì không có dòng), mỗi lần BATCH_SIZE khóa.
+     */
+    public void docBangTheoKhoa(BangInfo bang, List<?> khoa, RowCallbackHandler handler) {
+        for (int tu = 0; tu < khoa.size(); tu += BATCH_SIZE) {
+            List<?> phan = khoa.subList(tu, Math.min(tu + BATCH_SIZE, khoa.size()));
+            StringJoiner in = new StringJoiner(", ", " IN (", ")");
+            for (int i = 0; i < phan.size(); i++) {
+                in.add("?");
+            }
+            String sql = "SELECT " + danhSachCot(bang.cot()) + " FROM " + quote(bang.ten()) +
+                " WHERE " + quote(bang.khoaChinh()) + in;
+            jdbcTemplate.query(sql, handler, phan.toArray());
+        }
+    }
+
+    // ===== Ghi =====
+
+    public void xoaDuLieu(String bang) {
+        jdbcTemplate.update("DELETE FROM " + quote(bang));
+    }
+
+    /**
+     * INSERT soDong dòng, mỗi dòng lấy từ ganDong, gửi theo batch BATCH_SIZE.
+     */
+    public void chenHangLoat(String bang, List<CotInfo> cot, long soDong, GanDong ganDong) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(quote(bang))
+            .append(" (").append(danhSachCot(cot)).append(") VALUES (");
+        for (int i = 0; i < cot.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            try (PreparedStatement ps = con.prepareStatement(sql.toString())) {
+                int trongBatch = 0;
+                for (long n = 0; n < soDong; n++) {
+                    ganDong.gan(ps);
+                    ps.addBatch();
+                    if (++trongBatch == BATCH_SIZE) {
+                        ps.executeBatch();
+                        trongBatch = 0;
+                    }
+                }
+                if (trongBatch > 0) {
+                    ps.executeBatch();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+    }
+
+    public void xoaTheoKhoa(BangInfo bang, List<?> khoa) {
+        jdbcTemplate.batchUpdate("DELETE FROM " + quote(bang.ten()) + " WHERE " + quote(bang.khoaChinh()) + " = ?",
+            khoa, BATCH_SIZE, (ps, k) -> ps.setObject(1, k));
+    }
+
+    /**
+     * Ghi soDong dòng theo khóa chính: UPDATE các cột còn lại, dòng chưa có (UPDATE 0 dòng) thì INSERT.
+     * cot là các cột trong backup, phải có cột khóa chính. Trả về số dòng đã INSERT.
+     */
+    public long capNhatHoacChen(BangInfo bang, List<CotInfo> cot, long soDong, DocDong docDong) {
+        int viTriKhoa = -1;
+        List<Integer> cotCapNhat = new ArrayList<>();
+        for (int i = 0; i < cot.size(); i++) {
+            if (cot.get(i).ten().equalsIgnoreCase(bang.khoaChinh())) {
+                viTriKhoa = i;
+            } else if (!cot.get(i).identity()) {
+                cotCapNhat.add(i);
+            }
+        }
+        if (viTriKhoa < 0) {
+            throw new IllegalStateException("Backup của bảng " + bang.ten() + " thiếu cột khóa chính");
+        }
+        int khoa = viTriKhoa;
+
+        StringJoiner set = new StringJoiner(", ");
+        for (int i : cotCapNhat) {
+            set.add(quote(cot.get(i).ten()) + " = ?");
+        }
+        // Bảng chỉ có cột khóa: "cập nhật" bằng chính khóa để biết dòng đã có hay chưa
+        String sqlUpdate = cotCapNhat.isEmpty()
+            ? "SELECT COUNT(*) FROM " + quote(bang.ten()) + " WHERE " + quote(bang.khoaChinh()) + " = ?"
+            : "UPDATE " + quote(bang.ten()) + " SET " + set + " WHERE " + quote(bang.khoaChinh()) + " = ?";
+        StringBuilder sqlInsert = new StringBuilder("INSERT INTO ").append(quote(bang.ten()))
+            .append(" (").append(danhSachCot(cot)).append(") VALUES (");
+        for (int i = 0; i < cot.size(); i++) {
+            sqlInsert.append(i == 0 ? "?" : ", ?");
+        }
+        sqlInsert.append(")");
+
+        return jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+            long daChen = 0;
+            try (PreparedStatement update = con.prepareStatement(sqlUpdate);
+                 PreparedStatement insert = con.prepareStatement(sqlInsert.toString())) {
+                List<Object[]> lo = new ArrayList<>(BATCH_SIZE);
+                for (long n = 0; n < soDong; n++) {
+                    lo.add(docDong.doc());
+                    if (lo.size() == BATCH_SIZE || n == soDong - 1) {
+                        boolean[] daCo = new boolean[lo.size()];
+                        if (cotCapNhat.isEmpty()) {
+                            for (int r = 0; r < lo.size(); r++) {
+                                gan(update, 1, cot.get(khoa), lo.get(r)[khoa]);
+                                try (ResultSet rs = update.executeQuery()) {
+                                    daCo[r] = rs.next() && rs.getLong(1) > 0;
+                                }
+                            }
+                        } else {
+                            for (Object[] dong : lo) {
+                                int p = 1;
+                                for (int i : cotCapNhat) {
+                                    gan(update, p++, cot.get(i), dong[i]);
+                                }
+                                gan(update, p, cot.get(khoa), dong[khoa]);
+                                update.addBatch();
+                            }
+                            int[] soDongCapNhat = update.executeBatch();
+                            for (int r = 0; r < lo.size(); r++) {
+                                daCo[r] = soDongCapNhat[r] != 0;
+                            }
+                        }
+                        int canChen = 0;
+                        for (int r = 0; r < lo.size(); r++) {
+                            if (!daCo[r]) {
+                                for (int i = 0; i < cot.size(); i++) {
+                                    gan(insert, i + 1, cot.get(i), lo.get(r)[i]);
+                                }
+                                insert.addBatch();
+                                canChen++;
+                            }
+                        }
+                        if (canChen > 0) {
+                            insert.executeBatch();
+                            daChen += canChen;
+                        }
+                        lo.clear();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return daChen;
+        });
+    }
+
+    private static void gan(PreparedStatement ps, int i, CotInfo cot, Object giaTri) throws SQLException {
+        BackupRowCodec.gan(ps, i, cot.kieu(), giaTri, cot.sqlType());
+    }
+
+    /**
+     * Chuyển transaction hiện tại sang SNAPSHOT: mọi bảng được đọc tại cùng một thời điểm,
+     * dù có ghi đồng thời. Phải gọi trước câu lệnh đọc dữ liệu đầu tiên của transaction.
+     * SQL Server cần ALLOW_SNAPSHOT_ISOLATION ON (database/migration_backup_snapshot.sql),
+     * nếu chưa bật thì câu đọc đầu tiên báo lỗi.
+     */
+    public void batDauDocNhatQuan(HeQuanTri heQuanTri) {
+        switch (heQuanTri) {
+            case SQL_SERVER -> jdbcTemplate.execute("SET TRANSACTION ISOLATION LEVEL SNAPSHOT");
+            case H2 -> jdbcTemplate.execute("SET SESSION CHARACTERISTICS AS TRANSACTION ISOLATION LEVEL SNAPSHOT");
+            default -> throw new IllegalStateException(
+                "Backup chỉ hỗ trợ SQL Server và H2 (cần đọc snapshot để dữ liệu các bảng nhất quán)");
+        }
+    }
+
+    /**
+     * Trả connection về READ COMMITTED trước khi nó quay lại pool.
+     */
+    public void ketThucDocNhatQuan(HeQuanTri heQuanTri) {
+        switch (heQuanTri) {
+            case SQL_SERVER -> jdbcTemplate.execute("SET TRANSACTION ISOLATION LEVEL READ COMMITTED");
+            case H2 -> jdbcTemplate.execute("SET SESSION CHARACTERISTICS AS TRANSACTION ISOLATION LEVEL READ COMMITTED");
+            default -> { }
+        }
+    }
+
+    /**
+     * SQL Server: cho phép INSERT giá trị cột IDENTITY (chỉ một bảng mỗi lúc trong một session).
+     */
+    public void setIdentityInsert(HeQuanTri heQuanTri, BangInfo bang, boolean bat) {
+        if (heQuanTri == HeQuanTri.SQL_SERVER && bang.cotIdentity().isPresent()) {
+            jdbcTemplate.execute("SET IDENTITY_INSERT " + quote(bang.ten()) + (bat ? " ON" : " OFF"));
+        }
+    }
+
+    /**
+     * Đặt lại bộ đếm IDENTITY sau khi chèn giá trị tường minh, để bản ghi mới không trùng khóa.
+     */
+    public void datLaiIdentity(HeQuanTri heQuanTri, BangInfo bang) {
+        Optional<CotInfo> identity = bang.cotIdentity();
+        if (identity.isEmpty()) {
+            return;
+        }
+        if (heQuanTri == HeQuanTri.SQL_SERVER) {
+            jdbcTemplate.execute("DBCC CHECKIDENT ('" + bang.ten().replace("'", "''") + "', RESEED)");
+        } else if (heQuanTri == HeQuanTri.H2) {
+            Long max = jdbcTemplate.queryForObject(
+                "SELECT MAX(" + quote(identity.get().ten()) + ") FROM " + quote(bang.ten()), Long.class);
+            jdbcTemplate.execute("ALTER TABLE " + quote(bang.ten()) + " ALTER COLUMN " + quote(identity.get().ten()) +
+                " RESTART WITH " + (max == null ? 1 : max + 1));
+        }
+    }
+
+    private static String danhSachCot(List<CotInfo> cot) {
+        StringJoiner sj = new StringJoiner(", ");
+        for (CotInfo c : cot) {
+            sj.add(quote(c.ten()));
+        }
+        return sj.toString();
+    }
+
+    // Tên bảng / cột lấy từ metadata (không từ người dùng); dấu " được cả SQL Server và H2 chấp nhận
+    private static String quote(String ten) {
+        return "\"" + ten.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,81 @@
+package com.nhom33.quanlychungcu.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository: Ghi chỉ số điện nước theo lô (JDBC batch).
+ *
+ * LÝ DO: ChiSoDienNuoc dùng IDENTITY nên Hibernate không gom INSERT thành batch;
+ * nhập chỉ số cả tòa nhà qua save() từng dòng tạo ra hàng nghìn round-trip.
+ *
+ * LƯU Ý: Ghi trực tiếp xuống DB, không cập nhật persistence context; thay đổi được ghi nhận
+ * vào NhatKyThayDoi cho backup tăng dần.
+ */
+@Repository
+public class ChiSoDienNuocBatchRepository {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NhatKyThayDoiRepository nhatKyRepo;
+
+    public ChiSoDienNuocBatchRepository(JdbcTemplate jdbcTemplate, NhatKyThayDoiRepository nhatKyRepo) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.nhatKyRepo = nhatKyRepo;
+    }
+
+    /** Chỉ số mới của một hộ (chưa có bản ghi trong tháng). */
+    public record ChiSoMoi(Integer hoGiaDinhId, Integer chiSoMoi) {}
+
+    /** Bản ghi chỉ số đã tồn tại cần cập nhật. */
+    public record ChiSoCapNhat(Integer chiSoId, Integer chiSoMoi) {}
+
+    /**
+     * Batch insert chỉ số của một loại phí trong tháng/năm.
+     * @return Số dòng đã insert
+     */
+    public int insert(Integer loaiPhiId, Integer thang, Integer nam, List<ChiSoMoi> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        nhatKyRepo.ghiNhanDongMoi("ChiSoDienNuoc", "ID_ChiSo");
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO ChiSoDienNuoc (ID_HoGiaDinh, ID_LoaiPhi, Thang, Nam, ChiSoMoi, NgayChot) " +
+            "VALUES (?, ?, ?, ?, ?, ?)",
+            rows, BATCH_SIZE, (ps, row) -> {
+                ps.setInt(1, row.hoGiaDinhId());
+                ps.setInt(2, loaiPhiId);
+                ps.setInt(3, thang);
+                ps.setInt(4, nam);
+                ps.setInt(5, row.chiSoMoi());
+                ps.setTimestamp(6, now);
+            });
+        return rows.size();
+    }
+
+    /**
+     * Batch update chỉ số đã có.
+     * @return Số dòng đã update
+     */
+    public int update(List<ChiSoCapNhat> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        nhatKyRepo.ghiNhan("ChiSoDienNuoc", rows.stream().map(ChiSoCapNhat::chiSoId).toList());
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(
+            "UPDATE ChiSoDienNuoc SET ChiSoMoi = ?, NgayChot = ? WHERE ID_ChiSo = ?",
+            rows, BATCH_SIZE, (ps, row) -> {
+                ps.setInt(1, row.chiSoMoi());
+                ps.setTimestamp(2, now);
+                ps.setInt(3, row.chiSoId());
+            });
+        return rows.size();
+    }
+}
@@ -92,6 +92,63 @@ public interface ChiSoDienNuocRepository extends JpaRepository<ChiSoDienNuoc, In
             @Param("loaiPhiId") Integer loaiPhiId,
             @Param("toaNhaId") Integer toaNhaId);
 
+    /**
+     * Lấy chỉ số của tháng hiện tại và tháng trước cho toàn bộ hộ trong tòa nhà (1 query).
+     * Dùng cho tính tiền hàng loạt: tiêu thụ = chỉ số tháng T - chỉ số tháng T-1.
+     */
+    @Query("SELECT c FROM ChiSoDienNuoc c " +
+           "WHERE c.hoGiaDinh.toaNha.id = :toaNhaId " +
+           "AND ((c.thang = :thang AND c.nam = :nam) OR " +
+           "     (c.thang = :thangTruoc AND c.nam = :namTruoc))")
+    List<ChiSoDienNuoc> findByToaNhaAndHaiThang(
+            @Param("toaNhaId") Integer toaNhaId,
+            @Param("thang") Integer thang,
+            @Param("nam") Integer nam,
+            @Param("thangTruoc") Integer thangTruoc,
+            @Param("namTruoc") Integer namTruoc);
+
+    /**
+     * Như findByToaNhaAndHaiThang nhưng chỉ cho một số hộ (tính lại tăng dần).
+     */
+    @Query("SELECT c FROM ChiSoDienNuoc c " +
+           "WHERE c.hoGiaDinh.id IN :hoIds " +
+           "AND ((c.thang = :thang AND c.nam = :nam) OR " +
+           "     (c.thang = :thangTruoc AND c.nam = :namTruoc))")
+    List<ChiSoDienNuoc> findByHoGiaDinhInAndHaiThang(
+            @Param("hoIds") java.util.Collection<Integer> hoIds,
+            @Param("thang") Integer thang,
+            @Param("nam") Integer nam,
+            @Param("thangTruoc") Integer thangTruoc,
+            @Param("namTruoc") Integer namTruoc);
+
+    /**
+     * Chỉ số gần nhất TRƯỚC kỳ (nam * 12 + thang) của từng hộ trong tòa nhà (1 query).
+     * Trả về [hoGiaDinhId, chiSoMoi]. Dùng để kiểm tra chỉ số không giảm khi nhập hàng loạt.
+     */
+    @Query("SELECT c.hoGiaDinh.id, c.chiSoMoi FROM ChiSoDienNuoc c " +
+           "WHERE c.loaiPhi.id = :loaiPhiId AND c.hoGiaDinh.toaNha.id = :toaNhaId " +
+           "AND c.nam * 12 + c.thang = (SELECT MAX(c2.nam * 12 + c2.thang) FROM ChiSoDienNuoc c2 " +
+           "    WHERE c2.hoGiaDinh = c.hoGiaDinh AND c2.loaiPhi = c.loaiPhi " +
+           "    AND c2.nam * 12 + c2.thang < :ky)")
+    List<Object[]> findChiSoTruocKyTheoToaNha(
+            @Param("toaNhaId") Integer toaNhaId,
+            @Param("loaiPhiId") Integer loaiPhiId,
+            @Param("ky") Integer ky);
+
+    /**
+     * Chỉ số gần nhất SAU kỳ (nam * 12 + thang) của từng hộ trong tòa nhà (1 query).
+     * Trả về [hoGiaDinhId, chiSoMoi]. Sửa chỉ số tháng cũ không được vượt chỉ số tháng sau.
+     */
+    @Query("SELECT c.hoGiaDinh.id, c.chiSoMoi FROM ChiSoDienNuoc c " +
+           "WHERE c.loaiPhi.id = :loaiPhiId AND c.hoGiaDinh.toaNha.id = :toaNhaId " +
+           "AND c.nam * 12 + c.thang = (SELECT MIN(c2.nam * 12 + c2.thang) FROM ChiSoDienNuoc c2 " +
+           "    WHERE c2.hoGiaDinh = c.hoGiaDinh AND c2.loaiPhi = c.loaiPhi " +
+           "    AND c2.nam * 12 + c2.thang > :ky)")
+    List<Object[]> findChiSoSauKyTheoToaNha(
+            @Param("toaNhaId") Integer toaNhaId,
+            @Param("loaiPhiId") Integer loaiPhiId,
+            @Param("ky") Integer ky);
+
     /**
      * Kiểm tra đã tồn tại bản ghi chưa.
      */
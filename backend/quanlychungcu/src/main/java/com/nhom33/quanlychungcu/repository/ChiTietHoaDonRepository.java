@@ -20,11 +20,32 @@ public interface ChiTietHoaDonRepository extends JpaRepository<ChiTietHoaDon, In
     @Query("SELECT ct FROM ChiTietHoaDon ct JOIN FETCH ct.loaiPhi WHERE ct.hoaDon.id = :idHoaDon")
     List<ChiTietHoaDon> findByHoaDonIdWithLoaiPhi(@Param("idHoaDon") Integer idHoaDon);
     
+    /**
+     * Bảng kê: chi tiết của một trang hóa đơn dạng phẳng (1 query).
+     * Trả về [hoaDonId, loaiPhiId, tenLoaiPhi, donViTinh, soLuong, donGia, thanhTien].
+     */
+    @Query("SELECT ct.hoaDon.id, lp.id, lp.tenLoaiPhi, lp.donViTinh, ct.soLuong, ct.donGia, ct.thanhTien " +
+           "FROM ChiTietHoaDon ct JOIN ct.loaiPhi lp WHERE ct.hoaDon.id IN :hoaDonIds " +
+           "ORDER BY ct.hoaDon.id, lp.id")
+    List<Object[]> findBangKeRowsByHoaDonIds(@Param("hoaDonIds") java.util.Collection<Integer> hoaDonIds);
+    
     /**
      * Tìm chi tiết hóa đơn theo hóa đơn và loại phí.
      */
     Optional<ChiTietHoaDon> findByHoaDonIdAndLoaiPhiId(Integer hoaDonId, Integer loaiPhiId);
     
+    /**
+     * Lấy toàn bộ chi tiết hóa đơn của một đợt thu (1 query).
+     * Dùng cho tính tiền hàng loạt.
+     */
+    @Query("SELECT ct FROM ChiTietHoaDon ct JOIN FETCH ct.hoaDon h WHERE h.dotThu.id = :idDotThu")
+    List<ChiTietHoaDon> findByDotThuId(@Param("idDotThu") Integer idDotThu);
+    
+    @Query("SELECT ct FROM ChiTietHoaDon ct JOIN FETCH ct.hoaDon h " +
+           "WHERE h.dotThu.id = :idDotThu AND h.hoGiaDinh.id IN :hoIds")
+    List<ChiTietHoaDon> findByDotThuIdAndHoGiaDinhIdIn(@Param("idDotThu") Integer idDotThu,
+                                                       @Param("hoIds") java.util.Collection<Integer> hoIds);
+    
     /**
      * Xóa chi tiết hóa đơn theo hóa đơn.
      */
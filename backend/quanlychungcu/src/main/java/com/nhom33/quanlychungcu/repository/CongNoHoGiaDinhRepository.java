@@ -0,0 +1,94 @@
+package com.nhom33.quanlychungcu.repository;
+
+import com.nhom33.quanlychungcu.entity.CongNoHoGiaDinh;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository: Số dư công nợ hiện tại theo hộ gia đình.
+ *
+ * congSoDu cộng ngay trong câu UPDATE; dòng bị khóa tới hết transaction nên các bút toán
+ * đồng thời của cùng một hộ được ghi tuần tự và số dư lũy kế luôn liên tục.
+ */
+@Repository
+public interface CongNoHoGiaDinhRepository extends JpaRepository<CongNoHoGiaDinh, Integer> {
+
+    @Modifying
+    @Query("UPDATE CongNoHoGiaDinh c SET c.soDu = c.soDu + :soTien, " +
+           "c.tongPhatSinh = c.tongPhatSinh + :phatSinh, " +
+           "c.tongThanhToan = c.tongThanhToan + :thanhToan, " +
+           "c.ngayCapNhat = :now " +
+           "WHERE c.idHoGiaDinh = :hoGiaDinhId")
+    int congSoDu(@Param("hoGiaDinhId") Integer hoGiaDinhId,
+                 @Param("soTien") BigDecimal soTien,
+                 @Param("phatSinh") BigDecimal phatSinh,
+                 @Param("thanhToan") BigDecimal thanhToan,
+                 @Param("now") LocalDateTime now);
+
+    @Query("SELECT c.soDu FROM CongNoHoGiaDinh c WHERE c.idHoGiaDinh = :hoGiaDinhId")
+    BigDecimal findSoDu(@Param("hoGiaDinhId") Integer hoGiaDinhId);
+
+    @Query("SELECT c.ngayNoCuNhat FROM CongNoHoGiaDinh c WHERE c.idHoGiaDinh = :hoGiaDinhId")
+    LocalDate findNgayNoCuNhat(@Param("hoGiaDinhId") Integer hoGiaDinhId);
+
+    @Query("SELECT c.idHoGiaDinh, c.soDu FROM CongNoHoGiaDinh c WHERE c.soDu > 0 AND c.ngayNoCuNhat IS NULL")
+    List<Object[]> findThieuNgayNoCuNhat();
+
+    @Modifying
+    @Query("UPDATE CongNoHoGiaDinh c SET c.ngayNoCuNhat = :ngay WHERE c.idHoGiaDinh = :hoGiaDinhId")
+    int capNhatNgayNoCuNhat(@Param("hoGiaDinhId") Integer hoGiaDinhId, @Param("ngay") LocalDate ngay);
+
+    /**
+     * Số dư của các hộ trong một tòa nhà: [ID_HoGiaDinh, SoDu, NgayNoCuNhat]
+     */
+    @Query("SELECT c.idHoGiaDinh, c.soDu, c.ngayNoCuNhat FROM CongNoHoGiaDinh c JOIN HoGiaDinh h ON h.id = c.idHoGiaDinh " +
+           "WHERE h.toaNha.id = :toaNhaId")
+    List<Object[]> findSoDuByToaNhaId(@Param("toaNhaId") Integer toaNhaId);
+
+    /**
+     * Xếp hạng hộ đang nợ theo số dư giảm dần:
+     * [ID_HoGiaDinh, MaHoGiaDinh, TenChuHo, SoCanHo, ID_ToaNha, TenToaNha, SoDu, NgayNoCuNhat].
+     * Các điều kiện null nghĩa là không lọc; nợTu/nợDen lọc theo NgayNoCuNhat (tuổi nợ).
+     */
+    @Query(value = "SELECT c.idHoGiaDinh, h.maHoGiaDinh, h.tenChuHo, h.soCanHo, t.id, t.tenToaNha, c.soDu, c.ngayNoCuNhat " +
+           "FROM CongNoHoGiaDinh c JOIN HoGiaDinh h ON h.id = c.idHoGiaDinh LEFT JOIN h.toaNha t " +
+           "WHERE c.soDu > 0 AND c.soDu >= :soTienToiThieu " +
+           "AND (:toaNhaId IS NULL OR t.id = :toaNhaId) " +
+           "AND (:noTu IS NULL OR c.ngayNoCuNhat >= :noTu) " +
+           "AND (:noDen IS NULL OR c.ngayNoCuNhat <= :noDen) " +
+           "ORDER BY c.soDu DESC, c.idHoGiaDinh",
+           countQuery = "SELECT COUNT(c) FROM CongNoHoGiaDinh c JOIN HoGiaDinh h ON h.id = c.idHoGiaDinh LEFT JOIN h.toaNha t " +
+           "WHERE c.soDu > 0 AND c.soDu >= :soTienToiThieu " +
+           "AND (:toaNhaId IS NULL OR t.id = :toaNhaId) " +
+           "AND (:noTu IS NULL OR c.ngayNoCuNhat >= :noTu) " +
+           "AND (:noDen IS NULL OR c.ngayNoCuNhat <= :noDen)")
+    Page<Object[]> xepHangNo(@Param("toaNhaId") Integer toaNhaId,
+                             @Param("soTienToiThieu") BigDecimal soTienToiThieu,
+                             @Param("noTu") LocalDate noTu,
+                             @Param("noDen") LocalDate noDen,
+                             Pageable pageable);
+
+    /**
+     * Tạo dòng số dư 0 cho hộ chưa có (một hộ hoặc cả tòa nhà).
+     */
+    @Modifying
+    @Query("INSERT INTO CongNoHoGiaDinh (idHoGiaDinh, soDu, tongPhatSinh, tongThanhToan, ngayCapNhat) " +
+           "SELECT h.id, :zero, :zero, :zero, :now FROM HoGiaDinh h " +
+           "WHERE (:hoGiaDinhId IS NULL OR h.id = :hoGiaDinhId) " +
+           "AND (:toaNhaId IS NULL OR h.toaNha.id = :toaNhaId) " +
+           "AND NOT EXISTS (SELECT 1 FROM CongNoHoGiaDinh c WHERE c.idHoGiaDinh = h.id)")
+    int taoNeuChuaCo(@Param("hoGiaDinhId") Integer hoGiaDinhId,
+                     @Param("toaNhaId") Integer toaNhaId,
+                     @Param("zero") BigDecimal zero,
+                     @Param("now") LocalDateTime now);
+}
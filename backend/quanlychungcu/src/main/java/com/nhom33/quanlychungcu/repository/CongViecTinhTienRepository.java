@@ -0,0 +1,28 @@
+package com.nhom33.quanlychungcu.repository;
+
+import com.nhom33.quanlychungcu.entity.CongViecTinhTien;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface CongViecTinhTienRepository extends JpaRepository<CongViecTinhTien, String> {
+
+    /**
+     * Lịch sử job tính tiền của một đợt thu, mới nhất trước.
+     */
+    List<CongViecTinhTien> findByIdDotThuOrderByNgayBatDauDesc(Integer idDotThu);
+
+    /**
+     * Đánh dấu các job còn 'DangChay' từ lần chạy trước (server bị tắt giữa chừng).
+     */
+    @Modifying
+    @Query("UPDATE CongViecTinhTien c SET c.trangThai = 'BiGianDoan', c.ngayKetThuc = :now " +
+           "WHERE c.trangThai = 'DangChay'")
+    int markInterrupted(@Param("now") LocalDateTime now);
+}
@@ -22,5 +22,14 @@ public interface DinhMucThuRepository extends JpaRepository<DinhMucThu, Integer>
     
     @Query("SELECT d FROM DinhMucThu d WHERE d.hoGiaDinh.id = :idHoGiaDinh AND d.loaiPhi.dangHoatDong = true")
     List<DinhMucThu> findActiveByHoGiaDinhId(@Param("idHoGiaDinh") Integer idHoGiaDinh);
+    
+    /**
+     * Lấy toàn bộ định mức của các hộ trong một tòa nhà (1 query).
+     * Dùng cho tính tiền hàng loạt.
+     */
+    @Query("SELECT d FROM DinhMucThu d WHERE d.hoGiaDinh.toaNha.id = :idToaNha")
+    List<DinhMucThu> findByToaNhaId(@Param("idToaNha") Integer idToaNha);
+    
+    List<DinhMucThu> findByHoGiaDinhIdIn(java.util.Collection<Integer> hoGiaDinhIds);
 }
 
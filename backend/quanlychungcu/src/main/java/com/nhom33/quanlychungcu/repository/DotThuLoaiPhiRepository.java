@@ -17,6 +17,13 @@ public interface DotThuLoaiPhiRepository extends JpaRepository<DotThuLoaiPhi, In
      */
     List<DotThuLoaiPhi> findByDotThuId(Integer dotThuId);
 
+    /**
+     * Lấy tất cả loại phí trong đợt thu với LoaiPhi fetch sẵn (1 query).
+     * Dùng cho tính tiền hàng loạt.
+     */
+    @Query("SELECT dlp FROM DotThuLoaiPhi dlp JOIN FETCH dlp.loaiPhi WHERE dlp.dotThu.id = :dotThuId")
+    List<DotThuLoaiPhi> findByDotThuIdWithLoaiPhi(@Param("dotThuId") Integer dotThuId);
+
     /**
      * Kiểm tra loại phí đã tồn tại trong đợt thu chưa.
      */
@@ -46,6 +46,12 @@ public interface DotThuRepository extends JpaRepository<DotThu, Integer> {
                       @Param("ngayKetThuc") LocalDate ngayKetThuc,
                       Pageable pageable);
     
+    /**
+     * Lấy tất cả đợt thu của một tháng/năm (mọi tòa nhà).
+     * Dùng cho chốt sổ toàn bộ tòa nhà trong tháng.
+     */
+    List<DotThu> findByThangAndNam(Integer thang, Integer nam);
+    
     List<DotThu> findByNgayBatDauLessThanEqualAndNgayKetThucGreaterThanEqual(LocalDate date1, LocalDate date2);
 }
 
@@ -0,0 +1,92 @@
+package com.nhom33.quanlychungcu.repository;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository: Xếp hàng email theo lô (JDBC batch).
+ *
+ * HangDoiEmail dùng IDENTITY nên save() từng entity tạo một round-trip cho mỗi email;
+ * nhắc nợ cả đợt thu (hàng nghìn hộ) ghi bằng batchUpdate.
+ */
+@Repository
+public class HangDoiEmailBatchRepository {
+
+    private static final int BATCH_SIZE = 500;
+
+    /** Bỏ qua dòng có khóa chống trùng đã nằm trong hàng đợi (kể cả do lượt khác vừa ghi). */
+    private static final String INSERT_SQL =
+        "INSERT INTO HangDoiEmail (ID_LuotGui, KhoaChongTrung, EmailNguoiNhan, TieuDe, NoiDung, LoaiThongBao, " +
+        "TrangThai, SoLanThu, LanThuTiepTheo, NgayTao) " +
+        "SELECT ?, ?, ?, ?, ?, ?, 'ChoGui', 0, ?, ? " +
+        "WHERE NOT EXISTS (SELECT 1 FROM HangDoiEmail WHERE KhoaChongTrung = ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NhatKyThayDoiRepository nhatKyRepo;
+
+    public HangDoiEmailBatchRepository(JdbcTemplate jdbcTemplate, NhatKyThayDoiRepository nhatKyRepo) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.nhatKyRepo = nhatKyRepo;
+    }
+
+    /** Một email cần xếp hàng. */
+    public record EmailMoi(String khoaChongTrung, String emailNguoiNhan, String tieuDe,
+                           String noiDung, String loaiThongBao) {}
+
+    /**
+     * Batch insert email ở trạng thái 'ChoGui', đến hạn gửi ngay.
+     * Dòng có khóa chống trùng đã tồn tại bị bỏ qua; nếu một lượt chạy song song vẫn chen vào
+     * giữa NOT EXISTS và INSERT (vi phạm UX_HangDoiEmail_KhoaChongTrung), ghi lại từng dòng.
+     * @return Số dòng đã insert
+     */
+    public int insert(String luotGuiId, List<EmailMoi> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        nhatKyRepo.ghiNhanDongMoi("HangDoiEmail", "ID_Email");
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        try {
+            int[][] counts = jdbcTemplate.batchUpdate(INSERT_SQL, rows, BATCH_SIZE,
+                (ps, row) -> setParams(ps, luotGuiId, row, now));
+            int inserted = 0;
+            for (int[] batch : counts) {
+                for (int c : batch) {
+                    inserted += Math.max(c, 0);
+                }
+            }
+            return inserted;
+        } catch (DuplicateKeyException e) {
+            for (EmailMoi row : rows) {
+                try {
+                    jdbcTemplate.update(INSERT_SQL, ps -> setParams(ps, luotGuiId, row, now));
+                } catch (DuplicateKeyException ignored) {
+                    // Lượt song song đã xếp hàng khóa này
+                }
+            }
+            // Đếm theo lượt gửi: gồm cả các lô đã ghi trước khi gặp lỗi trùng
+            Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM HangDoiEmail WHERE ID_LuotGui = ?", Integer.class, luotGuiId);
+            return count != null ? count : 0;
+        }
+    }
+
+    private static void setParams(PreparedStatement ps, String luotGuiId, EmailMoi row, Timestamp now)
+            throws SQLException {
+        ps.setString(1, luotGuiId);
+        ps.setString(2, row.khoaChongTrung());
+        ps.setString(3, row.emailNguoiNhan());
+        ps.setString(4, row.tieuDe());
+        ps.setString(5, row.noiDung());
+        ps.setString(6, row.loaiThongBao());
+        ps.setTimestamp(7, now);
+        ps.setTimestamp(8, now);
+        ps.setString(9, row.khoaChongTrung());
+    }
+}
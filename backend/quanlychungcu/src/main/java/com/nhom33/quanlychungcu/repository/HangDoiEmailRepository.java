@@ -0,0 +1,76 @@
+package com.nhom33.quanlychungcu.repository;
+
+import com.nhom33.quanlychungcu.entity.HangDoiEmail;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Các câu UPDATE được gọi từ thread gửi mail (ngoài transaction của service) nên tự mở transaction.
+ */
+@Repository
+public interface HangDoiEmailRepository extends JpaRepository<HangDoiEmail, Long> {
+
+    /**
+     * Email đến hạn gửi, cũ nhất trước.
+     */
+    @Query("SELECT e.id FROM HangDoiEmail e WHERE e.trangThai = 'ChoGui' AND e.lanThuTiepTheo <= :now " +
+           "ORDER BY e.lanThuTiepTheo, e.id")
+    List<Long> findDenHan(@Param("now") LocalDateTime now, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE HangDoiEmail e SET e.trangThai = 'DangGui' WHERE e.id IN :ids AND e.trangThai = 'ChoGui'")
+    int danhDauDangGui(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE HangDoiEmail e SET e.trangThai = 'DaGui', e.soLanThu = e.soLanThu + 1, " +
+           "e.ngayGui = :now, e.loiCuoi = NULL WHERE e.id = :id")
+    int danhDauDaGui(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    /**
+     * Gửi lỗi: trangThai = 'ChoGui' (thử lại lúc lanThuTiepTheo) hoặc 'Loi' (bỏ cuộc).
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE HangDoiEmail e SET e.trangThai = :trangThai, e.soLanThu = e.soLanThu + 1, " +
+           "e.lanThuTiepTheo = :lanThuTiepTheo, e.loiCuoi = :loi WHERE e.id = :id")
+    int danhDauLoi(@Param("id") Long id,
+                   @Param("trangThai") String trangThai,
+                   @Param("lanThuTiepTheo") LocalDateTime lanThuTiepTheo,
+                   @Param("loi") String loi);
+
+    /**
+     * Email đang gửi dở khi server tắt -> đưa lại vào hàng đợi.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE HangDoiEmail e SET e.trangThai = 'ChoGui' WHERE e.trangThai = 'DangGui'")
+    int khoiPhucDangGui();
+
+    @Query("SELECT e.khoaChongTrung FROM HangDoiEmail e WHERE e.khoaChongTrung IN :khoa")
+    List<String> findKhoaDaCo(@Param("khoa") Collection<String> khoa);
+
+    /**
+     * Tiến độ một lượt gửi: [TrangThai, COUNT, MIN(NgayTao), MAX(NgayGui)]
+     */
+    @Query("SELECT e.trangThai, COUNT(e), MIN(e.ngayTao), MAX(e.ngayGui) FROM HangDoiEmail e " +
+           "WHERE e.idLuotGui = :luotGuiId GROUP BY e.trangThai")
+    List<Object[]> thongKeLuotGui(@Param("luotGuiId") String luotGuiId);
+
+    /**
+     * Email lỗi / đang chờ thử lại của một lượt gửi: [EmailNguoiNhan, TrangThai, SoLanThu, LoiCuoi]
+     */
+    @Query("SELECT e.emailNguoiNhan, e.trangThai, e.soLanThu, e.loiCuoi FROM HangDoiEmail e " +
+           "WHERE e.idLuotGui = :luotGuiId AND e.loiCuoi IS NOT NULL ORDER BY e.id")
+    List<Object[]> findLoiByLuotGui(@Param("luotGuiId") String luotGuiId, Pageable pageable);
+}
@@ -102,8 +102,28 @@ public interface HoGiaDinhRepository extends JpaRepository<HoGiaDinh, Integer> {
      */
     long countByToaNhaId(Integer toaNhaId);
 
+    /**
+     * Đếm số hộ gia đình của từng tòa nhà: [ID_ToaNha, số hộ]
+     */
+    @Query("SELECT h.toaNha.id, COUNT(h) FROM HoGiaDinh h WHERE h.toaNha IS NOT NULL GROUP BY h.toaNha.id")
+    List<Object[]> countGroupByToaNha();
+
     /**
      * Lấy danh sách hộ gia đình có diện tích lớn hơn
      */
     Page<HoGiaDinh> findByDienTichGreaterThan(Double dienTich, Pageable pageable);
+
+    // ===== Phân trang theo con trỏ (ConTroTrang) =====
+
+    /**
+     * Trang hộ gia đình có id > sauId, sắp theo id tăng dần (seek trên khóa chính, không OFFSET / COUNT).
+     */
+    @Query("SELECT h FROM HoGiaDinh h LEFT JOIN FETCH h.toaNha WHERE h.id > :sauId ORDER BY h.id")
+    List<HoGiaDinh> findTrangSauId(@Param("sauId") int sauId, Pageable pageable);
+
+    /**
+     * Trang hộ gia đình có id < truocId, sắp theo id giảm dần.
+     */
+    @Query("SELECT h FROM HoGiaDinh h LEFT JOIN FETCH h.toaNha WHERE h.id < :truocId ORDER BY h.id DESC")
+    List<HoGiaDinh> findTrangTruocId(@Param("truocId") int truocId, Pageable pageable);
 }
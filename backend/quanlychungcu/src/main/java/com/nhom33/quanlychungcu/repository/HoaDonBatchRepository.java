@@ -0,0 +1,149 @@
+package com.nhom33.quanlychungcu.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository: Ghi hóa đơn / chi tiết hóa đơn theo lô (JDBC batch).
+ *
+ * LÝ DO:
+ * - HoaDon, ChiTietHoaDon dùng IDENTITY nên Hibernate không gom INSERT thành batch được.
+ * - Khi tính tiền cả tòa nhà, ghi từng entity qua save() tạo ra hàng nghìn round-trip.
+ * - Class này dùng JdbcTemplate.batchUpdate, chạy chung transaction với JPA.
+ *
+ * LƯU Ý: Ghi trực tiếp xuống DB, không cập nhật persistence context; thay đổi được ghi nhận
+ * vào NhatKyThayDoi cho backup tăng dần.
+ * Caller không được dùng lại entity HoaDon/ChiTietHoaDon đã load trước đó để ghi.
+ */
+@Repository
+public class HoaDonBatchRepository {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NhatKyThayDoiRepository nhatKyRepo;
+
+    public HoaDonBatchRepository(JdbcTemplate jdbcTemplate, NhatKyThayDoiRepository nhatKyRepo) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.nhatKyRepo = nhatKyRepo;
+    }
+
+    // ===== Dữ liệu ghi =====
+
+    /** Hóa đơn mới cần tạo cho một hộ trong đợt thu. */
+    public record HoaDonMoi(Integer hoGiaDinhId, BigDecimal tongTienPhaiThu, String trangThai) {}
+
+    /** Hóa đơn đã tồn tại cần cập nhật tổng tiền/trạng thái. */
+    public record HoaDonCapNhat(Integer hoaDonId, BigDecimal tongTienPhaiThu, String trangThai) {}
+
+    /** Một dòng chi tiết hóa đơn (chiTietId = null nếu là dòng mới). */
+    public record ChiTietRow(Integer chiTietId, Integer hoaDonId, Integer loaiPhiId,
+                             Double soLuong, BigDecimal donGia, BigDecimal thanhTien) {}
+
+    // ===== Hóa đơn =====
+
+    /**
+     * Batch insert hóa đơn mới cho một đợt thu.
+     * @return Số dòng đã insert
+     */
+    public int insertHoaDon(Integer dotThuId, List<HoaDonMoi> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        nhatKyRepo.ghiNhanDongMoi("HoaDon", "ID_HoaDon");
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO HoaDon (ID_HoGiaDinh, ID_DotThu, TongTienPhaiThu, SoTienDaDong, TrangThai, NgayTao) " +
+            "VALUES (?, ?, ?, 0, ?, ?)",
+            rows, BATCH_SIZE, (ps, row) -> {
+                ps.setInt(1, row.hoGiaDinhId());
+                ps.setInt(2, dotThuId);
+                ps.setBigDecimal(3, row.tongTienPhaiThu());
+                ps.setString(4, row.trangThai());
+                ps.setTimestamp(5, now);
+            });
+        return rows.size();
+    }
+
+    /**
+     * Batch update tổng tiền và trạng thái hóa đơn.
+     * @return Số dòng đã update
+     */
+    public int updateHoaDon(List<HoaDonCapNhat> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        nhatKyRepo.ghiNhan("HoaDon", rows.stream().map(HoaDonCapNhat::hoaDonId).toList());
+        jdbcTemplate.batchUpdate(
+            "UPDATE HoaDon SET TongTienPhaiThu = ?, TrangThai = ? WHERE ID_HoaDon = ?",
+            rows, BATCH_SIZE, (ps, row) -> {
+                ps.setBigDecimal(1, row.tongTienPhaiThu());
+                ps.setString(2, row.trangThai());
+                ps.setInt(3, row.hoaDonId());
+            });
+        return rows.size();
+    }
+
+    // ===== Chi tiết hóa đơn =====
+
+    /**
+     * Batch insert chi tiết hóa đơn mới.
+     * @return Số dòng đã insert
+     */
+    public int insertChiTiet(List<ChiTietRow> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        nhatKyRepo.ghiNhanDongMoi("ChiTietHoaDon", "ID_ChiTiet");
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO ChiTietHoaDon (ID_HoaDon, ID_LoaiPhi, SoLuong, DonGia, ThanhTien) VALUES (?, ?, ?, ?, ?)",
+            rows, BATCH_SIZE, (ps, row) -> {
+                ps.setInt(1, row.hoaDonId());
+                ps.setInt(2, row.loaiPhiId());
+                ps.setDouble(3, row.soLuong());
+                ps.setBigDecimal(4, row.donGia());
+                ps.setBigDecimal(5, row.thanhTien());
+            });
+        return rows.size();
+    }
+
+    /**
+     * Batch update chi tiết hóa đơn đã tồn tại.
+     * @return Số dòng đã update
+     */
+    public int updateChiTiet(List<ChiTietRow> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        nhatKyRepo.ghiNhan("ChiTietHoaDon", rows.stream().map(ChiTietRow::chiTietId).toList());
+        jdbcTemplate.batchUpdate(
+            "UPDATE ChiTietHoaDon SET SoLuong = ?, DonGia = ?, ThanhTien = ? WHERE ID_ChiTiet = ?",
+            rows, BATCH_SIZE, (ps, row) -> {
+                ps.setDouble(1, row.soLuong());
+                ps.setBigDecimal(2, row.donGia());
+                ps.setBigDecimal(3, row.thanhTien());
+                ps.setInt(4, row.chiTietId());
+            });
+        return rows.size();
+    }
+
+    /**
+     * Batch delete chi tiết hóa đơn (loại phí không còn trong đợt thu).
+     * @return Số dòng đã xóa
+     */
+    public int deleteChiTiet(List<Integer> chiTietIds) {
+        if (chiTietIds.isEmpty()) {
+            return 0;
+        }
+        nhatKyRepo.ghiNhan("ChiTietHoaDon", chiTietIds);
+        jdbcTemplate.batchUpdate(
+            "DELETE FROM ChiTietHoaDon WHERE ID_ChiTiet = ?",
+            chiTietIds, BATCH_SIZE, (ps, id) -> ps.setInt(1, id));
+        return chiTietIds.size();
+    }
+}
@@ -0,0 +1,135 @@
+package com.nhom33.quanlychungcu.repository;
+
+import com.nhom33.quanlychungcu.entity.HoaDonCanTinhLai;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository: Đánh dấu (hộ gia đình, đợt thu) cần tính lại tiền.
+ *
+ * Các hàm mark* dùng INSERT ... SELECT nên chỉ tốn 1 câu lệnh dù ảnh hưởng cả tòa nhà,
+ * và bỏ qua cặp đã được đánh dấu. Các hàm touch* tương ứng cập nhật NgayDanhDau của cặp đã có,
+ * để lần tính đang chạy (xóa dấu theo mốc bắt đầu) không xóa mất thay đổi mới.
+ */
+@Repository
+public interface HoaDonCanTinhLaiRepository extends JpaRepository<HoaDonCanTinhLai, Integer> {
+
+    /**
+     * Danh sách ID hộ gia đình cần tính lại trong một đợt thu.
+     */
+    @Query("SELECT x.idHoGiaDinh FROM HoaDonCanTinhLai x WHERE x.idDotThu = :dotThuId")
+    List<Integer> findHoGiaDinhIdsByDotThuId(@Param("dotThuId") Integer dotThuId);
+
+    long countByIdDotThu(Integer idDotThu);
+
+    /**
+     * Cập nhật NgayDanhDau của các cặp đã được đánh dấu, cùng phạm vi với markByChiSo.
+     */
+    @Modifying
+    @Query("UPDATE HoaDonCanTinhLai x SET x.ngayDanhDau = :now " +
+           "WHERE x.idHoGiaDinh IN :hoIds AND EXISTS (SELECT 1 FROM HoGiaDinh h, DotThu d " +
+           "    WHERE h.id = x.idHoGiaDinh AND d.id = x.idDotThu AND d.toaNha = h.toaNha " +
+           "    AND ((d.thang = :thang AND d.nam = :nam) OR (d.thang = :thangSau AND d.nam = :namSau)) " +
+           "    AND EXISTS (SELECT 1 FROM DotThuLoaiPhi dl WHERE dl.dotThu = d AND dl.loaiPhi.id = :loaiPhiId))")
+    int touchByChiSo(@Param("hoIds") Collection<Integer> hoIds,
+                     @Param("loaiPhiId") Integer loaiPhiId,
+                     @Param("thang") Integer thang,
+                     @Param("nam") Integer nam,
+                     @Param("thangSau") Integer thangSau,
+                     @Param("namSau") Integer namSau,
+                     @Param("now") LocalDateTime now);
+
+    /**
+     * Chỉ số của hộ thay đổi ở tháng T: ảnh hưởng đợt thu tháng T và tháng T+1 (chỉ số cũ)
+     * có chứa loại phí đó.
+     */
+    @Modifying
+    @Query("INSERT INTO HoaDonCanTinhLai (idHoGiaDinh, idDotThu, ngayDanhDau) " +
+           "SELECT h.id, d.id, :now FROM HoGiaDinh h, DotThu d " +
+           "WHERE h.id IN :hoIds AND d.toaNha = h.toaNha " +
+           "AND ((d.thang = :thang AND d.nam = :nam) OR (d.thang = :thangSau AND d.nam = :namSau)) " +
+           "AND EXISTS (SELECT 1 FROM DotThuLoaiPhi dl WHERE dl.dotThu = d AND dl.loaiPhi.id = :loaiPhiId) " +
+           "AND NOT EXISTS (SELECT 1 FROM HoaDonCanTinhLai x WHERE x.idHoGiaDinh = h.id AND x.idDotThu = d.id)")
+    int markByChiSo(@Param("hoIds") Collection<Integer> hoIds,
+                    @Param("loaiPhiId") Integer loaiPhiId,
+                    @Param("thang") Integer thang,
+                    @Param("nam") Integer nam,
+                    @Param("thangSau") Integer thangSau,
+                    @Param("namSau") Integer namSau,
+                    @Param("now") LocalDateTime now);
+
+    /**
+     * Cập nhật NgayDanhDau của các cặp đã được đánh dấu, cùng phạm vi với markByPhamVi.
+     */
+    @Modifying
+    @Query("UPDATE HoaDonCanTinhLai x SET x.ngayDanhDau = :now " +
+           "WHERE EXISTS (SELECT 1 FROM HoGiaDinh h, DotThu d " +
+           "    WHERE h.id = x.idHoGiaDinh AND d.id = x.idDotThu " +
+           "    AND d.toaNha = h.toaNha AND d.ngayKetThuc >= :today " +
+           "    AND (:hoId IS NULL OR h.id = :hoId) " +
+           "    AND (:toaNhaId IS NULL OR h.toaNha.id = :toaNhaId) " +
+           "    AND EXISTS (SELECT 1 FROM DotThuLoaiPhi dl WHERE dl.dotThu = d " +
+           "                AND (:loaiPhiId IS NULL OR dl.loaiPhi.id = :loaiPhiId)))")
+    int touchByPhamVi(@Param("hoId") Integer hoId,
+                      @Param("toaNhaId") Integer toaNhaId,
+                      @Param("loaiPhiId") Integer loaiPhiId,
+                      @Param("today") LocalDate today,
+                      @Param("now") LocalDateTime now);
+
+    /**
+     * Định mức / bảng giá thay đổi: ảnh hưởng các đợt thu chưa kết thúc có chứa loại phí.
+     * Tham số null = không lọc theo tiêu chí đó.
+     */
+    @Modifying
+    @Query("INSERT INTO HoaDonCanTinhLai (idHoGiaDinh, idDotThu, ngayDanhDau) " +
+           "SELECT h.id, d.id, :now FROM HoGiaDinh h, DotThu d " +
+           "WHERE d.toaNha = h.toaNha AND d.ngayKetThuc >= :today " +
+           "AND (:hoId IS NULL OR h.id = :hoId) " +
+           "AND (:toaNhaId IS NULL OR h.toaNha.id = :toaNhaId) " +
+           "AND EXISTS (SELECT 1 FROM DotThuLoaiPhi dl WHERE dl.dotThu = d " +
+           "            AND (:loaiPhiId IS NULL OR dl.loaiPhi.id = :loaiPhiId)) " +
+           "AND NOT EXISTS (SELECT 1 FROM HoaDonCanTinhLai x WHERE x.idHoGiaDinh = h.id AND x.idDotThu = d.id)")
+    int markByPhamVi(@Param("hoId") Integer hoId,
+                     @Param("toaNhaId") Integer toaNhaId,
+                     @Param("loaiPhiId") Integer loaiPhiId,
+                     @Param("today") LocalDate today,
+                     @Param("now") LocalDateTime now);
+
+    /**
+     * Danh sách phí của đợt thu thay đổi: ảnh hưởng mọi hộ trong tòa nhà của đợt thu.
+     */
+    @Modifying
+    @Query("INSERT INTO HoaDonCanTinhLai (idHoGiaDinh, idDotThu, ngayDanhDau) " +
+           "SELECT h.id, d.id, :now FROM HoGiaDinh h, DotThu d " +
+           "WHERE d.id = :dotThuId AND h.toaNha = d.toaNha " +
+           "AND NOT EXISTS (SELECT 1 FROM HoaDonCanTinhLai x WHERE x.idHoGiaDinh = h.id AND x.idDotThu = d.id)")
+    int markByDotThu(@Param("dotThuId") Integer dotThuId, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE HoaDonCanTinhLai x SET x.ngayDanhDau = :now WHERE x.idDotThu = :dotThuId")
+    int touchByDotThu(@Param("dotThuId") Integer dotThuId, @Param("now") LocalDateTime now);
+
+    /**
+     * Xóa dấu đánh trước mốc (thời điểm bắt đầu lần tính); dấu mới hơn được giữ lại cho lần sau.
+     */
+    @Modifying
+    @Query("DELETE FROM HoaDonCanTinhLai x WHERE x.idDotThu = :dotThuId " +
+           "AND (x.ngayDanhDau IS NULL OR x.ngayDanhDau <= :moc)")
+    int deleteByDotThuId(@Param("dotThuId") Integer dotThuId,
+                         @Param("moc") LocalDateTime moc);
+
+    @Modifying
+    @Query("DELETE FROM HoaDonCanTinhLai x WHERE x.idDotThu = :dotThuId AND x.idHoGiaDinh IN :hoIds " +
+           "AND (x.ngayDanhDau IS NULL OR x.ngayDanhDau <= :moc)")
+    int deleteByDotThuIdAndHoGiaDinhIds(@Param("dotThuId") Integer dotThuId,
+                                        @Param("hoIds") Collection<Integer> hoIds,
+                                        @Param("moc") LocalDateTime moc);
+}
@@ -1,9 +1,11 @@
 package com.nhom33.quanlychungcu.repository;
 
 import com.nhom33.quanlychungcu.entity.HoaDon;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -16,6 +18,14 @@ public interface HoaDonRepository extends JpaRepository<HoaDon, Integer> {
     
     List<HoaDon> findByHoGiaDinhId(Integer idHoGiaDinh);
     
+    /**
+     * Đọc hóa đơn và khóa dòng tới hết transaction: các thao tác nộp tiền / đổi trạng thái
+     * trên cùng hóa đơn chạy lần lượt, nên trạng thái "trước" dùng cho TongHopDotThu không bị cũ.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT h FROM HoaDon h WHERE h.id = :id")
+    Optional<HoaDon> findByIdForUpdate(@Param("id") Integer id);
+    
     /**
      * Lấy danh sách hóa đơn theo hộ gia đình với JOIN FETCH để tránh LazyInitializationException.
      */
@@ -46,6 +56,42 @@ public interface HoaDonRepository extends JpaRepository<HoaDon, Integer> {
     
     Page<HoaDon> findByDotThuId(Integer idDotThu, Pageable pageable);
     
+    /**
+     * Bảng kê: một trang hóa đơn của đợt thu dạng phẳng, sắp theo mã hộ trong DB.
+     * Trả về [hoaDonId, maHoGiaDinh, soCanHo, tenChuHo, tongTienPhaiThu, soTienDaDong, trangThai].
+     */
+    @Query("SELECT h.id, g.maHoGiaDinh, g.soCanHo, g.tenChuHo, h.tongTienPhaiThu, h.soTienDaDong, h.trangThai " +
+           "FROM HoaDon h JOIN h.hoGiaDinh g WHERE h.dotThu.id = :idDotThu " +
+           "ORDER BY g.maHoGiaDinh, h.id")
+    List<Object[]> findBangKeRows(@Param("idDotThu") Integer idDotThu, Pageable pageable);
+    
+    /**
+     * In hóa đơn hàng loạt: một trang hóa đơn của đợt thu, sắp theo mã hộ.
+     * Trả về [hoaDonId, maHoGiaDinh, tenChuHo, ngayTao, tongTienPhaiThu, soTienDaDong, trangThai].
+     */
+    @Query("SELECT h.id, g.maHoGiaDinh, g.tenChuHo, h.ngayTao, h.tongTienPhaiThu, h.soTienDaDong, h.trangThai " +
+           "FROM HoaDon h JOIN h.hoGiaDinh g WHERE h.dotThu.id = :idDotThu " +
+           "ORDER BY g.maHoGiaDinh, h.id")
+    List<Object[]> findInHoaDonRows(@Param("idDotThu") Integer idDotThu, Pageable pageable);
+
+    /**
+     * Bảng kê: [số hóa đơn, tổng phải thu, tổng đã đóng] của toàn đợt thu.
+     */
+    @Query("SELECT COUNT(h), COALESCE(SUM(h.tongTienPhaiThu), 0), COALESCE(SUM(h.soTienDaDong), 0) " +
+           "FROM HoaDon h WHERE h.dotThu.id = :idDotThu")
+    List<Object[]> sumBangKe(@Param("idDotThu") Integer idDotThu);
+    
+    @Query("SELECT h FROM HoaDon h WHERE h.dotThu.id = :idDotThu AND h.hoGiaDinh.id IN :hoIds")
+    List<HoaDon> findByDotThuIdAndHoGiaDinhIdIn(@Param("idDotThu") Integer idDotThu,
+                                                @Param("hoIds") java.util.Collection<Integer> hoIds);
+    
+    /**
+     * Lấy cặp [ID_HoaDon, ID_HoGiaDinh] của một đợt thu.
+     * Dùng để map lại ID sau khi batch insert hóa đơn.
+     */
+    @Query("SELECT h.id, h.hoGiaDinh.id FROM HoaDon h WHERE h.dotThu.id = :idDotThu")
+    List<Object[]> findIdAndHoGiaDinhIdByDotThuId(@Param("idDotThu") Integer idDotThu);
+    
     Optional<HoaDon> findByHoGiaDinhIdAndDotThuId(Integer idHoGiaDinh, Integer idDotThu);
     
     /**
@@ -80,7 +126,74 @@ public interface HoaDonRepository extends JpaRepository<HoaDon, Integer> {
     @Query("SELECT SUM(h.soTienDaDong) FROM HoaDon h WHERE h.dotThu.id = :idDotThu")
     java.math.BigDecimal sumSoTienDaDongByDotThu(@Param("idDotThu") Integer idDotThu);
     
+    @Query("SELECT COUNT(h) FROM HoaDon h WHERE h.hoGiaDinh.id = :idHoGiaDinh AND h.tongTienPhaiThu > h.soTienDaDong")
+    long countConNoByHoGiaDinhId(@Param("idHoGiaDinh") Integer idHoGiaDinh);
+    
+    @Query("SELECT COUNT(h) FROM HoaDon h WHERE h.dotThu.id = :idDotThu")
+    long countByDotThuId(@Param("idDotThu") Integer idDotThu);
+    
     @Query("SELECT COUNT(h) FROM HoaDon h WHERE h.dotThu.id = :idDotThu AND h.trangThai = :trangThai")
     Long countByDotThuAndTrangThai(@Param("idDotThu") Integer idDotThu, @Param("trangThai") String trangThai);
+
+    /**
+     * Tổng hợp hóa đơn theo đợt thu: [ID_DotThu, số hóa đơn, tổng phải thu, tổng đã đóng,
+     * số chưa đóng, số đang nợ, số đã đóng]. Trạng thái gộp cả hai bộ giá trị
+     * (DaThanhToan/ThanhToanMotPhan và "Đã đóng"/"Đang nợ"); còn lại tính là chưa đóng.
+     */
+    @Query("SELECT h.dotThu.id, COUNT(h), COALESCE(SUM(h.tongTienPhaiThu), 0), COALESCE(SUM(h.soTienDaDong), 0), " +
+           "SUM(CASE WHEN h.trangThai IN ('ThanhToanMotPhan', 'Đang nợ', 'DaThanhToan', 'Đã đóng') THEN 0 ELSE 1 END), " +
+           "SUM(CASE WHEN h.trangThai IN ('ThanhToanMotPhan', 'Đang nợ') THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN h.trangThai IN ('DaThanhToan', 'Đã đóng') THEN 1 ELSE 0 END) " +
+           "FROM HoaDon h WHERE h.dotThu.id = :idDotThu GROUP BY h.dotThu.id")
+    List<Object[]> tongHopTheoDotThu(@Param("idDotThu") Integer idDotThu);
+
+    /**
+     * Như tongHopTheoDotThu nhưng cho tất cả đợt thu trong một câu lệnh (dùng khi đối soát).
+     */
+    @Query("SELECT h.dotThu.id, COUNT(h), COALESCE(SUM(h.tongTienPhaiThu), 0), COALESCE(SUM(h.soTienDaDong), 0), " +
+           "SUM(CASE WHEN h.trangThai IN ('ThanhToanMotPhan', 'Đang nợ', 'DaThanhToan', 'Đã đóng') THEN 0 ELSE 1 END), " +
+           "SUM(CASE WHEN h.trangThai IN ('ThanhToanMotPhan', 'Đang nợ') THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN h.trangThai IN ('DaThanhToan', 'Đã đóng') THEN 1 ELSE 0 END) " +
+           "FROM HoaDon h GROUP BY h.dotThu.id")
+    List<Object[]> tongHopTatCaDotThu();
+
+    /**
+     * Tổng hợp hóa đơn của mọi đợt thu giao với khoảng ngày [tuNgay, denNgay]:
+     * [số đợt thu, tổng phải thu, tổng đã đóng]. Một câu lệnh thay vì SUM theo từng đợt thu.
+     */
+    @Query("SELECT COUNT(DISTINCT d.id), COALESCE(SUM(h.tongTienPhaiThu), 0), COALESCE(SUM(h.soTienDaDong), 0) " +
+           "FROM HoaDon h JOIN h.dotThu d " +
+           "WHERE d.ngayBatDau <= :denNgay AND d.ngayKetThuc >= :tuNgay")
+    List<Object[]> sumTheoKhoangNgay(@Param("tuNgay") java.time.LocalDate tuNgay,
+                                     @Param("denNgay") java.time.LocalDate denNgay);
+
+    /**
+     * Doanh thu theo tháng và tòa nhà trong một năm: [ID_ToaNha, TenToaNha, tháng, tổng phải thu, tổng đã đóng].
+     * Tháng/năm lấy theo kỳ của đợt thu, đợt thu không có kỳ (đóng góp) lấy theo ngày bắt đầu.
+     */
+    @Query("SELECT t.id, t.tenToaNha, COALESCE(d.thang, MONTH(d.ngayBatDau)), " +
+           "COALESCE(SUM(h.tongTienPhaiThu), 0), COALESCE(SUM(h.soTienDaDong), 0) " +
+           "FROM HoaDon h JOIN h.dotThu d JOIN d.toaNha t " +
+           "WHERE COALESCE(d.nam, YEAR(d.ngayBatDau)) = :nam " +
+           "AND (:toaNhaId IS NULL OR t.id = :toaNhaId) " +
+           "GROUP BY t.id, t.tenToaNha, COALESCE(d.thang, MONTH(d.ngayBatDau)) " +
+           "ORDER BY t.tenToaNha, COALESCE(d.thang, MONTH(d.ngayBatDau))")
+    List<Object[]> sumTheoThangVaToaNha(@Param("nam") Integer nam, @Param("toaNhaId") Integer toaNhaId);
+
+    /**
+     * Hóa đơn còn nợ của một đợt thu để nhắc hạn:
+     * [ID_HoaDon, EmailLienHe, TenChuHo, TenDotThu, số tiền còn nợ]
+     */
+    @Query("SELECT h.id, g.emailLienHe, g.tenChuHo, d.tenDotThu, h.tongTienPhaiThu - COALESCE(h.soTienDaDong, 0) " +
+           "FROM HoaDon h JOIN h.hoGiaDinh g JOIN h.dotThu d " +
+           "WHERE d.id = :idDotThu AND h.tongTienPhaiThu > COALESCE(h.soTienDaDong, 0) ORDER BY h.id")
+    List<Object[]> findNhacNoByDotThuId(@Param("idDotThu") Integer idDotThu);
+
+    /**
+     * Phân trang theo con trỏ: hóa đơn có id < truocId, mới nhất trước (seek trên khóa chính).
+     */
+    @Query("SELECT h FROM HoaDon h JOIN FETCH h.hoGiaDinh JOIN FETCH h.dotThu " +
+           "WHERE h.id < :truocId ORDER BY h.id DESC")
+    List<HoaDon> findTrangTruocId(@Param("truocId") int truocId, Pageable pageable);
 }
 
@@ -0,0 +1,53 @@
+package com.nhom33.quanlychungcu.repository;
+
+import com.nhom33.quanlychungcu.entity.LichSuGia;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface LichSuGiaRepository extends JpaRepository<LichSuGia, Integer> {
+
+    /**
+     * Toàn bộ lịch sử giá, sắp theo thời điểm bắt đầu hiệu lực (dùng để dựng index).
+     */
+    @Query("SELECT l FROM LichSuGia l ORDER BY l.hieuLucTu, l.id")
+    List<LichSuGia> findAllOrderByHieuLucTu();
+
+    /**
+     * Phiên bản đang áp dụng của một cặp (loại phí, tòa nhà). toaNhaId = null là giá mặc định.
+     */
+    @Query("SELECT l FROM LichSuGia l WHERE l.idLoaiPhi = :loaiPhiId " +
+           "AND ((:toaNhaId IS NULL AND l.idToaNha IS NULL) OR l.idToaNha = :toaNhaId) " +
+           "AND l.hieuLucDen IS NULL")
+    Optional<LichSuGia> findDangApDung(@Param("loaiPhiId") Integer loaiPhiId,
+                                       @Param("toaNhaId") Integer toaNhaId);
+
+    /**
+     * Tất cả phiên bản đang áp dụng (dùng khi đồng bộ lúc khởi động).
+     */
+    List<LichSuGia> findByHieuLucDenIsNull();
+
+    /**
+     * Đóng các phiên bản giá riêng đang mở theo phạm vi.
+     * loaiPhiId hoặc toaNhaId = null nghĩa là không lọc theo trường đó.
+     */
+    @Modifying
+    @Query("UPDATE LichSuGia l SET l.hieuLucDen = :now " +
+           "WHERE l.hieuLucDen IS NULL AND l.idToaNha IS NOT NULL " +
+           "AND (:loaiPhiId IS NULL OR l.idLoaiPhi = :loaiPhiId) " +
+           "AND (:toaNhaId IS NULL OR l.idToaNha = :toaNhaId)")
+    int closeGiaRieng(@Param("loaiPhiId") Integer loaiPhiId,
+                      @Param("toaNhaId") Integer toaNhaId,
+                      @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("DELETE FROM LichSuGia l WHERE l.idLoaiPhi = :loaiPhiId")
+    int deleteByLoaiPhiId(@Param("loaiPhiId") Integer loaiPhiId);
+}
@@ -37,5 +37,33 @@ public interface LichSuThanhToanRepository extends JpaRepository<LichSuThanhToan
      * Kiểm tra giao dịch VNPAY đã tồn tại chưa (tránh duplicate).
      */
     boolean existsByMaGiaoDichVnpay(String maGiaoDichVnpay);
+
+    /**
+     * Phân trang theo con trỏ trên mọi hóa đơn: giao dịch có id < truocId, mới nhất trước,
+     * lọc tùy chọn theo hình thức (seek trên khóa chính).
+     */
+    @Query("SELECT l FROM LichSuThanhToan l WHERE l.id < :truocId AND " +
+           "(:hinhThuc IS NULL OR l.hinhThuc = :hinhThuc) " +
+           "ORDER BY l.id DESC")
+    List<LichSuThanhToan> findTrangTruocId(@Param("truocId") int truocId,
+                                           @Param("hinhThuc") String hinhThuc,
+                                           Pageable pageable);
+
+    /**
+     * Như findTrangTruocId nhưng cho một hóa đơn: câu lệnh riêng để seek trên
+     * IX_LichSuThanhToan_HoaDon_GiaoDich (ID_HoaDon, ID_GiaoDich), không quét ngược khóa chính cả bảng.
+     */
+    @Query("SELECT l FROM LichSuThanhToan l WHERE l.hoaDon.id = :idHoaDon AND l.id < :truocId AND " +
+           "(:hinhThuc IS NULL OR l.hinhThuc = :hinhThuc) " +
+           "ORDER BY l.id DESC")
+    List<LichSuThanhToan> findTrangTruocIdTheoHoaDon(@Param("truocId") int truocId,
+                                                     @Param("idHoaDon") Integer idHoaDon,
+                                                     @Param("hinhThuc") String hinhThuc,
+                                                     Pageable pageable);
+
+    @Query("SELECT COUNT(l) FROM LichSuThanhToan l WHERE " +
+           "(:idHoaDon IS NULL OR l.hoaDon.id = :idHoaDon) AND " +
+           "(:hinhThuc IS NULL OR l.hinhThuc = :hinhThuc)")
+    long countTheoBoLoc(@Param("idHoaDon") Integer idHoaDon, @Param("hinhThuc") String hinhThuc);
 }
 
@@ -85,4 +85,18 @@ public interface NhanKhauRepository extends JpaRepository<NhanKhau, Integer> {
      * Lấy danh sách nhân khẩu là chủ hộ
      */
     Page<NhanKhau> findByLaChuHo(Boolean laChuHo, Pageable pageable);
+
+    // ===== Phân trang theo con trỏ (ConTroTrang) =====
+
+    /**
+     * Trang nhân khẩu có id > sauId, sắp theo id tăng dần (seek trên khóa chính, không OFFSET / COUNT).
+     */
+    @Query("SELECT n FROM NhanKhau n LEFT JOIN FETCH n.hoGiaDinh WHERE n.id > :sauId ORDER BY n.id")
+    List<NhanKhau> findTrangSauId(@Param("sauId") int sauId, Pageable pageable);
+
+    /**
+     * Trang nhân khẩu có id < truocId, sắp theo id giảm dần.
+     */
+    @Query("SELECT n FROM NhanKhau n LEFT JOIN FETCH n.hoGiaDinh WHERE n.id < :truocId ORDER BY n.id DESC")
+    List<NhanKhau> findTrangTruocId(@Param("truocId") int truocId, Pageable pageable);
 }
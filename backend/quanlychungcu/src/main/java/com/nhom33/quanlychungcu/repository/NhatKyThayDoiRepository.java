@@ -0,0 +1,167 @@
+package com.nhom33.quanlychungcu.repository;
+
+import com.nhom33.quanlychungcu.config.NhatKyThayDoiListener;
+import com.nhom33.quanlychungcu.config.NhatKyThayDoiListener.ThayDoi;
+import jakarta.persistence.EntityManager;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Repository: Nhật ký thay đổi dữ liệu (NhatKyThayDoi) cho backup tăng dần.
+ *
+ * Entity thêm / sửa / xóa qua Hibernate được NhatKyThayDoiListener ghi tự động.
+ * Mọi câu lệnh ghi không qua entity (JDBC batch, @Modifying JPQL, SQL thuần) phải gọi
+ * một hàm ghiNhan* của class này, nếu không backup tăng dần sẽ thiếu thay đổi đó:
+ * - ghiNhan(bang, khoa): biết khóa chính các dòng bị sửa / xóa.
+ * - ghiNhanDongMoi(bang, cotKhoa): gọi TRƯỚC khi INSERT hàng loạt vào bảng có khóa IDENTITY.
+ * - ghiNhanCaBang(bang): câu lệnh theo điều kiện, không biết khóa. Backup tăng dần sẽ chép lại
+ *   cả bảng, nên chỉ dùng cho bảng nhỏ không bị bảng khác tham chiếu.
+ *
+ * Trong transaction: dùng chung hàng đợi với listener, ghi một lần trước commit.
+ * Ngoài transaction: ghi ngay (ghi thừa không sao, backup chỉ đọc lại trạng thái hiện tại của dòng).
+ */
+@Repository
+public class NhatKyThayDoiRepository {
+
+    /** TenBang đặc biệt: dữ liệu vừa được restore, chuỗi backup tăng dần phải bắt đầu lại từ backup đầy đủ. */
+    public static final String DA_RESTORE = "*";
+
+    /** TenBang đặc biệt: nhật ký cũ hơn ThoiGian của dòng này đã bị xóa. */
+    private static final String DA_DON = "#";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+    private final NhatKyThayDoiListener listener;
+
+    public NhatKyThayDoiRepository(JdbcTemplate jdbcTemplate, EntityManager entityManager,
+                                   NhatKyThayDoiListener listener) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManager = entityManager;
+        this.listener = listener;
+    }
+
+    /**
+     * Thay đổi của một bảng trong khoảng thời gian (đã gộp).
+     * tuKhoa: nhỏ nhất trong các mốc "dòng có khóa lớn hơn"; caBang: có ít nhất một mục cả bảng.
+     */
+    public record ThayDoiBang(Set<String> khoa, Long tuKhoa, boolean caBang) {}
+
+    // ===== Ghi nhận =====
+
+    public void ghiNhan(String bang, Object khoa) {
+        if (khoa != null) {
+            ghi(List.of(new ThayDoi(bang, String.valueOf(khoa), null)));
+        }
+    }
+
+    public void ghiNhan(String bang, Collection<?> khoa) {
+        List<ThayDoi> thayDoi = new ArrayList<>(khoa.size());
+        for (Object k : khoa) {
+            if (k != null) {
+                thayDoi.add(new ThayDoi(bang, String.valueOf(k), null));
+            }
+        }
+        ghi(thayDoi);
+    }
+
+    /**
+     * Ghi nhận mọi dòng sắp được INSERT (khóa IDENTITY luôn lớn hơn MAX hiện tại).
+     */
+    public void ghiNhanDongMoi(String bang, String cotKhoa) {
+        Long max = jdbcTemplate.queryForObject("SELECT MAX(" + cotKhoa + ") FROM " + bang, Long.class);
+        ghi(List.of(new ThayDoi(bang, null, max != null ? max : 0L)));
+    }
+
+    public void ghiNhanCaBang(String bang) {
+        ghi(List.of(new ThayDoi(bang, null, null)));
+    }
+
+    private void ghi(List<ThayDoi> thayDoi) {
+        if (thayDoi.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+            for (ThayDoi t : thayDoi) {
+                listener.them(session, t);
+            }
+        } else {
+            jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+                NhatKyThayDoiListener.ghi(con, thayDoi);
+                return null;
+            });
+        }
+    }
+
+    // ===== Đọc / dọn =====
+
+    /**
+     * Thay đổi từ thời điểm tu (tính cả), gộp theo bảng (không phân biệt hoa thường).
+     * Không gồm các mốc restore / dọn nhật ký.
+     */
+    public Map<String, ThayDoiBang> findThayDoiTu(LocalDateTime tu) {
+        Map<String, Set<String>> khoa = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Map<String, Long> tuKhoa = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Set<String> caBang = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        jdbcTemplate.query(
+            "SELECT DISTINCT TenBang, KhoaChinh, TuKhoa FROM NhatKyThayDoi WHERE ThoiGian >= ? AND TenBang NOT IN (?, ?)",
+            rs -> {
+                String bang = rs.getString(1);
+                String k = rs.getString(2);
+                long moc = rs.getLong(3);
+                boolean coMoc = !rs.wasNull();
+                khoa.computeIfAbsent(bang, b -> new HashSet<>());
+                if (k != null) {
+                    khoa.get(bang).add(k);
+                } else if (coMoc) {
+                    tuKhoa.merge(bang, moc, Math::min);
+                } else {
+                    caBang.add(bang);
+                }
+            }, Timestamp.valueOf(tu), DA_DON, DA_RESTORE);
+
+        Map<String, ThayDoiBang> ketQua = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        khoa.forEach((bang, k) -> ketQua.put(bang, new ThayDoiBang(k, tuKhoa.get(bang), caBang.contains(bang))));
+        return ketQua;
+    }
+
+    /**
+     * Xóa nhật ký cũ hơn mốc (không còn cần cho backup tăng dần nào) và ghi lại mốc đã dọn.
+     * Chạy trong transaction riêng.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int xoaTruoc(LocalDateTime moc) {
+        int count = jdbcTemplate.update("DELETE FROM NhatKyThayDoi WHERE ThoiGian < ?", Timestamp.valueOf(moc));
+        jdbcTemplate.update("INSERT INTO NhatKyThayDoi (TenBang, ThoiGian) VALUES (?, ?)", DA_DON, Timestamp.valueOf(moc));
+        return count;
+    }
+
+    /**
+     * Mốc dọn nhật ký gần nhất: thay đổi trước mốc này không còn trong nhật ký.
+     */
+    public Optional<LocalDateTime> findMocDonGanNhat() {
+        return findMocGanNhat(DA_DON);
+    }
+
+    /**
+     * Lần restore gần nhất (thời điểm commit).
+     */
+    public Optional<LocalDateTime> findMocRestoreGanNhat() {
+        return findMocGanNhat(DA_RESTORE);
+    }
+
+    private Optional<LocalDateTime> findMocGanNhat(String moc) {
+        Timestamp thoiGian = jdbcTemplate.queryForObject(
+            "SELECT MAX(ThoiGian) FROM NhatKyThayDoi WHERE TenBang = ?", Timestamp.class, moc);
+        return Optional.ofNullable(thoiGian).map(Timestamp::toLocalDateTime);
+    }
+}
@@ -27,5 +27,11 @@ public interface PhanAnhRepository extends JpaRepository<PhanAnh, Integer> {
                         @Param("trangThai") String trangThai,
                         @Param("tieuDe") String tieuDe,
                         Pageable pageable);
+
+    /**
+     * Phân trang theo con trỏ: phản ánh có id < truocId, mới nhất trước (seek trên khóa chính).
+     */
+    @Query("SELECT p FROM PhanAnh p WHERE p.id < :truocId ORDER BY p.id DESC")
+    List<PhanAnh> findTrangTruocId(@Param("truocId") int truocId, Pageable pageable);
 }
 
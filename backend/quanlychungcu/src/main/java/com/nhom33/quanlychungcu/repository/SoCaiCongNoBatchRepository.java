@@ -0,0 +1,112 @@
+package com.nhom33.quanlychungcu.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository: Ghi bút toán công nợ theo lô (JDBC batch).
+ *
+ * Dùng khi tính tiền cả tòa nhà (mỗi hộ một bút toán) và khi dựng sổ cái từ dữ liệu cũ.
+ * Chạy chung transaction với JPA, không cập nhật persistence context; thay đổi được ghi nhận
+ * vào NhatKyThayDoi cho backup tăng dần.
+ */
+@Repository
+public class SoCaiCongNoBatchRepository {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NhatKyThayDoiRepository nhatKyRepo;
+
+    public SoCaiCongNoBatchRepository(JdbcTemplate jdbcTemplate, NhatKyThayDoiRepository nhatKyRepo) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.nhatKyRepo = nhatKyRepo;
+    }
+
+    /**
+     * Một bút toán; soDu là số dư của hộ sau bút toán.
+     * ngayGhiSo = null nghĩa là thời điểm hiện tại (chỉ khác null khi dựng lại dữ liệu cũ).
+     */
+    public record ButToan(Integer hoGiaDinhId, Integer hoaDonId, Integer giaoDichId, String loaiButToan,
+                          BigDecimal soTien, BigDecimal soDu, LocalDate ngayPhatSinh,
+                          LocalDateTime ngayGhiSo, String dienGiai) {}
+
+    /** Phần cộng thêm vào số dư của một hộ (thanhToan là số dương). */
+    public record ChenhLechSoDu(Integer hoGiaDinhId, BigDecimal phatSinh, BigDecimal thanhToan) {}
+
+    /**
+     * Batch cộng dồn số dư công nợ (dòng số dư phải tồn tại trước).
+     */
+    public int congSoDu(List<ChenhLechSoDu> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        nhatKyRepo.ghiNhan("CongNoHoGiaDinh", rows.stream().map(ChenhLechSoDu::hoGiaDinhId).toList());
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(
+            "UPDATE CongNoHoGiaDinh SET SoDu = SoDu + ?, TongPhatSinh = TongPhatSinh + ?, " +
+            "TongThanhToan = TongThanhToan + ?, NgayCapNhat = ? WHERE ID_HoGiaDinh = ?",
+            rows, BATCH_SIZE, (ps, row) -> {
+                ps.setBigDecimal(1, row.phatSinh().subtract(row.thanhToan()));
+                ps.setBigDecimal(2, row.phatSinh());
+                ps.setBigDecimal(3, row.thanhToan());
+                ps.setTimestamp(4, now);
+                ps.setInt(5, row.hoGiaDinhId());
+            });
+        return rows.size();
+    }
+
+    /** Ngày nợ cũ nhất mới của một hộ (null = hết nợ). */
+    public record NgayNo(Integer hoGiaDinhId, LocalDate ngayNoCuNhat) {}
+
+    /**
+     * Batch cập nhật ngày nợ cũ nhất.
+     */
+    public int capNhatNgayNo(List<NgayNo> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        nhatKyRepo.ghiNhan("CongNoHoGiaDinh", rows.stream().map(NgayNo::hoGiaDinhId).toList());
+        jdbcTemplate.batchUpdate(
+            "UPDATE CongNoHoGiaDinh SET NgayNoCuNhat = ? WHERE ID_HoGiaDinh = ?",
+            rows, BATCH_SIZE, (ps, row) -> {
+                ps.setObject(1, row.ngayNoCuNhat() != null ? Date.valueOf(row.ngayNoCuNhat()) : null, Types.DATE);
+                ps.setInt(2, row.hoGiaDinhId());
+            });
+        return rows.size();
+    }
+
+    /**
+     * Batch insert bút toán (theo đúng thứ tự trong danh sách).
+     */
+    public int insert(List<ButToan> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        nhatKyRepo.ghiNhanDongMoi("SoCaiCongNo", "ID_ButToan");
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO SoCaiCongNo (ID_HoGiaDinh, ID_HoaDon, ID_GiaoDich, LoaiButToan, SoTien, SoDu, " +
+            "NgayPhatSinh, NgayGhiSo, DienGiai) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+            rows, BATCH_SIZE, (ps, row) -> {
+                ps.setInt(1, row.hoGiaDinhId());
+                ps.setObject(2, row.hoaDonId(), Types.INTEGER);
+                ps.setObject(3, row.giaoDichId(), Types.INTEGER);
+                ps.setString(4, row.loaiButToan());
+                ps.setBigDecimal(5, row.soTien());
+                ps.setBigDecimal(6, row.soDu());
+                ps.setDate(7, Date.valueOf(row.ngayPhatSinh()));
+                ps.setTimestamp(8, row.ngayGhiSo() != null ? Timestamp.valueOf(row.ngayGhiSo()) : now);
+                ps.setString(9, row.dienGiai());
+            });
+        return rows.size();
+    }
+}
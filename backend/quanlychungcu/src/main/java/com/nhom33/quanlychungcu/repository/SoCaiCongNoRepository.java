@@ -0,0 +1,42 @@
+package com.nhom33.quanlychungcu.repository;
+
+import com.nhom33.quanlychungcu.entity.SoCaiCongNo;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface SoCaiCongNoRepository extends JpaRepository<SoCaiCongNo, Long> {
+
+    /**
+     * Sổ cái của một hộ, mới nhất trước.
+     */
+    @Query("SELECT s FROM SoCaiCongNo s WHERE s.idHoGiaDinh = :hoGiaDinhId ORDER BY s.ngayGhiSo DESC, s.id DESC")
+    Page<SoCaiCongNo> findByHoGiaDinh(@Param("hoGiaDinhId") Integer hoGiaDinhId, Pageable pageable);
+
+    /**
+     * Số dư sau bút toán cuối cùng ghi trước thời điểm (dùng với Pageable 1 dòng).
+     * Chạy trên index (ID_HoGiaDinh, NgayGhiSo).
+     */
+    @Query("SELECT s.soDu FROM SoCaiCongNo s WHERE s.idHoGiaDinh = :hoGiaDinhId AND s.ngayGhiSo < :truoc " +
+           "ORDER BY s.ngayGhiSo DESC, s.id DESC")
+    List<BigDecimal> findSoDuTruoc(@Param("hoGiaDinhId") Integer hoGiaDinhId,
+                                   @Param("truoc") LocalDateTime truoc,
+                                   Pageable pageable);
+
+    /**
+     * Khoản phải thu ròng (phát sinh + điều chỉnh) theo ngày phát sinh, mới nhất trước:
+     * [NgayPhatSinh, tổng SoTien]. Dùng để tính tuổi nợ, đọc theo trang tới khi đủ số dư.
+     */
+    @Query("SELECT s.ngayPhatSinh, SUM(s.soTien) FROM SoCaiCongNo s " +
+           "WHERE s.idHoGiaDinh = :hoGiaDinhId AND s.loaiButToan <> 'ThanhToan' " +
+           "GROUP BY s.ngayPhatSinh ORDER BY s.ngayPhatSinh DESC")
+    List<Object[]> sumPhaiThuTheoNgay(@Param("hoGiaDinhId") Integer hoGiaDinhId, Pageable pageable);
+}
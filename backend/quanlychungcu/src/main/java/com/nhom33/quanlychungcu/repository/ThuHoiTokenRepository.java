@@ -0,0 +1,30 @@
+package com.nhom33.quanlychungcu.repository;
+
+import com.nhom33.quanlychungcu.entity.ThuHoiToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ThuHoiTokenRepository extends JpaRepository<ThuHoiToken, Long> {
+
+    /**
+     * Các mục thu hồi còn hiệu lực (token bị thu hồi có thể chưa hết hạn).
+     */
+    List<ThuHoiToken> findByHetHanAfter(LocalDateTime now);
+
+    @Query("SELECT MAX(t.phienBan) FROM ThuHoiToken t WHERE t.username = :username")
+    Optional<Integer> findPhienBanLonNhat(@Param("username") String username);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ThuHoiToken t WHERE t.hetHan <= :now")
+    int deleteHetHan(@Param("now") LocalDateTime now);
+}
@@ -0,0 +1,43 @@
+package com.nhom33.quanlychungcu.repository;
+
+import com.nhom33.quanlychungcu.entity.TongHopDotThu;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+
+/**
+ * Repository: Tạo dòng tổng hợp đợt thu bằng JDBC.
+ *
+ * LÝ DO: Hai transaction có thể cùng tạo dòng cho một đợt thu (lần đọc đầu tiên, hóa đơn đầu tiên thay đổi).
+ * Lỗi trùng khóa từ save() của JPA đánh dấu cả transaction rollback-only; ở đây lỗi trùng khóa
+ * chỉ làm hỏng câu lệnh INSERT, transaction gọi vẫn tiếp tục được.
+ */
+@Repository
+public class TongHopDotThuJdbcRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TongHopDotThuJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Thêm dòng tổng hợp nếu đợt thu chưa có.
+     * @return false nếu dòng đã tồn tại (kể cả do transaction khác vừa thêm)
+     */
+    public boolean themNeuChuaCo(TongHopDotThu t) {
+        try {
+            return jdbcTemplate.update(
+                "INSERT INTO TongHopDotThu (ID_DotThu, TongPhaiThu, TongDaThu, SoHoaDon, SoChuaDong, SoDangNo, " +
+                "SoDaDong, TongSoHo, NgayCapNhat) SELECT ?, ?, ?, ?, ?, ?, ?, ?, ? " +
+                "WHERE NOT EXISTS (SELECT 1 FROM TongHopDotThu WHERE ID_DotThu = ?)",
+                t.getIdDotThu(), t.getTongPhaiThu(), t.getTongDaThu(), t.getSoHoaDon(), t.getSoChuaDong(),
+                t.getSoDangNo(), t.getSoDaDong(), t.getTongSoHo(), Timestamp.valueOf(t.getNgayCapNhat()),
+                t.getIdDotThu()) > 0;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.nhom33.quanlychungcu.repository;
+
+import com.nhom33.quanlychungcu.entity.TongHopDotThu;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Repository: Số liệu tổng hợp theo đợt thu.
+ *
+ * congDon cộng chênh lệch ngay trong câu UPDATE (không đọc rồi ghi lại), nên hai giao dịch
+ * đồng thời không ghi đè số liệu của nhau. Chênh lệch chỉ đúng nếu trạng thái "trước" của hóa đơn
+ * được đọc khi đang giữ khóa (HoaDonRepository.findByIdForUpdate).
+ */
+@Repository
+public interface TongHopDotThuRepository extends JpaRepository<TongHopDotThu, Integer> {
+
+    /**
+     * Cộng chênh lệch vào dòng tổng hợp của đợt thu.
+     *
+     * @return Số dòng được cập nhật (0 nếu đợt thu chưa có dòng tổng hợp)
+     */
+    @Modifying
+    @Query("UPDATE TongHopDotThu t SET " +
+           "t.tongPhaiThu = t.tongPhaiThu + :tongPhaiThu, " +
+           "t.tongDaThu = t.tongDaThu + :tongDaThu, " +
+           "t.soHoaDon = t.soHoaDon + :soHoaDon, " +
+           "t.soChuaDong = t.soChuaDong + :soChuaDong, " +
+           "t.soDangNo = t.soDangNo + :soDangNo, " +
+           "t.soDaDong = t.soDaDong + :soDaDong, " +
+           "t.ngayCapNhat = :now " +
+           "WHERE t.idDotThu = :dotThuId")
+    int congDon(@Param("dotThuId") Integer dotThuId,
+                @Param("tongPhaiThu") BigDecimal tongPhaiThu,
+                @Param("tongDaThu") BigDecimal tongDaThu,
+                @Param("soHoaDon") long soHoaDon,
+                @Param("soChuaDong") long soChuaDong,
+                @Param("soDangNo") long soDangNo,
+                @Param("soDaDong") long soDaDong,
+                @Param("now") LocalDateTime now);
+
+    /**
+     * Cộng số hộ cho các đợt thu của một tòa nhà (thêm / xóa / chuyển tòa nhà của hộ gia đình).
+     */
+    @Modifying
+    @Query("UPDATE TongHopDotThu t SET t.tongSoHo = t.tongSoHo + :delta " +
+           "WHERE t.idDotThu IN (SELECT d.id FROM DotThu d WHERE d.toaNha.id = :toaNhaId)")
+    int congSoHoTheoToaNha(@Param("toaNhaId") Integer toaNhaId, @Param("delta") long delta);
+
+    /**
+     * Cộng số hộ cho các đợt thu không gắn tòa nhà (tính trên mọi hộ gia đình).
+     */
+    @Modifying
+    @Query("UPDATE TongHopDotThu t SET t.tongSoHo = t.tongSoHo + :delta " +
+           "WHERE t.idDotThu IN (SELECT d.id FROM DotThu d WHERE d.toaNha IS NULL)")
+    int congSoHoKhongToaNha(@Param("delta") long delta);
+}
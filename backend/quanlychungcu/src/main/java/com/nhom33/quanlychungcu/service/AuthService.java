@@ -1,5 +1,6 @@
 package com.nhom33.quanlychungcu.service;
 
+import com.nhom33.quanlychungcu.config.JwtPrincipalCache;
 import com.nhom33.quanlychungcu.config.JwtService;
 import com.nhom33.quanlychungcu.entity.Role;
 import com.nhom33.quanlychungcu.entity.UserAccount;
@@ -10,6 +11,8 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -20,15 +23,21 @@ public class AuthService implements UserDetailsService {
     private final PasswordEncoder passwordEncoder;
     private final AuthenticationManager authenticationManager;
     private final JwtService jwtService;
+    private final ThuHoiTokenService thuHoiTokenService;
+    private final JwtPrincipalCache principalCache;
 
     public AuthService(UserAccountRepository userRepo,
                        PasswordEncoder passwordEncoder,
                        AuthenticationManager authenticationManager,
-                       JwtService jwtService) {
+                       JwtService jwtService,
+                       ThuHoiTokenService thuHoiTokenService,
+                       JwtPrincipalCache principalCache) {
         this.userRepo = userRepo;
         this.passwordEncoder = passwordEncoder;
         this.authenticationManager = authenticationManager;
         this.jwtService = jwtService;
+        this.thuHoiTokenService = thuHoiTokenService;
+        this.principalCache = principalCache;
     }
 
     @Transactional
@@ -42,6 +51,8 @@ public class AuthService implements UserDetailsService {
         user.setFullName(fullName);
         user.setEmail(email);
         user.setRole(role);
+        // Token của tài khoản cùng tên đã bị xóa (nếu còn hạn) không được dùng cho tài khoản mới
+        user.setPhienBanToken(thuHoiTokenService.phienBanToiThieu(username));
         userRepo.save(user);
         return jwtService.generateToken(user);
     }
@@ -61,6 +72,21 @@ public class AuthService implements UserDetailsService {
         return new LoginResult(user.getUsername(), user.getRole(), token);
     }
 
+    /**
+     * Đăng xuất: thu hồi token đến khi nó hết hạn. Token không hợp lệ / đã hết hạn thì bỏ qua.
+     */
+    @Transactional
+    public void logout(String token) {
+        final Claims claims;
+        try {
+            claims = jwtService.extractAllClaims(token);
+        } catch (JwtException e) {
+            return;
+        }
+        thuHoiTokenService.thuHoiToken(claims.getId(), claims.getSubject(), claims.getExpiration());
+        principalCache.xoa(token);
+    }
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         return userRepo.findByUsername(username)
@@ -1,107 +1,993 @@
 package com.nhom33.quanlychungcu.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nhom33.quanlychungcu.config.JwtPrincipalCache;
+import com.nhom33.quanlychungcu.dto.BackupManifestDTO;
+import com.nhom33.quanlychungcu.dto.BackupManifestDTO.BangBackup;
+import com.nhom33.quanlychungcu.dto.BackupManifestDTO.ChunkBackup;
+import com.nhom33.quanlychungcu.dto.BackupManifestDTO.CotBackup;
+import com.nhom33.quanlychungcu.repository.BackupJdbcRepository;
+import com.nhom33.quanlychungcu.repository.BackupJdbcRepository.BangInfo;
+import com.nhom33.quanlychungcu.repository.BackupJdbcRepository.CotInfo;
+import com.nhom33.quanlychungcu.repository.BackupJdbcRepository.HeQuanTri;
+import com.nhom33.quanlychungcu.repository.NhatKyThayDoiRepository;
+import com.nhom33.quanlychungcu.repository.NhatKyThayDoiRepository.ThayDoiBang;
+import com.nhom33.quanlychungcu.util.BackupRowCodec;
+import com.nhom33.quanlychungcu.util.BackupRowCodec.Kieu;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
+/**
+ * Service: Backup / restore dữ liệu ở mức ứng dụng (logical backup).
+ *
+ * LOGIC NGHIỆP VỤ:
+ * - Backup: đọc từng bảng bằng cursor JDBC, chia chunk app.backup.rows-per-chunk dòng
+ *   (tối đa 8 MB, định dạng BackupRowCodec). Thread đọc DB chỉ mã hóa dòng; SHA-256 và nén
+ *   (zlib) từng chunk chạy song song trên backupExecutor, chunk đã nén được ghi vào ZIP
+ *   dạng STORED (data/{bảng}/{số}.bin.z) theo đúng thứ tự. Bộ nhớ dùng tối đa khoảng
+ *   2 * số thread * kích thước chunk. Mỗi chunk có SHA-256 (dữ liệu chưa nén) trong manifest.json.
+ *   Ghi ra file .part rồi mới đổi tên, nên danh sách backup không bao giờ có file dở.
+ * - Backup tăng dần (incremental): chỉ chứa các dòng thay đổi từ backup gần nhất, lấy từ
+ *   NhatKyThayDoi (khóa các dòng thêm / sửa / xóa), nên kích thước và thời gian tỉ lệ với
+ *   lượng thay đổi chứ không với kích thước database. Mỗi backup tăng dần trỏ tới backup
+ *   ngay trước nó (backupTruoc); chuỗi luôn bắt đầu từ một backup đầy đủ.
+ * - Restore: kiểm tra checksum mọi chunk (song song) và đối chiếu bảng / cột với schema hiện tại trước;
+ *   sau đó trong một transaction, xóa dữ liệu các bảng có trong backup (bảng con trước)
+ *   rồi batch INSERT lại theo thứ tự khóa ngoại, giữ nguyên ID. Restore một backup tăng dần
+ *   = restore backup đầy đủ gốc rồi áp lần lượt các backup tăng dần tới nó (xóa các dòng đã xóa,
+ *   UPDATE / INSERT các dòng thay đổi), nên khôi phục được về thời điểm của bất kỳ backup nào.
+ *   Lỗi giữa chừng -> rollback toàn bộ, dữ liệu cũ giữ nguyên.
+ * - Restore chọn bảng: chỉ xóa / chèn lại các bảng được chọn, các bảng khác giữ nguyên.
+ *   Bảng đang được bảng khác tham chiếu phải chọn cùng bảng con, nếu không restore lỗi
+ *   khóa ngoại và rollback.
+ * - Backup đọc trong một transaction read-only ở mức SNAPSHOT (SQL Server cần
+ *   ALLOW_SNAPSHOT_ISOLATION ON, xem database/migration_backup_snapshot.sql): mọi bảng được đọc
+ *   tại cùng một thời điểm nên khóa ngoại trong backup luôn khớp, kể cả khi đang có thao tác ghi.
+ *   Thay đổi ghi trong lúc backup chạy sẽ có lại trong backup tăng dần kế tiếp.
+ * - Mỗi lần chỉ chạy một backup hoặc restore.
+ */
 @Service
 public class BackupService {
 
+    private static final Logger log = LoggerFactory.getLogger(BackupService.class);
+
+    // 2: chunk nén sẵn bằng zlib (.bin.z), lưu STORED trong ZIP
+    private static final int PHIEN_BAN = 2;
+    private static final String LOAI_DAY_DU = "Full";
+    private static final String LOAI_TANG_DAN = "Incremental";
+    private static final String MANIFEST = "manifest.json";
+    private static final String DUOI_FILE = ".zip";
+    private static final String DUOI_TANG_DAN = "_inc";
+    private static final String DUOI_FILE_TAM = ".part";
+    private static final String DUOI_CHUNK_NEN = ".bin.z";
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int BUFFER_FILE = 1024 * 1024;
+    private static final int KICH_THUOC_CHUNK_TOI_DA = 8 * 1024 * 1024;
+    private static final int SO_BACKUP_TOI_DA_TRONG_CHUOI = 1000;
+
+    // Nhật ký được ghi ngay trước commit: thay đổi commit sau mốc backup có thể mang thời điểm
+    // sớm hơn mốc một chút, nên backup tăng dần đọc lùi lại một khoảng (đọc trùng không sao)
+    private static final Duration DO_TRE_NHAT_KY = Duration.ofMinutes(5);
+
+    private final BackupJdbcRepository backupRepo;
+    private final NhatKyThayDoiRepository nhatKyRepo;
+    private final ObjectMapper objectMapper;
+    private final ThreadPoolTaskExecutor backupExecutor;
+    private final JwtPrincipalCache principalCache;
+    private final TimKiemService timKiemService;
+    private final BangGiaService bangGiaService;
+    private final LichSuGiaService lichSuGiaService;
+    private final int soChunkCungLuc;
+    private final ReentrantLock dangChay = new ReentrantLock();
+
     @Value("${app.backup.directory:./backups}")
     private String backupDirectory;
 
+    @Value("${app.backup.rows-per-chunk:50000}")
+    private int soDongMoiChunk;
+
+    @Value("${app.backup.full-interval-days:7}")
+    private int soNgayGiuaBackupDayDu;
+
     @Value("${spring.datasource.url:}")
     private String datasourceUrl;
 
-    @Value("${spring.datasource.username:}")
-    private String datasourceUsername;
+    public BackupService(BackupJdbcRepository backupRepo, NhatKyThayDoiRepository nhatKyRepo,
+                         ObjectMapper objectMapper,
+                         @Qualifier("backupExecutor") ThreadPoolTaskExecutor backupExecutor,
+                         JwtPrincipalCache principalCache, TimKiemService timKiemService,
+                         BangGiaService bangGiaService, LichSuGiaService lichSuGiaService) {
+        this.backupRepo = backupRepo;
+        this.nhatKyRepo = nhatKyRepo;
+        this.objectMapper = objectMapper;
+        this.backupExecutor = backupExecutor;
+        this.principalCache = principalCache;
+        this.timKiemService = timKiemService;
+        this.bangGiaService = bangGiaService;
+        this.lichSuGiaService = lichSuGiaService;
+        this.soChunkCungLuc = Math.max(1, backupExecutor.getMaxPoolSize()) * 2;
+    }
 
-    @Value("${spring.datasource.password:}")
-    private String datasourcePassword;
+    /**
+     * Tạo backup toàn bộ database.
+     *
+     * @return backupPath, fileName, loai, soBang, soDong, kichThuoc (byte), thoiGianMs, soDongMoiGiay
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> createBackup() throws IOException {
+        batDau();
+        HeQuanTri heQuanTri = null;
+        try {
+            heQuanTri = backupRepo.getHeQuanTri();
+            backupRepo.batDauDocNhatQuan(heQuanTri);
+            LocalDateTime taoLuc = LocalDateTime.now();
+            Map<String, Object> result = ghiFileBackup(taoLuc, LOAI_DAY_DU, null, null, null);
+            // Nhật ký trước backup đầy đủ này không còn cần cho backup tăng dần nào
+            nhatKyRepo.xoaTruoc(taoLuc.minus(DO_TRE_NHAT_KY.multipliedBy(2)));
+            return result;
+        } finally {
+            ketThucDocNhatQuan(heQuanTri);
+        }
+    }
 
     /**
-     * Tạo backup database
+     * Tạo backup tăng dần: các dòng thay đổi từ backup gần nhất (đầy đủ hoặc tăng dần).
+     *
+     * @return như createBackup, thêm backupTruoc
      */
-    public String createBackup() throws IOException {
-        // Tạo thư mục backup nếu chưa có
+    @Transactional(readOnly = true)
+    public Map<String, Object> createIncrementalBackup() throws IOException {
+        batDau();
+        HeQuanTri heQuanTri = null;
+        try {
+            heQuanTri = backupRepo.getHeQuanTri();
+            backupRepo.batDauDocNhatQuan(heQuanTri);
+            LocalDateTime taoLuc = LocalDateTime.now();
+            List<String> backups = listBackups();
+            if (backups.isEmpty()) {
+                throw new IllegalStateException("Chưa có backup nào, cần tạo backup đầy đủ trước");
+            }
+            String backupTruoc = backups.get(0);
+            List<BackupManifestDTO> chuoi = docChuoiManifest(backupTruoc);
+            LocalDateTime taoLucTruoc = LocalDateTime.parse(chuoi.get(chuoi.size() - 1).taoLuc());
+            LocalDateTime tu = taoLucTruoc.minus(DO_TRE_NHAT_KY);
+
+            Optional<LocalDateTime> mocRestore = nhatKyRepo.findMocRestoreGanNhat();
+            if (mocRestore.isPresent() && !mocRestore.get().isBefore(taoLucTruoc)) {
+                throw new IllegalStateException("Dữ liệu đã được restore sau backup " + backupTruoc +
+                    ", cần tạo backup đầy đủ");
+            }
+            Optional<LocalDateTime> mocDon = nhatKyRepo.findMocDonGanNhat();
+            if (mocDon.isPresent() && mocDon.get().isAfter(tu)) {
+                throw new IllegalStateException("Nhật ký thay đổi không còn đủ từ backup " + backupTruoc +
+                    ", cần tạo backup đầy đủ");
+            }
+            Map<String, ThayDoiBang> thayDoi = nhatKyRepo.findThayDoiTu(tu);
+            Map<String, Object> result = ghiFileBackup(taoLuc, LOAI_TANG_DAN, backupTruoc, tu, thayDoi);
+            result.put("backupTruoc", backupTruoc);
+            return result;
+        } finally {
+            ketThucDocNhatQuan(heQuanTri);
+        }
+    }
+
+    // Trả isolation level của connection và nhả khóa backup
+    private void ketThucDocNhatQuan(HeQuanTri heQuanTri) {
+        try {
+            if (heQuanTri != null) {
+                backupRepo.ketThucDocNhatQuan(heQuanTri);
+            }
+        } finally {
+            dangChay.unlock();
+        }
+    }
+
+    /**
+     * Backup đầy đủ (thayDoi = null) hoặc tăng dần ra một file ZIP.
+     */
+    private Map<String, Object> ghiFileBackup(LocalDateTime taoLuc, String loai, String backupTruoc,
+                                              LocalDateTime nhatKyTu, Map<String, ThayDoiBang> thayDoi)
+            throws IOException {
         Path backupPath = Paths.get(backupDirectory);
-        if (!Files.exists(backupPath)) {
-            Files.createDirectories(backupPath);
+        Files.createDirectories(backupPath);
+
+        String timestamp = taoLuc.format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+        Path file = backupPath.resolve("backup_" + timestamp + (thayDoi != null ? DUOI_TANG_DAN : "") + DUOI_FILE);
+        if (Files.exists(file)) {
+            throw new IllegalStateException("Backup " + file.getFileName() + " đã tồn tại, vui lòng thử lại sau");
         }
+        Path fileTam = backupPath.resolve(file.getFileName() + DUOI_FILE_TAM);
+
+        long batDau = System.currentTimeMillis();
+        HeQuanTri heQuanTri = backupRepo.getHeQuanTri();
+        List<BangInfo> bangs = backupRepo.findBangTheoThuTuKhoaNgoai();
+        List<BangBackup> ketQua = new ArrayList<>(bangs.size());
+        long tongSoDong = 0;
 
-        // Tên file backup
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-        String backupFileName = "backup_" + timestamp + ".sql";
-        String backupFilePath = backupDirectory + File.separator + backupFileName;
+        GhiZip ghiZip = null;
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(fileTam, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), BUFFER_FILE))) {
+            zip.setLevel(Deflater.BEST_SPEED);
+            ghiZip = new GhiZip(zip);
+            for (BangInfo bang : bangs) {
+                BangBackup b;
+                if (thayDoi == null) {
+                    b = ghiBang(ghiZip, bang);
+                } else if (thayDoi.containsKey(bang.ten())) {
+                    b = ghiBangTangDan(ghiZip, bang, thayDoi.get(bang.ten()));
+                } else {
+                    continue;
+                }
+                ketQua.add(b);
+                tongSoDong += b.soDong();
+            }
+            // Danh sách chunk của các bảng chỉ đầy đủ sau khi mọi chunk đã nén và ghi xong
+            ghiZip.ghiHet();
 
-        // TODO: Thực hiện backup database
-        // Có thể sử dụng SQL Server backup command hoặc export data
-        // Tạm thời tạo file placeholder
-        
-        File backupFile = new File(backupFilePath);
-        backupFile.createNewFile();
-        
-        // Ghi thông tin backup vào file
-        try (FileOutputStream fos = new FileOutputStream(backupFile)) {
-            String info = String.format(
-                "-- Backup created at: %s\n" +
-                "-- Database: %s\n" +
-                "-- This is a placeholder backup file\n" +
-                "-- TODO: Implement actual database backup\n",
-                LocalDateTime.now(),
-                extractDatabaseName(datasourceUrl)
-            );
-            fos.write(info.getBytes());
+            long thoiGianMs = System.currentTimeMillis() - batDau;
+            BackupManifestDTO manifest = new BackupManifestDTO(PHIEN_BAN, loai, taoLuc.toString(),
+                extractDatabaseName(datasourceUrl), heQuanTri.name(), backupTruoc,
+                nhatKyTu != null ? nhatKyTu.toString() : null, ketQua, tongSoDong, thoiGianMs);
+            zip.putNextEntry(new ZipEntry(MANIFEST));
+            zip.write(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(manifest));
+            zip.closeEntry();
+        } catch (IOException | RuntimeException e) {
+            if (ghiZip != null) {
+                ghiZip.huy();
+            }
+            Files.deleteIfExists(fileTam);
+            throw e;
         }
+        Files.move(fileTam, file, StandardCopyOption.ATOMIC_MOVE);
 
-        return backupFilePath;
+        long thoiGianMs = Math.max(1, System.currentTimeMillis() - batDau);
+        Map<String, Object> result = thongKe(tongSoDong, thoiGianMs);
+        result.put("backupPath", file.toString());
+        result.put("fileName", file.getFileName().toString());
+        result.put("loai", loai);
+        result.put("soBang", ketQua.size());
+        result.put("kichThuoc", Files.size(file));
+        log.info("Backup {} {}: {} bảng, {} dòng, {} byte trong {} ms ({} dòng/giây)", loai, file.getFileName(),
+            ketQua.size(), tongSoDong, result.get("kichThuoc"), thoiGianMs, result.get("soDongMoiGiay"));
+        return result;
     }
 
     /**
-     * Khôi phục từ backup
+     * Ghi một bảng thành các chunk trong file ZIP.
      */
-    public void restoreBackup(String backupFilePath) throws IOException {
-        File backupFile = new File(backupFilePath);
-        if (!backupFile.exists()) {
-            throw new IOException("File backup không tồn tại: " + backupFilePath);
+    private BangBackup ghiBang(GhiZip zip, BangInfo bang) throws IOException {
+        GhiChunk ghi = new GhiChunk(zip, bang, false);
+        try {
+            backupRepo.docBang(bang, ghi);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
+        ghi.dongChunk();
+        return new BangBackup(bang.ten(), cotBackup(bang), ghi.soDong, ghi.chunks, true, List.of());
+    }
 
-        // TODO: Thực hiện restore database
-        // Có thể sử dụng SQL Server restore command hoặc import data
-        System.out.println("Restore từ file: " + backupFilePath);
+    /**
+     * Ghi trạng thái hiện tại của các dòng thay đổi; khóa trong nhật ký không còn dòng -> đã bị xóa.
+     * Bảng thay đổi không rõ khóa (hoặc không có khóa chính một cột) thì chép cả bảng.
+     */
+    private BangBackup ghiBangTangDan(GhiZip zip, BangInfo bang, ThayDoiBang thayDoi) throws IOException {
+        Optional<CotInfo> cotKhoa = bang.cotKhoa();
+        if (thayDoi.caBang() || cotKhoa.isEmpty()) {
+            return ghiBang(zip, bang);
+        }
+        boolean khoaSo = cotKhoa.get().kieu() == Kieu.INT || cotKhoa.get().kieu() == Kieu.LONG;
+        Long tuKhoa = khoaSo ? thayDoi.tuKhoa() : null;
+
+        GhiChunk ghi = new GhiChunk(zip, bang, true);
+        List<Object> canDoc = new ArrayList<>();
+        for (String k : thayDoi.khoa()) {
+            Object khoa = giaTriKhoa(cotKhoa.get(), k);
+            // Khóa > tuKhoa đã nằm trong lần đọc theo khoảng bên dưới
+            if (khoa != null && (tuKhoa == null || (Long) khoa <= tuKhoa)) {
+                canDoc.add(khoa);
+            }
+        }
+        try {
+            if (tuKhoa != null) {
+                backupRepo.docBangTuKhoa(bang, tuKhoa, ghi);
+            }
+            backupRepo.docBangTheoKhoa(bang, canDoc, ghi);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        ghi.dongChunk();
+
+        List<String> khoaXoa = new ArrayList<>();
+        for (String k : thayDoi.khoa()) {
+            if (!ghi.khoaDaDoc.contains(k)) {
+                khoaXoa.add(k);
+            }
+        }
+        Collections.sort(khoaXoa);
+        return new BangBackup(bang.ten(), cotBackup(bang), ghi.soDong, ghi.chunks, false, khoaXoa);
+    }
+
+    private static List<CotBackup> cotBackup(BangInfo bang) {
+        List<CotBackup> cot = new ArrayList<>(bang.cot().size());
+        for (CotInfo c : bang.cot()) {
+            cot.add(new CotBackup(c.ten(), c.kieu().name(), c.identity()));
+        }
+        return cot;
+    }
+
+    /**
+     * Khóa chính trong nhật ký (chuỗi) -> giá trị theo kiểu cột; khóa số không hợp lệ -> null.
+     */
+    private static Object giaTriKhoa(CotInfo cot, String khoa) {
+        if (cot.kieu() == Kieu.INT || cot.kieu() == Kieu.LONG) {
+            try {
+                return Long.parseLong(khoa.trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return khoa;
     }
 
     /**
-     * Lấy danh sách các file backup
+     * Nhận từng dòng từ cursor, mã hóa vào bộ đệm của chunk hiện tại; đủ soDongMoiChunk dòng
+     * (hoặc KICH_THUOC_CHUNK_TOI_DA byte) thì giao chunk cho GhiZip nén và mở chunk mới.
+     */
+    private final class GhiChunk implements RowCallbackHandler {
+        private final GhiZip zip;
+        private final BangInfo bang;
+        private final List<ChunkBackup> chunks = new ArrayList<>();
+        private final Set<String> khoaDaDoc = new HashSet<>();
+        private final int viTriKhoa;
+        private long soDong;
+        private int soChunk;
+
+        private BoDem boDem;
+        private DataOutputStream out;
+        private long soDongTrongChunk;
+
+        GhiChunk(GhiZip zip, BangInfo bang, boolean ghiNhanKhoa) {
+            this.zip = zip;
+            this.bang = bang;
+            this.viTriKhoa = ghiNhanKhoa ? bang.cot().indexOf(bang.cotKhoa().orElseThrow()) + 1 : 0;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            try {
+                if (out == null) {
+                    boDem = new BoDem();
+                    out = new DataOutputStream(new BufferedOutputStream(boDem, BUFFER_SIZE));
+                    soDongTrongChunk = 0;
+                }
+                List<CotInfo> cot = bang.cot();
+                for (int i = 0; i < cot.size(); i++) {
+                    BackupRowCodec.ghi(rs, i + 1, cot.get(i).kieu(), out);
+                }
+                if (viTriKhoa > 0) {
+                    khoaDaDoc.add(rs.getString(viTriKhoa));
+                }
+                soDong++;
+                if (++soDongTrongChunk >= soDongMoiChunk || out.size() >= KICH_THUOC_CHUNK_TOI_DA) {
+                    dongChunk();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void dongChunk() throws IOException {
+            if (out == null) {
+                return;
+            }
+            out.flush();
+            String tenFile = String.format("data/%s/%05d%s", bang.ten(), ++soChunk, DUOI_CHUNK_NEN);
+            zip.gui(tenFile, boDem, soDongTrongChunk, chunks);
+            out = null;
+            boDem = null;
+        }
+    }
+
+    /** ByteArrayOutputStream cho phép lấy mảng bên trong, không phải chép khi giao cho worker. */
+    private static final class BoDem extends ByteArrayOutputStream {
+        BoDem() {
+            super(BUFFER_SIZE);
+        }
+
+        byte[] mang() {
+            return buf;
+        }
+    }
+
+    private record ChunkDaNen(String file, long soDong, String sha256, byte[] duLieu, int doDai, long crc) {}
+
+    /**
+     * Nén chunk song song trên backupExecutor, ghi vào ZIP tuần tự theo thứ tự gửi.
+     * Cửa sổ trượt: chỉ giữ tối đa soChunkCungLuc chunk đang nén / chờ ghi.
+     */
+    private final class GhiZip {
+        private final ZipOutputStream zip;
+        private final Deque<Future<ChunkDaNen>> dangNen = new ArrayDeque<>();
+        private final Deque<List<ChunkBackup>> choGhi = new ArrayDeque<>();
+
+        GhiZip(ZipOutputStream zip) {
+            this.zip = zip;
+        }
+
+        /**
+         * Giao một chunk đã mã hóa; ChunkBackup được thêm vào chunks khi chunk đã ghi xong.
+         */
+        void gui(String tenFile, BoDem boDem, long soDong, List<ChunkBackup> chunks) throws IOException {
+            if (dangNen.size() >= soChunkCungLuc) {
+                ghiChunkCuNhat();
+            }
+            dangNen.add(backupExecutor.submit(() -> nen(tenFile, boDem.mang(), boDem.size(), soDong)));
+            choGhi.add(chunks);
+        }
+
+        void ghiHet() throws IOException {
+            while (!dangNen.isEmpty()) {
+                ghiChunkCuNhat();
+            }
+        }
+
+        /** Lỗi giữa chừng -> bỏ các chunk chưa nén. */
+        void huy() {
+            for (Future<ChunkDaNen> f : dangNen) {
+                f.cancel(false);
+            }
+            dangNen.clear();
+        }
+
+        private void ghiChunkCuNhat() throws IOException {
+            ChunkDaNen chunk = ketQua(dangNen.poll());
+            // Dữ liệu đã nén -> lưu STORED, không nén lại trên thread này
+            ZipEntry entry = new ZipEntry(chunk.file());
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(chunk.doDai());
+            entry.setCompressedSize(chunk.doDai());
+            entry.setCrc(chunk.crc());
+            zip.putNextEntry(entry);
+            zip.write(chunk.duLieu(), 0, chunk.doDai());
+            zip.closeEntry();
+            choGhi.poll().add(new ChunkBackup(chunk.file(), chunk.soDong(), chunk.sha256()));
+        }
+    }
+
+    /**
+     * Chạy trên backupExecutor: SHA-256 dữ liệu gốc, nén zlib, CRC32 dữ liệu đã nén (cho entry STORED).
+     */
+    private static ChunkDaNen nen(String tenFile, byte[] duLieu, int doDai, long soDong) throws IOException {
+        MessageDigest sha = sha256();
+        sha.update(duLieu, 0, doDai);
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        BoDem daNen = new BoDem();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(daNen, deflater, BUFFER_SIZE)) {
+            out.write(duLieu, 0, doDai);
+        } finally {
+            deflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(daNen.mang(), 0, daNen.size());
+        return new ChunkDaNen(tenFile, soDong, HexFormat.of().formatHex(sha.digest()),
+            daNen.mang(), daNen.size(), crc.getValue());
+    }
+
+    private static <T> T ketQua(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Bị ngắt khi đang xử lý chunk backup", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Lỗi xử lý chunk backup", e.getCause());
+        }
+    }
+
+    /**
+     * Backup định kỳ (tắt mặc định, bật bằng app.backup.cron): tăng dần nếu backup đầy đủ gốc của
+     * chuỗi hiện tại chưa quá app.backup.full-interval-days ngày, ngược lại (hoặc khi không tạo
+     * được backup tăng dần) thì backup đầy đủ.
+     */
+    @Scheduled(cron = "${app.backup.cron:-}")
+    public void backupDinhKy() {
+        try {
+            List<String> backups = listBackups();
+            if (!backups.isEmpty()) {
+                try {
+                    LocalDateTime goc = LocalDateTime.parse(docChuoiManifest(backups.get(0)).get(0).taoLuc());
+                    if (goc.isAfter(LocalDateTime.now().minusDays(soNgayGiuaBackupDayDu))) {
+                        createIncrementalBackup();
+                        return;
+                    }
+                } catch (IllegalStateException e) {
+                    log.warn("Không tạo được backup tăng dần ({}), chuyển sang backup đầy đủ", e.getMessage());
+                }
+            }
+            createBackup();
+        } catch (Exception e) {
+            log.error("Lỗi backup định kỳ: {}", e.getMessage(), e);
+        }
+    }
+
+    // ===== Restore =====
+
+    /**
+     * Một backup trong chuỗi cần áp khi restore: các bảng được chọn (bang), đã đối chiếu với schema hiện tại.
+     */
+    private record BackupCanApDung(String fileName, ZipFile zip, BackupManifestDTO manifest, List<BangBackup> bang,
+                                   List<BangInfo> bangDich, List<List<CotInfo>> cotDich) {}
+
+    private record ChunkCanKiemTra(ZipFile zip, ChunkBackup chunk) {}
+
+    /**
+     * Khôi phục database từ file backup (ghi đè dữ liệu các bảng có trong backup).
+     * File tăng dần: khôi phục backup đầy đủ gốc rồi áp các backup tăng dần tới file này.
+     *
+     * @param chiBang chỉ khôi phục các bảng này (null / rỗng = mọi bảng trong backup)
+     * @return fileName, soBackup (số file đã áp), soBang, soDong, thoiGianMs, soDongMoiGiay
+     */
+    @Transactional
+    public Map<String, Object> restoreBackup(String fileName, Collection<String> chiBang) throws IOException {
+        Path file = resolveBackupFile(fileName);
+        if (!Files.isRegularFile(file)) {
+            throw new IOException("File backup không tồn tại: " + fileName);
+        }
+        Set<String> chon = null;
+        if (chiBang != null && !chiBang.isEmpty()) {
+            chon = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            chon.addAll(chiBang);
+        }
+        batDau();
+        List<BackupCanApDung> chuoi = new ArrayList<>();
+        try {
+            long batDau = System.currentTimeMillis();
+            HeQuanTri heQuanTri = backupRepo.getHeQuanTri();
+            Map<String, BangInfo> hienCo = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (BangInfo bang : backupRepo.findBangTheoThuTuKhoaNgoai()) {
+                hienCo.put(bang.ten(), bang);
+            }
+
+            // Mở cả chuỗi, đối chiếu schema và checksum trước khi xóa gì
+            String ten = fileName;
+            while (true) {
+                if (chuoi.size() >= SO_BACKUP_TOI_DA_TRONG_CHUOI) {
+                    throw new IllegalStateException("Chuỗi backup tăng dần của " + fileName + " quá dài hoặc bị lặp");
+                }
+                Path f = resolveBackupFile(ten);
+                if (!Files.isRegularFile(f)) {
+                    throw new IllegalStateException("Thiếu backup " + ten + " trong chuỗi của " + fileName);
+                }
+                ZipFile zip = new ZipFile(f.toFile());
+                BackupManifestDTO manifest;
+                try {
+                    manifest = docManifest(zip);
+                } catch (IOException | RuntimeException e) {
+                    zip.close();
+                    throw e;
+                }
+                chuoi.add(0, doiChieu(ten, zip, manifest, hienCo, chon));
+                if (!LOAI_TANG_DAN.equals(manifest.loai())) {
+                    break;
+                }
+                ten = manifest.backupTruoc();
+            }
+            if (chon != null) {
+                Set<String> coTrongBackup = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+                for (BackupCanApDung b : chuoi) {
+                    b.bang().forEach(bang -> coTrongBackup.add(bang.ten()));
+                }
+                for (String bang : chon) {
+                    if (!coTrongBackup.contains(bang)) {
+                        throw new IllegalArgumentException("Bảng " + bang + " không có trong backup " + fileName);
+                    }
+                }
+            }
+            List<ChunkCanKiemTra> chunks = new ArrayList<>();
+            for (BackupCanApDung b : chuoi) {
+                for (BangBackup bang : b.bang()) {
+                    bang.chunk().forEach(chunk -> chunks.add(new ChunkCanKiemTra(b.zip(), chunk)));
+                }
+            }
+            kiemTraChecksum(chunks);
+
+            long tongSoDong = khoiPhucDayDu(chuoi.get(0), heQuanTri);
+            for (int i = 1; i < chuoi.size(); i++) {
+                tongSoDong += apDungTangDan(chuoi.get(i), heQuanTri);
+            }
+            // Backup tăng dần kế tiếp phải bắt đầu từ một backup đầy đủ mới
+            nhatKyRepo.ghiNhanCaBang(NhatKyThayDoiRepository.DA_RESTORE);
+            // Bảng Users có thể đã đổi (role, tài khoản bị xóa)
+            principalCache.xoaHet();
+            // Dữ liệu được chèn bằng JDBC, không qua entity listener
+            timKiemService.xayDungLaiSauCommit();
+            // BangGiaDichVu, LoaiPhi, LichSuGia cũng được chèn bằng JDBC: bỏ cache giá và index lịch sử giá
+            // (cả hai xóa lại sau khi transaction kết thúc)
+            bangGiaService.clearGiaCache();
+            lichSuGiaService.invalidateIndex();
+            // Sau cùng: với H2, ALTER TABLE tự commit transaction
+            Map<String, BangInfo> daKhoiPhuc = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (BackupCanApDung b : chuoi) {
+                b.bangDich().forEach(bang -> daKhoiPhuc.put(bang.ten(), bang));
+            }
+            for (BangInfo bang : daKhoiPhuc.values()) {
+                backupRepo.datLaiIdentity(heQuanTri, bang);
+            }
+
+            long thoiGianMs = Math.max(1, System.currentTimeMillis() - batDau);
+            Map<String, Object> result = thongKe(tongSoDong, thoiGianMs);
+            result.put("fileName", file.getFileName().toString());
+            result.put("soBackup", chuoi.size());
+            result.put("soBang", daKhoiPhuc.size());
+            log.info("Restore {} ({} file): {} dòng trong {} ms ({} dòng/giây)", file.getFileName(),
+                chuoi.size(), tongSoDong, thoiGianMs, result.get("soDongMoiGiay"));
+            return result;
+        } finally {
+            for (BackupCanApDung b : chuoi) {
+                try {
+                    b.zip().close();
+                } catch (IOException e) {
+                    log.warn("Không đóng được file backup {}: {}", b.fileName(), e.getMessage());
+                }
+            }
+            dangChay.unlock();
+        }
+    }
+
+    /**
+     * Bảng / cột của một backup (chỉ các bảng được chọn, chon = null: mọi bảng) so với schema hiện tại.
+     */
+    private static BackupCanApDung doiChieu(String fileName, ZipFile zip, BackupManifestDTO manifest,
+                                            Map<String, BangInfo> hienCo, Set<String> chon) {
+        List<BangBackup> bangs = new ArrayList<>(manifest.bang().size());
+        List<BangInfo> bangDich = new ArrayList<>(manifest.bang().size());
+        List<List<CotInfo>> cotDich = new ArrayList<>(manifest.bang().size());
+        for (BangBackup b : manifest.bang()) {
+            if (chon != null && !chon.contains(b.ten())) {
+                continue;
+            }
+            BangInfo bang = hienCo.get(b.ten());
+            if (bang == null) {
+                throw new IllegalStateException("Bảng " + b.ten() + " trong backup không còn trong database");
+            }
+            if (LOAI_TANG_DAN.equals(manifest.loai()) && !b.caBang() && bang.khoaChinh() == null) {
+                throw new IllegalStateException("Bảng " + b.ten() + " không còn khóa chính một cột, không áp được " + fileName);
+            }
+            bangs.add(b);
+            bangDich.add(bang);
+            cotDich.add(doiChieuCot(b, bang));
+        }
+        return new BackupCanApDung(fileName, zip, manifest, bangs, bangDich, cotDich);
+    }
+
+    /**
+     * Xóa dữ liệu các bảng được chọn (bảng con trước) rồi chèn lại (bảng cha trước).
+     */
+    private long khoiPhucDayDu(BackupCanApDung backup, HeQuanTri heQuanTri) throws IOException {
+        List<BangInfo> bangDich = backup.bangDich();
+        for (int i = bangDich.size() - 1; i >= 0; i--) {
+            backupRepo.xoaDuLieu(bangDich.get(i).ten());
+        }
+
+        long tongSoDong = 0;
+        for (int i = 0; i < bangDich.size(); i++) {
+            BangBackup b = backup.bang().get(i);
+            if (b.soDong() == 0) {
+                continue;
+            }
+            backupRepo.setIdentityInsert(heQuanTri, bangDich.get(i), true);
+            for (ChunkBackup chunk : b.chunk()) {
+                docChunk(backup.zip(), b, chunk, backup.cotDich().get(i));
+            }
+            backupRepo.setIdentityInsert(heQuanTri, bangDich.get(i), false);
+            tongSoDong += b.soDong();
+        }
+        return tongSoDong;
+    }
+
+    /**
+     * Áp một backup tăng dần: xóa các dòng đã xóa (bảng con trước), rồi UPDATE / INSERT các dòng
+     * thay đổi (bảng cha trước). Bảng chép cả bảng thì thay toàn bộ.
+     */
+    private long apDungTangDan(BackupCanApDung backup, HeQuanTri heQuanTri) throws IOException {
+        List<BangInfo> bangDich = backup.bangDich();
+        List<BangBackup> bangs = backup.bang();
+        for (int i = bangDich.size() - 1; i >= 0; i--) {
+            BangBackup b = bangs.get(i);
+            BangInfo bang = bangDich.get(i);
+            if (b.caBang()) {
+                backupRepo.xoaDuLieu(bang.ten());
+            } else if (b.khoaXoa() != null && !b.khoaXoa().isEmpty()) {
+                CotInfo cotKhoa = bang.cotKhoa().orElseThrow();
+                List<Object> khoa = new ArrayList<>(b.khoaXoa().size());
+                for (String k : b.khoaXoa()) {
+                    Object v = giaTriKhoa(cotKhoa, k);
+                    if (v != null) {
+                        khoa.add(v);
+                    }
+                }
+                backupRepo.xoaTheoKhoa(bang, khoa);
+            }
+        }
+
+        long tongSoDong = 0;
+        for (int i = 0; i < bangDich.size(); i++) {
+            BangBackup b = bangs.get(i);
+            if (b.soDong() == 0) {
+                continue;
+            }
+            BangInfo bang = bangDich.get(i);
+            backupRepo.setIdentityInsert(heQuanTri, bang, true);
+            for (ChunkBackup chunk : b.chunk()) {
+                if (b.caBang()) {
+                    docChunk(backup.zip(), b, chunk, backup.cotDich().get(i));
+                } else {
+                    docChunkCapNhat(backup.zip(), bang, chunk, backup.cotDich().get(i));
+                }
+            }
+            backupRepo.setIdentityInsert(heQuanTri, bang, false);
+            tongSoDong += b.soDong();
+        }
+        return tongSoDong;
+    }
+
+    /**
+     * Cột đích theo thứ tự cột trong backup; cột bị xóa khỏi schema -> lỗi,
+     * cột mới thêm sau khi backup -> nhận giá trị mặc định.
+     */
+    private static List<CotInfo> doiChieuCot(BangBackup b, BangInfo bang) {
+        Map<String, CotInfo> theoTen = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (CotInfo c : bang.cot()) {
+            theoTen.put(c.ten(), c);
+        }
+        List<CotInfo> cot = new ArrayList<>(b.cot().size());
+        for (CotBackup cb : b.cot()) {
+            CotInfo c = theoTen.get(cb.ten());
+            if (c == null) {
+                throw new IllegalStateException("Cột " + b.ten() + "." + cb.ten() + " trong backup không còn trong database");
+            }
+            // Kiểu lưu trong backup quyết định cách đọc, sqlType hiện tại dùng cho NULL
+            cot.add(new CotInfo(c.ten(), c.sqlType(), Kieu.valueOf(cb.kieu()), c.identity()));
+        }
+        return cot;
+    }
+
+    /**
+     * Đọc (giải nén) các chunk một lượt để so SHA-256 với manifest, trước khi đụng tới dữ liệu.
+     * Các chunk được kiểm tra song song trên backupExecutor (ZipFile cho phép đọc nhiều entry cùng lúc).
+     */
+    private void kiemTraChecksum(List<ChunkCanKiemTra> chunks) throws IOException {
+        Deque<Future<Void>> dangKiemTra = new ArrayDeque<>();
+        try {
+            for (ChunkCanKiemTra c : chunks) {
+                if (dangKiemTra.size() >= soChunkCungLuc) {
+                    ketQua(dangKiemTra.poll());
+                }
+                dangKiemTra.add(backupExecutor.submit(() -> {
+                    kiemTraChecksum(c.zip(), c.chunk());
+                    return null;
+                }));
+            }
+            while (!dangKiemTra.isEmpty()) {
+                ketQua(dangKiemTra.poll());
+            }
+        } finally {
+            for (Future<Void> f : dangKiemTra) {
+                f.cancel(false);
+            }
+        }
+    }
+
+    private static void kiemTraChecksum(ZipFile zip, ChunkBackup chunk) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        MessageDigest sha = sha256();
+        try (InputStream in = new DigestInputStream(moChunk(zip, chunk), sha)) {
+            while (in.read(buffer) != -1) {
+                // chỉ tính checksum
+            }
+        }
+        if (!HexFormat.of().formatHex(sha.digest()).equals(chunk.sha256())) {
+            throw new IllegalStateException("Backup bị hỏng: sai checksum " + chunk.file());
+        }
+    }
+
+    private void docChunk(ZipFile zip, BangBackup b, ChunkBackup chunk, List<CotInfo> cot) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(moChunk(zip, chunk), BUFFER_SIZE))) {
+            try {
+                backupRepo.chenHangLoat(b.ten(), cot, chunk.soDong(), ps -> {
+                    for (int i = 0; i < cot.size(); i++) {
+                        BackupRowCodec.doc(in, cot.get(i).kieu(), ps, i + 1, cot.get(i).sqlType());
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw new IllegalStateException("Backup bị hỏng: không đọc được " + chunk.file(), e.getCause());
+            }
+            if (in.read() != -1) {
+                throw new IllegalStateException("Backup bị hỏng: số dòng không khớp " + chunk.file());
+            }
+        }
+    }
+
+    private void docChunkCapNhat(ZipFile zip, BangInfo bang, ChunkBackup chunk, List<CotInfo> cot) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(moChunk(zip, chunk), BUFFER_SIZE))) {
+            try {
+                backupRepo.capNhatHoacChen(bang, cot, chunk.soDong(), () -> {
+                    Object[] dong = new Object[cot.size()];
+                    for (int i = 0; i < cot.size(); i++) {
+                        dong[i] = BackupRowCodec.docGiaTri(in, cot.get(i).kieu());
+                    }
+                    return dong;
+                });
+            } catch (UncheckedIOException e) {
+                throw new IllegalStateException("Backup bị hỏng: không đọc được " + chunk.file(), e.getCause());
+            }
+            if (in.read() != -1) {
+                throw new IllegalStateException("Backup bị hỏng: số dòng không khớp " + chunk.file());
+            }
+        }
+    }
+
+    /**
+     * Dữ liệu chưa nén của chunk: .bin.z (phiên bản 2) là zlib lưu STORED, .bin (phiên bản 1) do ZIP nén.
+     */
+    private static InputStream moChunk(ZipFile zip, ChunkBackup chunk) throws IOException {
+        ZipEntry entry = zip.getEntry(chunk.file());
+        if (entry == null) {
+            throw new IllegalStateException("Backup bị hỏng: thiếu " + chunk.file());
+        }
+        InputStream in = zip.getInputStream(entry);
+        if (!chunk.file().endsWith(DUOI_CHUNK_NEN)) {
+            return in;
+        }
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    private BackupManifestDTO docManifest(ZipFile zip) throws IOException {
+        ZipEntry entry = zip.getEntry(MANIFEST);
+        if (entry == null) {
+            throw new IOException("File không phải backup hợp lệ (thiếu " + MANIFEST + ")");
+        }
+        try (InputStream in = zip.getInputStream(entry)) {
+            BackupManifestDTO manifest = objectMapper.readValue(in, BackupManifestDTO.class);
+            if (manifest.phienBan() > PHIEN_BAN) {
+                throw new IOException("Backup được tạo bởi phiên bản mới hơn (" + manifest.phienBan() + ")");
+            }
+            return manifest;
+        }
+    }
+
+    /**
+     * Manifest của chuỗi backup kết thúc ở fileName, backup đầy đủ gốc đứng đầu.
+     */
+    private List<BackupManifestDTO> docChuoiManifest(String fileName) throws IOException {
+        LinkedList<BackupManifestDTO> chuoi = new LinkedList<>();
+        String ten = fileName;
+        while (chuoi.size() < SO_BACKUP_TOI_DA_TRONG_CHUOI) {
+            Path f = resolveBackupFile(ten);
+            if (!Files.isRegularFile(f)) {
+                throw new IllegalStateException("Thiếu backup " + ten + " trong chuỗi của " + fileName);
+            }
+            try (ZipFile zip = new ZipFile(f.toFile())) {
+                chuoi.addFirst(docManifest(zip));
+            }
+            if (!LOAI_TANG_DAN.equals(chuoi.getFirst().loai())) {
+                return chuoi;
+            }
+            ten = chuoi.getFirst().backupTruoc();
+        }
+        throw new IllegalStateException("Chuỗi backup tăng dần của " + fileName + " quá dài hoặc bị lặp");
+    }
+
+    /**
+     * Manifest của một file backup (danh sách bảng, số dòng) để chọn bảng khi restore.
+     */
+    public BackupManifestDTO getManifest(String fileName) throws IOException {
+        Path file = resolveBackupFile(fileName);
+        if (!Files.isRegularFile(file)) {
+            throw new IOException("File backup không tồn tại: " + fileName);
+        }
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            return docManifest(zip);
+        }
+    }
+
+    /**
+     * Kiểm tra toàn vẹn một file backup (SHA-256 mọi chunk) mà không đụng tới database.
+     *
+     * @return fileName, loai, soChunk, soDong, thoiGianMs, soDongMoiGiay
+     */
+    public Map<String, Object> kiemTraBackup(String fileName) throws IOException {
+        Path file = resolveBackupFile(fileName);
+        if (!Files.isRegularFile(file)) {
+            throw new IOException("File backup không tồn tại: " + fileName);
+        }
+        long batDau = System.currentTimeMillis();
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            BackupManifestDTO manifest = docManifest(zip);
+            List<ChunkCanKiemTra> chunks = new ArrayList<>();
+            for (BangBackup b : manifest.bang()) {
+                b.chunk().forEach(chunk -> chunks.add(new ChunkCanKiemTra(zip, chunk)));
+            }
+            kiemTraChecksum(chunks);
+
+            Map<String, Object> result = thongKe(manifest.tongSoDong(), Math.max(1, System.currentTimeMillis() - batDau));
+            result.put("fileName", file.getFileName().toString());
+            result.put("loai", manifest.loai());
+            result.put("soChunk", chunks.size());
+            return result;
+        }
+    }
+
+    /**
+     * Lấy danh sách các file backup (mới nhất trước)
      */
     public List<String> listBackups() {
         List<String> backups = new ArrayList<>();
         Path backupPath = Paths.get(backupDirectory);
-        
+
         if (Files.exists(backupPath)) {
-            try {
-                Files.list(backupPath)
-                    .filter(Files::isRegularFile)
-                    .filter(path -> path.toString().endsWith(".sql"))
+            try (Stream<Path> files = Files.list(backupPath)) {
+                files.filter(Files::isRegularFile)
+                    .filter(path -> path.toString().endsWith(DUOI_FILE))
                     .forEach(path -> backups.add(path.getFileName().toString()));
             } catch (IOException e) {
                 throw new RuntimeException("Lỗi đọc danh sách backup", e);
             }
         }
-        
+        // Tên file chứa thời điểm tạo, "_inc" đứng sau backup đầy đủ cùng giây
+        backups.sort(Comparator.reverseOrder());
         return backups;
     }
 
@@ -109,7 +995,7 @@ public class BackupService {
      * Xóa file backup cũ
      */
     public void deleteBackup(String fileName) throws IOException {
-        Path backupPath = Paths.get(backupDirectory, fileName);
+        Path backupPath = resolveBackupFile(fileName);
         if (Files.exists(backupPath)) {
             Files.delete(backupPath);
         } else {
@@ -118,31 +1004,45 @@ public class BackupService {
     }
 
     /**
-     * Tạo backup và nén thành ZIP
+     * Tạo backup để tải về (file backup đã là ZIP).
      */
     public String createBackupZip() throws IOException {
-        String backupFile = createBackup();
-        String zipFile = backupFile.replace(".sql", ".zip");
-        
-        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile));
-             FileInputStream fis = new FileInputStream(backupFile)) {
-            
-            ZipEntry entry = new ZipEntry(new File(backupFile).getName());
-            zos.putNextEntry(entry);
-            
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = fis.read(buffer)) > 0) {
-                zos.write(buffer, 0, length);
-            }
-            
-            zos.closeEntry();
-        }
-        
-        // Xóa file SQL gốc
-        Files.delete(Paths.get(backupFile));
-        
-        return zipFile;
+        return (String) createBackup().get("backupPath");
+    }
+
+    // ===== Tiện ích =====
+
+    private void batDau() {
+        if (!dangChay.tryLock()) {
+            throw new IllegalStateException("Đang có backup / restore khác chạy, vui lòng thử lại sau");
+        }
+    }
+
+    /**
+     * Chỉ nhận tên file trong thư mục backup (không cho phép đường dẫn).
+     */
+    private Path resolveBackupFile(String fileName) throws IOException {
+        if (fileName == null || fileName.isBlank() || !fileName.equals(Paths.get(fileName).getFileName().toString())
+                || fileName.contains("..")) {
+            throw new IOException("Tên file backup không hợp lệ: " + fileName);
+        }
+        return Paths.get(backupDirectory).resolve(fileName);
+    }
+
+    private static Map<String, Object> thongKe(long soDong, long thoiGianMs) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("soDong", soDong);
+        result.put("thoiGianMs", thoiGianMs);
+        result.put("soDongMoiGiay", soDong * 1000 / thoiGianMs);
+        return result;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     private String extractDatabaseName(String url) {
@@ -161,4 +1061,3 @@ public class BackupService {
         return "Unknown";
     }
 }
-
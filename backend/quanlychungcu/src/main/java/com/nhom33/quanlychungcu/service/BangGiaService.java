@@ -12,10 +12,16 @@ import com.nhom33.quanlychungcu.repository.ToaNhaRepository;
 
 import jakarta.transaction.Transactional;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 /**
  * Service: Quản lý Bảng giá dịch vụ theo tòa nhà.
@@ -24,6 +30,10 @@ import java.util.*;
  * - Cho phép cấu hình giá riêng cho từng loại phí tại từng tòa nhà.
  * - Hỗ trợ bulk upsert: Insert nếu chưa có, Update nếu đã tồn tại.
  * - Cung cấp method lấy giá với logic ưu tiên: BangGiaDichVu > LoaiPhi.DonGia.
+ * - Kết quả getDonGiaApDung được cache theo (loaiPhiId, toaNhaId); cache bị xóa đúng khóa
+ *   khi upsert/xóa bảng giá hoặc khi LoaiPhi thay đổi (LoaiPhiService gọi evictLoaiPhi).
+ * - Mọi thay đổi giá được ghi thành phiên bản trong LichSuGia; tính tiền đợt thu dùng
+ *   giá có hiệu lực tại NgayBatDau của đợt thu (xem LichSuGiaService).
  */
 @Service
 public class BangGiaService {
@@ -31,14 +41,42 @@ public class BangGiaService {
     private final BangGiaDichVuRepository bangGiaRepository;
     private final LoaiPhiRepository loaiPhiRepository;
     private final ToaNhaRepository toaNhaRepository;
+    private final InvoiceDirtyTrackingService dirtyTrackingService;
+    private final LichSuGiaService lichSuGiaService;
+
+    // Cache giá áp dụng: (loaiPhiId, toaNhaId) -> đơn giá + nguồn
+    private final Map<KhoaGia, GiaApDung> giaCache = new ConcurrentHashMap<>();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong cacheEvictions = new AtomicLong();
+    // Tăng mỗi lần evict: giá nạp trong lúc có evict có thể đã cũ, không được giữ trong cache
+    private final AtomicLong theHeCache = new AtomicLong();
+
+    /**
+     * Đơn giá áp dụng và nguồn của nó: "BangGiaDichVu" (giá riêng) hoặc "LoaiPhi" (giá mặc định).
+     */
+    public record GiaApDung(BigDecimal donGia, String nguon) {
+        public boolean isGiaRieng() {
+            return NGUON_BANG_GIA.equals(nguon);
+        }
+    }
+
+    public static final String NGUON_BANG_GIA = "BangGiaDichVu";
+    public static final String NGUON_LOAI_PHI = "LoaiPhi";
+
+    private record KhoaGia(Integer loaiPhiId, Integer toaNhaId) {}
 
     public BangGiaService(
             BangGiaDichVuRepository bangGiaRepository,
             LoaiPhiRepository loaiPhiRepository,
-            ToaNhaRepository toaNhaRepository) {
+            ToaNhaRepository toaNhaRepository,
+            InvoiceDirtyTrackingService dirtyTrackingService,
+            LichSuGiaService lichSuGiaService) {
         this.bangGiaRepository = bangGiaRepository;
         this.loaiPhiRepository = loaiPhiRepository;
         this.toaNhaRepository = toaNhaRepository;
+        this.dirtyTrackingService = dirtyTrackingService;
+        this.lichSuGiaService = lichSuGiaService;
     }
 
     // ===== CORE: Lấy giá với logic ưu tiên =====
@@ -55,17 +93,43 @@ public class BangGiaService {
      * @return Đơn giá áp dụng
      */
     public BigDecimal getDonGiaApDung(Integer loaiPhiId, Integer toaNhaId) {
+        return getGiaApDung(loaiPhiId, toaNhaId).donGia();
+    }
+
+    /**
+     * Lấy đơn giá áp dụng kèm nguồn giá (có cache).
+     */
+    public GiaApDung getGiaApDung(Integer loaiPhiId, Integer toaNhaId) {
+        KhoaGia khoa = new KhoaGia(loaiPhiId, toaNhaId);
+        GiaApDung cached = giaCache.get(khoa);
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            return cached;
+        }
+        cacheMisses.incrementAndGet();
+
+        long theHe = theHeCache.get();
+        GiaApDung gia = loadGiaApDung(loaiPhiId, toaNhaId);
+        giaCache.put(khoa, gia);
+        // Kiểm tra sau khi put: evict tăng thế hệ trước khi xóa, nên không sót trường hợp nào
+        if (theHeCache.get() != theHe) {
+            giaCache.remove(khoa, gia);
+        }
+        return gia;
+    }
+
+    private GiaApDung loadGiaApDung(Integer loaiPhiId, Integer toaNhaId) {
         // Ưu tiên 1: Tìm giá riêng
         Optional<BigDecimal> giaRieng = bangGiaRepository.findDonGiaByLoaiPhiAndToaNha(loaiPhiId, toaNhaId);
         if (giaRieng.isPresent()) {
-            return giaRieng.get();
+            return new GiaApDung(giaRieng.get(), NGUON_BANG_GIA);
         }
 
         // Ưu tiên 2: Lấy giá mặc định từ LoaiPhi
         LoaiPhi loaiPhi = loaiPhiRepository.findById(loaiPhiId)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy loại phí với ID: " + loaiPhiId));
         
-        return loaiPhi.getDonGia();
+        return new GiaApDung(loaiPhi.getDonGia(), NGUON_LOAI_PHI);
     }
 
     /**
@@ -79,6 +143,29 @@ public class BangGiaService {
         }
     }
 
+    /**
+     * Lấy đơn giá áp dụng tại một ngày trong quá khứ (theo lịch sử giá).
+     * Không có lịch sử tại ngày đó -> dùng giá hiện tại.
+     */
+    public BigDecimal getDonGiaApDung(Integer loaiPhiId, Integer toaNhaId, LocalDate ngay) {
+        return lichSuGiaService.findDonGiaTaiNgay(loaiPhiId, toaNhaId, ngay)
+                .orElseGet(() -> getDonGiaApDung(loaiPhiId, toaNhaId));
+    }
+
+    /**
+     * Lấy đơn giá áp dụng cho nhiều loại phí tại một tòa nhà vào một ngày (không query từng dòng).
+     * Cùng logic ưu tiên với getDonGiaApDung, dùng cho tính tiền hàng loạt.
+     *
+     * @param toaNhaId  ID tòa nhà
+     * @param loaiPhis  Danh sách loại phí (đã load sẵn, dùng donGia làm giá mặc định)
+     * @param ngay      Ngày áp dụng giá (NgayBatDau của đợt thu)
+     * @return Map loaiPhiId -> đơn giá áp dụng
+     */
+    public Map<Integer, BigDecimal> getDonGiaApDungTheoToaNha(Integer toaNhaId, Collection<LoaiPhi> loaiPhis,
+                                                             LocalDate ngay) {
+        return lichSuGiaService.getDonGiaTaiNgay(toaNhaId, loaiPhis, ngay);
+    }
+
     // ===== CRUD Operations =====
 
     /**
@@ -189,7 +276,11 @@ public class BangGiaService {
             bangGia.setGhiChu(ghiChu);
         }
 
-        return bangGiaRepository.save(bangGia);
+        BangGiaDichVu saved = bangGiaRepository.save(bangGia);
+        evictGia(loaiPhiId, toaNha.getId());
+        lichSuGiaService.ghiNhanGia(loaiPhiId, toaNha.getId(), donGia);
+        dirtyTrackingService.markToaNha(toaNha.getId(), loaiPhiId);
+        return saved;
     }
 
     // ===== DELETE =====
@@ -199,6 +290,11 @@ public class BangGiaService {
      */
     @Transactional
     public void deleteById(Integer id) {
+        bangGiaRepository.findById(id).ifPresent(bg -> {
+            evictGia(bg.getLoaiPhi().getId(), bg.getToaNha().getId());
+            lichSuGiaService.dongGiaRieng(bg.getLoaiPhi().getId(), bg.getToaNha().getId());
+            dirtyTrackingService.markToaNha(bg.getToaNha().getId(), bg.getLoaiPhi().getId());
+        });
         bangGiaRepository.deleteById(id);
     }
 
@@ -208,6 +304,9 @@ public class BangGiaService {
     @Transactional
     public void deleteByLoaiPhiAndToaNha(Integer loaiPhiId, Integer toaNhaId) {
         bangGiaRepository.deleteByLoaiPhiIdAndToaNhaId(loaiPhiId, toaNhaId);
+        evictGia(loaiPhiId, toaNhaId);
+        lichSuGiaService.dongGiaRieng(loaiPhiId, toaNhaId);
+        dirtyTrackingService.markToaNha(toaNhaId, loaiPhiId);
     }
 
     /**
@@ -216,6 +315,9 @@ public class BangGiaService {
     @Transactional
     public void deleteByLoaiPhi(Integer loaiPhiId) {
         bangGiaRepository.deleteByLoaiPhiId(loaiPhiId);
+        evictLoaiPhi(loaiPhiId);
+        lichSuGiaService.dongGiaRieng(loaiPhiId, null);
+        dirtyTrackingService.markToaNha(null, loaiPhiId);
     }
 
     /**
@@ -224,6 +326,83 @@ public class BangGiaService {
     @Transactional
     public void deleteByToaNha(Integer toaNhaId) {
         bangGiaRepository.deleteByToaNhaId(toaNhaId);
+        evict(k -> Objects.equals(k.toaNhaId(), toaNhaId));
+        lichSuGiaService.dongGiaRieng(null, toaNhaId);
+        dirtyTrackingService.markToaNha(toaNhaId, null);
+    }
+
+    /**
+     * Lịch sử giá của một loại phí tại một tòa nhà (toaNhaId = null: giá mặc định).
+     */
+    public List<Map<String, Object>> getLichSuGia(Integer loaiPhiId, Integer toaNhaId) {
+        return lichSuGiaService.getLichSu(loaiPhiId, toaNhaId);
+    }
+
+    // ===== CACHE GIÁ ÁP DỤNG =====
+
+    /**
+     * Xóa cache của một cặp (loại phí, tòa nhà).
+     */
+    public void evictGia(Integer loaiPhiId, Integer toaNhaId) {
+        KhoaGia khoa = new KhoaGia(loaiPhiId, toaNhaId);
+        evict(khoa::equals);
+    }
+
+    /**
+     * Xóa cache của một loại phí tại mọi tòa nhà (đơn giá mặc định thay đổi / loại phí bị xóa).
+     */
+    public void evictLoaiPhi(Integer loaiPhiId) {
+        evict(k -> Objects.equals(k.loaiPhiId(), loaiPhiId));
+    }
+
+    /**
+     * Xóa toàn bộ cache giá.
+     */
+    public void clearGiaCache() {
+        evict(k -> true);
+    }
+
+    /**
+     * Thống kê cache giá (hit/miss/eviction).
+     */
+    public Map<String, Object> getGiaCacheStats() {
+        long hits = cacheHits.get();
+        long misses = cacheMisses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("soPhanTu", giaCache.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", cacheEvictions.get());
+        stats.put("tiLeHit", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        return stats;
+    }
+
+    /**
+     * Xóa khóa ngay, và xóa lại khi transaction kết thúc (commit hoặc rollback): một request đọc
+     * song song có thể đã nạp lại giá cũ trong lúc transaction ghi chưa commit, còn giá nạp
+     * trong chính transaction bị rollback thì không còn đúng.
+     */
+    private void evict(Predicate<KhoaGia> dieuKien) {
+        removeFromCache(dieuKien);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    removeFromCache(dieuKien);
+                }
+            });
+        }
+    }
+
+    private void removeFromCache(Predicate<KhoaGia> dieuKien) {
+        theHeCache.incrementAndGet();
+        giaCache.keySet().removeIf(k -> {
+            if (dieuKien.test(k)) {
+                cacheEvictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        });
     }
 
     // ===== RESPONSE BUILDERS =====
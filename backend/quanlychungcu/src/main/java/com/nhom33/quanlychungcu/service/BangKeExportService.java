@@ -0,0 +1,257 @@
+package com.nhom33.quanlychungcu.service;
+
+import com.nhom33.quanlychungcu.entity.DotThu;
+import com.nhom33.quanlychungcu.entity.DotThuLoaiPhi;
+import com.nhom33.quanlychungcu.entity.LoaiPhi;
+import com.nhom33.quanlychungcu.exception.ResourceNotFoundException;
+import com.nhom33.quanlychungcu.repository.DotThuLoaiPhiRepository;
+import com.nhom33.quanlychungcu.repository.DotThuRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Service: Xuất bảng kê ra CSV dạng stream.
+ *
+ * LOGIC NGHIỆP VỤ:
+ * - Một query duy nhất: hóa đơn JOIN hộ gia đình LEFT JOIN chi tiết, sắp theo hóa đơn,
+ *   đọc bằng cursor (fetch size cố định) và ghi thẳng ra output stream của response.
+ * - Chỉ giữ trong bộ nhớ các dòng chi tiết của hóa đơn đang đọc, nên bộ nhớ không tăng
+ *   theo số hộ; header được flush ngay để client nhận byte đầu tiên sớm.
+ * - Thông tin đợt thu / cột loại phí được kiểm tra trước khi stream bắt đầu,
+ *   nên lỗi 404 vẫn trả về bình thường.
+ */
+@Service
+public class BangKeExportService {
+
+    private static final int FETCH_SIZE = 500;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String SELECT_BANG_KE =
+        "SELECT hd.ID_HoaDon, d.TenDotThu, t.TenToaNha, h.MaHoGiaDinh, h.SoCanHo, h.TenChuHo, " +
+        "hd.TongTienPhaiThu, hd.SoTienDaDong, hd.TrangThai, ct.ID_LoaiPhi, ct.ThanhTien " +
+        "FROM HoaDon hd " +
+        "JOIN DotThu d ON d.ID_DotThu = hd.ID_DotThu " +
+        "JOIN HoGiaDinh h ON h.ID_HoGiaDinh = hd.ID_HoGiaDinh " +
+        "LEFT JOIN ToaNha t ON t.ID_ToaNha = d.ID_ToaNha " +
+        "LEFT JOIN ChiTietHoaDon ct ON ct.ID_HoaDon = hd.ID_HoaDon ";
+
+    private final DotThuRepository dotThuRepo;
+    private final DotThuLoaiPhiRepository dotThuLoaiPhiRepo;
+    private final JdbcTemplate jdbcTemplate;
+
+    public BangKeExportService(DotThuRepository dotThuRepo,
+                               DotThuLoaiPhiRepository dotThuLoaiPhiRepo,
+                               JdbcTemplate jdbcTemplate) {
+        this.dotThuRepo = dotThuRepo;
+        this.dotThuLoaiPhiRepo = dotThuLoaiPhiRepo;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Bảng kê của một đợt thu.
+     */
+    public StreamingResponseBody exportDotThu(Integer dotThuId) {
+        DotThu dotThu = dotThuRepo.findById(dotThuId)
+            .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy đợt thu với ID: " + dotThuId));
+        if (dotThu.getToaNha() == null) {
+            throw new IllegalStateException("Đợt thu chưa được gán tòa nhà");
+        }
+
+        List<LoaiPhi> cotPhi = loaiPhiCuaDotThu(List.of(dotThuId));
+        String sql = SELECT_BANG_KE +
+            "WHERE hd.ID_DotThu = ? " +
+            "ORDER BY h.MaHoGiaDinh, hd.ID_HoaDon";
+
+        return out -> write(out, sql, new Object[]{dotThuId}, cotPhi, false);
+    }
+
+    /**
+     * Bảng kê gộp tất cả đợt thu (mọi tòa nhà) của một tháng.
+     * Cột loại phí là hợp của các đợt thu; thêm cột Tòa nhà và Đợt thu.
+     */
+    public StreamingResponseBody exportThang(Integer thang, Integer nam) {
+        if (thang == null || thang < 1 || thang > 12) {
+            throw new IllegalArgumentException("Tháng phải từ 1-12");
+        }
+        List<DotThu> danhSachDot = dotThuRepo.findByThangAndNam(thang, nam);
+        if (danhSachDot.isEmpty()) {
+            throw new ResourceNotFoundException("Không có đợt thu nào trong tháng " + thang + "/" + nam);
+        }
+
+        List<LoaiPhi> cotPhi = loaiPhiCuaDotThu(danhSachDot.stream().map(DotThu::getId).toList());
+        String sql = SELECT_BANG_KE +
+            "WHERE d.Thang = ? AND d.Nam = ? " +
+            "ORDER BY t.TenToaNha, d.ID_DotThu, h.MaHoGiaDinh, hd.ID_HoaDon";
+
+        return out -> write(out, sql, new Object[]{thang, nam}, cotPhi, true);
+    }
+
+    private List<LoaiPhi> loaiPhiCuaDotThu(List<Integer> dotThuIds) {
+        Map<Integer, LoaiPhi> cot = new LinkedHashMap<>();
+        for (Integer dotThuId : dotThuIds) {
+            for (DotThuLoaiPhi dlp : dotThuLoaiPhiRepo.findByDotThuIdWithLoaiPhi(dotThuId)) {
+                cot.putIfAbsent(dlp.getLoaiPhi().getId(), dlp.getLoaiPhi());
+            }
+        }
+        return new ArrayList<>(cot.values());
+    }
+
+    // ===== Ghi CSV =====
+
+    private void write(OutputStream out, String sql, Object[] params,
+                       List<LoaiPhi> cotPhi, boolean gop) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+
+        // UTF-8 BOM để Excel hiển thị tiếng Việt đúng
+        writer.write('\uFEFF');
+        writer.write(gop ? "STT,Tòa nhà,Đợt thu,Mã hộ,Căn hộ,Chủ hộ" : "STT,Mã hộ,Căn hộ,Chủ hộ");
+        for (LoaiPhi loaiPhi : cotPhi) {
+            writer.write(",");
+            writer.write(escapeCSV(loaiPhi.getTenLoaiPhi()));
+        }
+        writer.write(",Tổng tiền,Đã đóng,Còn nợ,Trạng thái\n");
+        writer.flush();
+
+        BangKeWriter bangKe = new BangKeWriter(writer, cotPhi, gop);
+        try {
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(sql);
+                ps.setFetchSize(FETCH_SIZE);
+                for (int i = 0; i < params.length; i++) {
+                    ps.setObject(i + 1, params[i]);
+                }
+                return ps;
+            }, bangKe);
+            bangKe.finish();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    /**
+     * Gom các dòng chi tiết liên tiếp của cùng một hóa đơn thành một dòng CSV.
+     */
+    private static class BangKeWriter implements RowCallbackHandler {
+        private final Writer writer;
+        private final List<LoaiPhi> cotPhi;
+        private final boolean gop;
+        private final Map<Integer, BigDecimal> thanhTienTheoPhi = new HashMap<>();
+
+        private Integer hoaDonId;
+        private String[] thongTin;
+        private BigDecimal tongTien;
+        private BigDecimal daDong;
+        private String trangThai;
+        private int stt = 1;
+        private BigDecimal tongCongPhaiThu = BigDecimal.ZERO;
+        private BigDecimal tongCongDaDong = BigDecimal.ZERO;
+
+        BangKeWriter(Writer writer, List<LoaiPhi> cotPhi, boolean gop) {
+            this.writer = writer;
+            this.cotPhi = cotPhi;
+            this.gop = gop;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            int id = rs.getInt("ID_HoaDon");
+            if (hoaDonId == null || hoaDonId != id) {
+                flushHoaDon();
+                hoaDonId = id;
+                thongTin = gop
+                    ? new String[]{rs.getString("TenToaNha"), rs.getString("TenDotThu"),
+                                   rs.getString("MaHoGiaDinh"), rs.getString("SoCanHo"), rs.getString("TenChuHo")}
+                    : new String[]{rs.getString("MaHoGiaDinh"), rs.getString("SoCanHo"), rs.getString("TenChuHo")};
+                tongTien = giaTri(rs.getBigDecimal("TongTienPhaiThu"));
+                daDong = giaTri(rs.getBigDecimal("SoTienDaDong"));
+                trangThai = rs.getString("TrangThai");
+                thanhTienTheoPhi.clear();
+            }
+            int loaiPhiId = rs.getInt("ID_LoaiPhi");
+            if (!rs.wasNull()) {
+                thanhTienTheoPhi.merge(loaiPhiId, giaTri(rs.getBigDecimal("ThanhTien")), BigDecimal::add);
+            }
+        }
+
+        void finish() {
+            flushHoaDon();
+            try {
+                writer.write("\n");
+                writer.write(gop ? ",,,,,TỔNG CỘNG" : ",,,TỔNG CỘNG");
+                for (int i = 0; i < cotPhi.size(); i++) {
+                    writer.write(",");
+                }
+                writer.write("," + tongCongPhaiThu);
+                writer.write("," + tongCongDaDong);
+                writer.write("," + tongCongPhaiThu.subtract(tongCongDaDong));
+                writer.write(",\n");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void flushHoaDon() {
+            if (hoaDonId == null) {
+                return;
+            }
+            try {
+                writer.write(String.valueOf(stt++));
+                for (String s : thongTin) {
+                    writer.write(",");
+                    writer.write(escapeCSV(s));
+                }
+                for (LoaiPhi loaiPhi : cotPhi) {
+                    writer.write(",");
+                    writer.write(thanhTienTheoPhi.getOrDefault(loaiPhi.getId(), BigDecimal.ZERO).toString());
+                }
+                writer.write("," + tongTien);
+                writer.write("," + daDong);
+                writer.write("," + tongTien.subtract(daDong));
+                writer.write(",");
+                writer.write(escapeCSV(tenTrangThai(trangThai)));
+                writer.write("\n");
+            } catch (IOException e) {
+                // Client ngắt kết nối -> dừng đọc cursor
+                throw new UncheckedIOException(e);
+            }
+            tongCongPhaiThu = tongCongPhaiThu.add(tongTien);
+            tongCongDaDong = tongCongDaDong.add(daDong);
+            hoaDonId = null;
+        }
+    }
+
+    private static BigDecimal giaTri(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+
+    private static String tenTrangThai(String trangThai) {
+        if (trangThai == null) {
+            return "";
+        }
+        return switch (trangThai) {
+            case "DaThanhToan" -> "Đã thanh toán";
+            case "ThanhToanMotPhan" -> "Thanh toán một phần";
+            case "ChuaThanhToan" -> "Chưa thanh toán";
+            default -> trangThai;
+        };
+    }
+
+    private static String escapeCSV(String value) {
+        if (value == null) return "";
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
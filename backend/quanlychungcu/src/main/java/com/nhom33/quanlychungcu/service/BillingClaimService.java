@@ -0,0 +1,77 @@
+package com.nhom33.quanlychungcu.service;
+
+import com.nhom33.quanlychungcu.exception.BadRequestException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service: Đăng ký đợt thu đang được tính tiền, dùng chung cho mọi đường tính tiền
+ * (tính tiền đồng bộ, tính lại tăng dần, job chạy nền, chốt sổ tháng).
+ *
+ * LOGIC NGHIỆP VỤ:
+ * - Mỗi đợt thu chỉ có một người giữ tại một thời điểm; giữ bằng putIfAbsent nên
+ *   kiểm tra và đăng ký là một bước nguyên tử.
+ * - Giữ nhiều đợt thu (chốt sổ): hoặc giữ được tất cả, hoặc trả lại những đợt đã giữ và báo lỗi.
+ * - Trả đợt thu trong transaction: chỉ trả sau khi transaction kết thúc, để lượt tính sau
+ *   thấy được hóa đơn đã commit.
+ * - Ràng buộc UQ_HoaDon_HoGiaDinh_DotThu trong DB là lớp bảo vệ cuối khi chạy nhiều instance.
+ */
+@Service
+public class BillingClaimService {
+
+    // ID đợt thu -> mô tả người đang giữ (job, lần chốt sổ, ...)
+    private final Map<Integer, String> dangTinh = new ConcurrentHashMap<>();
+
+    /**
+     * Giữ một đợt thu để tính tiền.
+     *
+     * @param nguoiGiu Mô tả người giữ, dùng khi trả và trong thông báo lỗi
+     * @throws BadRequestException nếu đợt thu đang được tính ở nơi khác
+     */
+    public void claim(Integer dotThuId, String nguoiGiu) {
+        String hienTai = dangTinh.putIfAbsent(dotThuId, nguoiGiu);
+        if (hienTai != null) {
+            throw new BadRequestException("Đợt thu " + dotThuId + " đang được tính tiền ("
+                + hienTai + "), vui lòng đợi hoàn thành");
+        }
+    }
+
+    /**
+     * Giữ tất cả các đợt thu, hoặc không giữ đợt nào nếu có đợt đang được tính.
+     */
+    public void claimAll(Collection<Integer> dotThuIds, String nguoiGiu) {
+        List<Integer> daGiu = new ArrayList<>();
+        try {
+            for (Integer id : dotThuIds) {
+                claim(id, nguoiGiu);
+                daGiu.add(id);
+            }
+        } catch (BadRequestException e) {
+            daGiu.forEach(id -> dangTinh.remove(id, nguoiGiu));
+            throw e;
+        }
+    }
+
+    /**
+     * Trả đợt thu. Trong transaction thì trả sau khi commit/rollback.
+     */
+    public void release(Integer dotThuId, String nguoiGiu) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    dangTinh.remove(dotThuId, nguoiGiu);
+                }
+            });
+            return;
+        }
+        dangTinh.remove(dotThuId, nguoiGiu);
+    }
+}
@@ -0,0 +1,225 @@
+package com.nhom33.quanlychungcu.service;
+
+import com.nhom33.quanlychungcu.entity.DotThu;
+import com.nhom33.quanlychungcu.entity.ToaNha;
+import com.nhom33.quanlychungcu.exception.BadRequestException;
+import com.nhom33.quanlychungcu.exception.ResourceNotFoundException;
+import com.nhom33.quanlychungcu.repository.DotThuRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Service: Chốt sổ (tính tiền) tất cả đợt thu của một tháng/năm trên mọi tòa nhà.
+ *
+ * LOGIC NGHIỆP VỤ:
+ * - Gom các đợt thu của tháng/năm theo tòa nhà, mỗi tòa nhà là một task trên billingExecutor.
+ * - Mỗi đợt thu được tính trong transaction riêng (InvoiceCalculationService.calculate),
+ *   nên lỗi ở một tòa nhà không rollback kết quả của tòa nhà khác.
+ * - Tiến độ và kết quả tổng hợp được giữ trong bộ nhớ, tra cứu bằng runId.
+ * - Giữ trước tất cả đợt thu của tháng qua BillingClaimService (dùng chung với job, tính tiền
+ *   đồng bộ và tính lại), nên không chạy trùng với lần chốt sổ hay lượt tính tiền khác.
+ *   Mỗi đợt thu được trả ngay sau khi tính xong.
+ */
+@Service
+public class BillingRunService {
+
+    private static final Logger log = LoggerFactory.getLogger(BillingRunService.class);
+
+    // Số lần chạy giữ lại trong bộ nhớ để tra cứu
+    private static final int MAX_RUNS_KEPT = 50;
+
+    private final DotThuRepository dotThuRepo;
+    private final InvoiceCalculationService invoiceCalculationService;
+    private final BillingClaimService billingClaimService;
+    private final ThreadPoolTaskExecutor billingExecutor;
+
+    private final Map<String, BillingRun> runs = new ConcurrentHashMap<>();
+
+    public BillingRunService(DotThuRepository dotThuRepo,
+                             InvoiceCalculationService invoiceCalculationService,
+                             BillingClaimService billingClaimService,
+                             @Qualifier("billingExecutor") ThreadPoolTaskExecutor billingExecutor) {
+        this.dotThuRepo = dotThuRepo;
+        this.invoiceCalculationService = invoiceCalculationService;
+        this.billingClaimService = billingClaimService;
+        this.billingExecutor = billingExecutor;
+    }
+
+    /**
+     * Bắt đầu chốt sổ tháng/năm cho tất cả tòa nhà.
+     *
+     * @return Trạng thái ban đầu của lần chạy (chứa runId để theo dõi tiến độ)
+     */
+    public Map<String, Object> startCloseMonth(Integer thang, Integer nam) {
+        if (thang == null || thang < 1 || thang > 12 || nam == null) {
+            throw new BadRequestException("Tháng/Năm không hợp lệ");
+        }
+
+        // Gom đợt thu theo tòa nhà
+        Map<Integer, List<DotThu>> theoToaNha = new LinkedHashMap<>();
+        Map<Integer, String> tenToaNha = new HashMap<>();
+        for (DotThu dt : dotThuRepo.findByThangAndNam(thang, nam)) {
+            ToaNha tn = dt.getToaNha();
+            if (tn == null) {
+                continue;
+            }
+            theoToaNha.computeIfAbsent(tn.getId(), k -> new ArrayList<>()).add(dt);
+            tenToaNha.put(tn.getId(), tn.getTenToaNha());
+        }
+        if (theoToaNha.isEmpty()) {
+            throw new ResourceNotFoundException("Không có đợt thu nào cho tháng " + thang + "/" + nam);
+        }
+
+        BillingRun run = new BillingRun(UUID.randomUUID().toString(), thang, nam, theoToaNha.size());
+        // Giữ tất cả đợt thu trước khi chạy; đợt nào đang được tính ở nơi khác -> không chạy gì cả
+        List<Integer> tatCaDotThu = theoToaNha.values().stream()
+            .flatMap(List::stream)
+            .map(DotThu::getId)
+            .toList();
+        billingClaimService.claimAll(tatCaDotThu, run.nguoiGiu());
+        cleanupOldRuns();
+        runs.put(run.runId, run);
+
+        log.info("Bắt đầu chốt sổ tháng {}/{}: {} tòa nhà (runId={})", thang, nam, theoToaNha.size(), run.runId);
+
+        theoToaNha.forEach((toaNhaId, danhSachDotThu) -> {
+            // Chỉ giữ ID, entity không dùng được ngoài transaction/thread hiện tại
+            List<Integer> dotThuIds = danhSachDotThu.stream().map(DotThu::getId).toList();
+            billingExecutor.execute(() -> runBuilding(run, toaNhaId, tenToaNha.get(toaNhaId), dotThuIds));
+        });
+
+        return run.toMap();
+    }
+
+    /**
+     * Lấy tiến độ / kết quả tổng hợp của một lần chốt sổ.
+     */
+    public Map<String, Object> getRunStatus(String runId) {
+        BillingRun run = runs.get(runId);
+        if (run == null) {
+            throw new ResourceNotFoundException("Không tìm thấy lần chốt sổ với ID: " + runId);
+        }
+        return run.toMap();
+    }
+
+    // ===== Worker =====
+
+    private void runBuilding(BillingRun run, Integer toaNhaId, String tenToaNha, List<Integer> dotThuIds) {
+        long batDau = System.currentTimeMillis();
+        List<Map<String, Object>> ketQuaDotThu = new ArrayList<>();
+        boolean coLoi = false;
+
+        for (Integer dotThuId : dotThuIds) {
+            Map<String, Object> kq = new LinkedHashMap<>();
+            kq.put("dotThuId", dotThuId);
+            try {
+                // Mỗi đợt thu: 1 transaction riêng
+                Map<String, Object> r = invoiceCalculationService.calculate(dotThuId);
+                kq.put("success", true);
+                kq.put("soHoaDonTao", r.get("soHoaDonTao"));
+                kq.put("soHoThieuChiSo", r.get("soHoThieuChiSo"));
+                kq.put("danhSachThieuChiSo", r.get("danhSachThieuChiSo"));
+                run.soHoaDon.addAndGet((Integer) r.get("soHoaDonTao"));
+                run.soHoThieuChiSo.addAndGet((Integer) r.get("soHoThieuChiSo"));
+            } catch (Exception e) {
+                log.error("Lỗi tính tiền đợt thu {} (tòa nhà {}): {}", dotThuId, toaNhaId, e.getMessage(), e);
+                kq.put("success", false);
+                kq.put("loi", e.getMessage());
+                coLoi = true;
+            } finally {
+                billingClaimService.release(dotThuId, run.nguoiGiu());
+            }
+            ketQuaDotThu.add(kq);
+        }
+
+        Map<String, Object> ketQua = new LinkedHashMap<>();
+        ketQua.put("toaNhaId", toaNhaId);
+        ketQua.put("tenToaNha", tenToaNha);
+        ketQua.put("success", !coLoi);
+        ketQua.put("thoiGianMs", System.currentTimeMillis() - batDau);
+        ketQua.put("dotThu", ketQuaDotThu);
+        run.complete(ketQua, coLoi);
+    }
+
+    private void cleanupOldRuns() {
+        if (runs.size() < MAX_RUNS_KEPT) {
+            return;
+        }
+        runs.values().stream()
+            .filter(BillingRun::isFinished)
+            .min(Comparator.comparing(r -> r.batDau))
+            .ifPresent(r -> runs.remove(r.runId));
+    }
+
+    // ===== Trạng thái một lần chạy =====
+
+    private static class BillingRun {
+        final String runId;
+        final int thang;
+        final int nam;
+        final int tongSoToaNha;
+        final LocalDateTime batDau = LocalDateTime.now();
+        final long batDauMs = System.currentTimeMillis();
+        final AtomicInteger soToaNhaXong = new AtomicInteger();
+        final AtomicInteger soToaNhaLoi = new AtomicInteger();
+        final AtomicInteger soHoaDon = new AtomicInteger();
+        final AtomicInteger soHoThieuChiSo = new AtomicInteger();
+        final List<Map<String, Object>> ketQuaToaNha = new CopyOnWriteArrayList<>();
+        volatile long thoiGianMs = -1;
+
+        BillingRun(String runId, int thang, int nam, int tongSoToaNha) {
+            this.runId = runId;
+            this.thang = thang;
+            this.nam = nam;
+            this.tongSoToaNha = tongSoToaNha;
+        }
+
+        String nguoiGiu() {
+            return "chốt sổ tháng " + thang + "/" + nam + ", runId=" + runId;
+        }
+
+        void complete(Map<String, Object> ketQua, boolean coLoi) {
+            ketQuaToaNha.add(ketQua);
+            if (coLoi) {
+                soToaNhaLoi.incrementAndGet();
+            }
+            if (soToaNhaXong.incrementAndGet() == tongSoToaNha) {
+                thoiGianMs = System.currentTimeMillis() - batDauMs;
+                log.info("Chốt sổ tháng {}/{} xong: {} tòa nhà, {} lỗi, {} ms",
+                        thang, nam, tongSoToaNha, soToaNhaLoi.get(), thoiGianMs);
+            }
+        }
+
+        boolean isFinished() {
+            return soToaNhaXong.get() >= tongSoToaNha;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("runId", runId);
+            m.put("thang", thang);
+            m.put("nam", nam);
+            m.put("trangThai", isFinished() ? (soToaNhaLoi.get() > 0 ? "HoanThanhCoLoi" : "HoanThanh") : "DangChay");
+            m.put("batDau", batDau);
+            m.put("tongSoToaNha", tongSoToaNha);
+            m.put("soToaNhaHoanThanh", soToaNhaXong.get());
+            m.put("soToaNhaLoi", soToaNhaLoi.get());
+            m.put("tongSoHoaDon", soHoaDon.get());
+            m.put("tongSoHoThieuChiSo", soHoThieuChiSo.get());
+            if (thoiGianMs >= 0) {
+                m.put("thoiGianMs", thoiGianMs);
+            }
+            m.put("ketQuaToaNha", new ArrayList<>(ketQuaToaNha));
+            return m;
+        }
+    }
+}
@@ -28,16 +28,22 @@ public class ChiSoDienNuocService {
     private final HoGiaDinhRepository hoGiaDinhRepository;
     private final LoaiPhiRepository loaiPhiRepository;
     private final ToaNhaRepository toaNhaRepository;
+    private final InvoiceDirtyTrackingService dirtyTrackingService;
+    private final ChiSoDienNuocBatchRepository chiSoBatchRepository;
 
     public ChiSoDienNuocService(
             ChiSoDienNuocRepository chiSoRepository,
+            ChiSoDienNuocBatchRepository chiSoBatchRepository,
             HoGiaDinhRepository hoGiaDinhRepository,
             LoaiPhiRepository loaiPhiRepository,
-            ToaNhaRepository toaNhaRepository) {
+            ToaNhaRepository toaNhaRepository,
+            InvoiceDirtyTrackingService dirtyTrackingService) {
         this.chiSoRepository = chiSoRepository;
+        this.chiSoBatchRepository = chiSoBatchRepository;
         this.hoGiaDinhRepository = hoGiaDinhRepository;
         this.loaiPhiRepository = loaiPhiRepository;
         this.toaNhaRepository = toaNhaRepository;
+        this.dirtyTrackingService = dirtyTrackingService;
     }
 
     // ===== Chuẩn bị danh sách nhập liệu =====
@@ -46,6 +52,9 @@ public class ChiSoDienNuocService {
      * Lấy danh sách các hộ gia đình cần nhập chỉ số cho tháng/năm.
      * Tự động điền chỉ số cũ từ tháng trước.
      * 
+     * Số query cố định (hộ, chỉ số tháng này, chỉ số gần nhất trước tháng này của cả tòa nhà),
+     * không query theo từng hộ.
+     * 
      * @param thang     Tháng ghi sổ (1-12)
      * @param nam       Năm ghi sổ
      * @param toaNhaId  ID tòa nhà
@@ -77,9 +86,9 @@ public class ChiSoDienNuocService {
             chiSoHienTai.put(cs.getHoGiaDinh().getId(), cs);
         }
 
-        // Tính tháng trước
-        int thangTruoc = thang == 1 ? 12 : thang - 1;
-        int namTruoc = thang == 1 ? nam - 1 : nam;
+        // Chỉ số cũ: bản ghi gần nhất trước tháng này (thường là tháng trước)
+        Map<Integer, Integer> chiSoTruoc = toMap(
+                chiSoRepository.findChiSoTruocKyTheoToaNha(toaNhaId, loaiPhiId, nam * 12 + thang));
 
         // Build danh sách kết quả
         List<ChiSoInputDTO> result = new ArrayList<>();
@@ -87,7 +96,6 @@ public class ChiSoDienNuocService {
         for (HoGiaDinh ho : danhSachHo) {
             Integer hoId = ho.getId();
             
-            Integer chiSoCu;
             Integer chiSoMoi = null;
             
             if (chiSoHienTai.containsKey(hoId)) {
@@ -96,8 +104,8 @@ public class ChiSoDienNuocService {
                 chiSoMoi = cs.getChiSoMoi();
             }
             
-            // Lấy chỉ số cũ từ tháng trước
-            chiSoCu = findPreviousMonthChiSo(hoId, loaiPhiId, thangTruoc, namTruoc);
+            // Chưa có lịch sử -> bắt đầu từ 0
+            Integer chiSoCu = chiSoTruoc.getOrDefault(hoId, 0);
             
             ChiSoInputDTO dto = new ChiSoInputDTO(
                     hoId,
@@ -117,37 +125,25 @@ public class ChiSoDienNuocService {
         return result;
     }
 
-    /**
-     * Tìm chỉ số của tháng trước.
-     */
-    private Integer findPreviousMonthChiSo(Integer hoGiaDinhId, Integer loaiPhiId, Integer thang, Integer nam) {
-        Optional<ChiSoDienNuoc> prev = chiSoRepository.findByHoGiaDinhIdAndLoaiPhiIdAndThangAndNam(
-                hoGiaDinhId, loaiPhiId, thang, nam);
-        
-        if (prev.isPresent()) {
-            return prev.get().getChiSoMoi();
-        }
-        
-        // Không có tháng trước -> lấy bản ghi mới nhất
-        List<ChiSoDienNuoc> latestList = chiSoRepository.findLatestByHoGiaDinhAndLoaiPhi(hoGiaDinhId, loaiPhiId);
-        if (!latestList.isEmpty()) {
-            return latestList.get(0).getChiSoMoi();
-        }
-        
-        return 0; // Chưa có lịch sử -> bắt đầu từ 0
-    }
-
     // ===== Lưu chỉ số hàng loạt =====
 
     /**
      * Lưu danh sách chỉ số cho tháng/năm.
      * CHỈ LƯU CHỈ SỐ - KHÔNG TÍNH TIỀN.
      * 
+     * LOGIC:
+     * - Nạp trước hộ trong tòa nhà, chỉ số tháng này, chỉ số gần nhất trước/sau tháng này
+     *   (số query cố định, không phụ thuộc số dòng).
+     * - Kiểm tra từng dòng trong bộ nhớ: hộ thuộc tòa nhà, không trùng, chỉ số không giảm
+     *   so với tháng trước và không vượt chỉ số tháng sau (nếu đang sửa tháng cũ).
+     * - Dòng lỗi được trả về trong danhSachLoi, các dòng hợp lệ vẫn được lưu.
+     * - Ghi bằng JDBC batch, chỉ ghi dòng có thay đổi.
+     * 
      * @param request Request chứa tháng, năm, tòa nhà, loại phí và danh sách chỉ số
-     * @return Số bản ghi đã lưu thành công
+     * @return Kết quả: savedCount, soMoi, soCapNhat, soKhongDoi, soLoi, danhSachLoi
      */
     @Transactional
-    public int saveAll(SaveChiSoRequestDTO request) {
+    public Map<String, Object> saveAll(SaveChiSoRequestDTO request) {
         Integer thang = request.getThang();
         Integer nam = request.getNam();
         Integer toaNhaId = request.getToaNhaId();
@@ -161,20 +157,37 @@ public class ChiSoDienNuocService {
         toaNhaRepository.findById(toaNhaId)
                 .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy tòa nhà với ID: " + toaNhaId));
         
-        LoaiPhi loaiPhi = loaiPhiRepository.findById(loaiPhiId)
+        loaiPhiRepository.findById(loaiPhiId)
                 .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy loại phí với ID: " + loaiPhiId));
 
-        if (request.getDanhSachChiSo() == null || request.getDanhSachChiSo().isEmpty()) {
-            return 0;
+        List<SaveChiSoRequestDTO.ChiSoItemDTO> items = request.getDanhSachChiSo() != null
+                ? request.getDanhSachChiSo() : List.of();
+
+        // ===== 1. Nạp dữ liệu =====
+        Map<Integer, HoGiaDinh> hoTheoId = new HashMap<>();
+        for (HoGiaDinh ho : hoGiaDinhRepository.findByToaNhaId(toaNhaId)) {
+            hoTheoId.put(ho.getId(), ho);
         }
 
-        // Tính tháng trước để validate
-        int thangTruoc = thang == 1 ? 12 : thang - 1;
-        int namTruoc = thang == 1 ? nam - 1 : nam;
+        Map<Integer, ChiSoDienNuoc> chiSoHienTai = new HashMap<>();
+        for (ChiSoDienNuoc cs : chiSoRepository.findByThangNamAndLoaiPhiAndToaNha(thang, nam, loaiPhiId, toaNhaId)) {
+            chiSoHienTai.put(cs.getHoGiaDinh().getId(), cs);
+        }
 
-        int savedCount = 0;
-        
-        for (SaveChiSoRequestDTO.ChiSoItemDTO item : request.getDanhSachChiSo()) {
+        int ky = nam * 12 + thang;
+        Map<Integer, Integer> chiSoTruoc = toMap(chiSoRepository.findChiSoTruocKyTheoToaNha(toaNhaId, loaiPhiId, ky));
+        Map<Integer, Integer> chiSoSau = toMap(chiSoRepository.findChiSoSauKyTheoToaNha(toaNhaId, loaiPhiId, ky));
+
+        // ===== 2. Kiểm tra trong bộ nhớ =====
+        List<ChiSoDienNuocBatchRepository.ChiSoMoi> themMoi = new ArrayList<>();
+        List<ChiSoDienNuocBatchRepository.ChiSoCapNhat> capNhat = new ArrayList<>();
+        List<Map<String, Object>> danhSachLoi = new ArrayList<>();
+        Set<Integer> daXuLy = new HashSet<>();
+        List<Integer> hoThayDoi = new ArrayList<>();
+        int soKhongDoi = 0;
+
+        for (int i = 0; i < items.size(); i++) {
+            SaveChiSoRequestDTO.ChiSoItemDTO item = items.get(i);
             Integer hoGiaDinhId = item.getHoGiaDinhId();
             Integer chiSoMoi = item.getChiSoMoi();
             
@@ -182,30 +195,68 @@ public class ChiSoDienNuocService {
             if (chiSoMoi == null) {
                 continue;
             }
-            
-            HoGiaDinh hoGiaDinh = hoGiaDinhRepository.findById(hoGiaDinhId)
-                    .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy hộ gia đình với ID: " + hoGiaDinhId));
-            
-            // Validate: ChiSoMoi >= ChiSo tháng trước
-            Integer chiSoThangTruoc = findPreviousMonthChiSo(hoGiaDinhId, loaiPhiId, thangTruoc, namTruoc);
-            if (chiSoMoi < chiSoThangTruoc) {
-                throw new IllegalArgumentException(
-                        String.format("Chỉ số mới (%d) phải >= chỉ số tháng trước (%d) cho hộ %s", 
-                                chiSoMoi, chiSoThangTruoc, hoGiaDinh.getMaHoGiaDinh()));
+
+            HoGiaDinh hoGiaDinh = hoTheoId.get(hoGiaDinhId);
+            String loi = null;
+            if (hoGiaDinh == null) {
+                loi = "Hộ gia đình không tồn tại hoặc không thuộc tòa nhà";
+            } else if (!daXuLy.add(hoGiaDinhId)) {
+                loi = "Hộ gia đình bị nhập trùng trong danh sách";
+            } else if (chiSoMoi < 0) {
+                loi = "Chỉ số mới phải >= 0";
+            } else if (chiSoMoi < chiSoTruoc.getOrDefault(hoGiaDinhId, 0)) {
+                loi = String.format("Chỉ số mới (%d) phải >= chỉ số tháng trước (%d)",
+                        chiSoMoi, chiSoTruoc.get(hoGiaDinhId));
+            } else if (chiSoSau.containsKey(hoGiaDinhId) && chiSoMoi > chiSoSau.get(hoGiaDinhId)) {
+                loi = String.format("Chỉ số mới (%d) không được lớn hơn chỉ số tháng sau (%d)",
+                        chiSoMoi, chiSoSau.get(hoGiaDinhId));
+            }
+            if (loi != null) {
+                Map<String, Object> dongLoi = new LinkedHashMap<>();
+                dongLoi.put("viTri", i);
+                dongLoi.put("hoGiaDinhId", hoGiaDinhId);
+                dongLoi.put("maHoGiaDinh", hoGiaDinh != null ? hoGiaDinh.getMaHoGiaDinh() : null);
+                dongLoi.put("chiSoMoi", chiSoMoi);
+                dongLoi.put("loi", loi);
+                danhSachLoi.add(dongLoi);
+                continue;
+            }
+
+            ChiSoDienNuoc cu = chiSoHienTai.get(hoGiaDinhId);
+            if (cu == null) {
+                themMoi.add(new ChiSoDienNuocBatchRepository.ChiSoMoi(hoGiaDinhId, chiSoMoi));
+                hoThayDoi.add(hoGiaDinhId);
+            } else if (!chiSoMoi.equals(cu.getChiSoMoi())) {
+                capNhat.add(new ChiSoDienNuocBatchRepository.ChiSoCapNhat(cu.getId(), chiSoMoi));
+                hoThayDoi.add(hoGiaDinhId);
+            } else {
+                soKhongDoi++;
             }
-            
-            // Tìm hoặc tạo bản ghi
-            ChiSoDienNuoc chiSo = chiSoRepository
-                    .findByHoGiaDinhIdAndLoaiPhiIdAndThangAndNam(hoGiaDinhId, loaiPhiId, thang, nam)
-                    .orElseGet(() -> new ChiSoDienNuoc(hoGiaDinh, loaiPhi, thang, nam, chiSoMoi));
-            
-            chiSo.setChiSoMoi(chiSoMoi);
-            chiSoRepository.save(chiSo);
-            
-            savedCount++;
         }
+
+        // ===== 3. Ghi theo lô =====
+        int soMoi = chiSoBatchRepository.insert(loaiPhiId, thang, nam, themMoi);
+        int soCapNhat = chiSoBatchRepository.update(capNhat);
         
-        return savedCount;
+        // Đánh dấu hóa đơn bị ảnh hưởng cần tính lại
+        dirtyTrackingService.markChiSo(hoThayDoi, loaiPhiId, thang, nam);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("savedCount", soMoi + soCapNhat + soKhongDoi);
+        result.put("soMoi", soMoi);
+        result.put("soCapNhat", soCapNhat);
+        result.put("soKhongDoi", soKhongDoi);
+        result.put("soLoi", danhSachLoi.size());
+        result.put("danhSachLoi", danhSachLoi);
+        return result;
+    }
+
+    private static Map<Integer, Integer> toMap(List<Object[]> rows) {
+        Map<Integer, Integer> map = new HashMap<>();
+        for (Object[] row : rows) {
+            map.put((Integer) row[0], (Integer) row[1]);
+        }
+        return map;
     }
 
     // ===== Thống kê =====
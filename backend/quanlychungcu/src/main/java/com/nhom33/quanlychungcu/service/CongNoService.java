@@ -0,0 +1,524 @@
+package com.nhom33.quanlychungcu.service;
+
+import com.nhom33.quanlychungcu.entity.SoCaiCongNo;
+import com.nhom33.quanlychungcu.repository.CongNoHoGiaDinhRepository;
+import com.nhom33.quanlychungcu.repository.HoaDonRepository;
+import com.nhom33.quanlychungcu.repository.NhatKyThayDoiRepository;
+import com.nhom33.quanlychungcu.repository.SoCaiCongNoBatchRepository;
+import com.nhom33.quanlychungcu.repository.SoCaiCongNoBatchRepository.ButToan;
+import com.nhom33.quanlychungcu.repository.SoCaiCongNoBatchRepository.ChenhLechSoDu;
+import com.nhom33.quanlychungcu.repository.SoCaiCongNoBatchRepository.NgayNo;
+import com.nhom33.quanlychungcu.repository.SoCaiCongNoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Service: Sổ cái công nợ theo hộ gia đình.
+ *
+ * LOGIC NGHIỆP VỤ:
+ * - Hóa đơn mới / tính lại -> bút toán phát sinh (chênh lệch tổng tiền, có thể âm).
+ * - Nộp tiền (tại quầy, VNPAY) -> bút toán thanh toán (số âm).
+ * - Xóa đợt thu -> bút toán điều chỉnh hủy phần phải thu và phần đã thu của các hóa đơn bị xóa.
+ * - Mỗi bút toán cộng dồn vào CongNoHoGiaDinh trong cùng transaction, nên công nợ hiện tại
+ *   là một dòng; công nợ tại một ngày là SoDu của bút toán cuối cùng trước ngày đó.
+ * - Công nợ là số dư ròng: tiền trả thừa ở hóa đơn này bù cho hóa đơn khác (SoDu < 0 = trả thừa).
+ * - Tuổi nợ: tiền đã nộp được coi là trả cho khoản phải thu cũ nhất trước (FIFO), nên số dư còn lại
+ *   thuộc về các khoản phát sinh gần nhất; chỉ cần đọc ngược sổ cái tới khi đủ số dư.
+ * - NgayNoCuNhat (ngày của khoản nợ cũ nhất còn lại) được cập nhật cùng số dư: phát sinh mới
+ *   không làm đổi ngày này, chỉ thanh toán / điều chỉnh giảm / phát sinh lùi ngày mới phải đọc lại sổ cái.
+ */
+@Service
+public class CongNoService {
+
+    private static final Logger log = LoggerFactory.getLogger(CongNoService.class);
+
+    // Số ngày phát sinh đọc mỗi lần khi tính tuổi nợ
+    private static final int TUOI_NO_PAGE_SIZE = 12;
+
+    private final SoCaiCongNoRepository soCaiRepo;
+    private final CongNoHoGiaDinhRepository congNoRepo;
+    private final SoCaiCongNoBatchRepository batchRepo;
+    private final HoaDonRepository hoaDonRepo;
+    private final JdbcTemplate jdbcTemplate;
+    private final NhatKyThayDoiRepository nhatKyRepo;
+
+    public CongNoService(SoCaiCongNoRepository soCaiRepo,
+                         CongNoHoGiaDinhRepository congNoRepo,
+                         SoCaiCongNoBatchRepository batchRepo,
+                         HoaDonRepository hoaDonRepo,
+                         JdbcTemplate jdbcTemplate,
+                         NhatKyThayDoiRepository nhatKyRepo) {
+        this.soCaiRepo = soCaiRepo;
+        this.congNoRepo = congNoRepo;
+        this.batchRepo = batchRepo;
+        this.hoaDonRepo = hoaDonRepo;
+        this.jdbcTemplate = jdbcTemplate;
+        this.nhatKyRepo = nhatKyRepo;
+    }
+
+    /**
+     * Bút toán cần ghi hàng loạt. soTien theo dấu của sổ cái (thanh toán là số âm).
+     */
+    public record ButToanMoi(Integer hoGiaDinhId, Integer hoaDonId, String loaiButToan, BigDecimal soTien) {
+
+        public static ButToanMoi phatSinh(Integer hoGiaDinhId, Integer hoaDonId, BigDecimal soTien) {
+            return new ButToanMoi(hoGiaDinhId, hoaDonId, SoCaiCongNo.PHAT_SINH, soTien);
+        }
+    }
+
+    // ===== Ghi sổ =====
+
+    /**
+     * Ghi phát sinh phải thu của một hóa đơn (soTien âm khi tính lại giảm tiền).
+     */
+    @Transactional
+    public void ghiPhatSinh(Integer hoGiaDinhId, Integer hoaDonId, BigDecimal soTien,
+                            LocalDate ngayPhatSinh, String dienGiai) {
+        if (soTien == null || soTien.signum() == 0) {
+            return;
+        }
+        ghi(hoGiaDinhId, hoaDonId, null, SoCaiCongNo.PHAT_SINH, soTien, ngayPhatSinh, dienGiai);
+    }
+
+    /**
+     * Ghi một lần nộp tiền (soTien dương, được ghi sổ thành số âm).
+     */
+    @Transactional
+    public void ghiThanhToan(Integer hoGiaDinhId, Integer hoaDonId, Integer giaoDichId, BigDecimal soTien,
+                             LocalDateTime ngayNop, String dienGiai) {
+        LocalDate ngay = ngayNop != null ? ngayNop.toLocalDate() : LocalDate.now();
+        ghi(hoGiaDinhId, hoaDonId, giaoDichId, SoCaiCongNo.THANH_TOAN, soTien.negate(), ngay, dienGiai);
+    }
+
+    /**
+     * Ghi nhiều bút toán cho các hộ trong một tòa nhà với số câu lệnh cố định
+     * (tạo dòng số dư còn thiếu, batch cộng số dư, đọc lại số dư, batch insert bút toán).
+     */
+    @Transactional
+    public void ghiHangLoat(Integer toaNhaId, LocalDate ngayPhatSinh, String dienGiai, List<ButToanMoi> rows) {
+        List<ButToanMoi> canGhi = rows.stream().filter(r -> r.soTien().signum() != 0).toList();
+        if (canGhi.isEmpty()) {
+            return;
+        }
+        if (toaNhaId == null) {
+            for (ButToanMoi r : canGhi) {
+                ghi(r.hoGiaDinhId(), r.hoaDonId(), null, r.loaiButToan(), r.soTien(), ngayPhatSinh, dienGiai);
+            }
+            return;
+        }
+
+        // Đẩy thay đổi đang chờ trong persistence context trước khi ghi bằng JDBC
+        soCaiRepo.flush();
+        LocalDateTime now = LocalDateTime.now();
+        taoCongNoNeuChuaCo(null, toaNhaId, now);
+
+        Map<Integer, BigDecimal[]> chenhLech = new LinkedHashMap<>();
+        for (ButToanMoi r : canGhi) {
+            BigDecimal[] c = chenhLech.computeIfAbsent(r.hoGiaDinhId(), k -> new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO});
+            if (SoCaiCongNo.THANH_TOAN.equals(r.loaiButToan())) {
+                c[1] = c[1].subtract(r.soTien());
+            } else {
+                c[0] = c[0].add(r.soTien());
+            }
+        }
+        List<ChenhLechSoDu> capNhat = new ArrayList<>();
+        chenhLech.forEach((hoId, c) -> capNhat.add(new ChenhLechSoDu(hoId, c[0], c[1])));
+        batchRepo.congSoDu(capNhat);
+
+        // Số dư trước lô = số dư sau lô - tổng chênh lệch của lô
+        Map<Integer, BigDecimal> soDu = new HashMap<>();
+        Map<Integer, Object[]> sauLo = new HashMap<>();
+        for (Object[] row : congNoRepo.findSoDuByToaNhaId(toaNhaId)) {
+            BigDecimal[] c = chenhLech.get((Integer) row[0]);
+            if (c != null) {
+                soDu.put((Integer) row[0], ((BigDecimal) row[1]).subtract(c[0]).add(c[1]));
+                sauLo.put((Integer) row[0], row);
+            }
+        }
+        Set<Integer> chiPhatSinhDuong = new HashSet<>(chenhLech.keySet());
+        for (ButToanMoi r : canGhi) {
+            if (!SoCaiCongNo.PHAT_SINH.equals(r.loaiButToan()) || r.soTien().signum() < 0) {
+                chiPhatSinhDuong.remove(r.hoGiaDinhId());
+            }
+        }
+
+        List<ButToan> butToan = new ArrayList<>(canGhi.size());
+        for (ButToanMoi r : canGhi) {
+            BigDecimal sau = soDu.merge(r.hoGiaDinhId(), r.soTien(), BigDecimal::add);
+            butToan.add(new ButToan(r.hoGiaDinhId(), r.hoaDonId(), null, r.loaiButToan(),
+                                    r.soTien(), sau, ngayPhatSinh, null, dienGiai));
+        }
+        batchRepo.insert(butToan);
+
+        // Ngày nợ cũ nhất: chỉ đọc lại sổ cái (sau khi đã insert) cho các hộ không tính nhanh được
+        List<NgayNo> ngayNo = new ArrayList<>();
+        sauLo.forEach((hoId, row) -> {
+            BigDecimal[] c = chenhLech.get(hoId);
+            BigDecimal truoc = ((BigDecimal) row[1]).subtract(c[0]).add(c[1]);
+            LocalDate cu = (LocalDate) row[2];
+            LocalDate moi = ngayNoSauGhi(hoId, truoc, (BigDecimal) row[1], cu,
+                                         chiPhatSinhDuong.contains(hoId), ngayPhatSinh);
+            if (!Objects.equals(cu, moi)) {
+                ngayNo.add(new NgayNo(hoId, moi));
+            }
+        });
+        batchRepo.capNhatNgayNo(ngayNo);
+    }
+
+    private void ghi(Integer hoGiaDinhId, Integer hoaDonId, Integer giaoDichId, String loai,
+                     BigDecimal soTien, LocalDate ngayPhatSinh, String dienGiai) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDate ngayNoCu = congNoRepo.findNgayNoCuNhat(hoGiaDinhId);
+        boolean thanhToan = SoCaiCongNo.THANH_TOAN.equals(loai);
+        BigDecimal phatSinh = thanhToan ? BigDecimal.ZERO : soTien;
+        BigDecimal daTra = thanhToan ? soTien.negate() : BigDecimal.ZERO;
+
+        // Các câu UPDATE bên dưới là JPQL hàng loạt, không qua entity
+        nhatKyRepo.ghiNhan("CongNoHoGiaDinh", hoGiaDinhId);
+        if (congNoRepo.congSoDu(hoGiaDinhId, soTien, phatSinh, daTra, now) == 0) {
+            congNoRepo.taoNeuChuaCo(hoGiaDinhId, null, BigDecimal.ZERO, now);
+            congNoRepo.congSoDu(hoGiaDinhId, soTien, phatSinh, daTra, now);
+        }
+
+        SoCaiCongNo butToan = new SoCaiCongNo();
+        butToan.setIdHoGiaDinh(hoGiaDinhId);
+        butToan.setIdHoaDon(hoaDonId);
+        butToan.setIdGiaoDich(giaoDichId);
+        butToan.setLoaiButToan(loai);
+        butToan.setSoTien(soTien);
+        BigDecimal soDuSau = congNoRepo.findSoDu(hoGiaDinhId);
+        butToan.setSoDu(soDuSau);
+        butToan.setNgayPhatSinh(ngayPhatSinh);
+        butToan.setNgayGhiSo(now);
+        butToan.setDienGiai(dienGiai);
+        soCaiRepo.saveAndFlush(butToan);
+
+        LocalDate ngayNoMoi = ngayNoSauGhi(hoGiaDinhId, soDuSau.subtract(soTien), soDuSau, ngayNoCu,
+            SoCaiCongNo.PHAT_SINH.equals(loai) && soTien.signum() > 0, ngayPhatSinh);
+        if (!Objects.equals(ngayNoCu, ngayNoMoi)) {
+            congNoRepo.capNhatNgayNoCuNhat(hoGiaDinhId, ngayNoMoi);
+        }
+    }
+
+    /**
+     * Ngày nợ cũ nhất sau khi ghi bút toán (bút toán đã nằm trong sổ cái).
+     *
+     * - Hết nợ -> null.
+     * - Chỉ thêm phát sinh dương không sớm hơn ngày nợ cũ nhất -> giữ nguyên
+     *   (trước đó không nợ -> chính ngày phát sinh).
+     * - Còn lại (thanh toán, điều chỉnh giảm, phát sinh lùi ngày) -> đọc ngược sổ cái.
+     */
+    private LocalDate ngayNoSauGhi(Integer hoGiaDinhId, BigDecimal soDuTruoc, BigDecimal soDuSau,
+                                   LocalDate ngayNoCu, boolean chiPhatSinhDuong, LocalDate ngayPhatSinh) {
+        if (soDuSau.signum() <= 0) {
+            return null;
+        }
+        if (chiPhatSinhDuong) {
+            if (soDuTruoc.signum() <= 0) {
+                return ngayPhatSinh;
+            }
+            if (ngayNoCu != null && !ngayPhatSinh.isBefore(ngayNoCu)) {
+                return ngayNoCu;
+            }
+        }
+        LocalDate[] cuNhat = new LocalDate[1];
+        phanBoNo(hoGiaDinhId, soDuSau, (ngay, phanNo) -> cuNhat[0] = ngay);
+        return cuNhat[0] != null ? cuNhat[0] : ngayPhatSinh;
+    }
+
+    // ===== Tra cứu =====
+
+    /**
+     * Số dư công nợ hiện tại (âm = trả thừa).
+     */
+    public BigDecimal getSoDu(Integer hoGiaDinhId) {
+        BigDecimal soDu = congNoRepo.findSoDu(hoGiaDinhId);
+        return soDu != null ? soDu : BigDecimal.ZERO;
+    }
+
+    /**
+     * Số dư công nợ tại cuối ngày cho trước.
+     */
+    public BigDecimal getSoDuTaiNgay(Integer hoGiaDinhId, LocalDate ngay) {
+        List<BigDecimal> soDu = soCaiRepo.findSoDuTruoc(hoGiaDinhId, ngay.plusDays(1).atStartOfDay(), PageRequest.of(0, 1));
+        return soDu.isEmpty() ? BigDecimal.ZERO : soDu.get(0);
+    }
+
+    public Page<SoCaiCongNo> getSoCai(Integer hoGiaDinhId, Pageable pageable) {
+        return soCaiRepo.findByHoGiaDinh(hoGiaDinhId, pageable);
+    }
+
+    /**
+     * Phân tích tuổi nợ của số dư hiện tại theo ngày phát sinh: 0-30, 31-60, 61-90, 90+ ngày.
+     */
+    public Map<String, BigDecimal> getTuoiNo(Integer hoGiaDinhId, LocalDate homNay) {
+        Map<String, BigDecimal> tuoiNo = new LinkedHashMap<>();
+        tuoiNo.put("0-30", BigDecimal.ZERO);
+        tuoiNo.put("31-60", BigDecimal.ZERO);
+        tuoiNo.put("61-90", BigDecimal.ZERO);
+        tuoiNo.put("90+", BigDecimal.ZERO);
+
+        BigDecimal conLai = phanBoNo(hoGiaDinhId, getSoDu(hoGiaDinhId), (ngay, phanNo) ->
+            tuoiNo.merge(nhomTuoiNo(ChronoUnit.DAYS.between(ngay, homNay)), phanNo, BigDecimal::add));
+        // Số dư không khớp với khoản phát sinh nào (dữ liệu điều chỉnh tay) -> coi là nợ lâu nhất
+        if (conLai.signum() > 0) {
+            tuoiNo.merge("90+", conLai, BigDecimal::add);
+        }
+        return tuoiNo;
+    }
+
+    /**
+     * Phân bổ số dư vào các ngày phát sinh, từ gần nhất về cũ nhất (FIFO ngược).
+     * Gọi consumer với (ngày phát sinh, phần nợ thuộc ngày đó); trả về phần số dư chưa phân bổ được.
+     */
+    private BigDecimal phanBoNo(Integer hoGiaDinhId, BigDecimal soDu, BiConsumer<LocalDate, BigDecimal> consumer) {
+        BigDecimal conLai = soDu;
+        int page = 0;
+        while (conLai.signum() > 0) {
+            List<Object[]> rows = soCaiRepo.sumPhaiThuTheoNgay(hoGiaDinhId, PageRequest.of(page++, TUOI_NO_PAGE_SIZE));
+            for (Object[] row : rows) {
+                BigDecimal soTien = (BigDecimal) row[1];
+                if (soTien.signum() <= 0) {
+                    continue;
+                }
+                BigDecimal phanNo = soTien.min(conLai);
+                consumer.accept((LocalDate) row[0], phanNo);
+                conLai = conLai.subtract(phanNo);
+                if (conLai.signum() <= 0) {
+                    break;
+                }
+            }
+            if (rows.size() < TUOI_NO_PAGE_SIZE) {
+                break;
+            }
+        }
+        return conLai;
+    }
+
+    /**
+     * Xếp hạng các hộ đang nợ theo số dư giảm dần (đọc CongNoHoGiaDinh qua index, không cộng hóa đơn).
+     *
+     * @param toaNhaId       Lọc theo tòa nhà (null = tất cả)
+     * @param soTienToiThieu Chỉ lấy hộ nợ từ số tiền này trở lên (null = mọi hộ còn nợ)
+     * @param nhomTuoiNo     Lọc theo tuổi khoản nợ cũ nhất: 0-30, 31-60, 61-90, 90+ (null = tất cả)
+     */
+    public Page<Map<String, Object>> xepHangNo(Integer toaNhaId, BigDecimal soTienToiThieu, String nhomTuoiNo,
+                                               LocalDate homNay, Pageable pageable) {
+        LocalDate[] khoang = nhomTuoiNo != null && !nhomTuoiNo.isBlank()
+            ? khoangNgayNo(nhomTuoiNo.trim(), homNay)
+            : new LocalDate[]{null, null};
+        BigDecimal toiThieu = soTienToiThieu != null ? soTienToiThieu : BigDecimal.ZERO;
+
+        return congNoRepo.xepHangNo(toaNhaId, toiThieu, khoang[0], khoang[1], pageable).map(row -> {
+            LocalDate ngayNo = (LocalDate) row[7];
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("hoGiaDinhId", row[0]);
+            item.put("maHoGiaDinh", row[1]);
+            item.put("tenChuHo", row[2]);
+            item.put("soCanHo", row[3]);
+            item.put("toaNhaId", row[4]);
+            item.put("tenToaNha", row[5]);
+            item.put("soDu", row[6]);
+            item.put("ngayNoCuNhat", ngayNo);
+            item.put("soNgayNo", ngayNo != null ? ChronoUnit.DAYS.between(ngayNo, homNay) : null);
+            item.put("nhomTuoiNo", ngayNo != null ? nhomTuoiNo(ChronoUnit.DAYS.between(ngayNo, homNay)) : null);
+            return item;
+        });
+    }
+
+    /**
+     * Số hóa đơn còn nợ của hộ (đếm trên DB, không load hóa đơn).
+     */
+    public long countHoaDonConNo(Integer hoGiaDinhId) {
+        return hoaDonRepo.countConNoByHoGiaDinhId(hoGiaDinhId);
+    }
+
+    /**
+     * Khoảng ngày nợ cũ nhất [từ, đến] ứng với một nhóm tuổi nợ (null = không giới hạn).
+     */
+    public static LocalDate[] khoangNgayNo(String nhomTuoiNo, LocalDate homNay) {
+        return switch (nhomTuoiNo) {
+            case "0-30" -> new LocalDate[]{homNay.minusDays(30), null};
+            case "31-60" -> new LocalDate[]{homNay.minusDays(60), homNay.minusDays(31)};
+            case "61-90" -> new LocalDate[]{homNay.minusDays(90), homNay.minusDays(61)};
+            case "90+" -> new LocalDate[]{null, homNay.minusDays(91)};
+            default -> throw new IllegalArgumentException(
+                "Nhóm tuổi nợ không hợp lệ: " + nhomTuoiNo + " (0-30, 31-60, 61-90, 90+)");
+        };
+    }
+
+    private static String nhomTuoiNo(long soNgay) {
+        if (soNgay <= 30) return "0-30";
+        if (soNgay <= 60) return "31-60";
+        if (soNgay <= 90) return "61-90";
+        return "90+";
+    }
+
+    // ===== Dựng sổ cái từ dữ liệu cũ =====
+
+    /**
+     * Lần đầu chạy (sổ cái còn trống) -> dựng từ HoaDon và LichSuThanhToan.
+     * Hộ đang nợ nhưng chưa có NgayNoCuNhat (dữ liệu trước khi thêm cột) -> tính từ sổ cái.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void dongBoSoCai() {
+        if (soCaiRepo.count() == 0 && hoaDonRepo.count() > 0) {
+            xayDungLai();
+            return;
+        }
+        List<NgayNo> ngayNo = new ArrayList<>();
+        for (Object[] row : congNoRepo.findThieuNgayNoCuNhat()) {
+            ngayNo.add(new NgayNo((Integer) row[0],
+                ngayNoSauGhi((Integer) row[0], null, (BigDecimal) row[1], null, false, LocalDate.now())));
+        }
+        if (!ngayNo.isEmpty()) {
+            batchRepo.capNhatNgayNo(ngayNo);
+            log.info("Đã tính ngày nợ cũ nhất cho {} hộ gia đình", ngayNo.size());
+        }
+    }
+
+    /**
+     * Xóa và dựng lại toàn bộ sổ cái từ HoaDon và LichSuThanhToan.
+     *
+     * - Mỗi hóa đơn: một bút toán phát sinh tại ngày bắt đầu đợt thu.
+     * - Mỗi giao dịch: một bút toán thanh toán tại ngày nộp.
+     * - SoTienDaDong lớn hơn tổng giao dịch (dữ liệu nhập tay) -> thêm bút toán thanh toán cho phần chênh.
+     *
+     * @return Số bút toán đã ghi
+     */
+    @Transactional
+    public int xayDungLai() {
+        // Dữ liệu đọc bằng JDBC -> đẩy thay đổi đang chờ của JPA xuống DB trước
+        soCaiRepo.flush();
+        jdbcTemplate.update("DELETE FROM SoCaiCongNo");
+        jdbcTemplate.update("DELETE FROM CongNoHoGiaDinh");
+        nhatKyRepo.ghiNhanCaBang("SoCaiCongNo");
+        nhatKyRepo.ghiNhanCaBang("CongNoHoGiaDinh");
+
+        List<ButToan> butToan = new ArrayList<>();
+        Map<Integer, BigDecimal> daTraTheoHoaDon = new HashMap<>();
+        jdbcTemplate.query(
+            "SELECT hd.ID_HoGiaDinh, t.ID_HoaDon, t.ID_GiaoDich, t.SoTien, t.NgayNop, t.HinhThuc " +
+            "FROM LichSuThanhToan t JOIN HoaDon hd ON hd.ID_HoaDon = t.ID_HoaDon", rs -> {
+                Integer hoaDonId = rs.getInt("ID_HoaDon");
+                BigDecimal soTien = rs.getBigDecimal("SoTien");
+                Timestamp ngayNop = rs.getTimestamp("NgayNop");
+                LocalDateTime ngay = ngayNop != null ? ngayNop.toLocalDateTime() : LocalDateTime.now();
+                daTraTheoHoaDon.merge(hoaDonId, soTien, BigDecimal::add);
+                butToan.add(new ButToan(rs.getInt("ID_HoGiaDinh"), hoaDonId, rs.getInt("ID_GiaoDich"),
+                    SoCaiCongNo.THANH_TOAN, soTien.negate(), null, ngay.toLocalDate(), ngay,
+                    "Thanh toán " + Objects.toString(rs.getString("HinhThuc"), "")));
+            });
+        jdbcTemplate.query(
+            "SELECT hd.ID_HoGiaDinh, hd.ID_HoaDon, hd.TongTienPhaiThu, hd.SoTienDaDong, hd.NgayTao, " +
+            "d.NgayBatDau, d.TenDotThu FROM HoaDon hd JOIN DotThu d ON d.ID_DotThu = hd.ID_DotThu", rs -> {
+                Integer hoId = rs.getInt("ID_HoGiaDinh");
+                Integer hoaDonId = rs.getInt("ID_HoaDon");
+                LocalDate ngayPhatSinh = rs.getDate("NgayBatDau").toLocalDate();
+                Timestamp ngayTao = rs.getTimestamp("NgayTao");
+                LocalDateTime ngayGhiSo = ngayTao != null ? ngayTao.toLocalDateTime() : ngayPhatSinh.atStartOfDay();
+                String dienGiai = "Hóa đơn " + rs.getString("TenDotThu");
+
+                BigDecimal tong = giaTri(rs.getBigDecimal("TongTienPhaiThu"));
+                if (tong.signum() != 0) {
+                    butToan.add(new ButToan(hoId, hoaDonId, null, SoCaiCongNo.PHAT_SINH,
+                        tong, null, ngayPhatSinh, ngayGhiSo, dienGiai));
+                }
+                BigDecimal chuaCoGiaoDich = giaTri(rs.getBigDecimal("SoTienDaDong"))
+                    .subtract(daTraTheoHoaDon.getOrDefault(hoaDonId, BigDecimal.ZERO));
+                if (chuaCoGiaoDich.signum() != 0) {
+                    butToan.add(new ButToan(hoId, hoaDonId, null, SoCaiCongNo.THANH_TOAN,
+                        chuaCoGiaoDich.negate(), null, ngayPhatSinh, ngayGhiSo, dienGiai + " (đã đóng)"));
+                }
+            });
+
+        // Sắp theo hộ rồi theo thời điểm ghi sổ (phát sinh trước thanh toán nếu cùng thời điểm)
+        butToan.sort(Comparator.comparing(ButToan::hoGiaDinhId)
+            .thenComparing(ButToan::ngayGhiSo)
+            .thenComparing(b -> SoCaiCongNo.THANH_TOAN.equals(b.loaiButToan())));
+
+        Map<Integer, BigDecimal[]> tongTheoHo = new LinkedHashMap<>();
+        Map<Integer, TreeMap<LocalDate, BigDecimal>> phaiThuTheoNgay = new HashMap<>();
+        List<ButToan> coSoDu = new ArrayList<>(butToan.size());
+        Map<Integer, BigDecimal> soDu = new HashMap<>();
+        for (ButToan b : butToan) {
+            BigDecimal sau = soDu.merge(b.hoGiaDinhId(), b.soTien(), BigDecimal::add);
+            coSoDu.add(new ButToan(b.hoGiaDinhId(), b.hoaDonId(), b.giaoDichId(), b.loaiButToan(),
+                                   b.soTien(), sau, b.ngayPhatSinh(), b.ngayGhiSo(), b.dienGiai()));
+            BigDecimal[] t = tongTheoHo.computeIfAbsent(b.hoGiaDinhId(), k -> new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO});
+            if (SoCaiCongNo.THANH_TOAN.equals(b.loaiButToan())) {
+                t[1] = t[1].subtract(b.soTien());
+            } else {
+                t[0] = t[0].add(b.soTien());
+                phaiThuTheoNgay.computeIfAbsent(b.hoGiaDinhId(), k -> new TreeMap<>())
+                    .merge(b.ngayPhatSinh(), b.soTien(), BigDecimal::add);
+            }
+        }
+
+        // Ngày nợ cũ nhất: phân bổ số dư cuối vào các ngày phát sinh gần nhất trước (như phanBoNo)
+        List<NgayNo> ngayNo = new ArrayList<>();
+        soDu.forEach((hoId, cuoi) -> {
+            if (cuoi.signum() <= 0) {
+                return;
+            }
+            BigDecimal conLai = cuoi;
+            LocalDate cuNhat = null;
+            for (Map.Entry<LocalDate, BigDecimal> e : phaiThuTheoNgay.getOrDefault(hoId, new TreeMap<>())
+                    .descendingMap().entrySet()) {
+                if (e.getValue().signum() <= 0) {
+                    continue;
+                }
+                cuNhat = e.getKey();
+                conLai = conLai.subtract(e.getValue());
+                if (conLai.signum() <= 0) {
+                    break;
+                }
+            }
+            ngayNo.add(new NgayNo(hoId, cuNhat != null ? cuNhat : LocalDate.now()));
+        });
+
+        taoCongNoNeuChuaCo(null, null, LocalDateTime.now());
+        List<ChenhLechSoDu> capNhat = new ArrayList<>();
+        tongTheoHo.forEach((hoId, t) -> capNhat.add(new ChenhLechSoDu(hoId, t[0], t[1])));
+        batchRepo.congSoDu(capNhat);
+        batchRepo.capNhatNgayNo(ngayNo);
+        batchRepo.insert(coSoDu);
+
+        log.info("Đã dựng sổ cái công nợ: {} bút toán cho {} hộ gia đình", coSoDu.size(), tongTheoHo.size());
+        return coSoDu.size();
+    }
+
+    /**
+     * Tạo dòng số dư còn thiếu (một hộ, một tòa nhà hoặc tất cả khi cả hai null).
+     */
+    private void taoCongNoNeuChuaCo(Integer hoGiaDinhId, Integer toaNhaId, LocalDateTime now) {
+        int count = congNoRepo.taoNeuChuaCo(hoGiaDinhId, toaNhaId, BigDecimal.ZERO, now);
+        if (hoGiaDinhId != null) {
+            nhatKyRepo.ghiNhan("CongNoHoGiaDinh", hoGiaDinhId);
+        } else if (count > 0) {
+            // INSERT ... SELECT không trả về khóa
+            nhatKyRepo.ghiNhanCaBang("CongNoHoGiaDinh");
+        }
+    }
+
+    private static BigDecimal giaTri(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+}
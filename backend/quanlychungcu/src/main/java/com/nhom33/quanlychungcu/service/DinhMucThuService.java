@@ -38,18 +38,21 @@ public class DinhMucThuService {
     private final LoaiPhiRepository loaiPhiRepo;
     private final ToaNhaRepository toaNhaRepo;
     private final BangGiaService bangGiaService;
+    private final InvoiceDirtyTrackingService dirtyTrackingService;
 
     public DinhMucThuService(
             DinhMucThuRepository repo,
             HoGiaDinhRepository hoGiaDinhRepo,
             LoaiPhiRepository loaiPhiRepo,
             ToaNhaRepository toaNhaRepo,
-            BangGiaService bangGiaService) {
+            BangGiaService bangGiaService,
+            InvoiceDirtyTrackingService dirtyTrackingService) {
         this.repo = repo;
         this.hoGiaDinhRepo = hoGiaDinhRepo;
         this.loaiPhiRepo = loaiPhiRepo;
         this.toaNhaRepo = toaNhaRepo;
         this.bangGiaService = bangGiaService;
+        this.dirtyTrackingService = dirtyTrackingService;
     }
 
     // ===== CREATE =====
@@ -75,7 +78,9 @@ public class DinhMucThuService {
         dinhMuc.setHoGiaDinh(hoGiaDinh);
         dinhMuc.setLoaiPhi(loaiPhi);
         
-        return repo.save(dinhMuc);
+        DinhMucThu saved = repo.save(dinhMuc);
+        dirtyTrackingService.markDinhMuc(hoGiaDinh.getId(), loaiPhi.getId());
+        return saved;
     }
 
     // ===== UPDATE =====
@@ -88,7 +93,9 @@ public class DinhMucThuService {
         exist.setSoLuong(updated.getSoLuong());
         exist.setGhiChu(updated.getGhiChu());
         
-        return repo.save(exist);
+        DinhMucThu saved = repo.save(exist);
+        dirtyTrackingService.markDinhMuc(exist.getHoGiaDinh().getId(), exist.getLoaiPhi().getId());
+        return saved;
     }
 
     /**
@@ -100,16 +107,18 @@ public class DinhMucThuService {
             .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy định mức thu với ID: " + id));
         
         exist.setSoLuong(soLuong);
-        return repo.save(exist);
+        DinhMucThu saved = repo.save(exist);
+        dirtyTrackingService.markDinhMuc(exist.getHoGiaDinh().getId(), exist.getLoaiPhi().getId());
+        return saved;
     }
 
     // ===== DELETE =====
 
     @Transactional
     public void delete(@NonNull Integer id) {
-        if (!repo.existsById(id)) {
-            throw new ResourceNotFoundException("Không tìm thấy định mức thu với ID: " + id);
-        }
+        DinhMucThu exist = repo.findById(id)
+            .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy định mức thu với ID: " + id));
+        dirtyTrackingService.markDinhMuc(exist.getHoGiaDinh().getId(), exist.getLoaiPhi().getId());
         repo.deleteById(id);
     }
 
@@ -168,6 +177,9 @@ public class DinhMucThuService {
             }
         }
         
+        if (count > 0) {
+            dirtyTrackingService.markToaNha(toaNhaId, loaiPhiId);
+        }
         return count;
     }
 
@@ -190,6 +202,9 @@ public class DinhMucThuService {
             }
         }
         
+        if (count > 0) {
+            dirtyTrackingService.markToaNha(toaNhaId, loaiPhiId);
+        }
         return count;
     }
 
@@ -1,10 +1,12 @@
 package com.nhom33.quanlychungcu.service;
 
+import com.nhom33.quanlychungcu.dto.BangKeDTO;
 import com.nhom33.quanlychungcu.dto.DotThuLoaiPhiDTO;
 import com.nhom33.quanlychungcu.entity.*;
 import com.nhom33.quanlychungcu.exception.ResourceNotFoundException;
 import com.nhom33.quanlychungcu.repository.*;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Service;
@@ -33,12 +35,18 @@ public class DotThuService {
     private final HoGiaDinhRepository hoGiaDinhRepo;
     private final HoaDonRepository hoaDonRepo;
     private final ChiTietHoaDonRepository chiTietHoaDonRepo;
-    private final DinhMucThuRepository dinhMucThuRepo;
-    private final ChiSoDienNuocService chiSoService;
     private final BangGiaService bangGiaService;
+    private final InvoiceCalculationService invoiceCalculationService;
+    private final BillingClaimService billingClaimService;
+    private final InvoiceDirtyTrackingService dirtyTrackingService;
+    private final TongHopDotThuService tongHopService;
+    private final CongNoService congNoService;
     
     // Danh sách tên loại phí biến đổi (cần ghi chỉ số theo tháng)
-    private static final List<String> UTILITY_FEES = Arrays.asList("Điện", "Nước");
+    static final List<String> UTILITY_FEES = Arrays.asList("Điện", "Nước");
+    
+    // Kích thước trang tối đa của bảng kê (cũng giới hạn số tham số IN khi lấy chi tiết)
+    private static final int MAX_BANG_KE_PAGE_SIZE = 500;
 
     public DotThuService(DotThuRepository repo, 
                          DotThuLoaiPhiRepository dotThuLoaiPhiRepo,
@@ -47,9 +55,12 @@ public class DotThuService {
                          HoGiaDinhRepository hoGiaDinhRepo,
                          HoaDonRepository hoaDonRepo,
                          ChiTietHoaDonRepository chiTietHoaDonRepo,
-                         DinhMucThuRepository dinhMucThuRepo,
-                         ChiSoDienNuocService chiSoService,
-                         BangGiaService bangGiaService) {
+                         BangGiaService bangGiaService,
+                         InvoiceCalculationService invoiceCalculationService,
+                         BillingClaimService billingClaimService,
+                         InvoiceDirtyTrackingService dirtyTrackingService,
+                         TongHopDotThuService tongHopService,
+                         CongNoService congNoService) {
         this.repo = repo;
         this.dotThuLoaiPhiRepo = dotThuLoaiPhiRepo;
         this.loaiPhiRepo = loaiPhiRepo;
@@ -57,9 +68,12 @@ public class DotThuService {
         this.hoGiaDinhRepo = hoGiaDinhRepo;
         this.hoaDonRepo = hoaDonRepo;
         this.chiTietHoaDonRepo = chiTietHoaDonRepo;
-        this.dinhMucThuRepo = dinhMucThuRepo;
-        this.chiSoService = chiSoService;
         this.bangGiaService = bangGiaService;
+        this.invoiceCalculationService = invoiceCalculationService;
+        this.billingClaimService = billingClaimService;
+        this.dirtyTrackingService = dirtyTrackingService;
+        this.tongHopService = tongHopService;
+        this.congNoService = congNoService;
     }
 
     @Transactional
@@ -127,10 +141,23 @@ public class DotThuService {
 
     @Transactional
     public void delete(@NonNull Integer id) {
-        if (!repo.existsById(id)) {
-            throw new ResourceNotFoundException("Không tìm thấy đợt thu với ID: " + id);
+        DotThu dotThu = repo.findById(id)
+            .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy đợt thu với ID: " + id));
+
+        // Hóa đơn và lịch sử thanh toán bị xóa theo đợt thu -> hủy phần phải thu và đã thu trong sổ cái công nợ
+        List<CongNoService.ButToanMoi> butToan = new ArrayList<>();
+        for (HoaDon hd : hoaDonRepo.findByDotThuIdWithHoGiaDinh(id)) {
+            Integer hoId = hd.getHoGiaDinh().getId();
+            butToan.add(new CongNoService.ButToanMoi(hoId, hd.getId(), SoCaiCongNo.DIEU_CHINH,
+                hd.getTongTienPhaiThu().negate()));
+            butToan.add(new CongNoService.ButToanMoi(hoId, hd.getId(), SoCaiCongNo.THANH_TOAN,
+                hd.getSoTienDaDong()));
         }
+        congNoService.ghiHangLoat(dotThu.getToaNha() != null ? dotThu.getToaNha().getId() : null,
+            dotThu.getNgayBatDau(), "Hủy hóa đơn do xóa đợt thu " + dotThu.getTenDotThu(), butToan);
+
         repo.deleteById(id);
+        tongHopService.xoa(id);
     }
 
     public DotThu getById(@NonNull Integer id) {
@@ -168,8 +195,8 @@ public class DotThuService {
             Integer loaiPhiId = fee.getLoaiPhi().getId();
             BigDecimal donGiaMacDinh = fee.getLoaiPhi().getDonGia();
             
-            // Lấy giá ưu tiên từ BangGiaService
-            BigDecimal donGiaApDung = bangGiaService.getDonGiaApDung(loaiPhiId, toaNhaId);
+            // Lấy giá ưu tiên từ BangGiaService (giá có hiệu lực tại ngày bắt đầu đợt thu)
+            BigDecimal donGiaApDung = bangGiaService.getDonGiaApDung(loaiPhiId, toaNhaId, dotThu.getNgayBatDau());
             
             // Xác định nguồn giá
             String nguonGia = donGiaApDung.compareTo(donGiaMacDinh) != 0 ? "BangGiaDichVu" : "LoaiPhi";
@@ -199,6 +226,7 @@ public class DotThuService {
         
         DotThuLoaiPhi config = new DotThuLoaiPhi(dotThu, loaiPhi);
         DotThuLoaiPhi saved = dotThuLoaiPhiRepo.save(config);
+        dirtyTrackingService.markDotThu(dotThuId);
         
         // Kiểm tra đợt thu có chứa phí biến đổi (Điện/Nước) không
         boolean hasUtilityFee = checkHasUtilityFee(dotThuId);
@@ -233,6 +261,7 @@ public class DotThuService {
         }
         
         dotThuLoaiPhiRepo.deleteByDotThuIdAndLoaiPhiId(dotThuId, loaiPhiId);
+        dirtyTrackingService.markDotThu(dotThuId);
         
         // Kiểm tra lại sau khi xóa
         boolean hasUtilityFee = checkHasUtilityFee(dotThuId);
@@ -285,219 +314,62 @@ public class DotThuService {
      *   + Nếu là phí biến đổi (Điện/Nước): Sử dụng Thang/Nam của đợt thu để lấy chỉ số
      *   + Nếu là phí cố định: Lấy từ DinhMucThu hoặc diện tích căn hộ
      * 
+     * Toàn bộ dữ liệu được nạp theo lô và ghi bằng JDBC batch, xem InvoiceCalculationService.
+     * Đợt thu đang được tính ở nơi khác (job, chốt sổ) -> BadRequestException.
+     * 
      * @param dotThuId ID đợt thu (đã lưu sẵn thang và nam)
      * @return Thống kê kết quả tính tiền
      */
     @Transactional
     public Map<String, Object> calculateInvoices(Integer dotThuId) {
-        DotThu dotThu = repo.findById(dotThuId)
-            .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy đợt thu với ID: " + dotThuId));
-        
-        ToaNha toaNha = dotThu.getToaNha();
-        if (toaNha == null) {
-            throw new IllegalStateException("Đợt thu chưa được gán tòa nhà");
-        }
-        
-        // Lấy thang và nam từ đợt thu
-        Integer thang = dotThu.getThang();
-        Integer nam = dotThu.getNam();
-        if (thang == null || nam == null) {
-            throw new IllegalStateException("Đợt thu chưa được cấu hình Tháng/Năm để tính phí điện nước");
-        }
-        
-        Integer toaNhaId = toaNha.getId();
-        
-        // Lấy danh sách hộ gia đình
-        List<HoGiaDinh> danhSachHo = hoGiaDinhRepo.findByToaNhaId(toaNhaId);
-        
-        // Lấy danh sách loại phí trong đợt thu
-        List<DotThuLoaiPhi> danhSachPhi = dotThuLoaiPhiRepo.findByDotThuId(dotThuId);
-        
-        int soHoaDonTao = 0;
-        int soHoThieuChiSo = 0;
-        List<String> danhSachThieuChiSo = new ArrayList<>();
-        
-        for (HoGiaDinh ho : danhSachHo) {
-            // Tìm hoặc tạo hóa đơn
-            HoaDon hoaDon = hoaDonRepo.findByHoGiaDinhIdAndDotThuId(ho.getId(), dotThuId)
-                .orElseGet(() -> {
-                    HoaDon newHoaDon = new HoaDon();
-                    newHoaDon.setHoGiaDinh(ho);
-                    newHoaDon.setDotThu(dotThu);
-                    newHoaDon.setTrangThai("ChuaThanhToan");
-                    newHoaDon.setTongTienPhaiThu(BigDecimal.ZERO);
-                    newHoaDon.setSoTienDaDong(BigDecimal.ZERO);
-                    return hoaDonRepo.save(newHoaDon);
-                });
-            
-            BigDecimal tongTien = BigDecimal.ZERO;
-            boolean thieuChiSo = false;
-            
-            for (DotThuLoaiPhi config : danhSachPhi) {
-                LoaiPhi loaiPhi = config.getLoaiPhi();
-                BigDecimal donGia = bangGiaService.getDonGiaApDung(loaiPhi.getId(), toaNhaId);
-                BigDecimal thanhTien = BigDecimal.ZERO;
-                double soLuong = 0;
-                
-                if (UTILITY_FEES.contains(loaiPhi.getTenLoaiPhi())) {
-                    // Phí biến đổi -> Query chỉ số
-                    Integer tieuThu = chiSoService.getTieuThu(ho.getId(), loaiPhi.getId(), thang, nam);
-                    
-                    if (tieuThu == null) {
-                        // Chưa có chỉ số
-                        thieuChiSo = true;
-                        continue;
-                    }
-                    
-                    soLuong = tieuThu;
-                    thanhTien = donGia.multiply(BigDecimal.valueOf(tieuThu));
-                } else {
-                    // Phí cố định -> Lấy từ DinhMucThu của hộ gia đình
-                    Optional<DinhMucThu> dinhMucOpt = dinhMucThuRepo.findByHoGiaDinhIdAndLoaiPhiId(ho.getId(), loaiPhi.getId());
-                    if (dinhMucOpt.isPresent()) {
-                        soLuong = dinhMucOpt.get().getSoLuong();
-                    } else {
-                        // Mặc định = 1 nếu không có định mức
-                        soLuong = 1.0;
-                    }
-                    thanhTien = donGia.multiply(BigDecimal.valueOf(soLuong));
-                }
-                
-                // Tạo hoặc cập nhật chi tiết hóa đơn
-                ChiTietHoaDon chiTiet = chiTietHoaDonRepo
-                    .findByHoaDonIdAndLoaiPhiId(hoaDon.getId(), loaiPhi.getId())
-                    .orElseGet(() -> {
-                        ChiTietHoaDon newChiTiet = new ChiTietHoaDon();
-                        newChiTiet.setHoaDon(hoaDon);
-                        newChiTiet.setLoaiPhi(loaiPhi);
-                        return newChiTiet;
-                    });
-                
-                chiTiet.setSoLuong(soLuong);
-                chiTiet.setDonGia(donGia);
-                chiTiet.setThanhTien(thanhTien);
-                chiTietHoaDonRepo.save(chiTiet);
-                
-                tongTien = tongTien.add(thanhTien);
-            }
-            
-            // Cập nhật tổng tiền hóa đơn
-            hoaDon.setTongTienPhaiThu(tongTien);
-            if (tongTien.compareTo(hoaDon.getSoTienDaDong()) <= 0 && tongTien.compareTo(BigDecimal.ZERO) > 0) {
-                hoaDon.setTrangThai("DaThanhToan");
-            } else if (hoaDon.getSoTienDaDong().compareTo(BigDecimal.ZERO) > 0) {
-                hoaDon.setTrangThai("ThanhToanMotPhan");
-            } else {
-                hoaDon.setTrangThai("ChuaThanhToan");
-            }
-            hoaDonRepo.save(hoaDon);
-            
-            soHoaDonTao++;
-            
-            if (thieuChiSo) {
-                soHoThieuChiSo++;
-                danhSachThieuChiSo.add(ho.getMaHoGiaDinh());
-            }
+        billingClaimService.claim(dotThuId, "tính tiền đồng bộ");
+        try {
+            return invoiceCalculationService.calculate(dotThuId);
+        } finally {
+            billingClaimService.release(dotThuId, "tính tiền đồng bộ");
         }
-        
-        Map<String, Object> result = new HashMap<>();
-        result.put("success", true);
-        result.put("message", "Đã tính tiền cho " + soHoaDonTao + " hộ gia đình");
-        result.put("soHoaDonTao", soHoaDonTao);
-        result.put("soHoThieuChiSo", soHoThieuChiSo);
-        result.put("danhSachThieuChiSo", danhSachThieuChiSo);
-        result.put("thang", thang);
-        result.put("nam", nam);
-        
-        return result;
     }
     
     /**
-     * Lấy bảng kê chi tiết các khoản phí cho tất cả hộ gia đình trong đợt thu.
+     * Tính lại tăng dần: chỉ các hộ có ChiSoDienNuoc, DinhMucThu, BangGiaDichVu
+     * hoặc danh sách phí đợt thu thay đổi kể từ lần tính trước.
      * 
      * @param dotThuId ID đợt thu
-     * @return Bảng kê chi tiết { dotThuId, tenDotThu, toaNha, danhSach[], tongCong }
+     * @return Kết quả tính tiền kèm danhSachThayDoi (hóa đơn thay đổi, chênh lệch)
      */
-    public Map<String, Object> getBangKe(Integer dotThuId) {
-        DotThu dotThu = repo.findById(dotThuId)
-            .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy đợt thu với ID: " + dotThuId));
-        
-        ToaNha toaNha = dotThu.getToaNha();
-        if (toaNha == null) {
-            throw new IllegalStateException("Đợt thu chưa được gán tòa nhà");
-        }
-        
-        // Lấy tất cả hóa đơn trong đợt thu (với eager fetch HoGiaDinh)
-        List<HoaDon> danhSachHoaDon = hoaDonRepo.findByDotThuIdWithHoGiaDinh(dotThuId);
-        
-        // Lấy danh sách loại phí trong đợt thu để có thứ tự
-        List<DotThuLoaiPhi> danhSachPhi = dotThuLoaiPhiRepo.findByDotThuId(dotThuId);
-        List<String> loaiPhiOrder = danhSachPhi.stream()
-            .map(dlp -> dlp.getLoaiPhi().getTenLoaiPhi())
-            .toList();
-        
-        BigDecimal tongCong = BigDecimal.ZERO;
-        List<Map<String, Object>> danhSachHo = new ArrayList<>();
-        
-        for (HoaDon hoaDon : danhSachHoaDon) {
-            HoGiaDinh ho = hoaDon.getHoGiaDinh();
-            
-            Map<String, Object> hoInfo = new HashMap<>();
-            hoInfo.put("hoaDonId", hoaDon.getId());
-            hoInfo.put("maHoGiaDinh", ho.getMaHoGiaDinh());
-            hoInfo.put("soCanHo", ho.getSoCanHo());
-            hoInfo.put("chuHo", ho.getTenChuHo());
-            
-            // Lấy chi tiết hóa đơn (với eager fetch LoaiPhi)
-            List<ChiTietHoaDon> chiTietList = chiTietHoaDonRepo.findByHoaDonIdWithLoaiPhi(hoaDon.getId());
-            List<Map<String, Object>> chiTietInfo = new ArrayList<>();
-            
-            for (ChiTietHoaDon ct : chiTietList) {
-                Map<String, Object> ctMap = new HashMap<>();
-                ctMap.put("tenLoaiPhi", ct.getLoaiPhi().getTenLoaiPhi());
-                ctMap.put("donViTinh", ct.getLoaiPhi().getDonViTinh());
-                ctMap.put("soLuong", ct.getSoLuong());
-                ctMap.put("donGia", ct.getDonGia());
-                ctMap.put("thanhTien", ct.getThanhTien());
-                chiTietInfo.add(ctMap);
-            }
-            
-            hoInfo.put("chiTiet", chiTietInfo);
-            hoInfo.put("tongTien", hoaDon.getTongTienPhaiThu());
-            hoInfo.put("daDong", hoaDon.getSoTienDaDong());
-            hoInfo.put("conNo", hoaDon.getTongTienPhaiThu().subtract(hoaDon.getSoTienDaDong()));
-            hoInfo.put("trangThai", hoaDon.getTrangThai());
-            
-            danhSachHo.add(hoInfo);
-            tongCong = tongCong.add(hoaDon.getTongTienPhaiThu());
+    @Transactional
+    public Map<String, Object> recalculateChangedInvoices(Integer dotThuId) {
+        billingClaimService.claim(dotThuId, "tính lại tăng dần");
+        try {
+            return invoiceCalculationService.recalculateDirty(dotThuId);
+        } finally {
+            billingClaimService.release(dotThuId, "tính lại tăng dần");
         }
-        
-        // Sắp xếp theo mã hộ
-        danhSachHo.sort((a, b) -> {
-            String maA = (String) a.get("maHoGiaDinh");
-            String maB = (String) b.get("maHoGiaDinh");
-            return maA.compareTo(maB);
-        });
-        
-        Map<String, Object> result = new HashMap<>();
-        result.put("dotThuId", dotThu.getId());
-        result.put("tenDotThu", dotThu.getTenDotThu());
-        result.put("toaNha", toaNha.getTenToaNha());
-        result.put("loaiPhiOrder", loaiPhiOrder);
-        result.put("danhSach", danhSachHo);
-        result.put("tongCong", tongCong);
-        result.put("soHoaDon", danhSachHoaDon.size());
-        
-        return result;
     }
-
+    
     /**
-     * Export bảng kê ra file CSV (Excel-compatible).
+     * Số hộ đang chờ tính lại trong đợt thu.
+     */
+    public long countPendingRecalculation(Integer dotThuId) {
+        return dirtyTrackingService.countDirty(dotThuId);
+    }
+    
+    /**
+     * Lấy bảng kê chi tiết các khoản phí của đợt thu (phân trang).
+     * 
+     * LOGIC:
+     * - Số query cố định: đợt thu, loại phí của đợt, tổng cộng, một trang hóa đơn
+     *   (đã sắp theo mã hộ trong DB), chi tiết của đúng các hóa đơn trong trang.
+     * - Bộ nhớ chỉ phụ thuộc kích thước trang (tối đa MAX_BANG_KE_PAGE_SIZE), không phụ thuộc số hộ.
      * 
      * @param dotThuId ID đợt thu
-     * @return byte[] nội dung file CSV
+     * @param page     Trang (bắt đầu từ 0)
+     * @param size     Số hóa đơn mỗi trang
+     * @param pivot    true: trả thành tiền theo cột loại phí (theoLoaiPhi) thay cho chiTiet
+     * @return Bảng kê { dotThuId, tenDotThu, toaNha, loaiPhiOrder, danhSach[], tongCong, ... }
      */
-    public byte[] exportBangKeToCSV(Integer dotThuId) {
+    @Transactional(readOnly = true)
+    public BangKeDTO getBangKe(Integer dotThuId, int page, int size, boolean pivot) {
         DotThu dotThu = repo.findById(dotThuId)
             .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy đợt thu với ID: " + dotThuId));
         
@@ -505,98 +377,69 @@ public class DotThuService {
         if (toaNha == null) {
             throw new IllegalStateException("Đợt thu chưa được gán tòa nhà");
         }
-
-        // Lấy tất cả hóa đơn trong đợt thu
-        List<HoaDon> danhSachHoaDon = hoaDonRepo.findByDotThuIdWithHoGiaDinh(dotThuId);
+        if (page < 0 || size < 1 || size > MAX_BANG_KE_PAGE_SIZE) {
+            throw new IllegalArgumentException("page phải >= 0, size phải từ 1 đến " + MAX_BANG_KE_PAGE_SIZE);
+        }
         
-        // Lấy danh sách loại phí trong đợt thu
-        List<DotThuLoaiPhi> danhSachPhi = dotThuLoaiPhiRepo.findByDotThuId(dotThuId);
-        List<String> loaiPhiNames = danhSachPhi.stream()
-            .map(dlp -> dlp.getLoaiPhi().getTenLoaiPhi())
+        // Loại phí trong đợt thu để có thứ tự cột
+        List<LoaiPhi> danhSachPhi = dotThuLoaiPhiRepo.findByDotThuIdWithLoaiPhi(dotThuId).stream()
+            .map(DotThuLoaiPhi::getLoaiPhi)
             .toList();
-        
-        // Build CSV content
-        StringBuilder csv = new StringBuilder();
-        
-        // UTF-8 BOM để Excel hiển thị tiếng Việt đúng
-        csv.append("\uFEFF");
-        
-        // Header row
-        csv.append("STT,Mã hộ,Căn hộ,Chủ hộ");
-        for (String loaiPhi : loaiPhiNames) {
-            csv.append(",").append(escapeCSV(loaiPhi));
+        Map<Integer, Integer> cotTheoLoaiPhi = new HashMap<>();
+        for (int i = 0; i < danhSachPhi.size(); i++) {
+            cotTheoLoaiPhi.put(danhSachPhi.get(i).getId(), i);
         }
-        csv.append(",Tổng tiền,Đã đóng,Còn nợ,Trạng thái\n");
         
-        // Data rows
-        int stt = 1;
-        BigDecimal tongCongPhaiThu = BigDecimal.ZERO;
-        BigDecimal tongCongDaDong = BigDecimal.ZERO;
-        
-        // Sắp xếp theo mã hộ
-        danhSachHoaDon.sort((a, b) -> a.getHoGiaDinh().getMaHoGiaDinh()
-            .compareTo(b.getHoGiaDinh().getMaHoGiaDinh()));
-        
-        for (HoaDon hoaDon : danhSachHoaDon) {
-            HoGiaDinh ho = hoaDon.getHoGiaDinh();
-            
-            csv.append(stt++);
-            csv.append(",").append(escapeCSV(ho.getMaHoGiaDinh()));
-            csv.append(",").append(escapeCSV(ho.getSoCanHo()));
-            csv.append(",").append(escapeCSV(ho.getTenChuHo()));
-            
-            // Chi tiết từng loại phí
-            List<ChiTietHoaDon> chiTietList = chiTietHoaDonRepo.findByHoaDonIdWithLoaiPhi(hoaDon.getId());
-            Map<String, BigDecimal> phiMap = new HashMap<>();
-            for (ChiTietHoaDon ct : chiTietList) {
-                phiMap.put(ct.getLoaiPhi().getTenLoaiPhi(), ct.getThanhTien());
-            }
-            
-            for (String loaiPhi : loaiPhiNames) {
-                BigDecimal thanhTien = phiMap.getOrDefault(loaiPhi, BigDecimal.ZERO);
-                csv.append(",").append(thanhTien);
+        // Tổng cộng toàn đợt thu
+        Object[] tong = hoaDonRepo.sumBangKe(dotThuId).get(0);
+        long soHoaDon = ((Number) tong[0]).longValue();
+        
+        // Một trang hóa đơn + chi tiết của trang đó
+        List<Object[]> hoaDonRows = hoaDonRepo.findBangKeRows(dotThuId, PageRequest.of(page, size));
+        Map<Integer, BangKeDTO.DongBangKe> dongTheoHoaDon = new LinkedHashMap<>();
+        for (Object[] r : hoaDonRows) {
+            BangKeDTO.DongBangKe dong = new BangKeDTO.DongBangKe(
+                (Integer) r[0], (String) r[1], (String) r[2], (String) r[3],
+                (BigDecimal) r[4], (BigDecimal) r[5], (String) r[6]);
+            if (pivot) {
+                dong.setTheoLoaiPhi(new ArrayList<>(Collections.nCopies(danhSachPhi.size(), BigDecimal.ZERO)));
+            } else {
+                dong.setChiTiet(new ArrayList<>());
             }
-            
-            csv.append(",").append(hoaDon.getTongTienPhaiThu());
-            csv.append(",").append(hoaDon.getSoTienDaDong());
-            csv.append(",").append(hoaDon.getTongTienPhaiThu().subtract(hoaDon.getSoTienDaDong()));
-            
-            String trangThai = switch (hoaDon.getTrangThai()) {
-                case "DaThanhToan" -> "Đã thanh toán";
-                case "ThanhToanMotPhan" -> "Thanh toán một phần";
-                case "ChuaThanhToan" -> "Chưa thanh toán";
-                default -> hoaDon.getTrangThai();
-            };
-            csv.append(",").append(escapeCSV(trangThai));
-            csv.append("\n");
-            
-            tongCongPhaiThu = tongCongPhaiThu.add(hoaDon.getTongTienPhaiThu());
-            tongCongDaDong = tongCongDaDong.add(hoaDon.getSoTienDaDong());
+            dongTheoHoaDon.put(dong.getHoaDonId(), dong);
         }
         
-        // Summary row
-        csv.append("\n");
-        csv.append(",,,TỔNG CỘNG");
-        for (int i = 0; i < loaiPhiNames.size(); i++) {
-            csv.append(",");
+        if (!dongTheoHoaDon.isEmpty()) {
+            for (Object[] r : chiTietHoaDonRepo.findBangKeRowsByHoaDonIds(dongTheoHoaDon.keySet())) {
+                BangKeDTO.DongBangKe dong = dongTheoHoaDon.get((Integer) r[0]);
+                Integer loaiPhiId = (Integer) r[1];
+                BigDecimal thanhTien = (BigDecimal) r[6];
+                if (pivot) {
+                    Integer cot = cotTheoLoaiPhi.get(loaiPhiId);
+                    if (cot != null && thanhTien != null) {
+                        dong.getTheoLoaiPhi().set(cot, dong.getTheoLoaiPhi().get(cot).add(thanhTien));
+                    }
+                } else {
+                    dong.getChiTiet().add(new BangKeDTO.ChiTietBangKe(
+                        loaiPhiId, (String) r[2], (String) r[3], (Double) r[4], (BigDecimal) r[5], thanhTien));
+                }
+            }
         }
-        csv.append(",").append(tongCongPhaiThu);
-        csv.append(",").append(tongCongDaDong);
-        csv.append(",").append(tongCongPhaiThu.subtract(tongCongDaDong));
-        csv.append(",\n");
         
-        return csv.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
-    }
-    
-    /**
-     * Escape CSV value (xử lý dấu phẩy và dấu ngoặc kép).
-     */
-    private String escapeCSV(String value) {
-        if (value == null) return "";
-        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
-            return "\"" + value.replace("\"", "\"\"") + "\"";
-        }
-        return value;
+        BangKeDTO result = new BangKeDTO();
+        result.setDotThuId(dotThu.getId());
+        result.setTenDotThu(dotThu.getTenDotThu());
+        result.setToaNha(toaNha.getTenToaNha());
+        result.setLoaiPhiOrder(danhSachPhi.stream().map(LoaiPhi::getTenLoaiPhi).toList());
+        result.setLoaiPhiIds(danhSachPhi.stream().map(LoaiPhi::getId).toList());
+        result.setDanhSach(new ArrayList<>(dongTheoHoaDon.values()));
+        result.setTongCong((BigDecimal) tong[1]);
+        result.setTongDaDong((BigDecimal) tong[2]);
+        result.setSoHoaDon(soHoaDon);
+        result.setPage(page);
+        result.setSize(size);
+        result.setTotalPages((int) ((soHoaDon + size - 1) / size));
+        
+        return result;
     }
 }
-
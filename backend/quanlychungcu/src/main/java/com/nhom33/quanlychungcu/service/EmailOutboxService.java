@@ -0,0 +1,312 @@
+package com.nhom33.quanlychungcu.service;
+
+import com.nhom33.quanlychungcu.entity.HangDoiEmail;
+import com.nhom33.quanlychungcu.entity.ThongBao;
+import com.nhom33.quanlychungcu.exception.ResourceNotFoundException;
+import com.nhom33.quanlychungcu.repository.HangDoiEmailBatchRepository;
+import com.nhom33.quanlychungcu.repository.HangDoiEmailBatchRepository.EmailMoi;
+import com.nhom33.quanlychungcu.repository.HangDoiEmailRepository;
+import com.nhom33.quanlychungcu.repository.NhatKyThayDoiRepository;
+import com.nhom33.quanlychungcu.repository.ThongBaoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailParseException;
+import org.springframework.mail.MailPreparationException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Service: Hàng đợi email (outbox) và các thread gửi.
+ *
+ * LOGIC NGHIỆP VỤ:
+ * - Xếp hàng: ghi email vào HangDoiEmail trong transaction của request rồi trả về ngay
+ *   (kèm luotGuiId để theo dõi tiến độ); email trùng KhoaChongTrung bị bỏ qua.
+ * - Gửi: lấy các email đến hạn, tối đa 2 email cho mỗi thread của mailExecutor, đánh dấu 'DangGui'
+ *   rồi gửi song song; khi còn email đến hạn, thread gửi xong lấy tiếp ngay khi một nửa số chỗ trống,
+ *   không đợi lần quét định kỳ. Tốc độ gửi chung bị giới hạn theo app.mail.rate-per-second.
+ * - Lỗi tạm thời -> thử lại sau base * 2^(lần thử - 1) giây; hết số lần thử hoặc địa chỉ không hợp lệ -> 'Loi'.
+ * - Server tắt giữa chừng -> email 'DangGui' được đưa lại vào hàng đợi khi khởi động.
+ */
+@Service
+public class EmailOutboxService {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailOutboxService.class);
+
+    // Giới hạn tham số IN của SQL Server là 2100
+    private static final int IN_CHUNK_SIZE = 1000;
+    // Khoảng thử lại tối đa = base * 2^6
+    private static final int MAX_BACKOFF_SHIFT = 6;
+    private static final int MAX_LOI_HIEN_THI = 50;
+    private static final String BANG = "HangDoiEmail";
+
+    private final HangDoiEmailRepository hangDoiRepo;
+    private final HangDoiEmailBatchRepository batchRepo;
+    private final ThongBaoRepository thongBaoRepo;
+    private final NhatKyThayDoiRepository nhatKyRepo;
+    private final JavaMailSender mailSender;
+    private final ThreadPoolTaskExecutor mailExecutor;
+
+    @Value("${spring.mail.username:}")
+    private String fromEmail;
+
+    @Value("${app.notification.enabled:false}")
+    private boolean emailEnabled;
+
+    @Value("${app.mail.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${app.mail.retry-base-seconds:30}")
+    private long retryBaseSeconds;
+
+    private final RateLimiter rateLimiter;
+    private final AtomicInteger dangGui = new AtomicInteger();
+    // Lần lấy gần nhất đầy -> có thể còn email đến hạn
+    private volatile boolean conEmailDenHan;
+
+    public EmailOutboxService(HangDoiEmailRepository hangDoiRepo,
+                              HangDoiEmailBatchRepository batchRepo,
+                              ThongBaoRepository thongBaoRepo,
+                              JavaMailSender mailSender,
+                              @Qualifier("mailExecutor") ThreadPoolTaskExecutor mailExecutor,
+                              @Value("${app.mail.rate-per-second:10}") double ratePerSecond,
+                              NhatKyThayDoiRepository nhatKyRepo) {
+        this.hangDoiRepo = hangDoiRepo;
+        this.nhatKyRepo = nhatKyRepo;
+        this.batchRepo = batchRepo;
+        this.thongBaoRepo = thongBaoRepo;
+        this.mailSender = mailSender;
+        this.mailExecutor = mailExecutor;
+        this.rateLimiter = new RateLimiter(ratePerSecond);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void khoiPhucKhiKhoiDong() {
+        int count = hangDoiRepo.khoiPhucDangGui();
+        if (count > 0) {
+            nhatKyRepo.ghiNhanCaBang("HangDoiEmail");
+            log.warn("Đưa lại {} email đang gửi dở từ lần chạy trước vào hàng đợi", count);
+        }
+    }
+
+    // ===== Xếp hàng =====
+
+    /**
+     * Xếp hàng một lượt email.
+     *
+     * @return luotGuiId, soDaXepHang, soTrung (đã có trong hàng đợi với cùng khóa chống trùng)
+     */
+    @Transactional
+    public Map<String, Object> xepHang(List<EmailMoi> emails) {
+        // Trùng trong chính lượt gửi
+        Map<String, EmailMoi> theoKhoa = new LinkedHashMap<>();
+        for (EmailMoi e : emails) {
+            theoKhoa.putIfAbsent(e.khoaChongTrung(), e);
+        }
+        // Trùng với các lượt trước (lọc sớm; insert vẫn bỏ qua khóa do lượt song song vừa ghi)
+        List<String> khoa = new ArrayList<>(theoKhoa.keySet());
+        for (int i = 0; i < khoa.size(); i += IN_CHUNK_SIZE) {
+            hangDoiRepo.findKhoaDaCo(khoa.subList(i, Math.min(i + IN_CHUNK_SIZE, khoa.size())))
+                .forEach(theoKhoa::remove);
+        }
+
+        String luotGuiId = UUID.randomUUID().toString();
+        int soDaXepHang = batchRepo.insert(luotGuiId, new ArrayList<>(theoKhoa.values()));
+        log.info("Lượt gửi {}: xếp hàng {} email, bỏ qua {} email trùng",
+                 luotGuiId, soDaXepHang, emails.size() - soDaXepHang);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("luotGuiId", luotGuiId);
+        result.put("soDaXepHang", soDaXepHang);
+        result.put("soTrung", emails.size() - soDaXepHang);
+        return result;
+    }
+
+    /**
+     * Tiến độ một lượt gửi: số email theo trạng thái và danh sách email lỗi / đang chờ thử lại.
+     */
+    public Map<String, Object> getTienDo(String luotGuiId) {
+        List<Object[]> rows = hangDoiRepo.thongKeLuotGui(luotGuiId);
+        if (rows.isEmpty()) {
+            throw new ResourceNotFoundException("Không tìm thấy lượt gửi với ID: " + luotGuiId);
+        }
+
+        Map<String, Long> theoTrangThai = new LinkedHashMap<>();
+        theoTrangThai.put(HangDoiEmail.CHO_GUI, 0L);
+        theoTrangThai.put(HangDoiEmail.DANG_GUI, 0L);
+        theoTrangThai.put(HangDoiEmail.DA_GUI, 0L);
+        theoTrangThai.put(HangDoiEmail.LOI, 0L);
+        long tong = 0;
+        LocalDateTime batDau = null;
+        LocalDateTime guiCuoi = null;
+        for (Object[] row : rows) {
+            long soLuong = ((Number) row[1]).longValue();
+            theoTrangThai.put((String) row[0], soLuong);
+            tong += soLuong;
+            LocalDateTime ngayTao = (LocalDateTime) row[2];
+            if (batDau == null || (ngayTao != null && ngayTao.isBefore(batDau))) {
+                batDau = ngayTao;
+            }
+            LocalDateTime ngayGui = (LocalDateTime) row[3];
+            if (ngayGui != null && (guiCuoi == null || ngayGui.isAfter(guiCuoi))) {
+                guiCuoi = ngayGui;
+            }
+        }
+        long daGui = theoTrangThai.get(HangDoiEmail.DA_GUI);
+        long conLai = theoTrangThai.get(HangDoiEmail.CHO_GUI) + theoTrangThai.get(HangDoiEmail.DANG_GUI);
+
+        List<Map<String, Object>> loi = new ArrayList<>();
+        for (Object[] row : hangDoiRepo.findLoiByLuotGui(luotGuiId, PageRequest.of(0, MAX_LOI_HIEN_THI))) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("email", row[0]);
+            item.put("trangThai", row[1]);
+            item.put("soLanThu", row[2]);
+            item.put("loi", row[3]);
+            loi.add(item);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("luotGuiId", luotGuiId);
+        result.put("tong", tong);
+        result.put("theoTrangThai", theoTrangThai);
+        result.put("hoanThanh", conLai == 0);
+        result.put("ngayBatDau", batDau);
+        result.put("lanGuiCuoi", guiCuoi);
+        if (batDau != null && guiCuoi != null && daGui > 0) {
+            double giay = Math.max(1, Duration.between(batDau, guiCuoi).toMillis()) / 1000.0;
+            result.put("emailMoiGiay", Math.round(daGui / giay * 100) / 100.0);
+        }
+        result.put("danhSachLoi", loi);
+        return result;
+    }
+
+    // ===== Gửi =====
+
+    /**
+     * Lấy email đến hạn cho các thread rảnh. Không lấy quá 2 email cho mỗi thread,
+     * nên email chưa gửi luôn nằm trong DB.
+     */
+    @Scheduled(fixedDelayString = "${app.mail.poll-interval-ms:1000}")
+    public synchronized void dieuPhoi() {
+        int ranh = mailExecutor.getMaxPoolSize() * 2 - dangGui.get();
+        if (ranh <= 0) {
+            return;
+        }
+        List<Long> ids = hangDoiRepo.findDenHan(LocalDateTime.now(), PageRequest.of(0, ranh));
+        conEmailDenHan = ids.size() == ranh;
+        if (ids.isEmpty()) {
+            return;
+        }
+        // Cập nhật trạng thái bằng JPQL ngoài transaction: ghi nhật ký trước (ghi thừa không sao)
+        nhatKyRepo.ghiNhan(BANG, ids);
+        if (hangDoiRepo.danhDauDangGui(ids) == 0) {
+            return;
+        }
+        for (HangDoiEmail email : hangDoiRepo.findAllById(ids)) {
+            if (!HangDoiEmail.DANG_GUI.equals(email.getTrangThai())) {
+                continue;
+            }
+            dangGui.incrementAndGet();
+            mailExecutor.execute(() -> {
+                try {
+                    gui(email);
+                } finally {
+                    if (dangGui.decrementAndGet() <= mailExecutor.getMaxPoolSize() && conEmailDenHan) {
+                        dieuPhoi();
+                    }
+                }
+            });
+        }
+    }
+
+    private void gui(HangDoiEmail email) {
+        try {
+            rateLimiter.acquire();
+            guiEmail(email.getEmailNguoiNhan(), email.getTieuDe(), email.getNoiDung());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Server đang tắt -> để lại cho lần chạy sau
+            nhatKyRepo.ghiNhan(BANG, email.getId());
+            hangDoiRepo.danhDauLoi(email.getId(), HangDoiEmail.CHO_GUI, LocalDateTime.now(), "Bị gián đoạn");
+            return;
+        } catch (Exception e) {
+            int lanThu = email.getSoLanThu() + 1;
+            boolean boCuoc = lanThu >= maxAttempts
+                || e instanceof MailParseException
+                || e instanceof MailPreparationException;
+            LocalDateTime lanSau = LocalDateTime.now().plusSeconds(retryBaseSeconds << Math.min(lanThu - 1, MAX_BACKOFF_SHIFT));
+            String loi = e.getMessage() != null && e.getMessage().length() > 1000
+                ? e.getMessage().substring(0, 1000)
+                : e.getMessage();
+            nhatKyRepo.ghiNhan(BANG, email.getId());
+            hangDoiRepo.danhDauLoi(email.getId(), boCuoc ? HangDoiEmail.LOI : HangDoiEmail.CHO_GUI, lanSau, loi);
+            log.warn("Gửi email {} tới {} lỗi (lần {}{}): {}", email.getId(), email.getEmailNguoiNhan(),
+                     lanThu, boCuoc ? ", bỏ qua" : "", e.getMessage());
+            return;
+        }
+
+        nhatKyRepo.ghiNhan(BANG, email.getId());
+        hangDoiRepo.danhDauDaGui(email.getId(), LocalDateTime.now());
+        if (email.getLoaiThongBao() != null) {
+            ThongBao thongBao = new ThongBao(email.getTieuDe(), email.getNoiDung(), "Hệ thống");
+            thongBao.setLoaiThongBao(email.getLoaiThongBao());
+            thongBaoRepo.save(thongBao);
+        }
+    }
+
+    private void guiEmail(String to, String subject, String content) {
+        if (!emailEnabled || fromEmail == null || fromEmail.isEmpty()) {
+            log.debug("Email không được bật hoặc chưa cấu hình, bỏ qua gửi tới {}: {}", to, subject);
+            return;
+        }
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setFrom(fromEmail);
+        message.setTo(to);
+        message.setSubject(subject);
+        message.setText(content);
+        mailSender.send(message);
+    }
+
+    /**
+     * Giới hạn tốc độ gửi chung cho mọi thread: mỗi lần gửi chiếm một khe thời gian 1/rate giây.
+     */
+    private static class RateLimiter {
+        private final long khoangNanos;
+        private long kheTiepTheo;
+
+        RateLimiter(double ratePerSecond) {
+            this.khoangNanos = ratePerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond) : 0;
+            this.kheTiepTheo = System.nanoTime();
+        }
+
+        void acquire() throws InterruptedException {
+            if (khoangNanos == 0) {
+                return;
+            }
+            long cho;
+            synchronized (this) {
+                long now = System.nanoTime();
+                long khe = Math.max(now, kheTiepTheo);
+                kheTiepTheo = khe + khoangNanos;
+                cho = khe - now;
+            }
+            if (cho > 0) {
+                TimeUnit.NANOSECONDS.sleep(cho);
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.nhom33.quanlychungcu.service;
 
 import com.nhom33.quanlychungcu.dto.HoGiaDinhRequestDTO;
+import com.nhom33.quanlychungcu.dto.TrangConTroDTO;
 import com.nhom33.quanlychungcu.entity.ChiSoDienNuoc;
 import com.nhom33.quanlychungcu.entity.HoGiaDinh;
 import com.nhom33.quanlychungcu.entity.LoaiPhi;
@@ -12,6 +13,8 @@ import com.nhom33.quanlychungcu.repository.HoGiaDinhRepository;
 import com.nhom33.quanlychungcu.repository.LoaiPhiRepository;
 import com.nhom33.quanlychungcu.repository.NhanKhauRepository;
 import com.nhom33.quanlychungcu.repository.ToaNhaRepository;
+import com.nhom33.quanlychungcu.util.ChiMucTimKiem.KetQua;
+import com.nhom33.quanlychungcu.util.ConTroTrang;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import org.slf4j.Logger;
@@ -23,6 +26,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @Service
 public class HoGiaDinhService {
@@ -39,6 +45,8 @@ public class HoGiaDinhService {
     private final NhanKhauRepository nhanKhauRepo;
     private final LoaiPhiRepository loaiPhiRepo;
     private final ChiSoDienNuocRepository chiSoRepo;
+    private final TimKiemService timKiemService;
+    private final TongHopDotThuService tongHopService;
     
     @PersistenceContext
     private EntityManager entityManager;
@@ -47,12 +55,16 @@ public class HoGiaDinhService {
                            ToaNhaRepository toaNhaRepo, 
                            NhanKhauRepository nhanKhauRepo,
                            LoaiPhiRepository loaiPhiRepo,
-                           ChiSoDienNuocRepository chiSoRepo) {
+                           ChiSoDienNuocRepository chiSoRepo,
+                           TimKiemService timKiemService,
+                           TongHopDotThuService tongHopService) {
         this.repo = repo;
         this.toaNhaRepo = toaNhaRepo;
         this.nhanKhauRepo = nhanKhauRepo;
         this.loaiPhiRepo = loaiPhiRepo;
         this.chiSoRepo = chiSoRepo;
+        this.timKiemService = timKiemService;
+        this.tongHopService = tongHopService;
     }
 
     /**
@@ -103,6 +115,7 @@ public class HoGiaDinhService {
 
         // Lưu và return
         HoGiaDinh savedHoGiaDinh = repo.save(hoGiaDinh);
+        tongHopService.ghiNhanSoHo(null, toaNha.getId());
 
         // === Bước 4: Tạo chỉ số điện/nước bàn giao (nếu có) ===
         createInitialMeterReadings(savedHoGiaDinh, dto);
@@ -194,7 +207,9 @@ public class HoGiaDinhService {
         hoGiaDinh.setToaNha(toaNha);
 
         // Set ngày tạo sẽ được xử lý bởi @PrePersist
-        return repo.save(hoGiaDinh);
+        HoGiaDinh saved = repo.save(hoGiaDinh);
+        tongHopService.ghiNhanSoHo(null, toaNha.getId());
+        return saved;
     }
 
     @Transactional
@@ -225,6 +240,8 @@ public class HoGiaDinhService {
             );
         }
 
+        Integer toaNhaCu = exist.getToaNha() != null ? exist.getToaNha().getId() : null;
+
         // Cập nhật thông tin
         exist.setMaHoGiaDinh(updated.getMaHoGiaDinh());
         exist.setTenChuHo(updated.getTenChuHo());
@@ -237,7 +254,9 @@ public class HoGiaDinhService {
         exist.setToaNha(toaNha);
 
         // NgayCapNhat sẽ được set bởi @PreUpdate
-        return repo.save(exist);
+        HoGiaDinh saved = repo.save(exist);
+        tongHopService.ghiNhanSoHo(toaNhaCu, toaNha.getId());
+        return saved;
     }
 
     /**
@@ -263,6 +282,7 @@ public class HoGiaDinhService {
             .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy hộ gia đình với ID: " + id));
         
         String maHoGiaDinh = hoGiaDinh.getMaHoGiaDinh();
+        Integer toaNhaId = hoGiaDinh.getToaNha() != null ? hoGiaDinh.getToaNha().getId() : null;
         log.info("Tìm thấy hộ gia đình: {} - Số nhân khẩu: {}", 
                  maHoGiaDinh, hoGiaDinh.getDanhSachNhanKhau().size());
         
@@ -275,6 +295,9 @@ public class HoGiaDinhService {
             
             // Bước 4: Clear cache để tránh stale data
             entityManager.clear();
+
+            // Bước 5: Cập nhật số hộ trong bảng tổng hợp đợt thu
+            tongHopService.ghiNhanSoHo(toaNhaId, null);
             
             log.info("Xóa thành công hộ gia đình: {}", maHoGiaDinh);
         } catch (Exception e) {
@@ -316,11 +339,31 @@ public class HoGiaDinhService {
         return repo.findAll(pageable);
     }
 
+    /**
+     * Danh sách hộ gia đình phân trang theo con trỏ (sắp theo id): trang sau tốn như trang đầu,
+     * tongSo chỉ được đếm khi dem = true.
+     */
+    public TrangConTroDTO<HoGiaDinh> findAllTheoConTro(String conTro, int size, boolean giamDan, boolean dem) {
+        int sauId = ConTroTrang.sauId(conTro, giamDan);
+        List<HoGiaDinh> dong = giamDan
+            ? repo.findTrangTruocId(sauId, ConTroTrang.gioiHan(size))
+            : repo.findTrangSauId(sauId, ConTroTrang.gioiHan(size));
+        return ConTroTrang.taoTrang(dong, size, giamDan, HoGiaDinh::getId, dem ? repo.count() : null);
+    }
+
+    /**
+     * Tìm theo tên chủ hộ qua chỉ mục tìm kiếm: không phân biệt dấu, khớp tiền tố từng từ,
+     * cũng khớp mã hộ / số căn hộ; kết quả xếp theo mức độ khớp.
+     */
     public Page<HoGiaDinh> searchByTenChuHo(String tenChuHo, @NonNull Pageable pageable) {
         if (tenChuHo == null || tenChuHo.isBlank()) {
             return repo.findAll(pageable);
         }
-        return repo.findByTenChuHoContainingIgnoreCase(tenChuHo, pageable);
+        KetQua ketQua = timKiemService.timHoGiaDinh(tenChuHo, Map.of(), pageable);
+        if (ketQua == null) {
+            return repo.findByTenChuHoContainingIgnoreCase(tenChuHo, pageable);
+        }
+        return TimKiemService.taiTrang(ketQua, repo::findAllById, HoGiaDinh::getId, pageable);
     }
 
     public Page<HoGiaDinh> searchBySoCanHo(String soCanHo, @NonNull Pageable pageable) {
@@ -335,9 +378,23 @@ public class HoGiaDinhService {
         return repo.findByTrangThai(trangThai, pageable);
     }
 
+    /**
+     * Tìm kiếm đa điều kiện: mã hộ và tên chủ hộ qua chỉ mục tìm kiếm, số căn hộ / trạng thái khớp chính xác.
+     */
     public Page<HoGiaDinh> search(String maHoGiaDinh, String tenChuHo, String soCanHo, 
                                    String trangThai, @NonNull Pageable pageable) {
-        return repo.search(maHoGiaDinh, tenChuHo, soCanHo, trangThai, pageable);
+        String truyVan = String.join(" ",
+            maHoGiaDinh != null ? maHoGiaDinh : "", tenChuHo != null ? tenChuHo : "").trim();
+        Map<String, String> loc = new HashMap<>();
+        loc.put("soCanHo", soCanHo);
+        loc.put("trangThai", trangThai);
+        boolean coDieuKien = !truyVan.isEmpty()
+            || loc.values().stream().anyMatch(v -> v != null && !v.isBlank());
+        KetQua ketQua = coDieuKien ? timKiemService.timHoGiaDinh(truyVan, loc, pageable) : null;
+        if (ketQua == null) {
+            return repo.search(maHoGiaDinh, tenChuHo, soCanHo, trangThai, pageable);
+        }
+        return TimKiemService.taiTrang(ketQua, repo::findAllById, HoGiaDinh::getId, pageable);
     }
 
     public long countByTrangThai(String trangThai) {
@@ -1,8 +1,10 @@
 package com.nhom33.quanlychungcu.service;
 
+import com.nhom33.quanlychungcu.dto.TrangConTroDTO;
 import com.nhom33.quanlychungcu.entity.*;
 import com.nhom33.quanlychungcu.exception.ResourceNotFoundException;
 import com.nhom33.quanlychungcu.repository.*;
+import com.nhom33.quanlychungcu.util.ConTroTrang;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.lang.NonNull;
@@ -22,6 +24,8 @@ public class HoaDonService {
     private final ChiTietHoaDonRepository chiTietRepo;
     private final LichSuThanhToanRepository thanhToanRepo;
     private final BangGiaService bangGiaService;
+    private final TongHopDotThuService tongHopService;
+    private final CongNoService congNoService;
 
     public HoaDonService(HoaDonRepository hoaDonRepo,
                         HoGiaDinhRepository hoGiaDinhRepo,
@@ -29,7 +33,9 @@ public class HoaDonService {
                         DinhMucThuRepository dinhMucRepo,
                         ChiTietHoaDonRepository chiTietRepo,
                         LichSuThanhToanRepository thanhToanRepo,
-                        BangGiaService bangGiaService) {
+                        BangGiaService bangGiaService,
+                        TongHopDotThuService tongHopService,
+                        CongNoService congNoService) {
         this.hoaDonRepo = hoaDonRepo;
         this.hoGiaDinhRepo = hoGiaDinhRepo;
         this.dotThuRepo = dotThuRepo;
@@ -37,6 +43,8 @@ public class HoaDonService {
         this.chiTietRepo = chiTietRepo;
         this.thanhToanRepo = thanhToanRepo;
         this.bangGiaService = bangGiaService;
+        this.tongHopService = tongHopService;
+        this.congNoService = congNoService;
     }
 
     @Transactional
@@ -74,7 +82,7 @@ public class HoaDonService {
             LoaiPhi loaiPhi = dm.getLoaiPhi();
             if (loaiPhi.getDangHoatDong()) {
                 // Lấy giá ưu tiên: BangGiaDichVu (theo tòa) > LoaiPhi.donGia (mặc định)
-                BigDecimal donGia = bangGiaService.getDonGiaApDung(loaiPhi.getId(), toaNhaId);
+                BigDecimal donGia = bangGiaService.getDonGiaApDung(loaiPhi.getId(), toaNhaId, dotThu.getNgayBatDau());
                 
                 ChiTietHoaDon chiTiet = new ChiTietHoaDon();
                 chiTiet.setHoaDon(hoaDon);
@@ -89,23 +97,33 @@ public class HoaDonService {
         }
 
         hoaDon.setTongTienPhaiThu(tongTien);
-        return hoaDonRepo.save(hoaDon);
+        hoaDon = hoaDonRepo.save(hoaDon);
+        tongHopService.ghiNhanThayDoi(idDotThu, null, TongHopDotThuService.TrangThaiHoaDon.of(hoaDon));
+        congNoService.ghiPhatSinh(idHoGiaDinh, hoaDon.getId(), tongTien, dotThu.getNgayBatDau(),
+                                  "Hóa đơn " + dotThu.getTenDotThu());
+        return hoaDon;
     }
 
     @Transactional
     public HoaDon updateTrangThai(Integer id, String trangThai) {
-        HoaDon hoaDon = hoaDonRepo.findById(id)
+        HoaDon hoaDon = hoaDonRepo.findByIdForUpdate(id)
             .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy hóa đơn với ID: " + id));
         
+        TongHopDotThuService.TrangThaiHoaDon truoc = TongHopDotThuService.TrangThaiHoaDon.of(hoaDon);
         hoaDon.setTrangThai(trangThai);
-        return hoaDonRepo.save(hoaDon);
+        hoaDon = hoaDonRepo.save(hoaDon);
+        tongHopService.ghiNhanThayDoi(hoaDon.getDotThu().getId(), truoc, TongHopDotThuService.TrangThaiHoaDon.of(hoaDon));
+        return hoaDon;
     }
 
     @Transactional
     public LichSuThanhToan addPayment(Integer idHoaDon, BigDecimal soTien, String hinhThuc, String nguoiNop, String ghiChu) {
-        HoaDon hoaDon = hoaDonRepo.findById(idHoaDon)
+        // Khóa hóa đơn trước khi chụp trạng thái: hai lần nộp đồng thời không cùng thấy "chưa đóng"
+        HoaDon hoaDon = hoaDonRepo.findByIdForUpdate(idHoaDon)
             .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy hóa đơn với ID: " + idHoaDon));
 
+        TongHopDotThuService.TrangThaiHoaDon truoc = TongHopDotThuService.TrangThaiHoaDon.of(hoaDon);
+
         LichSuThanhToan thanhToan = new LichSuThanhToan();
         thanhToan.setHoaDon(hoaDon);
         thanhToan.setSoTien(soTien);
@@ -114,6 +132,8 @@ public class HoaDonService {
         thanhToan.setGhiChu(ghiChu);
         
         thanhToan = thanhToanRepo.save(thanhToan);
+        congNoService.ghiThanhToan(hoaDon.getHoGiaDinh().getId(), idHoaDon, thanhToan.getId(), soTien,
+                                   thanhToan.getNgayNop(), "Thanh toán " + (hinhThuc != null ? hinhThuc : ""));
 
         // Cập nhật số tiền đã đóng
         BigDecimal tongDaDong = thanhToanRepo.sumSoTienByHoaDonId(idHoaDon);
@@ -131,6 +151,7 @@ public class HoaDonService {
         }
         
         hoaDonRepo.save(hoaDon);
+        tongHopService.ghiNhanThayDoi(hoaDon.getDotThu().getId(), truoc, TongHopDotThuService.TrangThaiHoaDon.of(hoaDon));
         return thanhToan;
     }
 
@@ -143,6 +164,15 @@ public class HoaDonService {
         return hoaDonRepo.findAll(pageable);
     }
 
+    /**
+     * Danh sách hóa đơn mới nhất trước, phân trang theo con trỏ; tongSo chỉ được đếm khi dem = true.
+     */
+    public TrangConTroDTO<HoaDon> findAllTheoConTro(String conTro, int size, boolean dem) {
+        List<HoaDon> dong = hoaDonRepo.findTrangTruocId(
+            ConTroTrang.sauId(conTro, true), ConTroTrang.gioiHan(size));
+        return ConTroTrang.taoTrang(dong, size, true, HoaDon::getId, dem ? hoaDonRepo.count() : null);
+    }
+
     public Page<HoaDon> findByHoGiaDinh(Integer idHoGiaDinh, @NonNull Pageable pageable) {
         return hoaDonRepo.findByHoGiaDinhIdWithDetails(idHoGiaDinh, pageable);
     }
@@ -155,6 +185,21 @@ public class HoaDonService {
         return thanhToanRepo.findByHoaDonId(idHoaDon);
     }
 
+    /**
+     * Lịch sử thanh toán (mọi hóa đơn hoặc một hóa đơn, lọc tùy chọn theo hình thức), mới nhất trước,
+     * phân trang theo con trỏ: trang thứ N tốn như trang đầu (một hóa đơn: seek trên
+     * IX_LichSuThanhToan_HoaDon_GiaoDich, xem database/migration_lichsu_thanhtoan_index.sql).
+     */
+    public TrangConTroDTO<LichSuThanhToan> getLichSuThanhToanTheoConTro(Integer idHoaDon, String hinhThuc,
+                                                                        String conTro, int size, boolean dem) {
+        int truocId = ConTroTrang.sauId(conTro, true);
+        List<LichSuThanhToan> dong = idHoaDon != null
+            ? thanhToanRepo.findTrangTruocIdTheoHoaDon(truocId, idHoaDon, hinhThuc, ConTroTrang.gioiHan(size))
+            : thanhToanRepo.findTrangTruocId(truocId, hinhThuc, ConTroTrang.gioiHan(size));
+        return ConTroTrang.taoTrang(dong, size, true, LichSuThanhToan::getId,
+            dem ? thanhToanRepo.countTheoBoLoc(idHoaDon, hinhThuc) : null);
+    }
+
     /**
      * Tìm hóa đơn của một hộ trong một đợt thu cụ thể.
      * Sử dụng JOIN FETCH để load đầy đủ data, tránh LazyInitializationException.
@@ -0,0 +1,464 @@
+package com.nhom33.quanlychungcu.service;
+
+import com.nhom33.quanlychungcu.entity.*;
+import com.nhom33.quanlychungcu.exception.ResourceNotFoundException;
+import com.nhom33.quanlychungcu.repository.*;
+import com.nhom33.quanlychungcu.repository.HoaDonBatchRepository.ChiTietRow;
+import com.nhom33.quanlychungcu.repository.HoaDonBatchRepository.HoaDonCapNhat;
+import com.nhom33.quanlychungcu.repository.HoaDonBatchRepository.HoaDonMoi;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.stream.Collectors;
+
+/**
+ * Service: Tính tiền hóa đơn hàng loạt cho một đợt thu.
+ *
+ * LOGIC NGHIỆP VỤ (giữ nguyên so với cách tính từng hộ trước đây):
+ * - Phí biến đổi (Điện/Nước): tiêu thụ = chỉ số tháng T - chỉ số tháng T-1 (không có thì 0).
+ *   Hộ chưa ghi chỉ số tháng T -> bỏ qua khoản phí đó và đưa vào danh sách thiếu chỉ số.
+ * - Phí cố định: số lượng lấy từ DinhMucThu, mặc định = 1.
+ * - Đơn giá: BangGiaDichVu của tòa nhà > LoaiPhi.DonGia.
+ *
+ * CÁCH THỰC HIỆN:
+ * 1. Nạp toàn bộ dữ liệu của tòa nhà bằng một số query cố định (không phụ thuộc số hộ).
+ * 2. Tính toán trong bộ nhớ.
+ * 3. Ghi kết quả bằng JDBC batch (HoaDonBatchRepository), chỉ những dòng thực sự thay đổi.
+ *
+ * CHẾ ĐỘ TĂNG DẦN (recalculateDirty): chỉ nạp và tính các hộ được InvoiceDirtyTrackingService
+ * đánh dấu, kết quả liệt kê chính xác hóa đơn nào thay đổi và chênh lệch bao nhiêu.
+ */
+@Service
+public class InvoiceCalculationService {
+
+    private static final Logger log = LoggerFactory.getLogger(InvoiceCalculationService.class);
+
+    // Quá ngưỡng này thì tính lại toàn bộ (tránh IN (...) vượt giới hạn 2100 tham số của SQL Server)
+    private static final int MAX_DIRTY_HO = 1000;
+
+    private final DotThuRepository dotThuRepo;
+    private final DotThuLoaiPhiRepository dotThuLoaiPhiRepo;
+    private final HoGiaDinhRepository hoGiaDinhRepo;
+    private final HoaDonRepository hoaDonRepo;
+    private final ChiTietHoaDonRepository chiTietHoaDonRepo;
+    private final DinhMucThuRepository dinhMucThuRepo;
+    private final ChiSoDienNuocRepository chiSoRepo;
+    private final BangGiaService bangGiaService;
+    private final HoaDonBatchRepository batchRepo;
+    private final InvoiceDirtyTrackingService dirtyTrackingService;
+    private final TongHopDotThuService tongHopService;
+    private final CongNoService congNoService;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public InvoiceCalculationService(DotThuRepository dotThuRepo,
+                                     DotThuLoaiPhiRepository dotThuLoaiPhiRepo,
+                                     HoGiaDinhRepository hoGiaDinhRepo,
+                                     HoaDonRepository hoaDonRepo,
+                                     ChiTietHoaDonRepository chiTietHoaDonRepo,
+                                     DinhMucThuRepository dinhMucThuRepo,
+                                     ChiSoDienNuocRepository chiSoRepo,
+                                     BangGiaService bangGiaService,
+                                     HoaDonBatchRepository batchRepo,
+                                     InvoiceDirtyTrackingService dirtyTrackingService,
+                                     TongHopDotThuService tongHopService,
+                                     CongNoService congNoService) {
+        this.dotThuRepo = dotThuRepo;
+        this.dotThuLoaiPhiRepo = dotThuLoaiPhiRepo;
+        this.hoGiaDinhRepo = hoGiaDinhRepo;
+        this.hoaDonRepo = hoaDonRepo;
+        this.chiTietHoaDonRepo = chiTietHoaDonRepo;
+        this.dinhMucThuRepo = dinhMucThuRepo;
+        this.chiSoRepo = chiSoRepo;
+        this.bangGiaService = bangGiaService;
+        this.batchRepo = batchRepo;
+        this.dirtyTrackingService = dirtyTrackingService;
+        this.tongHopService = tongHopService;
+        this.congNoService = congNoService;
+    }
+
+    /**
+     * Theo dõi tiến độ tính tiền (dùng cho job chạy nền).
+     * Mọi callback được gọi trên thread đang tính tiền.
+     */
+    public interface ProgressListener {
+        ProgressListener NONE = new ProgressListener() {};
+
+        /** Đã nạp xong dữ liệu, biết tổng số hộ cần xử lý. */
+        default void onStart(int tongSoHo) {}
+
+        /** Đã tính xong một hộ. */
+        default void onHousehold(String maHoGiaDinh, boolean thieuChiSo) {}
+
+        /** Trả về true để dừng tính tiền (transaction sẽ rollback). */
+        default boolean isCancelled() {
+            return false;
+        }
+    }
+
+    /**
+     * Tính tiền và tạo/cập nhật hóa đơn cho tất cả hộ trong tòa nhà của đợt thu.
+     *
+     * @param dotThuId ID đợt thu (đã lưu sẵn thang và nam)
+     * @return Thống kê kết quả tính tiền, kèm "thongKe" (thời gian, số dòng ghi)
+     */
+    @Transactional
+    public Map<String, Object> calculate(Integer dotThuId) {
+        return calculate(dotThuId, ProgressListener.NONE);
+    }
+
+    /**
+     * Tính tiền có theo dõi tiến độ và hỗ trợ hủy.
+     * Nếu bị hủy trước khi ghi, ném CancellationException và không có dữ liệu nào bị thay đổi.
+     */
+    @Transactional
+    public Map<String, Object> calculate(Integer dotThuId, ProgressListener listener) {
+        LocalDateTime batDau = LocalDateTime.now();
+        Map<String, Object> result = doCalculate(dotThuId, null, listener);
+        // Đã tính lại toàn bộ -> xóa các dấu đánh trước khi bắt đầu tính
+        dirtyTrackingService.clear(dotThuId, null, batDau);
+        return result;
+    }
+
+    /**
+     * Tính lại tăng dần: chỉ xử lý các hộ đã được đánh dấu cần tính lại trong đợt thu.
+     *
+     * @param dotThuId ID đợt thu
+     * @return Kết quả như calculate, kèm danhSachThayDoi (hóa đơn thay đổi và chênh lệch)
+     */
+    @Transactional
+    public Map<String, Object> recalculateDirty(Integer dotThuId) {
+        LocalDateTime batDau = LocalDateTime.now();
+        List<Integer> hoIds = dirtyTrackingService.getDirtyHoGiaDinhIds(dotThuId);
+        if (hoIds.size() > MAX_DIRTY_HO) {
+            return calculate(dotThuId);
+        }
+        Map<String, Object> result = doCalculate(dotThuId, hoIds, ProgressListener.NONE);
+        dirtyTrackingService.clear(dotThuId, hoIds, batDau);
+        result.put("message", "Đã tính lại " + hoIds.size() + " hộ gia đình có thay đổi");
+        return result;
+    }
+
+    /**
+     * @param hoIds Danh sách hộ cần tính (null = toàn bộ hộ trong tòa nhà)
+     */
+    private Map<String, Object> doCalculate(Integer dotThuId, Collection<Integer> hoIds, ProgressListener listener) {
+        long batDau = System.currentTimeMillis();
+
+        DotThu dotThu = dotThuRepo.findById(dotThuId)
+            .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy đợt thu với ID: " + dotThuId));
+
+        ToaNha toaNha = dotThu.getToaNha();
+        if (toaNha == null) {
+            throw new IllegalStateException("Đợt thu chưa được gán tòa nhà");
+        }
+
+        Integer thang = dotThu.getThang();
+        Integer nam = dotThu.getNam();
+        if (thang == null || nam == null) {
+            throw new IllegalStateException("Đợt thu chưa được cấu hình Tháng/Năm để tính phí điện nước");
+        }
+
+        Integer toaNhaId = toaNha.getId();
+        boolean toanBo = hoIds == null;
+
+        // ===== 1. Nạp dữ liệu (số query cố định) =====
+
+        List<HoGiaDinh> danhSachHo;
+        if (toanBo) {
+            danhSachHo = hoGiaDinhRepo.findByToaNhaId(toaNhaId);
+        } else if (hoIds.isEmpty()) {
+            danhSachHo = List.of();
+        } else {
+            danhSachHo = hoGiaDinhRepo.findAllById(hoIds).stream()
+                .filter(h -> h.getToaNha() != null && toaNhaId.equals(h.getToaNha().getId()))
+                .toList();
+        }
+        List<Integer> idsDaNap = danhSachHo.stream().map(HoGiaDinh::getId).toList();
+        boolean coHo = !idsDaNap.isEmpty();
+
+        List<LoaiPhi> danhSachPhi = dotThuLoaiPhiRepo.findByDotThuIdWithLoaiPhi(dotThuId).stream()
+            .map(DotThuLoaiPhi::getLoaiPhi)
+            .toList();
+
+        Map<Integer, BigDecimal> donGiaTheoLoaiPhi = bangGiaService.getDonGiaApDungTheoToaNha(
+            toaNhaId, danhSachPhi, dotThu.getNgayBatDau());
+
+        Map<Integer, HoaDon> hoaDonTheoHo = new HashMap<>();
+        List<HoaDon> hoaDonCu = toanBo ? hoaDonRepo.findByDotThuId(dotThuId)
+            : coHo ? hoaDonRepo.findByDotThuIdAndHoGiaDinhIdIn(dotThuId, idsDaNap) : List.of();
+        for (HoaDon hd : hoaDonCu) {
+            hoaDonTheoHo.put(hd.getHoGiaDinh().getId(), hd);
+        }
+
+        Map<String, ChiTietHoaDon> chiTietTheoKhoa = new HashMap<>();
+        // Dòng của loại phí đã bị bỏ khỏi đợt thu, theo hóa đơn -> xóa khi tính lại
+        Set<Integer> loaiPhiTrongDot = danhSachPhi.stream().map(LoaiPhi::getId).collect(Collectors.toSet());
+        Map<Integer, List<ChiTietHoaDon>> chiTietThuaTheoHoaDon = new HashMap<>();
+        List<ChiTietHoaDon> chiTietCu = toanBo ? chiTietHoaDonRepo.findByDotThuId(dotThuId)
+            : coHo ? chiTietHoaDonRepo.findByDotThuIdAndHoGiaDinhIdIn(dotThuId, idsDaNap) : List.of();
+        for (ChiTietHoaDon ct : chiTietCu) {
+            chiTietTheoKhoa.put(khoa(ct.getHoaDon().getId(), ct.getLoaiPhi().getId()), ct);
+            if (!loaiPhiTrongDot.contains(ct.getLoaiPhi().getId())) {
+                chiTietThuaTheoHoaDon.computeIfAbsent(ct.getHoaDon().getId(), k -> new ArrayList<>()).add(ct);
+            }
+        }
+
+        Map<String, Double> dinhMucTheoKhoa = new HashMap<>();
+        List<DinhMucThu> dinhMuc = toanBo ? dinhMucThuRepo.findByToaNhaId(toaNhaId)
+            : coHo ? dinhMucThuRepo.findByHoGiaDinhIdIn(idsDaNap) : List.of();
+        for (DinhMucThu dm : dinhMuc) {
+            dinhMucTheoKhoa.put(khoa(dm.getHoGiaDinh().getId(), dm.getLoaiPhi().getId()), dm.getSoLuong());
+        }
+
+        int thangTruoc = thang == 1 ? 12 : thang - 1;
+        int namTruoc = thang == 1 ? nam - 1 : nam;
+        Map<String, Integer> chiSoThangNay = new HashMap<>();
+        Map<String, Integer> chiSoThangTruoc = new HashMap<>();
+        boolean coPhiBienDoi = danhSachPhi.stream().anyMatch(lp -> DotThuService.UTILITY_FEES.contains(lp.getTenLoaiPhi()));
+        if (coPhiBienDoi && coHo) {
+            List<ChiSoDienNuoc> chiSo = toanBo
+                ? chiSoRepo.findByToaNhaAndHaiThang(toaNhaId, thang, nam, thangTruoc, namTruoc)
+                : chiSoRepo.findByHoGiaDinhInAndHaiThang(idsDaNap, thang, nam, thangTruoc, namTruoc);
+            for (ChiSoDienNuoc cs : chiSo) {
+                String k = khoa(cs.getHoGiaDinh().getId(), cs.getLoaiPhi().getId());
+                if (cs.getThang().equals(thang) && cs.getNam().equals(nam)) {
+                    chiSoThangNay.put(k, cs.getChiSoMoi());
+                } else {
+                    chiSoThangTruoc.put(k, cs.getChiSoMoi());
+                }
+            }
+        }
+
+        long napXong = System.currentTimeMillis();
+
+        // ===== 2. Tính toán trong bộ nhớ =====
+
+        List<HoaDonMoi> hoaDonMoi = new ArrayList<>();
+        List<HoaDonCapNhat> hoaDonCapNhat = new ArrayList<>();
+        Map<Integer, List<ChiTietRow>> chiTietChoHoaDonMoi = new HashMap<>();
+        List<ChiTietRow> chiTietMoi = new ArrayList<>();
+        List<ChiTietRow> chiTietCapNhat = new ArrayList<>();
+        List<Integer> chiTietXoa = new ArrayList<>();
+        List<CongNoService.ButToanMoi> butToanCongNo = new ArrayList<>();
+        List<String> danhSachThieuChiSo = new ArrayList<>();
+        List<Map<String, Object>> danhSachThayDoi = new ArrayList<>();
+        BigDecimal tongChenhLech = BigDecimal.ZERO;
+
+        listener.onStart(danhSachHo.size());
+
+        for (HoGiaDinh ho : danhSachHo) {
+            if (listener.isCancelled()) {
+                throw new CancellationException("Đã hủy tính tiền đợt thu " + dotThuId);
+            }
+
+            HoaDon hoaDon = hoaDonTheoHo.get(ho.getId());
+            Integer hoaDonId = hoaDon != null ? hoaDon.getId() : null;
+
+            BigDecimal tongTien = BigDecimal.ZERO;
+            boolean thieuChiSo = false;
+            List<ChiTietRow> dongChiTiet = new ArrayList<>();
+            List<Map<String, Object>> chiTietThayDoi = new ArrayList<>();
+
+            for (LoaiPhi loaiPhi : danhSachPhi) {
+                BigDecimal donGia = donGiaTheoLoaiPhi.get(loaiPhi.getId());
+                String k = khoa(ho.getId(), loaiPhi.getId());
+                double soLuong;
+                BigDecimal thanhTien;
+
+                if (DotThuService.UTILITY_FEES.contains(loaiPhi.getTenLoaiPhi())) {
+                    Integer chiSoHienTai = chiSoThangNay.get(k);
+                    if (chiSoHienTai == null) {
+                        // Chưa có chỉ số
+                        thieuChiSo = true;
+                        continue;
+                    }
+                    int tieuThu = Math.max(0, chiSoHienTai - chiSoThangTruoc.getOrDefault(k, 0));
+                    soLuong = tieuThu;
+                    thanhTien = donGia.multiply(BigDecimal.valueOf(tieuThu));
+                } else {
+                    // Mặc định = 1 nếu không có định mức
+                    Double dm = dinhMucTheoKhoa.get(k);
+                    soLuong = dm != null ? dm : 1.0;
+                    thanhTien = donGia.multiply(BigDecimal.valueOf(soLuong));
+                }
+                // Làm tròn theo cột ThanhTien (scale 0) trước khi so sánh / ghi / ghi sổ công nợ,
+                // nếu không định mức lẻ (vd. 45.75 m²) làm mọi lần tính đều thấy thay đổi
+                thanhTien = thanhTien.setScale(0, RoundingMode.HALF_UP);
+
+                tongTien = tongTien.add(thanhTien);
+                ChiTietHoaDon cu = hoaDonId != null ? chiTietTheoKhoa.get(khoa(hoaDonId, loaiPhi.getId())) : null;
+                if (cu == null) {
+                    dongChiTiet.add(new ChiTietRow(null, hoaDonId, loaiPhi.getId(), soLuong, donGia, thanhTien));
+                    chiTietThayDoi.add(chenhLechChiTiet(loaiPhi, BigDecimal.ZERO, thanhTien));
+                } else if (khacNhau(cu, soLuong, donGia, thanhTien)) {
+                    // Chỉ ghi lại dòng thực sự thay đổi
+                    dongChiTiet.add(new ChiTietRow(cu.getId(), hoaDonId, loaiPhi.getId(), soLuong, donGia, thanhTien));
+                    chiTietThayDoi.add(chenhLechChiTiet(loaiPhi, giaTri(cu.getThanhTien()), thanhTien));
+                }
+            }
+            if (hoaDonId != null) {
+                for (ChiTietHoaDon thua : chiTietThuaTheoHoaDon.getOrDefault(hoaDonId, List.of())) {
+                    chiTietXoa.add(thua.getId());
+                    chiTietThayDoi.add(chenhLechChiTiet(thua.getLoaiPhi(), giaTri(thua.getThanhTien()), BigDecimal.ZERO));
+                }
+            }
+
+            BigDecimal tongCu = BigDecimal.ZERO;
+            if (hoaDon == null) {
+                hoaDonMoi.add(new HoaDonMoi(ho.getId(), tongTien, tinhTrangThai(tongTien, BigDecimal.ZERO)));
+                chiTietChoHoaDonMoi.put(ho.getId(), dongChiTiet);
+            } else {
+                tongCu = giaTri(hoaDon.getTongTienPhaiThu());
+                String trangThai = tinhTrangThai(tongTien, giaTri(hoaDon.getSoTienDaDong()));
+                if (tongCu.compareTo(tongTien) != 0 || !trangThai.equals(hoaDon.getTrangThai())) {
+                    hoaDonCapNhat.add(new HoaDonCapNhat(hoaDonId, tongTien, trangThai));
+                }
+                if (tongCu.compareTo(tongTien) != 0) {
+                    butToanCongNo.add(CongNoService.ButToanMoi.phatSinh(ho.getId(), hoaDonId, tongTien.subtract(tongCu)));
+                }
+                for (ChiTietRow row : dongChiTiet) {
+                    (row.chiTietId() == null ? chiTietMoi : chiTietCapNhat).add(row);
+                }
+            }
+
+            if (hoaDon == null || !chiTietThayDoi.isEmpty() || tongCu.compareTo(tongTien) != 0) {
+                Map<String, Object> thayDoi = new LinkedHashMap<>();
+                thayDoi.put("hoaDonId", hoaDonId);
+                thayDoi.put("maHoGiaDinh", ho.getMaHoGiaDinh());
+                thayDoi.put("tongTienCu", tongCu);
+                thayDoi.put("tongTienMoi", tongTien);
+                thayDoi.put("chenhLech", tongTien.subtract(tongCu));
+                thayDoi.put("chiTiet", chiTietThayDoi);
+                danhSachThayDoi.add(thayDoi);
+                tongChenhLech = tongChenhLech.add(tongTien.subtract(tongCu));
+            }
+
+            if (thieuChiSo) {
+                danhSachThieuChiSo.add(ho.getMaHoGiaDinh());
+            }
+            listener.onHousehold(ho.getMaHoGiaDinh(), thieuChiSo);
+        }
+
+        if (listener.isCancelled()) {
+            throw new CancellationException("Đã hủy tính tiền đợt thu " + dotThuId);
+        }
+
+        long tinhXong = System.currentTimeMillis();
+
+        // ===== 3. Ghi xuống DB theo lô =====
+
+        // Đẩy thay đổi đang chờ trong persistence context trước khi ghi bằng JDBC
+        entityManager.flush();
+
+        batchRepo.insertHoaDon(dotThuId, hoaDonMoi);
+        if (!chiTietChoHoaDonMoi.isEmpty()) {
+            Map<Integer, Integer> hoaDonIdTheoHo = new HashMap<>();
+            for (Object[] row : hoaDonRepo.findIdAndHoGiaDinhIdByDotThuId(dotThuId)) {
+                hoaDonIdTheoHo.put((Integer) row[1], (Integer) row[0]);
+            }
+            chiTietChoHoaDonMoi.forEach((hoId, rows) -> {
+                Integer id = hoaDonIdTheoHo.get(hoId);
+                for (ChiTietRow r : rows) {
+                    chiTietMoi.add(new ChiTietRow(null, id, r.loaiPhiId(), r.soLuong(), r.donGia(), r.thanhTien()));
+                }
+            });
+            for (HoaDonMoi hd : hoaDonMoi) {
+                butToanCongNo.add(CongNoService.ButToanMoi.phatSinh(
+                    hd.hoGiaDinhId(), hoaDonIdTheoHo.get(hd.hoGiaDinhId()), hd.tongTienPhaiThu()));
+            }
+        }
+        batchRepo.updateHoaDon(hoaDonCapNhat);
+        batchRepo.insertChiTiet(chiTietMoi);
+        batchRepo.updateChiTiet(chiTietCapNhat);
+        batchRepo.deleteChiTiet(chiTietXoa);
+
+        // Entity đã load không còn khớp với DB -> bỏ khỏi persistence context
+        entityManager.clear();
+
+        // Hóa đơn thay đổi hàng loạt -> tính lại dòng tổng hợp của đợt thu bằng một câu SUM/COUNT
+        tongHopService.tinhLai(dotThuId);
+        // Chênh lệch tổng tiền của từng hóa đơn -> bút toán phát sinh trong sổ cái công nợ
+        congNoService.ghiHangLoat(toaNhaId, dotThu.getNgayBatDau(), "Hóa đơn " + dotThu.getTenDotThu(), butToanCongNo);
+
+        long ketThuc = System.currentTimeMillis();
+
+        Map<String, Object> thongKe = new LinkedHashMap<>();
+        thongKe.put("cheDo", toanBo ? "ToanBo" : "TangDan");
+        thongKe.put("thoiGianMs", ketThuc - batDau);
+        thongKe.put("thoiGianNapDuLieuMs", napXong - batDau);
+        thongKe.put("thoiGianTinhToanMs", tinhXong - napXong);
+        thongKe.put("thoiGianGhiMs", ketThuc - tinhXong);
+        thongKe.put("soHoaDonMoi", hoaDonMoi.size());
+        thongKe.put("soHoaDonCapNhat", hoaDonCapNhat.size());
+        thongKe.put("soChiTietMoi", chiTietMoi.size());
+        thongKe.put("soChiTietCapNhat", chiTietCapNhat.size());
+        thongKe.put("soChiTietXoa", chiTietXoa.size());
+
+        log.info("Tính tiền đợt thu {} ({}): {} hộ, {} ms (nạp {} ms, tính {} ms, ghi {} ms)",
+                dotThuId, toanBo ? "toàn bộ" : "tăng dần", danhSachHo.size(), ketThuc - batDau,
+                napXong - batDau, tinhXong - napXong, ketThuc - tinhXong);
+
+        int soHoaDonTao = danhSachHo.size();
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("message", "Đã tính tiền cho " + soHoaDonTao + " hộ gia đình");
+        result.put("soHoaDonTao", soHoaDonTao);
+        result.put("soHoThieuChiSo", danhSachThieuChiSo.size());
+        result.put("danhSachThieuChiSo", danhSachThieuChiSo);
+        result.put("thang", thang);
+        result.put("nam", nam);
+        result.put("soHoaDonThayDoi", danhSachThayDoi.size());
+        result.put("tongChenhLech", tongChenhLech);
+        result.put("danhSachThayDoi", danhSachThayDoi);
+        result.put("thongKe", thongKe);
+
+        return result;
+    }
+
+    /**
+     * Trạng thái hóa đơn theo tổng tiền và số đã đóng.
+     */
+    static String tinhTrangThai(BigDecimal tongTien, BigDecimal daDong) {
+        if (tongTien.compareTo(daDong) <= 0 && tongTien.compareTo(BigDecimal.ZERO) > 0) {
+            return "DaThanhToan";
+        } else if (daDong.compareTo(BigDecimal.ZERO) > 0) {
+            return "ThanhToanMotPhan";
+        }
+        return "ChuaThanhToan";
+    }
+
+    private static boolean khacNhau(ChiTietHoaDon cu, double soLuong, BigDecimal donGia, BigDecimal thanhTien) {
+        return cu.getSoLuong() == null || Double.compare(cu.getSoLuong(), soLuong) != 0
+            || giaTri(cu.getDonGia()).compareTo(donGia) != 0
+            || giaTri(cu.getThanhTien()).compareTo(thanhTien) != 0;
+    }
+
+    private static Map<String, Object> chenhLechChiTiet(LoaiPhi loaiPhi, BigDecimal cu, BigDecimal moi) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("loaiPhiId", loaiPhi.getId());
+        m.put("tenLoaiPhi", loaiPhi.getTenLoaiPhi());
+        m.put("thanhTienCu", cu);
+        m.put("thanhTienMoi", moi);
+        m.put("chenhLech", moi.subtract(cu));
+        return m;
+    }
+
+    private static BigDecimal giaTri(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+
+    private static String khoa(Integer a, Integer b) {
+        return a + ":" + b;
+    }
+}
@@ -0,0 +1,147 @@
+package com.nhom33.quanlychungcu.service;
+
+import com.nhom33.quanlychungcu.repository.HoaDonCanTinhLaiRepository;
+import com.nhom33.quanlychungcu.repository.NhatKyThayDoiRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Service: Đánh dấu các cặp (hộ gia đình, đợt thu) cần tính lại tiền.
+ *
+ * LOGIC NGHIỆP VỤ:
+ * - ChiSoDienNuoc tháng T thay đổi -> đợt thu tháng T và T+1 của tòa nhà có chứa loại phí đó
+ *   (tháng T+1 dùng chỉ số tháng T làm chỉ số cũ).
+ * - DinhMucThu / BangGiaDichVu thay đổi -> các đợt thu chưa kết thúc (NgayKetThuc >= hôm nay)
+ *   có chứa loại phí đó. Đợt thu đã kết thúc không tự động bị tính lại.
+ * - Danh sách phí của đợt thu thay đổi -> toàn bộ hộ trong tòa nhà của đợt thu.
+ *
+ * Các hàm mark* chạy trong transaction của thao tác gây thay đổi, nên dấu và dữ liệu
+ * luôn được commit/rollback cùng nhau.
+ * Cặp đã có dấu được cập nhật NgayDanhDau; lần tính chỉ xóa dấu đánh trước lúc nó bắt đầu,
+ * nên thay đổi commit trong lúc đang tính vẫn được tính ở lần sau.
+ */
+@Service
+public class InvoiceDirtyTrackingService {
+
+    private static final Logger log = LoggerFactory.getLogger(InvoiceDirtyTrackingService.class);
+
+    // SQL Server giới hạn 2100 tham số mỗi câu lệnh
+    private static final int IN_CHUNK_SIZE = 1000;
+
+    private final HoaDonCanTinhLaiRepository repo;
+    private final NhatKyThayDoiRepository nhatKyRepo;
+
+    public InvoiceDirtyTrackingService(HoaDonCanTinhLaiRepository repo, NhatKyThayDoiRepository nhatKyRepo) {
+        this.repo = repo;
+        this.nhatKyRepo = nhatKyRepo;
+    }
+
+    // ===== Đánh dấu =====
+
+    /**
+     * Chỉ số điện/nước của các hộ trong tháng/năm thay đổi.
+     */
+    @Transactional
+    public void markChiSo(Collection<Integer> hoGiaDinhIds, Integer loaiPhiId, Integer thang, Integer nam) {
+        if (hoGiaDinhIds == null || hoGiaDinhIds.isEmpty()) {
+            return;
+        }
+        int thangSau = thang == 12 ? 1 : thang + 1;
+        int namSau = thang == 12 ? nam + 1 : nam;
+        LocalDateTime now = LocalDateTime.now();
+        List<Integer> ids = new ArrayList<>(hoGiaDinhIds);
+        int count = 0;
+        for (int i = 0; i < ids.size(); i += IN_CHUNK_SIZE) {
+            List<Integer> chunk = ids.subList(i, Math.min(i + IN_CHUNK_SIZE, ids.size()));
+            count += repo.touchByChiSo(chunk, loaiPhiId, thang, nam, thangSau, namSau, now)
+                + repo.markByChiSo(chunk, loaiPhiId, thang, nam, thangSau, namSau, now);
+        }
+        ghiNhanThayDoi(count);
+        log.debug("Đánh dấu {} hóa đơn cần tính lại (chỉ số {}/{}, loại phí {})", count, thang, nam, loaiPhiId);
+    }
+
+    /**
+     * Định mức của một hộ thay đổi.
+     */
+    @Transactional
+    public void markDinhMuc(Integer hoGiaDinhId, Integer loaiPhiId) {
+        int count = markByPhamVi(hoGiaDinhId, null, loaiPhiId);
+        ghiNhanThayDoi(count);
+        log.debug("Đánh dấu {} hóa đơn cần tính lại (định mức hộ {}, loại phí {})", count, hoGiaDinhId, loaiPhiId);
+    }
+
+    /**
+     * Định mức / bảng giá của cả tòa nhà thay đổi.
+     * toaNhaId hoặc loaiPhiId = null nghĩa là mọi tòa nhà / mọi loại phí.
+     */
+    @Transactional
+    public void markToaNha(Integer toaNhaId, Integer loaiPhiId) {
+        int count = markByPhamVi(null, toaNhaId, loaiPhiId);
+        ghiNhanThayDoi(count);
+        log.debug("Đánh dấu {} hóa đơn cần tính lại (tòa nhà {}, loại phí {})", count, toaNhaId, loaiPhiId);
+    }
+
+    /**
+     * Danh sách loại phí của đợt thu thay đổi.
+     */
+    @Transactional
+    public void markDotThu(Integer dotThuId) {
+        LocalDateTime now = LocalDateTime.now();
+        int count = repo.touchByDotThu(dotThuId, now) + repo.markByDotThu(dotThuId, now);
+        ghiNhanThayDoi(count);
+        log.debug("Đánh dấu {} hóa đơn cần tính lại (đợt thu {})", count, dotThuId);
+    }
+
+    private int markByPhamVi(Integer hoGiaDinhId, Integer toaNhaId, Integer loaiPhiId) {
+        LocalDate today = LocalDate.now();
+        LocalDateTime now = LocalDateTime.now();
+        return repo.touchByPhamVi(hoGiaDinhId, toaNhaId, loaiPhiId, today, now)
+            + repo.markByPhamVi(hoGiaDinhId, toaNhaId, loaiPhiId, today, now);
+    }
+
+    // ===== Tra cứu / xóa dấu =====
+
+    public List<Integer> getDirtyHoGiaDinhIds(Integer dotThuId) {
+        return repo.findHoGiaDinhIdsByDotThuId(dotThuId);
+    }
+
+    public long countDirty(Integer dotThuId) {
+        return repo.countByIdDotThu(dotThuId);
+    }
+
+    /**
+     * Xóa dấu sau khi tính xong. Chỉ xóa dấu có NgayDanhDau <= batDau (lúc lần tính bắt đầu đọc dữ liệu):
+     * thay đổi đánh dấu sau đó có thể chưa được lần tính này nhìn thấy.
+     *
+     * @param hoGiaDinhIds null = mọi hộ của đợt thu
+     */
+    @Transactional
+    public void clear(Integer dotThuId, Collection<Integer> hoGiaDinhIds, LocalDateTime batDau) {
+        if (hoGiaDinhIds == null) {
+            ghiNhanThayDoi(repo.deleteByDotThuId(dotThuId, batDau));
+        } else if (!hoGiaDinhIds.isEmpty()) {
+            List<Integer> ids = new ArrayList<>(hoGiaDinhIds);
+            int count = 0;
+            for (int i = 0; i < ids.size(); i += IN_CHUNK_SIZE) {
+                count += repo.deleteByDotThuIdAndHoGiaDinhIds(
+                    dotThuId, ids.subList(i, Math.min(i + IN_CHUNK_SIZE, ids.size())), batDau);
+            }
+            ghiNhanThayDoi(count);
+        }
+    }
+
+    // Dấu được ghi / xóa bằng JPQL hàng loạt (không biết khóa); bảng nhỏ nên backup tăng dần chép cả bảng
+    private void ghiNhanThayDoi(int count) {
+        if (count > 0) {
+            nhatKyRepo.ghiNhanCaBang("HoaDonCanTinhLai");
+        }
+    }
+}
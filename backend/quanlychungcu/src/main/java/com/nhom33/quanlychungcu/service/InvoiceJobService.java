@@ -0,0 +1,306 @@
+package com.nhom33.quanlychungcu.service;
+
+import com.nhom33.quanlychungcu.entity.CongViecTinhTien;
+import com.nhom33.quanlychungcu.exception.BadRequestException;
+import com.nhom33.quanlychungcu.exception.ResourceNotFoundException;
+import com.nhom33.quanlychungcu.repository.CongViecTinhTienRepository;
+import com.nhom33.quanlychungcu.repository.DotThuRepository;
+import com.nhom33.quanlychungcu.repository.NhatKyThayDoiRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Service: Job tính tiền chạy nền cho một đợt thu.
+ *
+ * LOGIC NGHIỆP VỤ:
+ * - Submit trả về jobId ngay, việc tính tiền chạy trên billingExecutor.
+ * - Tiến độ (số hộ đã xử lý / tổng số hộ) và danh sách hộ thiếu chỉ số được cập nhật
+ *   trong lúc tính, client poll theo jobId (có thể lấy tiếp từ vị trí đã đọc).
+ * - Hủy job: dừng trước khi ghi DB, transaction rollback nên không có thay đổi nào.
+ * - Đợt thu được giữ qua BillingClaimService từ lúc submit tới khi job kết thúc,
+ *   nên không chạy trùng với job, chốt sổ hay tính tiền đồng bộ khác.
+ * - Registry trong bộ nhớ; nếu bật app.billing.persist-jobs thì trạng thái bắt đầu/kết thúc
+ *   được lưu vào bảng CongViecTinhTien để không mất lịch sử khi restart.
+ */
+@Service
+public class InvoiceJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(InvoiceJobService.class);
+
+    // Số job đã kết thúc giữ lại trong bộ nhớ
+    private static final int MAX_JOBS_KEPT = 100;
+
+    // Độ dài cột CongViecTinhTien.ThongBaoLoi
+    private static final int MAX_THONG_BAO_LOI = 1000;
+
+    private final DotThuRepository dotThuRepo;
+    private final CongViecTinhTienRepository congViecRepo;
+    private final InvoiceCalculationService invoiceCalculationService;
+    private final BillingClaimService billingClaimService;
+    private final ThreadPoolTaskExecutor billingExecutor;
+    private final NhatKyThayDoiRepository nhatKyRepo;
+
+    @Value("${app.billing.persist-jobs:true}")
+    private boolean persistJobs;
+
+    private final Map<String, InvoiceJob> jobs = new ConcurrentHashMap<>();
+
+    public InvoiceJobService(DotThuRepository dotThuRepo,
+                             CongViecTinhTienRepository congViecRepo,
+                             InvoiceCalculationService invoiceCalculationService,
+                             BillingClaimService billingClaimService,
+                             @Qualifier("billingExecutor") ThreadPoolTaskExecutor billingExecutor,
+                             NhatKyThayDoiRepository nhatKyRepo) {
+        this.dotThuRepo = dotThuRepo;
+        this.congViecRepo = congViecRepo;
+        this.invoiceCalculationService = invoiceCalculationService;
+        this.billingClaimService = billingClaimService;
+        this.billingExecutor = billingExecutor;
+        this.nhatKyRepo = nhatKyRepo;
+    }
+
+    /**
+     * Job còn 'DangChay' trong bảng lúc khởi động là job bị ngắt do server tắt.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void markInterruptedJobs() {
+        if (!persistJobs) {
+            return;
+        }
+        int count = congViecRepo.markInterrupted(LocalDateTime.now());
+        if (count > 0) {
+            nhatKyRepo.ghiNhanCaBang("CongViecTinhTien");
+            log.warn("Đánh dấu {} job tính tiền bị gián đoạn từ lần chạy trước", count);
+        }
+    }
+
+    /**
+     * Gửi yêu cầu tính tiền chạy nền.
+     *
+     * @return Trạng thái ban đầu của job (chứa jobId)
+     */
+    public Map<String, Object> submit(Integer dotThuId, String nguoiTao) {
+        if (!dotThuRepo.existsById(dotThuId)) {
+            throw new ResourceNotFoundException("Không tìm thấy đợt thu với ID: " + dotThuId);
+        }
+        InvoiceJob job = new InvoiceJob(UUID.randomUUID().toString(), dotThuId, nguoiTao);
+        // Đợt thu đang được tính ở nơi khác -> BadRequestException, job không được tạo
+        billingClaimService.claim(dotThuId, job.nguoiGiu());
+        try {
+            cleanupOldJobs();
+            jobs.put(job.jobId, job);
+            persist(job);
+            billingExecutor.execute(() -> runJob(job));
+        } catch (RuntimeException e) {
+            jobs.remove(job.jobId);
+            billingClaimService.release(dotThuId, job.nguoiGiu());
+            throw e;
+        }
+        return job.toMap(0);
+    }
+
+    /**
+     * Lấy trạng thái job.
+     *
+     * @param tuViTri Chỉ trả về danhSachThieuChiSo từ vị trí này (client đã đọc phần trước)
+     */
+    public Map<String, Object> getStatus(String jobId, int tuViTri) {
+        InvoiceJob job = jobs.get(jobId);
+        if (job != null) {
+            return job.toMap(tuViTri);
+        }
+        // Job cũ (trước khi restart) -> lấy từ bảng lịch sử
+        if (persistJobs) {
+            return congViecRepo.findById(jobId)
+                .map(this::toMap)
+                .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy job với ID: " + jobId));
+        }
+        throw new ResourceNotFoundException("Không tìm thấy job với ID: " + jobId);
+    }
+
+    /**
+     * Hủy job đang chạy.
+     */
+    public Map<String, Object> cancel(String jobId) {
+        InvoiceJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new ResourceNotFoundException("Không tìm thấy job với ID: " + jobId);
+        }
+        if (job.isFinished()) {
+            throw new BadRequestException("Job đã kết thúc, không thể hủy");
+        }
+        job.cancelled = true;
+        return job.toMap(0);
+    }
+
+    /**
+     * Lịch sử job tính tiền của một đợt thu (từ bảng CongViecTinhTien).
+     */
+    public List<Map<String, Object>> getHistory(Integer dotThuId) {
+        if (!persistJobs) {
+            return jobs.values().stream()
+                .filter(j -> j.dotThuId.equals(dotThuId))
+                .sorted(Comparator.comparing((InvoiceJob j) -> j.ngayBatDau).reversed())
+                .map(j -> j.toMap(0))
+                .toList();
+        }
+        return congViecRepo.findByIdDotThuOrderByNgayBatDauDesc(dotThuId).stream()
+            .map(this::toMap)
+            .toList();
+    }
+
+    // ===== Worker =====
+
+    private void runJob(InvoiceJob job) {
+        try {
+            job.ketQua = invoiceCalculationService.calculate(job.dotThuId, job);
+            job.trangThai = "HoanThanh";
+        } catch (CancellationException e) {
+            job.trangThai = "DaHuy";
+            log.info("Job tính tiền {} (đợt thu {}) đã bị hủy", job.jobId, job.dotThuId);
+        } catch (Exception e) {
+            job.trangThai = "Loi";
+            job.thongBaoLoi = e.getMessage() != null && e.getMessage().length() > MAX_THONG_BAO_LOI
+                ? e.getMessage().substring(0, MAX_THONG_BAO_LOI)
+                : e.getMessage();
+            log.error("Job tính tiền {} (đợt thu {}) lỗi: {}", job.jobId, job.dotThuId, e.getMessage(), e);
+        } finally {
+            job.ngayKetThuc = LocalDateTime.now();
+            persist(job);
+            billingClaimService.release(job.dotThuId, job.nguoiGiu());
+        }
+    }
+
+    private void persist(InvoiceJob job) {
+        if (!persistJobs) {
+            return;
+        }
+        try {
+            CongViecTinhTien entity = new CongViecTinhTien(job.jobId, job.dotThuId, job.nguoiTao);
+            entity.setNgayBatDau(job.ngayBatDau);
+            entity.setNgayKetThuc(job.ngayKetThuc);
+            entity.setTrangThai(job.trangThai);
+            entity.setTongSoHo(job.tongSoHo);
+            entity.setSoHoDaXuLy(job.soHoDaXuLy.get());
+            entity.setSoHoThieuChiSo(job.danhSachThieuChiSo.size());
+            entity.setDanhSachThieuChiSo(String.join(",", job.danhSachThieuChiSo));
+            entity.setThongBaoLoi(job.thongBaoLoi);
+            congViecRepo.save(entity);
+        } catch (Exception e) {
+            // Lưu lịch sử lỗi không được làm hỏng job
+            log.warn("Không lưu được lịch sử job {}: {}", job.jobId, e.getMessage());
+        }
+    }
+
+    private void cleanupOldJobs() {
+        if (jobs.size() < MAX_JOBS_KEPT) {
+            return;
+        }
+        jobs.values().stream()
+            .filter(InvoiceJob::isFinished)
+            .min(Comparator.comparing(j -> j.ngayBatDau))
+            .ifPresent(j -> jobs.remove(j.jobId));
+    }
+
+    private Map<String, Object> toMap(CongViecTinhTien c) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("jobId", c.getId());
+        m.put("dotThuId", c.getIdDotThu());
+        m.put("trangThai", c.getTrangThai());
+        m.put("nguoiTao", c.getNguoiTao());
+        m.put("ngayBatDau", c.getNgayBatDau());
+        m.put("ngayKetThuc", c.getNgayKetThuc());
+        m.put("tongSoHo", c.getTongSoHo());
+        m.put("soHoDaXuLy", c.getSoHoDaXuLy());
+        m.put("soHoThieuChiSo", c.getSoHoThieuChiSo());
+        String ds = c.getDanhSachThieuChiSo();
+        m.put("danhSachThieuChiSo", ds == null || ds.isEmpty() ? List.of() : Arrays.asList(ds.split(",")));
+        m.put("thongBaoLoi", c.getThongBaoLoi());
+        return m;
+    }
+
+    // ===== Trạng thái một job =====
+
+    private static class InvoiceJob implements InvoiceCalculationService.ProgressListener {
+        final String jobId;
+        final Integer dotThuId;
+        final String nguoiTao;
+        final LocalDateTime ngayBatDau = LocalDateTime.now();
+        final AtomicInteger soHoDaXuLy = new AtomicInteger();
+        final List<String> danhSachThieuChiSo = new CopyOnWriteArrayList<>();
+        volatile Integer tongSoHo;
+        volatile String trangThai = "DangChay";
+        volatile boolean cancelled;
+        volatile String thongBaoLoi;
+        volatile LocalDateTime ngayKetThuc;
+        volatile Map<String, Object> ketQua;
+
+        InvoiceJob(String jobId, Integer dotThuId, String nguoiTao) {
+            this.jobId = jobId;
+            this.dotThuId = dotThuId;
+            this.nguoiTao = nguoiTao;
+        }
+
+        String nguoiGiu() {
+            return "job " + jobId;
+        }
+
+        @Override
+        public void onStart(int tongSoHo) {
+            this.tongSoHo = tongSoHo;
+        }
+
+        @Override
+        public void onHousehold(String maHoGiaDinh, boolean thieuChiSo) {
+            soHoDaXuLy.incrementAndGet();
+            if (thieuChiSo) {
+                danhSachThieuChiSo.add(maHoGiaDinh);
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        boolean isFinished() {
+            return !"DangChay".equals(trangThai);
+        }
+
+        Map<String, Object> toMap(int tuViTri) {
+            List<String> thieu = new ArrayList<>(danhSachThieuChiSo);
+            int from = Math.min(Math.max(tuViTri, 0), thieu.size());
+
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("jobId", jobId);
+            m.put("dotThuId", dotThuId);
+            m.put("trangThai", cancelled && !isFinished() ? "DangHuy" : trangThai);
+            m.put("nguoiTao", nguoiTao);
+            m.put("ngayBatDau", ngayBatDau);
+            m.put("ngayKetThuc", ngayKetThuc);
+            m.put("tongSoHo", tongSoHo);
+            m.put("soHoDaXuLy", soHoDaXuLy.get());
+            m.put("soHoThieuChiSo", thieu.size());
+            m.put("danhSachThieuChiSo", thieu.subList(from, thieu.size()));
+            m.put("viTriTiepTheo", thieu.size());
+            m.put("thongBaoLoi", thongBaoLoi);
+            m.put("ketQua", ketQua);
+            return m;
+        }
+    }
+}
@@ -0,0 +1,627 @@
+package com.nhom33.quanlychungcu.service;
+
+import com.nhom33.quanlychungcu.service.InvoiceService.ChiTietView;
+import com.nhom33.quanlychungcu.service.InvoiceService.HoaDonView;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Service: Render hóa đơn ra PDF (Apache PDFBox) và in hàng loạt theo đợt thu.
+ *
+ * LOGIC NGHIỆP VỤ:
+ * - Mỗi hóa đơn là một PDF khổ A4 vẽ trực tiếp bằng PDFBox, cùng nội dung với bản HTML.
+ *   Font Unicode (tiếng Việt) lấy từ app.invoice.pdf-font hoặc font hệ thống quen thuộc,
+ *   đọc từ đĩa một lần; không có font nào thì dùng Helvetica và bỏ dấu.
+ * - Cache trên đĩa theo nội dung: khóa = SHA-256 của dữ liệu hóa đơn đã định dạng
+ *   (kèm phiên bản layout và font), nên hóa đơn không đổi không phải render lại,
+ *   hóa đơn vừa đóng tiền / sửa chi tiết tự sinh khóa mới. File cũ không dùng tới bị dọn định kỳ.
+ * - In hàng loạt: hóa đơn được render song song trên pdfExecutor, tối đa 2 * số thread
+ *   hóa đơn cùng lúc, và ghi ra stream theo đúng thứ tự đọc từ DB.
+ *   + zip: mỗi hóa đơn một file PDF, ghi ngay khi render xong.
+ *   + pdf: gộp thành một file nhiều trang; PDF chỉ ghi được khi đã gộp xong (bảng xref ở cuối file),
+ *     nên mọi hóa đơn nguồn phải mở tới lúc đó. Hóa đơn nguồn được ghi ra file tạm và đọc từ file,
+ *     file gộp dùng file tạm của PDFBox; heap chỉ giữ cấu trúc đối tượng PDF, vẫn tăng theo số hóa đơn,
+ *     nên giới hạn ở app.invoice.pdf-merge-max hóa đơn (đợt thu lớn hơn dùng zip).
+ */
+@Service
+public class InvoicePdfService {
+
+    private static final Logger log = LoggerFactory.getLogger(InvoicePdfService.class);
+
+    public static final String DINH_DANG_ZIP = "zip";
+    public static final String DINH_DANG_PDF = "pdf";
+
+    // Đổi khi sửa layout để cache cũ không còn được dùng
+    private static final String PHIEN_BAN_LAYOUT = "1";
+
+    private static final List<String> FONT_THUONG = List.of(
+        "C:/Windows/Fonts/arial.ttf",
+        "/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf",
+        "/usr/share/fonts/dejavu/DejaVuSans.ttf",
+        "/Library/Fonts/Arial.ttf",
+        "/System/Library/Fonts/Supplemental/Arial.ttf");
+    private static final List<String> FONT_DAM = List.of(
+        "C:/Windows/Fonts/arialbd.ttf",
+        "/usr/share/fonts/truetype/dejavu/DejaVuSans-Bold.ttf",
+        "/usr/share/fonts/dejavu/DejaVuSans-Bold.ttf",
+        "/Library/Fonts/Arial Bold.ttf",
+        "/System/Library/Fonts/Supplemental/Arial Bold.ttf");
+
+    // ===== Layout (đơn vị point, A4 = 595 x 842) =====
+    private static final PDRectangle KHO_GIAY = PDRectangle.A4;
+    private static final float LE = 50f;
+    private static final float[] DO_RONG_COT = {35f, 185f, 85f, 95f, 95f};
+    private static final String[] TIEU_DE_COT = {"STT", "Loại phí", "Số lượng", "Đơn giá", "Thành tiền"};
+    private static final float CAO_DONG = 20f;
+    private static final float DEM_CHU = 5f;
+    private static final float CO_CHU = 10f;
+
+    private final ThreadPoolTaskExecutor pdfExecutor;
+    private final int soHoaDonCungLuc;
+
+    private final byte[] fontThuong;
+    private final byte[] fontDam;
+    private final String fontId;
+    // TrueTypeFont đã parse, mỗi thread một bản (FontBox không đảm bảo thread-safe)
+    private final ThreadLocal<TrueTypeFont[]> fontTheoThread = ThreadLocal.withInitial(this::parseFont);
+
+    private final Path thuMucCache;
+
+    @Value("${app.invoice.pdf-cache-days:30}")
+    private int soNgayGiuCache;
+
+    @Value("${app.invoice.pdf-merge-max:500}")
+    private int soHoaDonGopToiDa;
+
+    public InvoicePdfService(@Qualifier("pdfExecutor") ThreadPoolTaskExecutor pdfExecutor,
+                             @Value("${app.invoice.pdf-font:}") String fontPath,
+                             @Value("${app.invoice.pdf-font-bold:}") String fontBoldPath,
+                             @Value("${app.invoice.pdf-cache-dir:./pdf-cache}") String cacheDir) {
+        this.pdfExecutor = pdfExecutor;
+        this.soHoaDonCungLuc = Math.max(1, pdfExecutor.getMaxPoolSize()) * 2;
+
+        Path thuong = timFont(fontPath, FONT_THUONG);
+        Path dam = timFont(fontBoldPath, FONT_DAM);
+        this.fontThuong = docFont(thuong);
+        this.fontDam = dam != null ? docFont(dam) : fontThuong;
+        if (fontThuong == null) {
+            log.warn("Không tìm thấy font Unicode cho hóa đơn PDF (app.invoice.pdf-font), dùng Helvetica không dấu");
+            this.fontId = "Helvetica";
+        } else {
+            this.fontId = thuong + "|" + (dam != null ? dam : thuong);
+        }
+
+        this.thuMucCache = cacheDir == null || cacheDir.isBlank() ? null : Paths.get(cacheDir);
+        if (thuMucCache != null) {
+            try {
+                Files.createDirectories(thuMucCache);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Không tạo được thư mục cache PDF: " + thuMucCache, e);
+            }
+        }
+    }
+
+    // ===== Một hóa đơn =====
+
+    /**
+     * PDF của một hóa đơn (lấy từ cache nếu nội dung không đổi).
+     */
+    public byte[] render(HoaDonView hoaDon) {
+        return layHoacRender(hoaDon, new AtomicInteger());
+    }
+
+    private byte[] layHoacRender(HoaDonView hoaDon, AtomicInteger soLayTuCache) {
+        Path file = thuMucCache != null ? thuMucCache.resolve(khoaCache(hoaDon) + ".pdf") : null;
+        if (file != null) {
+            try {
+                byte[] pdf = Files.readAllBytes(file);
+                // Đánh dấu còn dùng để không bị dọn
+                Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+                soLayTuCache.incrementAndGet();
+                return pdf;
+            } catch (NoSuchFileException e) {
+                // Chưa có trong cache
+            } catch (IOException e) {
+                log.warn("Không đọc được cache PDF {}: {}", file, e.getMessage());
+            }
+        }
+
+        byte[] pdf = ve(hoaDon);
+        if (file != null) {
+            luuCache(file, pdf);
+        }
+        return pdf;
+    }
+
+    // ===== In hàng loạt =====
+
+    /**
+     * Gộp một file PDF chỉ cho phép tới app.invoice.pdf-merge-max hóa đơn.
+     *
+     * @throws IllegalArgumentException nếu vượt giới hạn (dùng định dạng zip)
+     */
+    public void kiemTraSoHoaDonGop(long soHoaDon) {
+        if (soHoaDon > soHoaDonGopToiDa) {
+            throw new IllegalArgumentException("Đợt thu có " + soHoaDon + " hóa đơn, gộp một file PDF tối đa "
+                + soHoaDonGopToiDa + " hóa đơn; vui lòng dùng format=zip");
+        }
+    }
+
+    /**
+     * Ghi PDF của các hóa đơn ra out theo định dạng zip / pdf.
+     * hoaDons được duyệt trên thread gọi (đọc DB theo trang), việc render chạy trên pdfExecutor.
+     */
+    public void ghiHangLoat(Iterator<HoaDonView> hoaDons, String dinhDang, OutputStream out) throws IOException {
+        long batDau = System.currentTimeMillis();
+        AtomicInteger soLayTuCache = new AtomicInteger();
+        int soHoaDon;
+        if (DINH_DANG_ZIP.equals(dinhDang)) {
+            soHoaDon = ghiZip(hoaDons, soLayTuCache, out);
+        } else if (DINH_DANG_PDF.equals(dinhDang)) {
+            soHoaDon = ghiPdfGop(hoaDons, soLayTuCache, out);
+        } else {
+            throw new IllegalArgumentException("Định dạng không hợp lệ: " + dinhDang + " (zip hoặc pdf)");
+        }
+        log.info("In {} hóa đơn PDF ({}) trong {} ms, {} hóa đơn lấy từ cache",
+            soHoaDon, dinhDang, System.currentTimeMillis() - batDau, soLayTuCache.get());
+    }
+
+    private int ghiZip(Iterator<HoaDonView> hoaDons, AtomicInteger soLayTuCache, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        int soHoaDon = renderTheoThuTu(hoaDons, soLayTuCache, (hoaDon, pdf) -> {
+            // PDF đã nén sẵn -> lưu STORED, không tốn CPU nén lại
+            ZipEntry entry = new ZipEntry(hoaDon.maHoaDon() + "_" + tenFile(hoaDon.maHoGiaDinh()) + ".pdf");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(pdf.length);
+            entry.setCompressedSize(pdf.length);
+            CRC32 crc = new CRC32();
+            crc.update(pdf);
+            entry.setCrc(crc.getValue());
+            zip.putNextEntry(entry);
+            zip.write(pdf);
+            zip.closeEntry();
+            zip.flush();
+        });
+        zip.finish();
+        zip.flush();
+        return soHoaDon;
+    }
+
+    private int ghiPdfGop(Iterator<HoaDonView> hoaDons, AtomicInteger soLayTuCache, OutputStream out) throws IOException {
+        PDFMergerUtility merger = new PDFMergerUtility();
+        List<PDDocument> daGop = new ArrayList<>();
+        Path thuMucTam = Files.createTempDirectory("hoa-don-gop-");
+        try (PDDocument gop = new PDDocument(IOUtils.createTempFileOnlyStreamCache())) {
+            int soHoaDon = renderTheoThuTu(hoaDons, soLayTuCache, (hoaDon, pdf) -> {
+                // Hóa đơn được thêm sau lúc kiểm tra giới hạn
+                if (daGop.size() >= soHoaDonGopToiDa) {
+                    throw new IOException("Vượt quá " + soHoaDonGopToiDa + " hóa đơn khi gộp PDF");
+                }
+                // Đọc từ file: nguồn mở tới lúc save nhưng dữ liệu trang không nằm trên heap
+                Path file = thuMucTam.resolve(daGop.size() + ".pdf");
+                Files.write(file, pdf);
+                PDDocument doc = Loader.loadPDF(file.toFile(), IOUtils.createTempFileOnlyStreamCache());
+                daGop.add(doc);
+                merger.appendDocument(gop, doc);
+            });
+            if (soHoaDon == 0) {
+                gop.addPage(new PDPage(KHO_GIAY));
+            }
+            gop.save(out);
+            return soHoaDon;
+        } finally {
+            for (PDDocument doc : daGop) {
+                doc.close();
+            }
+            xoaThuMucTam(thuMucTam);
+        }
+    }
+
+    private static void xoaThuMucTam(Path thuMuc) {
+        try (Stream<Path> files = Files.list(thuMuc)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(thuMuc);
+        } catch (IOException e) {
+            log.warn("Không xóa được thư mục tạm {}: {}", thuMuc, e.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    private interface GhiPdf {
+        void ghi(HoaDonView hoaDon, byte[] pdf) throws IOException;
+    }
+
+    /**
+     * Render song song, ghi tuần tự theo thứ tự của hoaDons.
+     * Cửa sổ trượt: chỉ giữ tối đa soHoaDonCungLuc hóa đơn đang render / chờ ghi.
+     */
+    private int renderTheoThuTu(Iterator<HoaDonView> hoaDons, AtomicInteger soLayTuCache, GhiPdf ghi)
+            throws IOException {
+        Deque<HoaDonView> choGhi = new ArrayDeque<>();
+        Deque<Future<byte[]>> dangRender = new ArrayDeque<>();
+        int soHoaDon = 0;
+        try {
+            while (hoaDons.hasNext() || !dangRender.isEmpty()) {
+                while (hoaDons.hasNext() && dangRender.size() < soHoaDonCungLuc) {
+                    HoaDonView hoaDon = hoaDons.next();
+                    choGhi.add(hoaDon);
+                    dangRender.add(pdfExecutor.submit(() -> layHoacRender(hoaDon, soLayTuCache)));
+                }
+                ghi.ghi(choGhi.poll(), ketQua(dangRender.poll()));
+                soHoaDon++;
+            }
+            return soHoaDon;
+        } finally {
+            // Client ngắt kết nối / lỗi giữa chừng -> bỏ các hóa đơn chưa render
+            for (Future<byte[]> f : dangRender) {
+                f.cancel(false);
+            }
+        }
+    }
+
+    private static byte[] ketQua(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Bị ngắt khi đang render hóa đơn PDF", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IOException("Lỗi render hóa đơn PDF", e.getCause());
+        }
+    }
+
+    // ===== Vẽ PDF =====
+
+    private byte[] ve(HoaDonView hoaDon) {
+        try (PDDocument doc = new PDDocument()) {
+            PDFont thuong;
+            PDFont dam;
+            if (fontThuong != null) {
+                TrueTypeFont[] ttf = fontTheoThread.get();
+                thuong = PDType0Font.load(doc, ttf[0], true);
+                dam = PDType0Font.load(doc, ttf[1], true);
+            } else {
+                thuong = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+                dam = new PDType1Font(Standard14Fonts.FontName.HELVETICA_BOLD);
+            }
+            doc.getDocumentInformation().setTitle("Hóa đơn " + hoaDon.maHoaDon());
+
+            try (Trang trang = new Trang(doc, thuong, dam)) {
+                float giua = KHO_GIAY.getWidth() / 2;
+                trang.chuGiua("HÓA ĐƠN THANH TOÁN", dam, 18f, giua);
+                trang.xuongDong(22f);
+                trang.chuGiua("Chung cư Blue Moon", thuong, 11f, giua);
+                trang.xuongDong(32f);
+
+                trang.thongTin("Mã hóa đơn: ", hoaDon.maHoaDon());
+                trang.thongTin("Hộ gia đình: ", hoaDon.maHoGiaDinh() + " - " + khongNull(hoaDon.tenChuHo()));
+                trang.thongTin("Đợt thu: ", hoaDon.tenDotThu());
+                trang.thongTin("Ngày tạo: ", hoaDon.ngayTao());
+                trang.xuongDong(10f);
+
+                trang.dongBang(TIEU_DE_COT, true);
+                for (ChiTietView ct : hoaDon.chiTiet()) {
+                    String soLuong = ct.soLuong() == null ? "" : ct.soLuong() + " " + khongNull(ct.donViTinh());
+                    trang.dongBang(new String[]{String.valueOf(ct.stt()), khongNull(ct.tenLoaiPhi()), soLuong,
+                        ct.donGia(), ct.thanhTien()}, false);
+                }
+                trang.xuongDong(20f);
+
+                trang.tongCong("Tổng tiền phải thu: ", hoaDon.tongTien(), 11f);
+                trang.tongCong("Số tiền đã đóng: ", hoaDon.daDong(), 11f);
+                trang.tongCong("Còn nợ: ", hoaDon.conNo(), 14f);
+                trang.tongCong("Trạng thái: ", hoaDon.trangThai(), 11f);
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(32 * 1024);
+            doc.save(out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lỗi tạo PDF hóa đơn " + hoaDon.maHoaDon(), e);
+        }
+    }
+
+    /**
+     * Con trỏ vẽ từ trên xuống, tự sang trang mới khi hết chỗ (hóa đơn nhiều dòng phí).
+     */
+    private final class Trang implements AutoCloseable {
+        private final PDDocument doc;
+        private final PDFont thuong;
+        private final PDFont dam;
+        private PDPageContentStream cs;
+        private float y;
+
+        Trang(PDDocument doc, PDFont thuong, PDFont dam) throws IOException {
+            this.doc = doc;
+            this.thuong = thuong;
+            this.dam = dam;
+            trangMoi();
+        }
+
+        private void trangMoi() throws IOException {
+            if (cs != null) {
+                cs.close();
+            }
+            PDPage page = new PDPage(KHO_GIAY);
+            doc.addPage(page);
+            cs = new PDPageContentStream(doc, page);
+            y = KHO_GIAY.getHeight() - LE;
+        }
+
+        private void canCho(float cao) throws IOException {
+            if (y - cao < LE) {
+                trangMoi();
+            }
+        }
+
+        void xuongDong(float khoang) {
+            y -= khoang;
+        }
+
+        void chuGiua(String s, PDFont font, float co, float giua) throws IOException {
+            String text = chu(s);
+            viet(text, font, co, giua - doRong(text, font, co) / 2, y);
+        }
+
+        void thongTin(String nhan, String giaTri) throws IOException {
+            canCho(18f);
+            String n = chu(nhan);
+            viet(n, dam, 11f, LE, y);
+            viet(chu(khongNull(giaTri)), thuong, 11f, LE + doRong(n, dam, 11f), y);
+            y -= 18f;
+        }
+
+        void dongBang(String[] cot, boolean tieuDe) throws IOException {
+            canCho(CAO_DONG);
+            float x = LE;
+            float day = y - CAO_DONG;
+            if (tieuDe) {
+                cs.setNonStrokingColor(0.95f, 0.95f, 0.95f);
+                cs.addRect(LE, day, tongDoRongBang(), CAO_DONG);
+                cs.fill();
+                cs.setNonStrokingColor(0f, 0f, 0f);
+            }
+            cs.setStrokingColor(0.87f, 0.87f, 0.87f);
+            cs.setLineWidth(0.5f);
+            PDFont font = tieuDe ? dam : thuong;
+            for (int i = 0; i < cot.length; i++) {
+                cs.addRect(x, day, DO_RONG_COT[i], CAO_DONG);
+                String text = catChu(chu(khongNull(cot[i])), font, CO_CHU, DO_RONG_COT[i] - 2 * DEM_CHU);
+                viet(text, font, CO_CHU, x + DEM_CHU, day + 6.5f);
+                x += DO_RONG_COT[i];
+            }
+            cs.stroke();
+            y = day;
+        }
+
+        void tongCong(String nhan, String giaTri, float co) throws IOException {
+            canCho(co + 8f);
+            String n = chu(nhan);
+            String g = chu(khongNull(giaTri));
+            float phai = LE + tongDoRongBang();
+            float x = phai - doRong(g, dam, co);
+            viet(g, dam, co, x, y);
+            viet(n, dam, co, x - doRong(n, dam, co), y);
+            y -= co + 8f;
+        }
+
+        private void viet(String text, PDFont font, float co, float x, float yChu) throws IOException {
+            if (text.isEmpty()) {
+                return;
+            }
+            cs.beginText();
+            cs.setFont(font, co);
+            cs.newLineAtOffset(x, yChu);
+            cs.showText(text);
+            cs.endText();
+        }
+
+        @Override
+        public void close() throws IOException {
+            cs.close();
+        }
+    }
+
+    private static float tongDoRongBang() {
+        float tong = 0;
+        for (float w : DO_RONG_COT) {
+            tong += w;
+        }
+        return tong;
+    }
+
+    private static float doRong(String text, PDFont font, float co) throws IOException {
+        return font.getStringWidth(text) / 1000f * co;
+    }
+
+    /** Cắt chữ cho vừa ô, thêm "..." nếu bị cắt. */
+    private static String catChu(String text, PDFont font, float co, float toiDa) throws IOException {
+        if (doRong(text, font, co) <= toiDa) {
+            return text;
+        }
+        int het = text.length();
+        while (het > 0 && doRong(text.substring(0, het) + "...", font, co) > toiDa) {
+            het--;
+        }
+        return text.substring(0, het) + "...";
+    }
+
+    /** Helvetica (WinAnsi) không có chữ tiếng Việt -> bỏ dấu. */
+    private String chu(String s) {
+        if (fontThuong != null) {
+            return s;
+        }
+        String khongDau = Normalizer.normalize(s, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return khongDau.replace('đ', 'd').replace('Đ', 'D');
+    }
+
+    private static String khongNull(String s) {
+        return s != null ? s : "";
+    }
+
+    private static String tenFile(String s) {
+        return s == null ? "" : s.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    // ===== Font =====
+
+    private static Path timFont(String cauHinh, List<String> macDinh) {
+        if (cauHinh != null && !cauHinh.isBlank()) {
+            Path p = Paths.get(cauHinh);
+            if (!Files.isReadable(p)) {
+                throw new IllegalStateException("Không đọc được font hóa đơn PDF: " + cauHinh);
+            }
+            return p;
+        }
+        for (String duongDan : macDinh) {
+            Path p = Paths.get(duongDan);
+            if (Files.isReadable(p)) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    private static byte[] docFont(Path p) {
+        if (p == null) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(p);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Không đọc được font hóa đơn PDF: " + p, e);
+        }
+    }
+
+    private TrueTypeFont[] parseFont() {
+        try {
+            TrueTypeFont thuong = new TTFParser().parse(new RandomAccessReadBuffer(fontThuong));
+            TrueTypeFont dam = fontDam == fontThuong
+                ? thuong
+                : new TTFParser().parse(new RandomAccessReadBuffer(fontDam));
+            return new TrueTypeFont[]{thuong, dam};
+        } catch (IOException e) {
+            throw new UncheckedIOException("Font hóa đơn PDF không hợp lệ", e);
+        }
+    }
+
+    // ===== Cache =====
+
+    private String khoaCache(HoaDonView hoaDon) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update((PHIEN_BAN_LAYOUT + "|" + fontId + "|").getBytes(StandardCharsets.UTF_8));
+            // record.toString() gồm mọi trường, kể cả danh sách chi tiết
+            sha.update(hoaDon.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(sha.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Ghi ra file tạm rồi rename, để request khác không bao giờ đọc phải file ghi dở.
+     */
+    private void luuCache(Path file, byte[] pdf) {
+        Path tam = null;
+        try {
+            // Thư mục có thể bị xóa tay khi app đang chạy
+            Files.createDirectories(thuMucCache);
+            tam = Files.createTempFile(thuMucCache, "hd-", ".tmp");
+            Files.write(tam, pdf);
+            Files.move(tam, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("Không ghi được cache PDF {}: {}", file, e.getMessage());
+            if (tam != null) {
+                try {
+                    Files.deleteIfExists(tam);
+                } catch (IOException ignored) {
+                    // Dọn định kỳ sẽ xóa
+                }
+            }
+        }
+    }
+
+    /**
+     * Xóa PDF không được dùng trong app.invoice.pdf-cache-days ngày (và file tạm sót lại).
+     */
+    @Scheduled(cron = "${app.invoice.pdf-cache-cleanup-cron:0 0 3 * * *}")
+    public void donCache() {
+        if (thuMucCache == null || soNgayGiuCache <= 0) {
+            return;
+        }
+        Instant han = Instant.now().minus(soNgayGiuCache, ChronoUnit.DAYS);
+        Instant hanFileTam = Instant.now().minus(1, ChronoUnit.HOURS);
+        AtomicInteger soFileXoa = new AtomicInteger();
+        try (Stream<Path> files = Files.list(thuMucCache)) {
+            files.forEach(f -> {
+                try {
+                    String ten = f.getFileName().toString();
+                    Instant sua = Files.getLastModifiedTime(f).toInstant();
+                    if ((ten.endsWith(".pdf") && sua.isBefore(han)) || (ten.endsWith(".tmp") && sua.isBefore(hanFileTam))) {
+                        Files.deleteIfExists(f);
+                        soFileXoa.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    log.warn("Không xóa được cache PDF {}: {}", f, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Không đọc được thư mục cache PDF {}: {}", thuMucCache, e.getMessage());
+            return;
+        }
+        if (soFileXoa.get() > 0) {
+            log.info("Dọn cache PDF: xóa {} file", soFileXoa.get());
+        }
+    }
+}
@@ -1,25 +1,62 @@
 package com.nhom33.quanlychungcu.service;
 
+import com.nhom33.quanlychungcu.entity.DotThu;
 import com.nhom33.quanlychungcu.entity.HoaDon;
 import com.nhom33.quanlychungcu.entity.ChiTietHoaDon;
+import com.nhom33.quanlychungcu.exception.ResourceNotFoundException;
+import com.nhom33.quanlychungcu.repository.ChiTietHoaDonRepository;
+import com.nhom33.quanlychungcu.repository.DotThuRepository;
 import com.nhom33.quanlychungcu.repository.HoaDonRepository;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 @Service
 public class InvoiceService {
 
-    private final HoaDonRepository hoaDonRepo;
+    private static final DateTimeFormatter NGAY_TAO_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+
+    // Số hóa đơn đọc mỗi lần khi in hàng loạt (IN của SQL Server tối đa 2100 tham số)
+    private static final int PAGE_SIZE = 500;
 
-    public InvoiceService(HoaDonRepository hoaDonRepo) {
+    private final HoaDonRepository hoaDonRepo;
+    private final ChiTietHoaDonRepository chiTietRepo;
+    private final DotThuRepository dotThuRepo;
+    private final TemplateService templateService;
+    private final InvoicePdfService pdfService;
+
+    public InvoiceService(HoaDonRepository hoaDonRepo,
+                          ChiTietHoaDonRepository chiTietRepo,
+                          DotThuRepository dotThuRepo,
+                          TemplateService templateService,
+                          InvoicePdfService pdfService) {
         this.hoaDonRepo = hoaDonRepo;
+        this.chiTietRepo = chiTietRepo;
+        this.dotThuRepo = dotThuRepo;
+        this.templateService = templateService;
+        this.pdfService = pdfService;
     }
 
+    /** Dữ liệu template hóa đơn (đã định dạng). */
+    public record HoaDonView(String maHoaDon, String maHoGiaDinh, String tenChuHo, String tenDotThu,
+                             String ngayTao, List<ChiTietView> chiTiet, String tongTien, String daDong,
+                             String conNo, String trangThai) {}
+
+    public record ChiTietView(int stt, String tenLoaiPhi, Double soLuong, String donViTinh,
+                              String donGia, String thanhTien) {}
+
     /**
      * Sinh hóa đơn PDF (sử dụng iText hoặc Apache PDFBox)
      * Tạm thời trả về HTML, có thể chuyển sang PDF sau
@@ -27,78 +64,135 @@ public class InvoiceService {
     public String generateInvoiceHtml(Integer idHoaDon) {
         HoaDon hoaDon = hoaDonRepo.findById(idHoaDon)
             .orElseThrow(() -> new RuntimeException("Không tìm thấy hóa đơn"));
+        return templateService.render(TemplateService.HOA_DON_HTML, toView(hoaDon));
+    }
 
-        StringBuilder html = new StringBuilder();
-        html.append("<!DOCTYPE html><html><head><meta charset='UTF-8'>");
-        html.append("<style>");
-        html.append("body { font-family: Arial, sans-serif; margin: 20px; }");
-        html.append("table { width: 100%; border-collapse: collapse; margin-top: 20px; }");
-        html.append("th, td { border: 1px solid #ddd; padding: 8px; text-align: left; }");
-        html.append("th { background-color: #f2f2f2; }");
-        html.append(".header { text-align: center; margin-bottom: 30px; }");
-        html.append(".total { font-weight: bold; font-size: 18px; }");
-        html.append("</style></head><body>");
-
-        html.append("<div class='header'>");
-        html.append("<h1>HÓA ĐƠN THANH TOÁN</h1>");
-        html.append("<p>Chung cư Blue Moon</p>");
-        html.append("</div>");
-
-        html.append("<div>");
-        html.append("<p><strong>Mã hóa đơn:</strong> HD").append(String.format("%06d", hoaDon.getId())).append("</p>");
-        html.append("<p><strong>Hộ gia đình:</strong> ").append(hoaDon.getHoGiaDinh().getMaHoGiaDinh()).append(" - ").append(hoaDon.getHoGiaDinh().getTenChuHo()).append("</p>");
-        html.append("<p><strong>Đợt thu:</strong> ").append(hoaDon.getDotThu().getTenDotThu()).append("</p>");
-        html.append("<p><strong>Ngày tạo:</strong> ").append(hoaDon.getNgayTao().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"))).append("</p>");
-        html.append("</div>");
-
-        html.append("<table>");
-        html.append("<thead><tr>");
-        html.append("<th>STT</th>");
-        html.append("<th>Loại phí</th>");
-        html.append("<th>Số lượng</th>");
-        html.append("<th>Đơn giá</th>");
-        html.append("<th>Thành tiền</th>");
-        html.append("</tr></thead><tbody>");
-
-        List<ChiTietHoaDon> chiTiets = hoaDon.getDanhSachChiTiet();
+    private HoaDonView toView(HoaDon hoaDon) {
+        // Sắp theo loại phí như khi in hàng loạt -> cùng nội dung, cùng khóa cache PDF
+        List<ChiTietHoaDon> dsChiTiet = new ArrayList<>(hoaDon.getDanhSachChiTiet());
+        dsChiTiet.sort(Comparator.comparing(ct -> ct.getLoaiPhi().getId()));
+        List<ChiTietView> chiTiet = new ArrayList<>();
         int stt = 1;
-        for (ChiTietHoaDon ct : chiTiets) {
-            html.append("<tr>");
-            html.append("<td>").append(stt++).append("</td>");
-            html.append("<td>").append(ct.getLoaiPhi().getTenLoaiPhi()).append("</td>");
-            html.append("<td>").append(ct.getSoLuong()).append(" ").append(ct.getLoaiPhi().getDonViTinh() != null ? ct.getLoaiPhi().getDonViTinh() : "").append("</td>");
-            html.append("<td>").append(formatCurrency(ct.getDonGia())).append("</td>");
-            html.append("<td>").append(formatCurrency(ct.getThanhTien())).append("</td>");
-            html.append("</tr>");
+        for (ChiTietHoaDon ct : dsChiTiet) {
+            chiTiet.add(new ChiTietView(stt++, ct.getLoaiPhi().getTenLoaiPhi(), ct.getSoLuong(),
+                ct.getLoaiPhi().getDonViTinh(), formatCurrency(ct.getDonGia()), formatCurrency(ct.getThanhTien())));
         }
+        return new HoaDonView(
+            TemplateService.maHoaDon(hoaDon.getId()),
+            hoaDon.getHoGiaDinh().getMaHoGiaDinh(),
+            hoaDon.getHoGiaDinh().getTenChuHo(),
+            hoaDon.getDotThu().getTenDotThu(),
+            hoaDon.getNgayTao() != null ? hoaDon.getNgayTao().format(NGAY_TAO_FORMAT) : "",
+            chiTiet,
+            formatCurrency(hoaDon.getTongTienPhaiThu()),
+            formatCurrency(hoaDon.getSoTienDaDong()),
+            formatCurrency(hoaDon.getSoTienConNo()),
+            hoaDon.getTrangThai());
+    }
 
-        html.append("</tbody></table>");
-
-        html.append("<div style='margin-top: 20px; text-align: right;'>");
-        html.append("<p><strong>Tổng tiền phải thu:</strong> ").append(formatCurrency(hoaDon.getTongTienPhaiThu())).append("</p>");
-        html.append("<p><strong>Số tiền đã đóng:</strong> ").append(formatCurrency(hoaDon.getSoTienDaDong())).append("</p>");
-        html.append("<p class='total'><strong>Còn nợ:</strong> ").append(formatCurrency(hoaDon.getSoTienConNo())).append("</p>");
-        html.append("<p><strong>Trạng thái:</strong> ").append(hoaDon.getTrangThai()).append("</p>");
-        html.append("</div>");
-
-        html.append("</body></html>");
+    /**
+     * Sinh PDF của một hóa đơn (cache theo nội dung, xem InvoicePdfService).
+     */
+    @Transactional(readOnly = true)
+    public byte[] generateInvoicePdf(Integer idHoaDon) {
+        HoaDon hoaDon = hoaDonRepo.findById(idHoaDon)
+            .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy hóa đơn với ID: " + idHoaDon));
+        return pdfService.render(toView(hoaDon));
+    }
 
-        return html.toString();
+    /**
+     * In tất cả hóa đơn của một đợt thu: zip (mỗi hóa đơn một file) hoặc pdf (một file nhiều trang).
+     * Đợt thu, định dạng và giới hạn số hóa đơn của pdf được kiểm tra trước khi stream bắt đầu
+     * để lỗi vẫn trả về 404 / 400.
+     */
+    public StreamingResponseBody exportDotThuPdf(Integer idDotThu, String dinhDang) {
+        DotThu dotThu = dotThuRepo.findById(idDotThu)
+            .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy đợt thu với ID: " + idDotThu));
+        if (!InvoicePdfService.DINH_DANG_ZIP.equals(dinhDang) && !InvoicePdfService.DINH_DANG_PDF.equals(dinhDang)) {
+            throw new IllegalArgumentException("Định dạng không hợp lệ: " + dinhDang + " (zip hoặc pdf)");
+        }
+        if (InvoicePdfService.DINH_DANG_PDF.equals(dinhDang)) {
+            pdfService.kiemTraSoHoaDonGop(hoaDonRepo.countByDotThuId(idDotThu));
+        }
+        String tenDotThu = dotThu.getTenDotThu();
+        return out -> pdfService.ghiHangLoat(new HoaDonDotThuIterator(idDotThu, tenDotThu), dinhDang, out);
     }
 
     /**
-     * Sinh PDF từ HTML (cần thêm dependency)
+     * Duyệt hóa đơn của đợt thu theo trang PAGE_SIZE: mỗi trang 2 query
+     * (hóa đơn + hộ, chi tiết + loại phí), chỉ giữ một trang trong bộ nhớ.
      */
-    public byte[] generateInvoicePdf(Integer idHoaDon) throws IOException {
-        String html = generateInvoiceHtml(idHoaDon);
-        // TODO: Convert HTML to PDF using iText hoặc Apache PDFBox
-        // Tạm thời trả về HTML dưới dạng bytes
-        return html.getBytes("UTF-8");
+    private class HoaDonDotThuIterator implements Iterator<HoaDonView> {
+        private final Integer idDotThu;
+        private final String tenDotThu;
+        private int trang = 0;
+        private Iterator<HoaDonView> hienTai = List.<HoaDonView>of().iterator();
+        private boolean het = false;
+
+        HoaDonDotThuIterator(Integer idDotThu, String tenDotThu) {
+            this.idDotThu = idDotThu;
+            this.tenDotThu = tenDotThu;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!hienTai.hasNext() && !het) {
+                List<HoaDonView> views = docTrang(idDotThu, tenDotThu, trang++);
+                het = views.size() < PAGE_SIZE;
+                hienTai = views.iterator();
+            }
+            return hienTai.hasNext();
+        }
+
+        @Override
+        public HoaDonView next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return hienTai.next();
+        }
+    }
+
+    private List<HoaDonView> docTrang(Integer idDotThu, String tenDotThu, int trang) {
+        List<Object[]> rows = hoaDonRepo.findInHoaDonRows(idDotThu, PageRequest.of(trang, PAGE_SIZE));
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+        List<Integer> ids = new ArrayList<>(rows.size());
+        for (Object[] r : rows) {
+            ids.add((Integer) r[0]);
+        }
+
+        // [hoaDonId, loaiPhiId, tenLoaiPhi, donViTinh, soLuong, donGia, thanhTien], sắp theo hóa đơn
+        Map<Integer, List<ChiTietView>> chiTietTheoHoaDon = new HashMap<>();
+        for (Object[] ct : chiTietRepo.findBangKeRowsByHoaDonIds(ids)) {
+            List<ChiTietView> ds = chiTietTheoHoaDon.computeIfAbsent((Integer) ct[0], k -> new ArrayList<>());
+            ds.add(new ChiTietView(ds.size() + 1, (String) ct[2], (Double) ct[4], (String) ct[3],
+                formatCurrency((BigDecimal) ct[5]), formatCurrency((BigDecimal) ct[6])));
+        }
+
+        List<HoaDonView> views = new ArrayList<>(rows.size());
+        for (Object[] r : rows) {
+            BigDecimal tongTien = r[4] != null ? (BigDecimal) r[4] : BigDecimal.ZERO;
+            BigDecimal daDong = r[5] != null ? (BigDecimal) r[5] : BigDecimal.ZERO;
+            LocalDateTime ngayTao = (LocalDateTime) r[3];
+            views.add(new HoaDonView(
+                TemplateService.maHoaDon((Integer) r[0]),
+                (String) r[1],
+                (String) r[2],
+                tenDotThu,
+                ngayTao != null ? ngayTao.format(NGAY_TAO_FORMAT) : "",
+                chiTietTheoHoaDon.getOrDefault((Integer) r[0], List.of()),
+                formatCurrency(tongTien),
+                formatCurrency(daDong),
+                formatCurrency(tongTien.subtract(daDong)),
+                (String) r[6]));
+        }
+        return views;
     }
 
     private String formatCurrency(BigDecimal amount) {
-        if (amount == null) return "0 đ";
-        return String.format("%,d đ", amount.longValue());
+        return TemplateService.dinhDangTien(amount) + " đ";
     }
 }
 
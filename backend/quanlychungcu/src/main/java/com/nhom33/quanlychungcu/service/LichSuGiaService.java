@@ -0,0 +1,303 @@
+package com.nhom33.quanlychungcu.service;
+
+import com.nhom33.quanlychungcu.entity.BangGiaDichVu;
+import com.nhom33.quanlychungcu.entity.LichSuGia;
+import com.nhom33.quanlychungcu.entity.LoaiPhi;
+import com.nhom33.quanlychungcu.repository.BangGiaDichVuRepository;
+import com.nhom33.quanlychungcu.repository.LichSuGiaRepository;
+import com.nhom33.quanlychungcu.repository.LoaiPhiRepository;
+import com.nhom33.quanlychungcu.repository.NhatKyThayDoiRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service: Lịch sử giá theo thời gian hiệu lực.
+ *
+ * LOGIC NGHIỆP VỤ:
+ * - Mọi thay đổi giá (BangGiaDichVu, LoaiPhi.DonGia) đóng phiên bản cũ và mở phiên bản mới
+ *   trong bảng LichSuGia, nên tính lại đợt thu cũ vẫn ra đúng số tiền lúc đó.
+ * - Giá của một đợt thu là giá có hiệu lực vào cuối ngày NgayBatDau của đợt thu
+ *   (đổi giá trong ngày bắt đầu vẫn áp dụng cho đợt thu đó).
+ * - Tra cứu dùng index trong bộ nhớ: mỗi cặp (loại phí, tòa nhà) là một TreeMap
+ *   thời điểm bắt đầu -> đơn giá (null = khoảng trống, không có giá riêng), tra cứu O(log n).
+ *   Index được nạp bằng 1 query và dựng lại sau mỗi transaction có đổi giá.
+ * - Dữ liệu có trước khi có bảng lịch sử được coi là hiệu lực từ MOC_DAU.
+ */
+@Service
+public class LichSuGiaService {
+
+    private static final Logger log = LoggerFactory.getLogger(LichSuGiaService.class);
+
+    // Mốc hiệu lực cho giá đã tồn tại trước khi có lịch sử
+    static final LocalDateTime MOC_DAU = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    private final LichSuGiaRepository repo;
+    private final LoaiPhiRepository loaiPhiRepo;
+    private final BangGiaDichVuRepository bangGiaRepo;
+    private final NhatKyThayDoiRepository nhatKyRepo;
+
+    // (loaiPhiId, toaNhaId) -> (hieuLucTu -> donGia); null = cần nạp lại
+    private volatile Map<KhoaGia, NavigableMap<LocalDateTime, BigDecimal>> index;
+    // Tăng mỗi lần invalidateIndex: index dựng trong lúc có invalidate có thể đã cũ, không được giữ lại
+    private final AtomicLong phienBanIndex = new AtomicLong();
+
+    private record KhoaGia(Integer loaiPhiId, Integer toaNhaId) {}
+
+    public LichSuGiaService(LichSuGiaRepository repo,
+                            LoaiPhiRepository loaiPhiRepo,
+                            BangGiaDichVuRepository bangGiaRepo,
+                            NhatKyThayDoiRepository nhatKyRepo) {
+        this.repo = repo;
+        this.loaiPhiRepo = loaiPhiRepo;
+        this.bangGiaRepo = bangGiaRepo;
+        this.nhatKyRepo = nhatKyRepo;
+    }
+
+    // ===== Tra cứu =====
+
+    /**
+     * Đơn giá áp dụng cho nhiều loại phí tại một tòa nhà vào ngày cho trước (không query DB
+     * khi index đã nạp).
+     *
+     * @param loaiPhis Loại phí đã load sẵn; LoaiPhi.donGia dùng khi không có lịch sử tại ngày đó
+     * @return Map loaiPhiId -> đơn giá
+     */
+    public Map<Integer, BigDecimal> getDonGiaTaiNgay(Integer toaNhaId, Collection<LoaiPhi> loaiPhis, LocalDate ngay) {
+        Map<KhoaGia, NavigableMap<LocalDateTime, BigDecimal>> idx = getIndex();
+        LocalDateTime thoiDiem = thoiDiemApDung(ngay);
+
+        Map<Integer, BigDecimal> result = new HashMap<>();
+        for (LoaiPhi loaiPhi : loaiPhis) {
+            BigDecimal gia = tim(idx, loaiPhi.getId(), toaNhaId, thoiDiem);
+            result.put(loaiPhi.getId(), gia != null ? gia : loaiPhi.getDonGia());
+        }
+        return result;
+    }
+
+    /**
+     * Đơn giá áp dụng của một loại phí tại một tòa nhà vào ngày cho trước.
+     *
+     * @return Optional rỗng nếu không có lịch sử giá (caller dùng giá hiện tại)
+     */
+    public Optional<BigDecimal> findDonGiaTaiNgay(Integer loaiPhiId, Integer toaNhaId, LocalDate ngay) {
+        return Optional.ofNullable(tim(getIndex(), loaiPhiId, toaNhaId, thoiDiemApDung(ngay)));
+    }
+
+    /**
+     * Danh sách phiên bản giá của một cặp (loại phí, tòa nhà), cũ trước.
+     */
+    public List<Map<String, Object>> getLichSu(Integer loaiPhiId, Integer toaNhaId) {
+        NavigableMap<LocalDateTime, BigDecimal> phienBan = getIndex().get(new KhoaGia(loaiPhiId, toaNhaId));
+        List<Map<String, Object>> result = new ArrayList<>();
+        if (phienBan == null) {
+            return result;
+        }
+        for (Map.Entry<LocalDateTime, BigDecimal> e : phienBan.entrySet()) {
+            if (e.getValue() == null) {
+                continue;
+            }
+            Map.Entry<LocalDateTime, BigDecimal> sau = phienBan.higherEntry(e.getKey());
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("donGia", e.getValue());
+            m.put("hieuLucTu", e.getKey());
+            m.put("hieuLucDen", sau != null ? sau.getKey() : null);
+            result.add(m);
+        }
+        return result;
+    }
+
+    private static BigDecimal tim(Map<KhoaGia, NavigableMap<LocalDateTime, BigDecimal>> idx,
+                                  Integer loaiPhiId, Integer toaNhaId, LocalDateTime thoiDiem) {
+        // Ưu tiên 1: giá riêng của tòa nhà tại thời điểm đó
+        if (toaNhaId != null) {
+            BigDecimal giaRieng = giaTai(idx.get(new KhoaGia(loaiPhiId, toaNhaId)), thoiDiem);
+            if (giaRieng != null) {
+                return giaRieng;
+            }
+        }
+        // Ưu tiên 2: giá mặc định tại thời điểm đó
+        return giaTai(idx.get(new KhoaGia(loaiPhiId, null)), thoiDiem);
+    }
+
+    private static BigDecimal giaTai(NavigableMap<LocalDateTime, BigDecimal> phienBan, LocalDateTime thoiDiem) {
+        if (phienBan == null) {
+            return null;
+        }
+        Map.Entry<LocalDateTime, BigDecimal> e = phienBan.lowerEntry(thoiDiem);
+        return e != null ? e.getValue() : null;
+    }
+
+    private static LocalDateTime thoiDiemApDung(LocalDate ngay) {
+        // Giá có hiệu lực vào cuối ngày: phiên bản bắt đầu trước 0h ngày hôm sau
+        return (ngay != null ? ngay : LocalDate.now()).plusDays(1).atStartOfDay();
+    }
+
+    // ===== Ghi nhận thay đổi =====
+
+    /**
+     * Ghi nhận giá mới cho một cặp (loại phí, tòa nhà); toaNhaId = null là giá mặc định.
+     * Không tạo phiên bản mới nếu giá không đổi.
+     */
+    @Transactional
+    public void ghiNhanGia(Integer loaiPhiId, Integer toaNhaId, BigDecimal donGia) {
+        if (loaiPhiId == null || donGia == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Optional<LichSuGia> hienTai = repo.findDangApDung(loaiPhiId, toaNhaId);
+        if (hienTai.isPresent()) {
+            if (hienTai.get().getDonGia().compareTo(donGia) == 0) {
+                return;
+            }
+            hienTai.get().setHieuLucDen(now);
+            repo.save(hienTai.get());
+        }
+        repo.save(new LichSuGia(loaiPhiId, toaNhaId, donGia, now));
+        invalidateIndex();
+    }
+
+    /**
+     * Kết thúc hiệu lực giá riêng (bảng giá bị xóa -> quay về giá mặc định từ bây giờ).
+     * loaiPhiId hoặc toaNhaId = null nghĩa là mọi loại phí / mọi tòa nhà.
+     */
+    @Transactional
+    public void dongGiaRieng(Integer loaiPhiId, Integer toaNhaId) {
+        if (repo.closeGiaRieng(loaiPhiId, toaNhaId, LocalDateTime.now()) > 0) {
+            nhatKyRepo.ghiNhanCaBang("LichSuGia");
+            invalidateIndex();
+        }
+    }
+
+    /**
+     * Loại phí bị xóa hẳn -> xóa luôn lịch sử giá của nó.
+     */
+    @Transactional
+    public void xoaTheoLoaiPhi(Integer loaiPhiId) {
+        if (repo.deleteByLoaiPhiId(loaiPhiId) > 0) {
+            nhatKyRepo.ghiNhanCaBang("LichSuGia");
+        }
+        invalidateIndex();
+    }
+
+    // ===== Đồng bộ lúc khởi động =====
+
+    /**
+     * Bổ sung lịch sử cho giá chưa có phiên bản đang mở hoặc bị sửa trực tiếp trong DB
+     * (dữ liệu cũ, script SQL, reset dữ liệu test).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void dongBoLichSu() {
+        Map<KhoaGia, LichSuGia> dangMo = new HashMap<>();
+        for (LichSuGia l : repo.findByHieuLucDenIsNull()) {
+            dangMo.put(new KhoaGia(l.getIdLoaiPhi(), l.getIdToaNha()), l);
+        }
+        boolean coLichSu = repo.count() > 0;
+
+        Map<KhoaGia, BigDecimal> giaHienTai = new HashMap<>();
+        for (LoaiPhi lp : loaiPhiRepo.findAll()) {
+            if (lp.getDonGia() != null) {
+                giaHienTai.put(new KhoaGia(lp.getId(), null), lp.getDonGia());
+            }
+        }
+        for (BangGiaDichVu bg : bangGiaRepo.findAll()) {
+            giaHienTai.put(new KhoaGia(bg.getLoaiPhi().getId(), bg.getToaNha().getId()), bg.getDonGia());
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        int soPhienBan = 0;
+        for (Map.Entry<KhoaGia, BigDecimal> e : giaHienTai.entrySet()) {
+            LichSuGia hienTai = dangMo.get(e.getKey());
+            if (hienTai != null && hienTai.getDonGia().compareTo(e.getValue()) == 0) {
+                continue;
+            }
+            if (hienTai != null) {
+                hienTai.setHieuLucDen(now);
+                repo.save(hienTai);
+            }
+            // Lần đầu chạy: coi giá hiện tại là giá từ trước tới nay
+            LocalDateTime tu = coLichSu ? now : MOC_DAU;
+            repo.save(new LichSuGia(e.getKey().loaiPhiId(), e.getKey().toaNhaId(), e.getValue(), tu));
+            soPhienBan++;
+        }
+        // Giá riêng đã bị xóa ngoài service -> đóng phiên bản đang mở
+        for (Map.Entry<KhoaGia, LichSuGia> e : dangMo.entrySet()) {
+            if (e.getKey().toaNhaId() != null && !giaHienTai.containsKey(e.getKey())) {
+                e.getValue().setHieuLucDen(now);
+                repo.save(e.getValue());
+                soPhienBan++;
+            }
+        }
+
+        if (soPhienBan > 0) {
+            log.info("Đồng bộ lịch sử giá: {} phiên bản được thêm/đóng", soPhienBan);
+            invalidateIndex();
+        }
+    }
+
+    // ===== Index =====
+
+    private Map<KhoaGia, NavigableMap<LocalDateTime, BigDecimal>> getIndex() {
+        Map<KhoaGia, NavigableMap<LocalDateTime, BigDecimal>> idx = index;
+        if (idx == null) {
+            synchronized (this) {
+                idx = index;
+                if (idx == null) {
+                    long phienBan = phienBanIndex.get();
+                    idx = buildIndex(repo.findAllOrderByHieuLucTu());
+                    index = idx;
+                    // Kiểm tra sau khi gán: invalidateIndex tăng phiên bản trước khi bỏ index
+                    if (phienBanIndex.get() != phienBan) {
+                        index = null;
+                    }
+                }
+            }
+        }
+        return idx;
+    }
+
+    private static Map<KhoaGia, NavigableMap<LocalDateTime, BigDecimal>> buildIndex(List<LichSuGia> lichSu) {
+        Map<KhoaGia, NavigableMap<LocalDateTime, BigDecimal>> idx = new HashMap<>();
+        // lichSu đã sắp theo hieuLucTu: phiên bản sau ghi đè điểm kết thúc (null) của phiên bản trước
+        for (LichSuGia l : lichSu) {
+            NavigableMap<LocalDateTime, BigDecimal> phienBan =
+                idx.computeIfAbsent(new KhoaGia(l.getIdLoaiPhi(), l.getIdToaNha()), k -> new TreeMap<>());
+            phienBan.put(l.getHieuLucTu(), l.getDonGia());
+            if (l.getHieuLucDen() != null) {
+                phienBan.putIfAbsent(l.getHieuLucDen(), null);
+            }
+        }
+        return idx;
+    }
+
+    /**
+     * Bỏ index hiện tại; dựng lại lần đọc sau. Gọi thêm sau commit để không giữ index
+     * được dựng từ dữ liệu chưa commit.
+     * Public để restore backup (ghi LichSuGia bằng JDBC) bỏ được index.
+     */
+    public void invalidateIndex() {
+        phienBanIndex.incrementAndGet();
+        index = null;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    phienBanIndex.incrementAndGet();
+                    index = null;
+                }
+            });
+        }
+    }
+}
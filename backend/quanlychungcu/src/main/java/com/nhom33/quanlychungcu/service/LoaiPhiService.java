@@ -21,23 +21,32 @@ import java.util.List;
  * - DonGia trong LoaiPhi là giá mặc định (Base Price).
  * - Giá riêng theo tòa nhà được cấu hình qua BangGiaDichVu.
  * - Hỗ trợ soft delete thông qua trường dangHoatDong.
+ * - Thay đổi đơn giá / xóa loại phí phải xóa cache giá áp dụng trong BangGiaService
+ *   và ghi phiên bản giá mặc định mới vào LichSuGia.
  */
 @Service
 public class LoaiPhiService {
 
     private final LoaiPhiRepository repo;
     private final BangGiaDichVuRepository bangGiaRepo;
+    private final BangGiaService bangGiaService;
+    private final LichSuGiaService lichSuGiaService;
 
-    public LoaiPhiService(LoaiPhiRepository repo, BangGiaDichVuRepository bangGiaRepo) {
+    public LoaiPhiService(LoaiPhiRepository repo, BangGiaDichVuRepository bangGiaRepo,
+                          BangGiaService bangGiaService, LichSuGiaService lichSuGiaService) {
         this.repo = repo;
         this.bangGiaRepo = bangGiaRepo;
+        this.bangGiaService = bangGiaService;
+        this.lichSuGiaService = lichSuGiaService;
     }
 
     // ===== CREATE =====
 
     @Transactional
     public LoaiPhi create(LoaiPhi loaiPhi) {
-        return repo.save(loaiPhi);
+        LoaiPhi saved = repo.save(loaiPhi);
+        lichSuGiaService.ghiNhanGia(saved.getId(), null, saved.getDonGia());
+        return saved;
     }
 
     /**
@@ -53,7 +62,9 @@ public class LoaiPhiService {
         loaiPhi.setMoTa(dto.getMoTa());
         loaiPhi.setDangHoatDong(true);
         
-        return repo.save(loaiPhi);
+        LoaiPhi saved = repo.save(loaiPhi);
+        lichSuGiaService.ghiNhanGia(saved.getId(), null, saved.getDonGia());
+        return saved;
     }
 
     // ===== UPDATE =====
@@ -70,7 +81,10 @@ public class LoaiPhiService {
         exist.setMoTa(updated.getMoTa());
         exist.setDangHoatDong(updated.getDangHoatDong());
         
-        return repo.save(exist);
+        LoaiPhi saved = repo.save(exist);
+        bangGiaService.evictLoaiPhi(id);
+        lichSuGiaService.ghiNhanGia(id, null, saved.getDonGia());
+        return saved;
     }
 
     /**
@@ -87,7 +101,10 @@ public class LoaiPhiService {
         exist.setLoaiThu(dto.getLoai());
         exist.setMoTa(dto.getMoTa());
         
-        return repo.save(exist);
+        LoaiPhi saved = repo.save(exist);
+        bangGiaService.evictLoaiPhi(id);
+        lichSuGiaService.ghiNhanGia(id, null, saved.getDonGia());
+        return saved;
     }
 
     /**
@@ -99,7 +116,10 @@ public class LoaiPhiService {
             .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy loại phí với ID: " + id));
         
         exist.setDonGia(donGia);
-        return repo.save(exist);
+        LoaiPhi saved = repo.save(exist);
+        bangGiaService.evictLoaiPhi(id);
+        lichSuGiaService.ghiNhanGia(id, null, saved.getDonGia());
+        return saved;
     }
 
     // ===== DELETE =====
@@ -118,6 +138,8 @@ public class LoaiPhiService {
         bangGiaRepo.deleteByLoaiPhiId(id);
         
         repo.deleteById(id);
+        bangGiaService.evictLoaiPhi(id);
+        lichSuGiaService.xoaTheoLoaiPhi(id);
     }
 
     /**
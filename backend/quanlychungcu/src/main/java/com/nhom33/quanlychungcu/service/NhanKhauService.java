@@ -1,12 +1,15 @@
 package com.nhom33.quanlychungcu.service;
 
 import com.nhom33.quanlychungcu.dto.NhanKhauRequestDTO;
+import com.nhom33.quanlychungcu.dto.TrangConTroDTO;
 import com.nhom33.quanlychungcu.entity.HoGiaDinh;
 import com.nhom33.quanlychungcu.entity.NhanKhau;
 import com.nhom33.quanlychungcu.exception.BadRequestException;
 import com.nhom33.quanlychungcu.exception.ResourceNotFoundException;
 import com.nhom33.quanlychungcu.repository.HoGiaDinhRepository;
 import com.nhom33.quanlychungcu.repository.NhanKhauRepository;
+import com.nhom33.quanlychungcu.util.ChiMucTimKiem.KetQua;
+import com.nhom33.quanlychungcu.util.ConTroTrang;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
@@ -16,7 +19,9 @@ import org.springframework.lang.NonNull;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -31,10 +36,13 @@ public class NhanKhauService {
 
     private final NhanKhauRepository repo;
     private final HoGiaDinhRepository hoGiaDinhRepo;
+    private final TimKiemService timKiemService;
 
-    public NhanKhauService(NhanKhauRepository repo, HoGiaDinhRepository hoGiaDinhRepo) {
+    public NhanKhauService(NhanKhauRepository repo, HoGiaDinhRepository hoGiaDinhRepo,
+                           TimKiemService timKiemService) {
         this.repo = repo;
         this.hoGiaDinhRepo = hoGiaDinhRepo;
+        this.timKiemService = timKiemService;
     }
 
     /**
@@ -425,20 +433,54 @@ public class NhanKhauService {
         return repo.findAll(pageable);
     }
 
+    /**
+     * Danh sách nhân khẩu phân trang theo con trỏ (sắp theo id): trang sau tốn như trang đầu,
+     * tongSo chỉ được đếm khi dem = true.
+     */
+    public TrangConTroDTO<NhanKhau> findAllTheoConTro(String conTro, int size, boolean giamDan, boolean dem) {
+        int sauId = ConTroTrang.sauId(conTro, giamDan);
+        List<NhanKhau> dong = giamDan
+            ? repo.findTrangTruocId(sauId, ConTroTrang.gioiHan(size))
+            : repo.findTrangSauId(sauId, ConTroTrang.gioiHan(size));
+        return ConTroTrang.taoTrang(dong, size, giamDan, NhanKhau::getId, dem ? repo.count() : null);
+    }
+
     public List<NhanKhau> findByHoGiaDinh(@NonNull Integer idHoGiaDinh) {
         return repo.findByHoGiaDinhId(idHoGiaDinh);
     }
 
+    /**
+     * Tìm theo họ tên qua chỉ mục tìm kiếm: không phân biệt dấu, khớp tiền tố từng từ,
+     * cũng khớp CCCD / số điện thoại; kết quả xếp theo mức độ khớp.
+     */
     public Page<NhanKhau> searchByHoTen(String hoTen, @NonNull Pageable pageable) {
         if (hoTen == null || hoTen.isBlank()) {
             return repo.findAll(pageable);
         }
-        return repo.findByHoTenContainingIgnoreCase(hoTen, pageable);
+        KetQua ketQua = timKiemService.timNhanKhau(hoTen, Map.of(), pageable);
+        if (ketQua == null) {
+            return repo.findByHoTenContainingIgnoreCase(hoTen, pageable);
+        }
+        return TimKiemService.taiTrang(ketQua, repo::findAllById, NhanKhau::getId, pageable);
     }
 
+    /**
+     * Tìm kiếm đa điều kiện: hoTen qua chỉ mục tìm kiếm, các điều kiện còn lại khớp chính xác.
+     */
     public Page<NhanKhau> search(String hoTen, String soCCCD, String gioiTinh, 
                                   String trangThai, Integer idHoGiaDinh, @NonNull Pageable pageable) {
-        return repo.search(hoTen, soCCCD, gioiTinh, trangThai, idHoGiaDinh, pageable);
+        Map<String, String> loc = new HashMap<>();
+        loc.put("cccd", soCCCD);
+        loc.put("gioiTinh", gioiTinh);
+        loc.put("trangThai", trangThai);
+        loc.put("hoGiaDinh", idHoGiaDinh != null ? idHoGiaDinh.toString() : null);
+        boolean coDieuKien = (hoTen != null && !hoTen.isBlank())
+            || loc.values().stream().anyMatch(v -> v != null && !v.isBlank());
+        KetQua ketQua = coDieuKien ? timKiemService.timNhanKhau(hoTen, loc, pageable) : null;
+        if (ketQua == null) {
+            return repo.search(hoTen, soCCCD, gioiTinh, trangThai, idHoGiaDinh, pageable);
+        }
+        return TimKiemService.taiTrang(ketQua, repo::findAllById, NhanKhau::getId, pageable);
     }
 
     public long countByHoGiaDinh(@NonNull Integer idHoGiaDinh) {
@@ -4,17 +4,23 @@ import com.nhom33.quanlychungcu.entity.HoGiaDinh;
 import com.nhom33.quanlychungcu.entity.HoaDon;
 import com.nhom33.quanlychungcu.entity.ThongBao;
 import com.nhom33.quanlychungcu.repository.HoGiaDinhRepository;
+import com.nhom33.quanlychungcu.repository.HangDoiEmailBatchRepository.EmailMoi;
 import com.nhom33.quanlychungcu.repository.HoaDonRepository;
 import com.nhom33.quanlychungcu.repository.ThongBaoRepository;
+import com.nhom33.quanlychungcu.service.TemplateService.EmailHoaDon;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 @Service
 public class NotificationService {
@@ -24,6 +30,8 @@ public class NotificationService {
     private final HoGiaDinhRepository hoGiaDinhRepo;
     private final JavaMailSender mailSender;
     private final InvoiceService invoiceService;
+    private final EmailOutboxService emailOutboxService;
+    private final TemplateService templateService;
 
     @Value("${spring.mail.username:}")
     private String fromEmail;
@@ -35,12 +43,16 @@ public class NotificationService {
                               HoaDonRepository hoaDonRepo,
                               HoGiaDinhRepository hoGiaDinhRepo,
                               JavaMailSender mailSender,
-                              InvoiceService invoiceService) {
+                              InvoiceService invoiceService,
+                              EmailOutboxService emailOutboxService,
+                              TemplateService templateService) {
         this.thongBaoRepo = thongBaoRepo;
         this.hoaDonRepo = hoaDonRepo;
         this.hoGiaDinhRepo = hoGiaDinhRepo;
         this.mailSender = mailSender;
         this.invoiceService = invoiceService;
+        this.emailOutboxService = emailOutboxService;
+        this.templateService = templateService;
     }
 
     /**
@@ -69,20 +81,10 @@ public class NotificationService {
             throw new RuntimeException("Hộ gia đình chưa có email");
         }
 
-        String subject = "Nhắc nhở thanh toán hóa đơn #" + hoaDon.getId();
-        String content = String.format(
-            "Kính gửi %s,\n\n" +
-            "Hệ thống xin nhắc nhở quý khách về khoản phí chưa thanh toán:\n\n" +
-            "Mã hóa đơn: HD%06d\n" +
-            "Đợt thu: %s\n" +
-            "Số tiền còn nợ: %,.0f VNĐ\n\n" +
-            "Vui lòng thanh toán trước ngày kết thúc đợt thu.\n\n" +
-            "Trân trọng,\nBan quản lý chung cư Blue Moon",
-            hoGiaDinh.getTenChuHo(),
-            hoaDon.getId(),
-            hoaDon.getDotThu().getTenDotThu(),
-            hoaDon.getSoTienConNo().doubleValue()
-        );
+        String subject = tieuDeNhacNo(hoaDon.getId());
+        String content = templateService.render(TemplateService.NHAC_NO, new EmailHoaDon(
+            hoGiaDinh.getTenChuHo(), TemplateService.maHoaDon(hoaDon.getId()),
+            hoaDon.getDotThu().getTenDotThu(), TemplateService.dinhDangTien(hoaDon.getSoTienConNo())));
 
         if (emailEnabled) {
             sendEmail(hoGiaDinh.getEmailLienHe(), subject, content);
@@ -93,28 +95,59 @@ public class NotificationService {
     }
 
     /**
-     * Gửi thông báo hàng loạt cho các hộ chưa đóng
+     * Gửi thông báo hàng loạt cho các hộ chưa đóng.
+     *
+     * Chỉ xếp hàng email vào HangDoiEmail (một câu SELECT, render hàng loạt từ template đã compile,
+     * một batch INSERT) rồi trả về ngay;
+     * EmailOutboxService gửi dần ở nền. Mỗi hóa đơn chỉ được nhắc một lần mỗi ngày cho cùng một email.
+     *
+     * @return luotGuiId (theo dõi tiến độ), sentCount (số email đã xếp hàng), soKhongCoEmail, soTrung
      */
     @Transactional
-    public int sendBulkPaymentReminder(Integer idDotThu) {
-        List<HoaDon> hoaDons = hoaDonRepo.findByDotThuId(idDotThu);
-        int sentCount = 0;
-
-        for (HoaDon hoaDon : hoaDons) {
-            if (hoaDon.getSoTienConNo().compareTo(java.math.BigDecimal.ZERO) > 0) {
-                try {
-                    sendPaymentReminder(hoaDon.getId());
-                    sentCount++;
-                } catch (Exception e) {
-                    // Log error nhưng tiếp tục gửi cho các hộ khác
-                    System.err.println("Lỗi gửi thông báo cho hộ " + hoaDon.getHoGiaDinh().getMaHoGiaDinh() + ": " + e.getMessage());
-                }
+    public Map<String, Object> sendBulkPaymentReminder(Integer idDotThu) {
+        String ngay = LocalDate.now().toString();
+        List<Object[]> canNhac = new ArrayList<>();
+        List<EmailHoaDon> duLieu = new ArrayList<>();
+        int soKhongCoEmail = 0;
+
+        for (Object[] row : hoaDonRepo.findNhacNoByDotThuId(idDotThu)) {
+            String email = (String) row[1];
+            if (email == null || email.isBlank()) {
+                soKhongCoEmail++;
+                continue;
             }
+            canNhac.add(row);
+            duLieu.add(new EmailHoaDon((String) row[2], TemplateService.maHoaDon((Integer) row[0]),
+                (String) row[3], TemplateService.dinhDangTien((BigDecimal) row[4])));
         }
 
-        return sentCount;
+        List<String> noiDung = templateService.renderHangLoat(TemplateService.NHAC_NO, duLieu);
+        List<EmailMoi> emails = new ArrayList<>(canNhac.size());
+        for (int i = 0; i < canNhac.size(); i++) {
+            Integer hoaDonId = (Integer) canNhac.get(i)[0];
+            String email = ((String) canNhac.get(i)[1]).trim();
+            String khoa = "NhacNo:" + hoaDonId + ":" + email.toLowerCase(Locale.ROOT) + ":" + ngay;
+            emails.add(new EmailMoi(khoa, email, tieuDeNhacNo(hoaDonId), noiDung.get(i), "Cảnh báo"));
+        }
+
+        Map<String, Object> result = emailOutboxService.xepHang(emails);
+        result.put("sentCount", result.get("soDaXepHang"));
+        result.put("soKhongCoEmail", soKhongCoEmail);
+        return result;
     }
 
+    /**
+     * Tiến độ gửi của một lượt nhắc hạn hàng loạt.
+     */
+    public Map<String, Object> getBulkReminderProgress(String luotGuiId) {
+        return emailOutboxService.getTienDo(luotGuiId);
+    }
+
+    private static String tieuDeNhacNo(Integer hoaDonId) {
+        return "Nhắc nhở thanh toán hóa đơn #" + hoaDonId;
+    }
+
+
     /**
      * Gửi email
      */
@@ -157,19 +190,9 @@ public class NotificationService {
 
         // TODO: Gửi email với HTML content và PDF đính kèm
         // Hiện tại chỉ gửi text
-        String textContent = String.format(
-            "Kính gửi %s,\n\n" +
-            "Hệ thống gửi quý khách hóa đơn thanh toán:\n\n" +
-            "Mã hóa đơn: HD%06d\n" +
-            "Đợt thu: %s\n" +
-            "Tổng tiền: %,.0f VNĐ\n\n" +
-            "Vui lòng xem chi tiết trong file đính kèm.\n\n" +
-            "Trân trọng,\nBan quản lý chung cư Blue Moon",
-            hoGiaDinh.getTenChuHo(),
-            hoaDon.getId(),
-            hoaDon.getDotThu().getTenDotThu(),
-            hoaDon.getTongTienPhaiThu().doubleValue()
-        );
+        String textContent = templateService.render(TemplateService.HOA_DON_EMAIL, new EmailHoaDon(
+            hoGiaDinh.getTenChuHo(), TemplateService.maHoaDon(hoaDon.getId()),
+            hoaDon.getDotThu().getTenDotThu(), TemplateService.dinhDangTien(hoaDon.getTongTienPhaiThu())));
 
         if (emailEnabled) {
             sendEmail(hoGiaDinh.getEmailLienHe(), subject, textContent);
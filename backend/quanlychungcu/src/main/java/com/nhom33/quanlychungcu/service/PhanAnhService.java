@@ -1,11 +1,13 @@
 package com.nhom33.quanlychungcu.service;
 
+import com.nhom33.quanlychungcu.dto.TrangConTroDTO;
 import com.nhom33.quanlychungcu.entity.PhanAnh;
 import com.nhom33.quanlychungcu.entity.PhanHoi;
 import com.nhom33.quanlychungcu.exception.ResourceNotFoundException;
 import com.nhom33.quanlychungcu.repository.HoGiaDinhRepository;
 import com.nhom33.quanlychungcu.repository.PhanAnhRepository;
 import com.nhom33.quanlychungcu.repository.PhanHoiRepository;
+import com.nhom33.quanlychungcu.util.ConTroTrang;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.lang.NonNull;
@@ -83,6 +85,15 @@ public class PhanAnhService {
         return phanAnhRepo.findAll(pageable);
     }
 
+    /**
+     * Danh sách phản ánh mới nhất trước, phân trang theo con trỏ; tongSo chỉ được đếm khi dem = true.
+     */
+    public TrangConTroDTO<PhanAnh> findAllTheoConTro(String conTro, int size, boolean dem) {
+        List<PhanAnh> dong = phanAnhRepo.findTrangTruocId(
+            ConTroTrang.sauId(conTro, true), ConTroTrang.gioiHan(size));
+        return ConTroTrang.taoTrang(dong, size, true, PhanAnh::getId, dem ? phanAnhRepo.count() : null);
+    }
+
     public Page<PhanAnh> findByHoGiaDinh(@NonNull Integer idHoGiaDinh, @NonNull Pageable pageable) {
         return phanAnhRepo.findByHoGiaDinhId(idHoGiaDinh, pageable);
     }
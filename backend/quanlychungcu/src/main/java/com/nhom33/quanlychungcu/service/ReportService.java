@@ -1,123 +1,222 @@
 package com.nhom33.quanlychungcu.service;
 
+import com.nhom33.quanlychungcu.entity.SoCaiCongNo;
+import com.nhom33.quanlychungcu.entity.TongHopDotThu;
 import com.nhom33.quanlychungcu.repository.HoaDonRepository;
-import com.nhom33.quanlychungcu.repository.DotThuRepository;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
 @Service
 public class ReportService {
 
     private final HoaDonRepository hoaDonRepo;
-    private final DotThuRepository dotThuRepo;
-    private final com.nhom33.quanlychungcu.repository.HoGiaDinhRepository hoGiaDinhRepo;
+    private final TongHopDotThuService tongHopService;
+    private final CongNoService congNoService;
 
-    public ReportService(HoaDonRepository hoaDonRepo, DotThuRepository dotThuRepo, com.nhom33.quanlychungcu.repository.HoGiaDinhRepository hoGiaDinhRepo) {
+    public ReportService(HoaDonRepository hoaDonRepo, TongHopDotThuService tongHopService, CongNoService congNoService) {
         this.hoaDonRepo = hoaDonRepo;
-        this.dotThuRepo = dotThuRepo;
-        this.hoGiaDinhRepo = hoGiaDinhRepo;
+        this.tongHopService = tongHopService;
+        this.congNoService = congNoService;
     }
 
     /**
-     * Thống kê theo đợt thu
+     * Thống kê theo đợt thu.
+     * Đọc một dòng từ bảng tổng hợp TongHopDotThu (được cộng dồn khi hóa đơn thay đổi),
+     * không SUM/COUNT trên HoaDon mỗi lần refresh dashboard.
      */
+    @Transactional
     public Map<String, Object> getStatisticsByDotThu(Integer idDotThu) {
-        BigDecimal tongPhaiThu = hoaDonRepo.sumTongTienPhaiThuByDotThu(idDotThu);
-        BigDecimal tongDaThu = hoaDonRepo.sumSoTienDaDongByDotThu(idDotThu);
-        
-        if (tongPhaiThu == null) tongPhaiThu = BigDecimal.ZERO;
-        if (tongDaThu == null) tongDaThu = BigDecimal.ZERO;
-        
-        BigDecimal tongConNo = tongPhaiThu.subtract(tongDaThu);
+        TongHopDotThu tongHop = tongHopService.getTongHop(idDotThu);
+
+        BigDecimal tongPhaiThu = tongHop.getTongPhaiThu();
+        BigDecimal tongDaThu = tongHop.getTongDaThu();
         BigDecimal tyLeHoanThanh = tongPhaiThu.compareTo(BigDecimal.ZERO) > 0
             ? tongDaThu.multiply(BigDecimal.valueOf(100)).divide(tongPhaiThu, 2, RoundingMode.HALF_UP)
             : BigDecimal.ZERO;
         
-        Long soHoChuaDong = hoaDonRepo.countByDotThuAndTrangThai(idDotThu, "Chưa đóng");
-        Long soHoDangNo = hoaDonRepo.countByDotThuAndTrangThai(idDotThu, "Đang nợ");
-        Long soHoDaDong = hoaDonRepo.countByDotThuAndTrangThai(idDotThu, "Đã đóng");
-        
-        // Fix: Lấy tổng số hộ thực tế từ DB thay vì cộng các hóa đơn
-        long tongSoHo = hoGiaDinhRepo.count();
-        
         Map<String, Object> result = new HashMap<>();
         result.put("tongPhaiThu", tongPhaiThu);
         result.put("tongDaThu", tongDaThu);
-        result.put("tongConNo", tongConNo);
+        result.put("tongConNo", tongHop.getTongConNo());
         result.put("tyLeHoanThanh", tyLeHoanThanh);
-        result.put("soHoChuaDong", soHoChuaDong);
-        result.put("soHoDangNo", soHoDangNo);
-        result.put("soHoDaDong", soHoDaDong);
-        result.put("tongSoHo", tongSoHo);
+        result.put("soHoChuaDong", tongHop.getSoChuaDong());
+        result.put("soHoDangNo", tongHop.getSoDangNo());
+        result.put("soHoDaDong", tongHop.getSoDaDong());
+        // Số hộ của tòa nhà thuộc đợt thu
+        result.put("tongSoHo", tongHop.getTongSoHo());
+        result.put("ngayCapNhat", tongHop.getNgayCapNhat());
         
         return result;
     }
 
     /**
-     * Thống kê công nợ theo hộ gia đình
+     * Đối soát bảng tổng hợp đợt thu với dữ liệu hóa đơn (chạy tay ngoài lịch định kỳ).
+     */
+    public Map<String, Object> doiSoatTongHop() {
+        return tongHopService.doiSoat();
+    }
+
+    /**
+     * Thống kê công nợ theo hộ gia đình.
+     * Đọc số dư từ sổ cái công nợ (một dòng), không cộng lại toàn bộ hóa đơn của hộ.
      */
     public Map<String, Object> getCongNoByHoGiaDinh(Integer idHoGiaDinh) {
-        // Lấy tất cả hóa đơn chưa đóng đủ của hộ
-        var hoaDons = hoaDonRepo.findByHoGiaDinhId(idHoGiaDinh);
-        
-        BigDecimal tongCongNo = BigDecimal.ZERO;
-        int soHoaDonChuaDong = 0;
-        
-        for (var hoaDon : hoaDons) {
-            BigDecimal conNo = hoaDon.getSoTienConNo();
-            if (conNo.compareTo(BigDecimal.ZERO) > 0) {
-                tongCongNo = tongCongNo.add(conNo);
-                soHoaDonChuaDong++;
-            }
-        }
+        BigDecimal soDu = congNoService.getSoDu(idHoGiaDinh);
         
         Map<String, Object> result = new HashMap<>();
-        result.put("tongCongNo", tongCongNo);
-        result.put("soHoaDonChuaDong", soHoaDonChuaDong);
+        result.put("tongCongNo", soDu.max(BigDecimal.ZERO));
+        result.put("soDu", soDu);
+        result.put("soHoaDonChuaDong", congNoService.countHoaDonConNo(idHoGiaDinh));
+        result.put("tuoiNo", congNoService.getTuoiNo(idHoGiaDinh, LocalDate.now()));
         
         return result;
     }
 
     /**
-     * Thống kê tổng hợp theo tháng
+     * Công nợ của hộ tại cuối một ngày trong quá khứ.
+     */
+    public Map<String, Object> getCongNoTaiNgay(Integer idHoGiaDinh, LocalDate ngay) {
+        BigDecimal soDu = congNoService.getSoDuTaiNgay(idHoGiaDinh, ngay);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("ngay", ngay);
+        result.put("tongCongNo", soDu.max(BigDecimal.ZERO));
+        result.put("soDu", soDu);
+        return result;
+    }
+
+    /**
+     * Sổ cái công nợ của hộ (mới nhất trước).
+     */
+    public Page<SoCaiCongNo> getSoCaiCongNo(Integer idHoGiaDinh, Pageable pageable) {
+        return congNoService.getSoCai(idHoGiaDinh, pageable);
+    }
+
+    /**
+     * Danh sách hộ nợ nhiều nhất (dùng cho nhắc nợ hàng loạt), lọc theo tòa nhà, số tiền và tuổi nợ.
+     */
+    public Page<Map<String, Object>> getXepHangCongNo(Integer toaNhaId, BigDecimal soTienToiThieu,
+                                                      String nhomTuoiNo, Pageable pageable) {
+        return congNoService.xepHangNo(toaNhaId, soTienToiThieu, nhomTuoiNo, LocalDate.now(), pageable);
+    }
+
+    /**
+     * Dựng lại sổ cái công nợ từ hóa đơn và lịch sử thanh toán.
+     */
+    public Map<String, Object> xayDungLaiSoCai() {
+        int soButToan = congNoService.xayDungLai();
+        Map<String, Object> result = new HashMap<>();
+        result.put("soButToan", soButToan);
+        return result;
+    }
+
+    /**
+     * Thống kê tổng hợp theo tháng.
+     * Các đợt thu giao với tháng được cộng trong một câu SUM duy nhất.
      */
     public Map<String, Object> getStatisticsByMonth(int year, int month) {
+        if (month < 1 || month > 12) {
+            throw new IllegalArgumentException("Tháng phải từ 1-12");
+        }
         LocalDate startDate = LocalDate.of(year, month, 1);
         LocalDate endDate = startDate.withDayOfMonth(startDate.lengthOfMonth());
         
-        // Lấy các đợt thu trong tháng
-        var dotThus = dotThuRepo.findByNgayBatDauLessThanEqualAndNgayKetThucGreaterThanEqual(endDate, startDate);
+        Object[] row = hoaDonRepo.sumTheoKhoangNgay(startDate, endDate).get(0);
+        BigDecimal tongPhaiThu = (BigDecimal) row[1];
+        BigDecimal tongDaThu = (BigDecimal) row[2];
         
-        BigDecimal tongPhaiThu = BigDecimal.ZERO;
-        BigDecimal tongDaThu = BigDecimal.ZERO;
+        Map<String, Object> result = new HashMap<>();
+        result.put("thang", month);
+        result.put("nam", year);
+        result.put("soDotThu", ((Number) row[0]).longValue());
+        result.putAll(soLieuDoanhThu(tongPhaiThu, tongDaThu));
         
-        for (var dotThu : dotThus) {
-            BigDecimal phaiThu = hoaDonRepo.sumTongTienPhaiThuByDotThu(dotThu.getId());
-            BigDecimal daThu = hoaDonRepo.sumSoTienDaDongByDotThu(dotThu.getId());
-            
-            if (phaiThu != null) tongPhaiThu = tongPhaiThu.add(phaiThu);
-            if (daThu != null) tongDaThu = tongDaThu.add(daThu);
+        return result;
+    }
+
+    /**
+     * Doanh thu 12 tháng của một năm theo từng tòa nhà (dữ liệu cho biểu đồ).
+     *
+     * LOGIC NGHIỆP VỤ:
+     * - Một câu GROUP BY (tòa nhà, tháng) cho cả năm, không truy vấn theo từng đợt thu.
+     * - Mỗi tòa nhà có đủ 12 tháng; tháng không có hóa đơn có số liệu bằng 0.
+     * - tongTheoThang là tổng của tất cả tòa nhà theo từng tháng.
+     *
+     * @param toaNhaId null = tất cả tòa nhà
+     */
+    public Map<String, Object> getDoanhThuTheoNam(int nam, Integer toaNhaId) {
+        Map<Integer, Map<String, Object>> theoToaNha = new LinkedHashMap<>();
+        // [0] = phải thu, [1] = đã thu, mỗi mảng 12 tháng
+        Map<Integer, BigDecimal[][]> soLieuTheoToaNha = new HashMap<>();
+        BigDecimal[] tongPhaiThu = khoiTao12Thang();
+        BigDecimal[] tongDaThu = khoiTao12Thang();
+
+        for (Object[] row : hoaDonRepo.sumTheoThangVaToaNha(nam, toaNhaId)) {
+            Integer idToaNha = (Integer) row[0];
+            int thang = ((Number) row[2]).intValue();
+            BigDecimal phaiThu = (BigDecimal) row[3];
+            BigDecimal daThu = (BigDecimal) row[4];
+
+            theoToaNha.computeIfAbsent(idToaNha, id -> {
+                Map<String, Object> toaNha = new LinkedHashMap<>();
+                toaNha.put("toaNhaId", id);
+                toaNha.put("tenToaNha", row[1]);
+                return toaNha;
+            });
+            BigDecimal[][] soLieu = soLieuTheoToaNha.computeIfAbsent(idToaNha,
+                id -> new BigDecimal[][]{khoiTao12Thang(), khoiTao12Thang()});
+            soLieu[0][thang - 1] = soLieu[0][thang - 1].add(phaiThu);
+            soLieu[1][thang - 1] = soLieu[1][thang - 1].add(daThu);
+            tongPhaiThu[thang - 1] = tongPhaiThu[thang - 1].add(phaiThu);
+            tongDaThu[thang - 1] = tongDaThu[thang - 1].add(daThu);
         }
-        
-        BigDecimal tongConNo = tongPhaiThu.subtract(tongDaThu);
+
+        theoToaNha.forEach((idToaNha, toaNha) -> {
+            BigDecimal[][] soLieu = soLieuTheoToaNha.get(idToaNha);
+            toaNha.put("theoThang", theoThang(soLieu[0], soLieu[1]));
+        });
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("nam", nam);
+        result.put("danhSachToaNha", new ArrayList<>(theoToaNha.values()));
+        result.put("tongTheoThang", theoThang(tongPhaiThu, tongDaThu));
+        return result;
+    }
+
+    private static BigDecimal[] khoiTao12Thang() {
+        BigDecimal[] arr = new BigDecimal[12];
+        Arrays.fill(arr, BigDecimal.ZERO);
+        return arr;
+    }
+
+    private static List<Map<String, Object>> theoThang(BigDecimal[] phaiThu, BigDecimal[] daThu) {
+        List<Map<String, Object>> list = new ArrayList<>(12);
+        for (int i = 0; i < 12; i++) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("thang", i + 1);
+            item.putAll(soLieuDoanhThu(phaiThu[i], daThu[i]));
+            list.add(item);
+        }
+        return list;
+    }
+
+    private static Map<String, Object> soLieuDoanhThu(BigDecimal tongPhaiThu, BigDecimal tongDaThu) {
         BigDecimal tyLeHoanThanh = tongPhaiThu.compareTo(BigDecimal.ZERO) > 0
             ? tongDaThu.multiply(BigDecimal.valueOf(100)).divide(tongPhaiThu, 2, RoundingMode.HALF_UP)
             : BigDecimal.ZERO;
-        
-        Map<String, Object> result = new HashMap<>();
-        result.put("thang", month);
-        result.put("nam", year);
+
+        Map<String, Object> result = new LinkedHashMap<>();
         result.put("tongPhaiThu", tongPhaiThu);
         result.put("tongDaThu", tongDaThu);
-        result.put("tongConNo", tongConNo);
+        result.put("tongConNo", tongPhaiThu.subtract(tongDaThu));
         result.put("tyLeHoanThanh", tyLeHoanThanh);
-        
         return result;
     }
 }
-
@@ -20,10 +20,13 @@ public class ResidentPortalService {
 
     private final HoaDonRepository hoaDonRepo;
     private final PhanAnhRepository phanAnhRepo;
+    private final CongNoService congNoService;
 
-    public ResidentPortalService(HoaDonRepository hoaDonRepo, PhanAnhRepository phanAnhRepo) {
+    public ResidentPortalService(HoaDonRepository hoaDonRepo, PhanAnhRepository phanAnhRepo,
+                                 CongNoService congNoService) {
         this.hoaDonRepo = hoaDonRepo;
         this.phanAnhRepo = phanAnhRepo;
+        this.congNoService = congNoService;
     }
 
     /**
@@ -51,20 +54,9 @@ public class ResidentPortalService {
     }
 
     /**
-     * Lấy công nợ hiện tại của hộ gia đình
+     * Lấy công nợ hiện tại của hộ gia đình (số dư sổ cái công nợ, không âm)
      */
     public java.math.BigDecimal getCurrentDebt(@NonNull Integer idHoGiaDinh) {
-        List<HoaDon> hoaDons = hoaDonRepo.findByHoGiaDinhId(idHoGiaDinh);
-        java.math.BigDecimal tongCongNo = java.math.BigDecimal.ZERO;
-        
-        for (HoaDon hoaDon : hoaDons) {
-            java.math.BigDecimal conNo = hoaDon.getSoTienConNo();
-            if (conNo.compareTo(java.math.BigDecimal.ZERO) > 0) {
-                tongCongNo = tongCongNo.add(conNo);
-            }
-        }
-        
-        return tongCongNo;
+        return congNoService.getSoDu(idHoGiaDinh).max(java.math.BigDecimal.ZERO);
     }
 }
-
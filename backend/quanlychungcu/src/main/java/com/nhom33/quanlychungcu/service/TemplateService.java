@@ -0,0 +1,118 @@
+package com.nhom33.quanlychungcu.service;
+
+import com.samskivert.mustache.Mustache;
+import com.samskivert.mustache.Template;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service: Render email / hóa đơn từ template Mustache (classpath:templates/{ten}.mustache).
+ *
+ * LOGIC NGHIỆP VỤ:
+ * - Template được compile một lần khi khởi động (lỗi cú pháp làm app không khởi động được)
+ *   và dùng lại cho mọi lần render; Template của jmustache thread-safe.
+ * - Template tên "*.html" escape HTML, "*.txt" giữ nguyên (nội dung email dạng text).
+ * - Dữ liệu truyền vào đã được định dạng sẵn (số tiền, mã hóa đơn) bằng các hàm bên dưới,
+ *   không dùng String.format cho mỗi message.
+ * - renderHangLoat: render cả danh sách với một buffer dùng chung.
+ */
+@Service
+public class TemplateService {
+
+    public static final String NHAC_NO = "nhac-no.txt";
+    public static final String HOA_DON_EMAIL = "hoa-don-email.txt";
+    public static final String HOA_DON_HTML = "hoa-don.html";
+
+    private static final String THU_MUC = "templates/";
+    private static final String DUOI_FILE = ".mustache";
+
+    private final Mustache.Compiler htmlCompiler = Mustache.compiler().defaultValue("");
+    private final Mustache.Compiler textCompiler = Mustache.compiler().escapeHTML(false).defaultValue("");
+    private final Map<String, Template> templates = new ConcurrentHashMap<>();
+
+    public TemplateService() {
+        for (String ten : List.of(NHAC_NO, HOA_DON_EMAIL, HOA_DON_HTML)) {
+            templates.put(ten, compile(ten));
+        }
+    }
+
+    /** Dữ liệu email nhắc hạn / gửi hóa đơn (soTien đã định dạng). */
+    public record EmailHoaDon(String tenChuHo, String maHoaDon, String tenDotThu, String soTien) {}
+
+    public String render(String ten, Object data) {
+        return getTemplate(ten).execute(data);
+    }
+
+    /**
+     * Render cùng một template cho nhiều bộ dữ liệu.
+     */
+    public List<String> renderHangLoat(String ten, List<?> danhSach) {
+        Template template = getTemplate(ten);
+        List<String> ketQua = new ArrayList<>(danhSach.size());
+        StringWriter out = new StringWriter(1024);
+        for (Object data : danhSach) {
+            out.getBuffer().setLength(0);
+            template.execute(data, out);
+            ketQua.add(out.toString());
+        }
+        return ketQua;
+    }
+
+    private Template getTemplate(String ten) {
+        return templates.computeIfAbsent(ten, this::compile);
+    }
+
+    private Template compile(String ten) {
+        String path = THU_MUC + ten + DUOI_FILE;
+        try (InputStream in = TemplateService.class.getClassLoader().getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IllegalStateException("Không tìm thấy template: " + path);
+            }
+            String source = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            return (ten.endsWith(".html") ? htmlCompiler : textCompiler).compile(source);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lỗi đọc template " + path, e);
+        }
+    }
+
+    // ===== Định dạng dữ liệu cho template =====
+
+    /**
+     * Số tiền làm tròn tới đồng, phân cách hàng nghìn bằng dấu phẩy (1,234,567).
+     */
+    public static String dinhDangTien(BigDecimal soTien) {
+        if (soTien == null) {
+            return "0";
+        }
+        String s = soTien.setScale(0, RoundingMode.HALF_UP).toPlainString();
+        int batDau = s.startsWith("-") ? 1 : 0;
+        int soChuSo = s.length() - batDau;
+        StringBuilder sb = new StringBuilder(s.length() + soChuSo / 3);
+        sb.append(s, 0, batDau);
+        int nhomDau = soChuSo % 3 == 0 ? 3 : soChuSo % 3;
+        sb.append(s, batDau, batDau + nhomDau);
+        for (int i = batDau + nhomDau; i < s.length(); i += 3) {
+            sb.append(',').append(s, i, i + 3);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Mã hóa đơn hiển thị: HD + ID đủ 6 chữ số (HD000123).
+     */
+    public static String maHoaDon(Integer id) {
+        String s = String.valueOf(id);
+        return s.length() >= 6 ? "HD" + s : "HD" + "000000".substring(s.length()) + s;
+    }
+}
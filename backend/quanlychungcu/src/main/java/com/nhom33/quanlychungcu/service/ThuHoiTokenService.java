@@ -0,0 +1,218 @@
+package com.nhom33.quanlychungcu.service;
+
+import com.nhom33.quanlychungcu.config.JwtPrincipalCache;
+import com.nhom33.quanlychungcu.config.JwtService;
+import com.nhom33.quanlychungcu.entity.ThuHoiToken;
+import com.nhom33.quanlychungcu.repository.NhatKyThayDoiRepository;
+import com.nhom33.quanlychungcu.repository.ThuHoiTokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service: Danh sách thu hồi JWT.
+ *
+ * LOGIC NGHIỆP VỤ:
+ * - Token mang role / phiên bản trong claims nên JwtAuthenticationFilter không đọc Users;
+ *   token chỉ mất hiệu lực trước hạn khi có mặt trong danh sách này:
+ *   + Đăng xuất: thu hồi đúng jti của token.
+ *   + Đổi role / mật khẩu / hộ gia đình, xóa tài khoản: tăng PhienBanToken của tài khoản,
+ *     mọi token có claim "ver" nhỏ hơn phiên bản mới bị thu hồi.
+ * - Danh sách được ghi vào bảng ThuHoiToken và giữ trong bộ nhớ; filter chỉ tra Map (không I/O).
+ *   Mỗi app.jwt.revocation-refresh-ms mili giây nạp lại các dòng chưa hết hạn từ DB để nhận
+ *   thu hồi do instance khác ghi, và dọn các dòng đã hết hạn.
+ * - Mục trong bộ nhớ chỉ bị bỏ khi hết hạn (không bị bỏ khi bảng bị xóa / restore),
+ *   nên một token đã thu hồi không thể sống lại trước khi tự hết hạn.
+ */
+@Service
+public class ThuHoiTokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(ThuHoiTokenService.class);
+
+    private final ThuHoiTokenRepository thuHoiTokenRepository;
+    private final NhatKyThayDoiRepository nhatKyRepository;
+    private final JwtPrincipalCache principalCache;
+    private final JwtService jwtService;
+
+    private record PhienBanThuHoi(int phienBan, long hetHanMs) {}
+
+    // jti -> hạn của token bị thu hồi (ms)
+    private final Map<String, Long> jtiThuHoi = new ConcurrentHashMap<>();
+    // username -> token có "ver" nhỏ hơn phienBan bị thu hồi
+    private final Map<String, PhienBanThuHoi> phienBanThuHoi = new ConcurrentHashMap<>();
+
+    private final AtomicLong soLanTuChoi = new AtomicLong();
+
+    public ThuHoiTokenService(ThuHoiTokenRepository thuHoiTokenRepository,
+                              NhatKyThayDoiRepository nhatKyRepository,
+                              JwtPrincipalCache principalCache,
+                              JwtService jwtService) {
+        this.thuHoiTokenRepository = thuHoiTokenRepository;
+        this.nhatKyRepository = nhatKyRepository;
+        this.principalCache = principalCache;
+        this.jwtService = jwtService;
+    }
+
+    // ===== Kiểm tra (gọi từ filter, chỉ dùng bộ nhớ) =====
+
+    /**
+     * Token (jti, username, phiên bản) đã bị thu hồi chưa. jti null với token phát hành trước
+     * khi có claim jti; phienBan 0 với token không có claim "ver".
+     */
+    public boolean daThuHoi(String jti, String username, int phienBan) {
+        long now = System.currentTimeMillis();
+        if (jti != null) {
+            Long hetHan = jtiThuHoi.get(jti);
+            if (hetHan != null && hetHan > now) {
+                soLanTuChoi.incrementAndGet();
+                return true;
+            }
+        }
+        if (username != null) {
+            PhienBanThuHoi thuHoi = phienBanThuHoi.get(username);
+            if (thuHoi != null && thuHoi.hetHanMs() > now && phienBan < thuHoi.phienBan()) {
+                soLanTuChoi.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ===== Thu hồi =====
+
+    /**
+     * Thu hồi một token (đăng xuất). hetHanToken: hạn của token, sau đó không cần giữ mục này.
+     */
+    public void thuHoiToken(String jti, String username, Date hetHanToken) {
+        if (jti == null || hetHanToken == null || hetHanToken.getTime() <= System.currentTimeMillis()) {
+            return;
+        }
+        ThuHoiToken thuHoi = new ThuHoiToken();
+        thuHoi.setJti(jti);
+        thuHoi.setUsername(username);
+        thuHoi.setHetHan(LocalDateTime.ofInstant(hetHanToken.toInstant(), ZoneId.systemDefault()));
+        thuHoiTokenRepository.save(thuHoi);
+        sauCommit(() -> jtiThuHoi.merge(jti, hetHanToken.getTime(), Math::max));
+    }
+
+    /**
+     * Thu hồi mọi token của tài khoản có phiên bản nhỏ hơn phienBanMoi. Token phát hành trước
+     * thời điểm này hết hạn chậm nhất sau app.jwt.expiration-ms, nên mục được giữ đúng chừng đó.
+     */
+    public void thuHoiTheoUser(String username, int phienBanMoi) {
+        LocalDateTime hetHan = LocalDateTime.now().plusNanos(jwtService.getExpirationMs() * 1_000_000);
+        ThuHoiToken thuHoi = new ThuHoiToken();
+        thuHoi.setUsername(username);
+        thuHoi.setPhienBan(phienBanMoi);
+        thuHoi.setHetHan(hetHan);
+        thuHoiTokenRepository.save(thuHoi);
+        long hetHanMs = hetHan.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        sauCommit(() -> ghiPhienBan(username, phienBanMoi, hetHanMs));
+    }
+
+    /**
+     * Phiên bản token nhỏ nhất cho tài khoản mới tạo: lớn hơn mọi phiên bản đã bị thu hồi
+     * của username này (tài khoản cùng tên bị xóa trước đó có thể còn token chưa hết hạn).
+     */
+    public int phienBanToiThieu(String username) {
+        return thuHoiTokenRepository.findPhienBanLonNhat(username).orElse(0);
+    }
+
+    // ===== Đồng bộ với DB =====
+
+    /**
+     * Nạp các mục thu hồi còn hiệu lực (kể cả do instance khác ghi) và dọn mục đã hết hạn.
+     * Mục mới của tài khoản nào thì xóa cache principal của tài khoản đó, vì request trúng cache
+     * không đi qua bước kiểm tra thu hồi.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.jwt.revocation-refresh-ms:30000}")
+    public void lamMoi() {
+        LocalDateTime now = LocalDateTime.now();
+        long nowMs = System.currentTimeMillis();
+        List<ThuHoiToken> conHieuLuc = thuHoiTokenRepository.findByHetHanAfter(now);
+        int soMucMoi = 0;
+        for (ThuHoiToken thuHoi : conHieuLuc) {
+            long hetHanMs = thuHoi.getHetHan().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            boolean moi;
+            if (thuHoi.getJti() != null) {
+                moi = jtiThuHoi.put(thuHoi.getJti(), hetHanMs) == null;
+            } else if (thuHoi.getUsername() != null && thuHoi.getPhienBan() != null) {
+                moi = ghiPhienBan(thuHoi.getUsername(), thuHoi.getPhienBan(), hetHanMs);
+            } else {
+                continue;
+            }
+            if (moi) {
+                soMucMoi++;
+                if (thuHoi.getUsername() != null) {
+                    principalCache.xoaTheoUsername(thuHoi.getUsername());
+                } else {
+                    principalCache.xoaHet();
+                }
+            }
+        }
+
+        jtiThuHoi.values().removeIf(hetHan -> hetHan <= nowMs);
+        phienBanThuHoi.values().removeIf(thuHoi -> thuHoi.hetHanMs() <= nowMs);
+
+        int daXoa = thuHoiTokenRepository.deleteHetHan(now);
+        if (daXoa > 0) {
+            // DELETE theo điều kiện không qua entity listener
+            nhatKyRepository.ghiNhanCaBang("ThuHoiToken");
+        }
+        if (soMucMoi > 0 || daXoa > 0) {
+            log.info("Danh sách thu hồi token: {} mục mới, {} mục hết hạn đã xóa", soMucMoi, daXoa);
+        }
+    }
+
+    public Map<String, Object> getThongKe() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("soTokenThuHoi", jtiThuHoi.size());
+        stats.put("soTaiKhoanThuHoi", phienBanThuHoi.size());
+        stats.put("soLanTuChoi", soLanTuChoi.get());
+        return stats;
+    }
+
+    // ===== Helpers =====
+
+    /**
+     * Ghi phiên bản thu hồi (giữ phiên bản lớn nhất). true nếu mục làm thay đổi danh sách.
+     */
+    private boolean ghiPhienBan(String username, int phienBan, long hetHanMs) {
+        PhienBanThuHoi cu = phienBanThuHoi.get(username);
+        if (cu != null && cu.phienBan() >= phienBan && cu.hetHanMs() >= hetHanMs) {
+            return false;
+        }
+        phienBanThuHoi.merge(username, new PhienBanThuHoi(phienBan, hetHanMs), (a, b) ->
+            new PhienBanThuHoi(Math.max(a.phienBan(), b.phienBan()), Math.max(a.hetHanMs(), b.hetHanMs())));
+        return cu == null || cu.phienBan() < phienBan;
+    }
+
+    /**
+     * Cập nhật bộ nhớ sau khi transaction commit (rollback thì không thu hồi),
+     * ngoài transaction thì cập nhật ngay.
+     */
+    private void sauCommit(Runnable capNhat) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    capNhat.run();
+                }
+            });
+        } else {
+            capNhat.run();
+        }
+    }
+}
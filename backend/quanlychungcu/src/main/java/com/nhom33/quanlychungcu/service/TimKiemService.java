@@ -0,0 +1,288 @@
+package com.nhom33.quanlychungcu.service;
+
+import com.nhom33.quanlychungcu.entity.HoGiaDinh;
+import com.nhom33.quanlychungcu.entity.NhanKhau;
+import com.nhom33.quanlychungcu.util.ChiMucTimKiem;
+import com.nhom33.quanlychungcu.util.ChiMucTimKiem.KetQua;
+import com.nhom33.quanlychungcu.util.ChiMucTimKiem.TaiLieu;
+import com.nhom33.quanlychungcu.util.GoiYTuDong;
+import com.nhom33.quanlychungcu.util.GoiYTuDong.GoiY;
+import com.nhom33.quanlychungcu.util.GoiYTuDong.Loai;
+import com.nhom33.quanlychungcu.util.GoiYTuDong.MucHoGiaDinh;
+import com.nhom33.quanlychungcu.util.GoiYTuDong.MucNhanKhau;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Service: Tìm kiếm toàn văn (ChiMucTimKiem) và gợi ý tự động (GoiYTuDong) nhân khẩu, hộ gia đình trong bộ nhớ.
+ *
+ * LOGIC NGHIỆP VỤ:
+ * - Nhân khẩu: tìm theo họ tên, CCCD, số điện thoại; lọc theo cccd, gioiTinh, trangThai, hoGiaDinh.
+ * - Hộ gia đình: tìm theo mã hộ, số căn hộ, tên chủ hộ; lọc theo soCanHo, trangThai.
+ * - Không phân biệt dấu ("nguyen" khớp "Nguyễn"), khớp tiền tố từng từ, kết quả xếp hạng.
+ * - Gợi ý tự động cho ô chọn: hộ gia đình theo mã hộ / số căn hộ / tên chủ hộ, nhân khẩu theo họ tên,
+ *   lọc theo tòa nhà, trả về N gợi ý đầu tiên (không đếm tổng số).
+ * - Chỉ mục và gợi ý được dựng từ DB khi khởi động và sau restore; mỗi thêm / sửa / xóa entity qua
+ *   Hibernate (HoGiaDinhService, NhanKhauService...) được TimKiemListener áp vào sau khi transaction commit.
+ * - Khi chỉ mục chưa dựng xong (vài giây sau khởi động), các hàm tim* / goiY* trả về null:
+ *   nơi gọi tim* tìm trong DB như trước, ô chọn gọi goiY* chỉ nhận danh sách rỗng.
+ */
+@Service
+public class TimKiemService {
+
+    private static final Logger log = LoggerFactory.getLogger(TimKiemService.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ChiMucTimKiem chiMucNhanKhau = new ChiMucTimKiem();
+    private final ChiMucTimKiem chiMucHoGiaDinh = new ChiMucTimKiem();
+    private final GoiYTuDong goiY = new GoiYTuDong();
+
+    private final AtomicLong soLanTim = new AtomicLong();
+    private final AtomicLong thoiGianTimNs = new AtomicLong();
+    private final AtomicLong soLanGoiY = new AtomicLong();
+    private final AtomicLong thoiGianGoiYNs = new AtomicLong();
+
+    public TimKiemService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // ===== Tìm kiếm =====
+
+    /**
+     * Trang nhân khẩu khớp truy vấn và bộ lọc (khóa: cccd, gioiTinh, trangThai, hoGiaDinh),
+     * null nếu chỉ mục chưa sẵn sàng.
+     */
+    public KetQua timNhanKhau(String truyVan, Map<String, String> loc, Pageable pageable) {
+        return tim(chiMucNhanKhau, truyVan, loc, pageable);
+    }
+
+    /**
+     * Trang hộ gia đình khớp truy vấn và bộ lọc (khóa: soCanHo, trangThai),
+     * null nếu chỉ mục chưa sẵn sàng.
+     */
+    public KetQua timHoGiaDinh(String truyVan, Map<String, String> loc, Pageable pageable) {
+        return tim(chiMucHoGiaDinh, truyVan, loc, pageable);
+    }
+
+    /**
+     * Nạp entity của một trang kết quả, giữ đúng thứ tự xếp hạng.
+     */
+    public static <T> Page<T> taiTrang(KetQua ketQua, Function<List<Integer>, List<T>> tai,
+                                       Function<T, Integer> layId, Pageable pageable) {
+        Map<Integer, T> theoId = new HashMap<>();
+        for (T t : tai.apply(ketQua.ids())) {
+            theoId.put(layId.apply(t), t);
+        }
+        List<T> noiDung = new ArrayList<>(ketQua.ids().size());
+        for (Integer id : ketQua.ids()) {
+            T t = theoId.get(id);
+            if (t != null) {
+                noiDung.add(t);
+            }
+        }
+        return new PageImpl<>(noiDung, pageable, ketQua.tongSo());
+    }
+
+    private KetQua tim(ChiMucTimKiem chiMuc, String truyVan, Map<String, String> loc, Pageable pageable) {
+        if (!chiMuc.isSanSang()) {
+            return null;
+        }
+        long batDau = System.nanoTime();
+        KetQua ketQua = chiMuc.timKiem(truyVan, loc,
+            (int) Math.min(pageable.getOffset(), Integer.MAX_VALUE), pageable.getPageSize());
+        soLanTim.incrementAndGet();
+        thoiGianTimNs.addAndGet(System.nanoTime() - batDau);
+        return ketQua;
+    }
+
+    // ===== Gợi ý tự động =====
+
+    /**
+     * Tối đa soLuong hộ gia đình có mã hộ / số căn hộ / tên chủ hộ bắt đầu bằng truyVan
+     * (toaNhaId null: mọi tòa nhà), null nếu chưa sẵn sàng.
+     */
+    public List<GoiY> goiYHoGiaDinh(String truyVan, Integer toaNhaId, int soLuong) {
+        return goiY(Loai.HO_GIA_DINH, truyVan, toaNhaId, soLuong);
+    }
+
+    /**
+     * Tối đa soLuong nhân khẩu có họ tên (hoặc tên đệm, tên) bắt đầu bằng truyVan
+     * (toaNhaId null: mọi tòa nhà), null nếu chưa sẵn sàng.
+     */
+    public List<GoiY> goiYNhanKhau(String truyVan, Integer toaNhaId, int soLuong) {
+        return goiY(Loai.NHAN_KHAU, truyVan, toaNhaId, soLuong);
+    }
+
+    private List<GoiY> goiY(Loai loai, String truyVan, Integer toaNhaId, int soLuong) {
+        if (!goiY.isSanSang()) {
+            return null;
+        }
+        long batDau = System.nanoTime();
+        List<GoiY> kq = goiY.goiY(loai, truyVan, toaNhaId, soLuong);
+        soLanGoiY.incrementAndGet();
+        thoiGianGoiYNs.addAndGet(System.nanoTime() - batDau);
+        return kq;
+    }
+
+    // ===== Cập nhật chỉ mục =====
+
+    public void capNhatNhanKhau(TaiLieu taiLieu, MucNhanKhau mucGoiY) {
+        chiMucNhanKhau.capNhat(taiLieu);
+        goiY.capNhatNhanKhau(mucGoiY);
+    }
+
+    public void capNhatHoGiaDinh(TaiLieu taiLieu, MucHoGiaDinh mucGoiY) {
+        chiMucHoGiaDinh.capNhat(taiLieu);
+        goiY.capNhatHoGiaDinh(mucGoiY);
+    }
+
+    public void xoaNhanKhau(int id) {
+        chiMucNhanKhau.xoa(id);
+        goiY.xoaNhanKhau(id);
+    }
+
+    public void xoaHoGiaDinh(int id) {
+        chiMucHoGiaDinh.xoa(id);
+        goiY.xoaHoGiaDinh(id);
+    }
+
+    /**
+     * Dựng lại chỉ mục sau khi transaction hiện tại commit (dữ liệu được ghi không qua entity, ví dụ restore).
+     */
+    public void xayDungLaiSauCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    xayDungLai();
+                }
+            });
+        } else {
+            xayDungLai();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void xayDungLai() {
+        long batDau = System.currentTimeMillis();
+        chiMucNhanKhau.xayDungLai(them -> jdbcTemplate.query(
+            "SELECT ID_NhanKhau, HoTen, SoCCCD, SoDienThoai, GioiTinh, TrangThai, ID_HoGiaDinh FROM NhanKhau",
+            rs -> {
+                them.accept(taiLieuNhanKhau(rs));
+            }));
+        chiMucHoGiaDinh.xayDungLai(them -> jdbcTemplate.query(
+            "SELECT ID_HoGiaDinh, MaHoGiaDinh, SoCanHo, TenChuHo, TrangThai FROM HoGiaDinh",
+            rs -> {
+                them.accept(taiLieuHoGiaDinh(rs));
+            }));
+        goiY.xayDungLai(
+            themHo -> jdbcTemplate.query(
+                "SELECT ID_HoGiaDinh, MaHoGiaDinh, SoCanHo, TenChuHo, ID_ToaNha FROM HoGiaDinh",
+                rs -> {
+                    themHo.accept(new MucHoGiaDinh(rs.getInt(1), rs.getString(2), rs.getString(3),
+                        rs.getString(4), layInteger(rs, 5)));
+                }),
+            themNhanKhau -> jdbcTemplate.query(
+                "SELECT ID_NhanKhau, HoTen, ID_HoGiaDinh FROM NhanKhau",
+                rs -> {
+                    themNhanKhau.accept(new MucNhanKhau(rs.getInt(1), rs.getString(2), layInteger(rs, 3)));
+                }));
+        log.info("Đã dựng chỉ mục tìm kiếm và gợi ý: {} nhân khẩu, {} hộ gia đình trong {} ms",
+            chiMucNhanKhau.soTaiLieu(), chiMucHoGiaDinh.soTaiLieu(), System.currentTimeMillis() - batDau);
+    }
+
+    public Map<String, Object> getThongKe() {
+        long soLan = soLanTim.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sanSang", chiMucNhanKhau.isSanSang() && chiMucHoGiaDinh.isSanSang());
+        stats.put("soNhanKhau", chiMucNhanKhau.soTaiLieu());
+        stats.put("soTuNhanKhau", chiMucNhanKhau.soTu());
+        stats.put("soHoGiaDinh", chiMucHoGiaDinh.soTaiLieu());
+        stats.put("soTuHoGiaDinh", chiMucHoGiaDinh.soTu());
+        stats.put("soLanTim", soLan);
+        stats.put("thoiGianTimTrungBinhMs", soLan == 0 ? 0.0 : thoiGianTimNs.get() / 1_000_000.0 / soLan);
+        long soLanGoi = soLanGoiY.get();
+        Map<String, Object> statsGoiY = new LinkedHashMap<>(goiY.getThongKe());
+        statsGoiY.put("sanSang", goiY.isSanSang());
+        statsGoiY.put("soLanGoiY", soLanGoi);
+        statsGoiY.put("thoiGianGoiYTrungBinhMs", soLanGoi == 0 ? 0.0 : thoiGianGoiYNs.get() / 1_000_000.0 / soLanGoi);
+        stats.put("goiY", statsGoiY);
+        return stats;
+    }
+
+    // ===== Tài liệu =====
+
+    /**
+     * Tài liệu chỉ mục của nhân khẩu (chụp giá trị hiện tại của entity).
+     */
+    public static TaiLieu taiLieu(NhanKhau nk) {
+        return taiLieuNhanKhau(nk.getId(), nk.getHoTen(), nk.getSoCCCD(), nk.getSoDienThoai(),
+            nk.getGioiTinh(), nk.getTrangThai(), nk.getHoGiaDinh() != null ? nk.getHoGiaDinh().getId() : null);
+    }
+
+    /**
+     * Mục gợi ý của nhân khẩu (chụp giá trị hiện tại của entity).
+     */
+    public static MucNhanKhau mucGoiY(NhanKhau nk) {
+        return new MucNhanKhau(nk.getId(), nk.getHoTen(),
+            nk.getHoGiaDinh() != null ? nk.getHoGiaDinh().getId() : null);
+    }
+
+    private static TaiLieu taiLieuNhanKhau(ResultSet rs) throws SQLException {
+        return taiLieuNhanKhau(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4),
+            rs.getString(5), rs.getString(6), layInteger(rs, 7));
+    }
+
+    private static TaiLieu taiLieuNhanKhau(int id, String hoTen, String soCCCD, String soDienThoai,
+                                          String gioiTinh, String trangThai, Integer hoGiaDinhId) {
+        Map<String, String> thuocTinh = new HashMap<>();
+        thuocTinh.put("cccd", soCCCD);
+        thuocTinh.put("gioiTinh", gioiTinh);
+        thuocTinh.put("trangThai", trangThai);
+        thuocTinh.put("hoGiaDinh", hoGiaDinhId != null ? hoGiaDinhId.toString() : null);
+        return new TaiLieu(id, Arrays.asList(hoTen, soCCCD, soDienThoai), thuocTinh);
+    }
+
+    public static TaiLieu taiLieu(HoGiaDinh hgd) {
+        return taiLieuHoGiaDinh(hgd.getId(), hgd.getMaHoGiaDinh(), hgd.getSoCanHo(), hgd.getTenChuHo(),
+            hgd.getTrangThai());
+    }
+
+    public static MucHoGiaDinh mucGoiY(HoGiaDinh hgd) {
+        return new MucHoGiaDinh(hgd.getId(), hgd.getMaHoGiaDinh(), hgd.getSoCanHo(), hgd.getTenChuHo(),
+            hgd.getToaNha() != null ? hgd.getToaNha().getId() : null);
+    }
+
+    private static TaiLieu taiLieuHoGiaDinh(ResultSet rs) throws SQLException {
+        return taiLieuHoGiaDinh(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5));
+    }
+
+    private static TaiLieu taiLieuHoGiaDinh(int id, String maHoGiaDinh, String soCanHo, String tenChuHo,
+                                           String trangThai) {
+        Map<String, String> thuocTinh = new HashMap<>();
+        thuocTinh.put("soCanHo", soCanHo);
+        thuocTinh.put("trangThai", trangThai);
+        return new TaiLieu(id, Arrays.asList(maHoGiaDinh, soCanHo, tenChuHo), thuocTinh);
+    }
+
+    private static Integer layInteger(ResultSet rs, int cot) throws SQLException {
+        int giaTri = rs.getInt(cot);
+        return rs.wasNull() ? null : giaTri;
+    }
+}
@@ -0,0 +1,357 @@
+package com.nhom33.quanlychungcu.service;
+
+import com.nhom33.quanlychungcu.entity.DotThu;
+import com.nhom33.quanlychungcu.entity.HoaDon;
+import com.nhom33.quanlychungcu.entity.TongHopDotThu;
+import com.nhom33.quanlychungcu.exception.ResourceNotFoundException;
+import com.nhom33.quanlychungcu.repository.DotThuRepository;
+import com.nhom33.quanlychungcu.repository.HoGiaDinhRepository;
+import com.nhom33.quanlychungcu.repository.HoaDonRepository;
+import com.nhom33.quanlychungcu.repository.NhatKyThayDoiRepository;
+import com.nhom33.quanlychungcu.repository.TongHopDotThuJdbcRepository;
+import com.nhom33.quanlychungcu.repository.TongHopDotThuRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Service: Bảng tổng hợp số liệu theo đợt thu (TongHopDotThu).
+ *
+ * LOGIC NGHIỆP VỤ:
+ * - Mỗi thay đổi trên một hóa đơn (nộp tiền, VNPAY, tạo/sửa hóa đơn) được ghi nhận
+ *   bằng chênh lệch trước/sau và cộng dồn bằng một câu UPDATE, trong cùng transaction.
+ * - Tính tiền cả đợt thu ghi hàng loạt bằng JDBC -> tính lại dòng tổng hợp bằng một câu SUM/COUNT.
+ * - Đợt thu chưa có dòng tổng hợp (dữ liệu cũ) được tính từ HoaDon ở lần đọc đầu tiên, hoặc ngay trong
+ *   transaction của hóa đơn đầu tiên thay đổi. Dòng được thêm bằng INSERT ... WHERE NOT EXISTS;
+ *   bên thua (trùng khóa) đọc / cộng dồn vào dòng của bên thắng.
+ * - TongSoHo được cộng/trừ khi thêm, xóa hoặc chuyển tòa nhà của hộ gia đình.
+ * - Trạng thái gộp hai bộ giá trị đang dùng: DaThanhToan / "Đã đóng" là đã đóng,
+ *   ThanhToanMotPhan / "Đang nợ" là đang nợ, còn lại là chưa đóng.
+ * - Job đối soát so sánh với HoaDon thực tế, sửa dòng bị lệch và ghi log cảnh báo.
+ */
+@Service
+public class TongHopDotThuService {
+
+    private static final Logger log = LoggerFactory.getLogger(TongHopDotThuService.class);
+
+    private final TongHopDotThuRepository repo;
+    private final TongHopDotThuJdbcRepository jdbcRepo;
+    private final HoaDonRepository hoaDonRepo;
+    private final DotThuRepository dotThuRepo;
+    private final HoGiaDinhRepository hoGiaDinhRepo;
+    private final NhatKyThayDoiRepository nhatKyRepo;
+
+    public TongHopDotThuService(TongHopDotThuRepository repo,
+                                TongHopDotThuJdbcRepository jdbcRepo,
+                                HoaDonRepository hoaDonRepo,
+                                DotThuRepository dotThuRepo,
+                                HoGiaDinhRepository hoGiaDinhRepo,
+                                NhatKyThayDoiRepository nhatKyRepo) {
+        this.repo = repo;
+        this.jdbcRepo = jdbcRepo;
+        this.hoaDonRepo = hoaDonRepo;
+        this.dotThuRepo = dotThuRepo;
+        this.hoGiaDinhRepo = hoGiaDinhRepo;
+        this.nhatKyRepo = nhatKyRepo;
+    }
+
+    /**
+     * Ảnh chụp các trường của hóa đơn ảnh hưởng tới số liệu tổng hợp.
+     */
+    public record TrangThaiHoaDon(BigDecimal tongTien, BigDecimal daDong, String trangThai) {
+
+        public static TrangThaiHoaDon of(HoaDon hoaDon) {
+            return new TrangThaiHoaDon(giaTri(hoaDon.getTongTienPhaiThu()),
+                                       giaTri(hoaDon.getSoTienDaDong()),
+                                       hoaDon.getTrangThai());
+        }
+    }
+
+    // ===== Cập nhật tăng dần =====
+
+    /**
+     * Ghi nhận thay đổi của một hóa đơn.
+     *
+     * @param truoc Trạng thái trước khi sửa (null nếu là hóa đơn mới)
+     * @param sau   Trạng thái sau khi sửa
+     */
+    @Transactional
+    public void ghiNhanThayDoi(Integer dotThuId, TrangThaiHoaDon truoc, TrangThaiHoaDon sau) {
+        long[] soLuong = new long[3];
+        BigDecimal tongTien = sau.tongTien();
+        BigDecimal daDong = sau.daDong();
+        soLuong[nhom(sau.trangThai())]++;
+        if (truoc != null) {
+            tongTien = tongTien.subtract(truoc.tongTien());
+            daDong = daDong.subtract(truoc.daDong());
+            soLuong[nhom(truoc.trangThai())]--;
+        }
+        long soHoaDon = truoc == null ? 1 : 0;
+        if (soHoaDon == 0 && tongTien.signum() == 0 && daDong.signum() == 0
+                && soLuong[0] == 0 && soLuong[1] == 0) {
+            return;
+        }
+
+        nhatKyRepo.ghiNhan("TongHopDotThu", dotThuId);
+        int updated = repo.congDon(dotThuId, tongTien, daDong, soHoaDon,
+                                   soLuong[0], soLuong[1], soLuong[2], LocalDateTime.now());
+        // Chưa có dòng tổng hợp: tạo từ HoaDon ngay trong transaction này (đã gồm thay đổi vừa ghi).
+        // Nếu transaction khác vừa tạo trước thì dòng của nó chưa gồm thay đổi này -> cộng dồn lại.
+        if (updated == 0 && !taoDong(timDotThu(dotThuId))) {
+            repo.congDon(dotThuId, tongTien, daDong, soHoaDon,
+                         soLuong[0], soLuong[1], soLuong[2], LocalDateTime.now());
+        }
+    }
+
+    /**
+     * Ghi nhận hộ gia đình được thêm / xóa / chuyển tòa nhà.
+     *
+     * @param toaNhaCu Tòa nhà trước đó (null nếu là hộ mới)
+     * @param toaNhaMoi Tòa nhà sau khi đổi (null nếu hộ bị xóa)
+     */
+    @Transactional
+    public void ghiNhanSoHo(Integer toaNhaCu, Integer toaNhaMoi) {
+        if (Objects.equals(toaNhaCu, toaNhaMoi)) {
+            return;
+        }
+        int updated = 0;
+        if (toaNhaCu != null) {
+            updated += repo.congSoHoTheoToaNha(toaNhaCu, -1);
+        }
+        if (toaNhaMoi != null) {
+            updated += repo.congSoHoTheoToaNha(toaNhaMoi, 1);
+        }
+        // Đợt thu không gắn tòa nhà đếm mọi hộ: chỉ đổi khi thêm / xóa hộ
+        if (toaNhaCu == null || toaNhaMoi == null) {
+            updated += repo.congSoHoKhongToaNha(toaNhaCu == null ? 1 : -1);
+        }
+        if (updated > 0) {
+            nhatKyRepo.ghiNhanCaBang("TongHopDotThu");
+        }
+    }
+
+    /**
+     * Tính lại toàn bộ dòng tổng hợp của một đợt thu từ HoaDon.
+     * Dùng sau khi tính tiền cả đợt thu.
+     */
+    @Transactional
+    public TongHopDotThu tinhLai(Integer dotThuId) {
+        DotThu dotThu = timDotThu(dotThuId);
+        Optional<TongHopDotThu> daCo = repo.findById(dotThuId);
+        if (daCo.isEmpty()) {
+            // Thêm mới hoặc (nếu transaction khác vừa thêm) đọc lại dòng của transaction đó
+            taoDong(dotThu);
+            return repo.findById(dotThuId).orElseThrow();
+        }
+
+        List<Object[]> rows = hoaDonRepo.tongHopTheoDotThu(dotThuId);
+        TongHopDotThu tongHop = daCo.get();
+        ganSoLieu(tongHop, rows.isEmpty() ? null : rows.get(0), demSoHo(dotThu));
+        tongHop.setNgayCapNhat(LocalDateTime.now());
+        return repo.save(tongHop);
+    }
+
+    /**
+     * Xóa dòng tổng hợp khi xóa đợt thu.
+     */
+    @Transactional
+    public void xoa(Integer dotThuId) {
+        if (repo.existsById(dotThuId)) {
+            repo.deleteById(dotThuId);
+        }
+    }
+
+    // ===== Đọc =====
+
+    /**
+     * Dòng tổng hợp của đợt thu (tính từ HoaDon nếu chưa có).
+     */
+    @Transactional
+    public TongHopDotThu getTongHop(Integer dotThuId) {
+        Optional<TongHopDotThu> tongHop = repo.findById(dotThuId);
+        return tongHop.isPresent() ? tongHop.get() : tinhLai(dotThuId);
+    }
+
+    // ===== Đối soát =====
+
+    /**
+     * Job đối soát định kỳ (mặc định 2h30 hằng ngày).
+     */
+    @Scheduled(cron = "${app.report.reconcile-cron:0 30 2 * * *}")
+    public void doiSoatDinhKy() {
+        try {
+            doiSoat();
+        } catch (Exception e) {
+            log.error("Lỗi đối soát bảng tổng hợp đợt thu: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * So sánh bảng tổng hợp với HoaDon cho mọi đợt thu (một câu GROUP BY),
+     * sửa các dòng bị lệch hoặc còn thiếu.
+     *
+     * @return soDotThu, soLech và danhSachLech (dotThuId, truong, tongHop, thucTe)
+     */
+    @Transactional
+    public Map<String, Object> doiSoat() {
+        Map<Integer, Object[]> thucTe = new HashMap<>();
+        for (Object[] row : hoaDonRepo.tongHopTatCaDotThu()) {
+            thucTe.put((Integer) row[0], row);
+        }
+        Map<Integer, Long> soHoTheoToaNha = new HashMap<>();
+        for (Object[] row : hoGiaDinhRepo.countGroupByToaNha()) {
+            soHoTheoToaNha.put((Integer) row[0], ((Number) row[1]).longValue());
+        }
+        Map<Integer, TongHopDotThu> daCo = new HashMap<>();
+        for (TongHopDotThu t : repo.findAll()) {
+            daCo.put(t.getIdDotThu(), t);
+        }
+
+        List<Map<String, Object>> danhSachLech = new ArrayList<>();
+        List<TongHopDotThu> canLuu = new ArrayList<>();
+        List<DotThu> danhSachDot = dotThuRepo.findAll();
+        for (DotThu dotThu : danhSachDot) {
+            Integer dotThuId = dotThu.getId();
+            long tongSoHo = dotThu.getToaNha() != null
+                ? soHoTheoToaNha.getOrDefault(dotThu.getToaNha().getId(), 0L)
+                : hoGiaDinhRepo.count();
+
+            TongHopDotThu hienTai = daCo.remove(dotThuId);
+            TongHopDotThu dung = new TongHopDotThu(dotThuId);
+            ganSoLieu(dung, thucTe.get(dotThuId), tongSoHo);
+
+            if (hienTai == null) {
+                dung.setNgayCapNhat(LocalDateTime.now());
+                canLuu.add(dung);
+                continue;
+            }
+            List<Map<String, Object>> lech = soSanh(hienTai, dung);
+            if (!lech.isEmpty()) {
+                danhSachLech.addAll(lech);
+                ganSoLieu(hienTai, dung);
+                hienTai.setNgayCapNhat(LocalDateTime.now());
+                canLuu.add(hienTai);
+            }
+        }
+        repo.saveAll(canLuu);
+        // Dòng tổng hợp của đợt thu không còn tồn tại
+        repo.deleteAll(daCo.values());
+
+        if (!danhSachLech.isEmpty()) {
+            log.warn("Đối soát bảng tổng hợp: {} sai lệch đã được sửa: {}", danhSachLech.size(), danhSachLech);
+        } else {
+            log.info("Đối soát bảng tổng hợp: {} đợt thu khớp với dữ liệu hóa đơn", danhSachDot.size());
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("soDotThu", danhSachDot.size());
+        result.put("soLech", danhSachLech.size());
+        result.put("danhSachLech", danhSachLech);
+        return result;
+    }
+
+    // ===== Helpers =====
+
+    private DotThu timDotThu(Integer dotThuId) {
+        return dotThuRepo.findById(dotThuId)
+            .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy đợt thu với ID: " + dotThuId));
+    }
+
+    /**
+     * Tính dòng tổng hợp từ HoaDon và thêm nếu đợt thu chưa có.
+     * @return false nếu dòng đã tồn tại (transaction khác thêm trước)
+     */
+    private boolean taoDong(DotThu dotThu) {
+        Integer dotThuId = dotThu.getId();
+        List<Object[]> rows = hoaDonRepo.tongHopTheoDotThu(dotThuId);
+        TongHopDotThu tongHop = new TongHopDotThu(dotThuId);
+        ganSoLieu(tongHop, rows.isEmpty() ? null : rows.get(0), demSoHo(dotThu));
+        tongHop.setNgayCapNhat(LocalDateTime.now());
+        if (!jdbcRepo.themNeuChuaCo(tongHop)) {
+            return false;
+        }
+        nhatKyRepo.ghiNhan("TongHopDotThu", dotThuId);
+        return true;
+    }
+
+    /**
+     * 0 = chưa đóng, 1 = đang nợ, 2 = đã đóng (khớp với CASE trong HoaDonRepository.tongHop*).
+     */
+    private static int nhom(String trangThai) {
+        if (trangThai == null) {
+            return 0;
+        }
+        return switch (trangThai) {
+            case "ThanhToanMotPhan", "Đang nợ" -> 1;
+            case "DaThanhToan", "Đã đóng" -> 2;
+            default -> 0;
+        };
+    }
+
+    private long demSoHo(DotThu dotThu) {
+        return dotThu.getToaNha() != null
+            ? hoGiaDinhRepo.countByToaNhaId(dotThu.getToaNha().getId())
+            : hoGiaDinhRepo.count();
+    }
+
+    /**
+     * Gán số liệu từ một dòng [ID_DotThu, số hóa đơn, tổng phải thu, tổng đã đóng,
+     * số chưa đóng, số đang nợ, số đã đóng]; row = null nghĩa là đợt thu chưa có hóa đơn.
+     */
+    private static void ganSoLieu(TongHopDotThu t, Object[] row, long tongSoHo) {
+        t.setSoHoaDon(row != null ? ((Number) row[1]).longValue() : 0L);
+        t.setTongPhaiThu(row != null ? (BigDecimal) row[2] : BigDecimal.ZERO);
+        t.setTongDaThu(row != null ? (BigDecimal) row[3] : BigDecimal.ZERO);
+        t.setSoChuaDong(row != null ? ((Number) row[4]).longValue() : 0L);
+        t.setSoDangNo(row != null ? ((Number) row[5]).longValue() : 0L);
+        t.setSoDaDong(row != null ? ((Number) row[6]).longValue() : 0L);
+        t.setTongSoHo(tongSoHo);
+    }
+
+    private static void ganSoLieu(TongHopDotThu t, TongHopDotThu nguon) {
+        t.setSoHoaDon(nguon.getSoHoaDon());
+        t.setTongPhaiThu(nguon.getTongPhaiThu());
+        t.setTongDaThu(nguon.getTongDaThu());
+        t.setSoChuaDong(nguon.getSoChuaDong());
+        t.setSoDangNo(nguon.getSoDangNo());
+        t.setSoDaDong(nguon.getSoDaDong());
+        t.setTongSoHo(nguon.getTongSoHo());
+    }
+
+    private static List<Map<String, Object>> soSanh(TongHopDotThu hienTai, TongHopDotThu dung) {
+        List<Map<String, Object>> lech = new ArrayList<>();
+        kiemTra(lech, dung.getIdDotThu(), "soHoaDon", hienTai.getSoHoaDon(), dung.getSoHoaDon());
+        kiemTra(lech, dung.getIdDotThu(), "tongPhaiThu", hienTai.getTongPhaiThu(), dung.getTongPhaiThu());
+        kiemTra(lech, dung.getIdDotThu(), "tongDaThu", hienTai.getTongDaThu(), dung.getTongDaThu());
+        kiemTra(lech, dung.getIdDotThu(), "soChuaDong", hienTai.getSoChuaDong(), dung.getSoChuaDong());
+        kiemTra(lech, dung.getIdDotThu(), "soDangNo", hienTai.getSoDangNo(), dung.getSoDangNo());
+        kiemTra(lech, dung.getIdDotThu(), "soDaDong", hienTai.getSoDaDong(), dung.getSoDaDong());
+        kiemTra(lech, dung.getIdDotThu(), "tongSoHo", hienTai.getTongSoHo(), dung.getTongSoHo());
+        return lech;
+    }
+
+    private static void kiemTra(List<Map<String, Object>> lech, Integer dotThuId, String truong,
+                                Object tongHop, Object thucTe) {
+        boolean khop = tongHop instanceof BigDecimal a && thucTe instanceof BigDecimal b
+            ? a.compareTo(b) == 0
+            : Objects.equals(tongHop, thucTe);
+        if (!khop) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("dotThuId", dotThuId);
+            item.put("truong", truong);
+            item.put("tongHop", tongHop);
+            item.put("thucTe", thucTe);
+            lech.add(item);
+        }
+    }
+
+    private static BigDecimal giaTri(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+}
@@ -1,7 +1,9 @@
 package com.nhom33.quanlychungcu.service;
 
+import com.nhom33.quanlychungcu.config.JwtPrincipalCache;
 import com.nhom33.quanlychungcu.entity.Role;
 import com.nhom33.quanlychungcu.entity.UserAccount;
+import com.nhom33.quanlychungcu.repository.HoGiaDinhRepository;
 import com.nhom33.quanlychungcu.repository.UserAccountRepository;
 import org.springframework.data.domain.Sort;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -9,6 +11,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 @Service
@@ -16,10 +19,18 @@ public class UserService {
 
     private final UserAccountRepository userRepo;
     private final PasswordEncoder passwordEncoder;
+    private final JwtPrincipalCache principalCache;
+    private final ThuHoiTokenService thuHoiTokenService;
+    private final HoGiaDinhRepository hoGiaDinhRepo;
 
-    public UserService(UserAccountRepository userRepo, PasswordEncoder passwordEncoder) {
+    public UserService(UserAccountRepository userRepo, PasswordEncoder passwordEncoder,
+                       JwtPrincipalCache principalCache, ThuHoiTokenService thuHoiTokenService,
+                       HoGiaDinhRepository hoGiaDinhRepo) {
         this.userRepo = userRepo;
         this.passwordEncoder = passwordEncoder;
+        this.principalCache = principalCache;
+        this.thuHoiTokenService = thuHoiTokenService;
+        this.hoGiaDinhRepo = hoGiaDinhRepo;
     }
 
     public List<UserAccount> getAllUsers() {
@@ -30,27 +41,49 @@ public class UserService {
         return userRepo.findById(id);
     }
 
+    /**
+     * hoGiaDinhId null: giữ nguyên hộ gia đình đang gắn.
+     * Đổi role / mật khẩu / hộ gia đình thì thu hồi mọi token đang dùng (claims của chúng đã cũ).
+     */
     @Transactional
-    public UserAccount updateUser(Integer id, String fullName, String email, Role role, String password) {
+    public UserAccount updateUser(Integer id, String fullName, String email, Role role, String password,
+                                  Integer hoGiaDinhId) {
         UserAccount user = userRepo.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("User not found: " + id));
+        if (hoGiaDinhId != null && !hoGiaDinhRepo.existsById(hoGiaDinhId)) {
+            throw new IllegalArgumentException("Household not found: " + hoGiaDinhId);
+        }
+        boolean doiClaims = role != user.getRole()
+                || (hoGiaDinhId != null && !Objects.equals(hoGiaDinhId, user.getHoGiaDinhId()));
         
         user.setFullName(fullName);
         user.setEmail(email);
         user.setRole(role);
+        if (hoGiaDinhId != null) {
+            user.setHoGiaDinhId(hoGiaDinhId);
+        }
         
         if (password != null && !password.isBlank()) {
             user.setPassword(passwordEncoder.encode(password));
+            doiClaims = true;
+        }
+        if (doiClaims) {
+            user.setPhienBanToken(user.getPhienBanToken() + 1);
+            thuHoiTokenService.thuHoiTheoUser(user.getUsername(), user.getPhienBanToken());
         }
+        // Role / thông tin mới phải có hiệu lực ngay với các token đang dùng
+        principalCache.xoaTheoUsername(user.getUsername());
         
         return userRepo.save(user);
     }
 
     @Transactional
     public void deleteUser(Integer id) {
-        if (!userRepo.existsById(id)) {
-            throw new IllegalArgumentException("User not found: " + id);
-        }
-        userRepo.deleteById(id);
+        UserAccount user = userRepo.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("User not found: " + id));
+        // Token mang claims không đọc lại Users, phải thu hồi tường minh
+        thuHoiTokenService.thuHoiTheoUser(user.getUsername(), user.getPhienBanToken() + 1);
+        principalCache.xoaTheoUsername(user.getUsername());
+        userRepo.delete(user);
     }
 }
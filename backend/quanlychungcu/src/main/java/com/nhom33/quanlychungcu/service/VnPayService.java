@@ -36,13 +36,19 @@ public class VnPayService {
     private final VnPayConfig vnPayConfig;
     private final HoaDonRepository hoaDonRepo;
     private final LichSuThanhToanRepository lichSuRepo;
+    private final TongHopDotThuService tongHopService;
+    private final CongNoService congNoService;
 
     public VnPayService(VnPayConfig vnPayConfig, 
                         HoaDonRepository hoaDonRepo,
-                        LichSuThanhToanRepository lichSuRepo) {
+                        LichSuThanhToanRepository lichSuRepo,
+                        TongHopDotThuService tongHopService,
+                        CongNoService congNoService) {
         this.vnPayConfig = vnPayConfig;
         this.hoaDonRepo = hoaDonRepo;
         this.lichSuRepo = lichSuRepo;
+        this.tongHopService = tongHopService;
+        this.congNoService = congNoService;
     }
 
     /**
@@ -172,7 +178,8 @@ public class VnPayService {
         }
 
         // === BƯỚC 3: GIAO DỊCH THÀNH CÔNG - Cập nhật Database ===
-        HoaDon hoaDon = hoaDonRepo.findById(hoaDonId)
+        // Khóa hóa đơn: callback trùng / nộp tiền đồng thời chạy lần lượt (kiểm tra trùng và tổng hợp đúng)
+        HoaDon hoaDon = hoaDonRepo.findByIdForUpdate(hoaDonId)
             .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy hóa đơn với ID: " + hoaDonId));
 
         // Kiểm tra duplicate (tránh xử lý lại nếu user F5)
@@ -193,8 +200,11 @@ public class VnPayService {
         lichSu.setMaNganHang(vnpBankCode);
         lichSu.setMaPhanHoi(vnpResponseCode);
         lichSuRepo.save(lichSu);
+        congNoService.ghiThanhToan(hoaDon.getHoGiaDinh().getId(), hoaDonId, lichSu.getId(), amount,
+                                   lichSu.getNgayNop(), "Thanh toán VNPAY " + vnpTransactionNo);
 
         // 3b. Cập nhật hóa đơn
+        TongHopDotThuService.TrangThaiHoaDon truoc = TongHopDotThuService.TrangThaiHoaDon.of(hoaDon);
         BigDecimal soTienDaDongMoi = hoaDon.getSoTienDaDong().add(amount);
         hoaDon.setSoTienDaDong(soTienDaDongMoi);
 
@@ -206,6 +216,9 @@ public class VnPayService {
         }
         hoaDonRepo.save(hoaDon);
 
+        // 3c. Cập nhật bảng tổng hợp đợt thu
+        tongHopService.ghiNhanThayDoi(hoaDon.getDotThu().getId(), truoc, TongHopDotThuService.TrangThaiHoaDon.of(hoaDon));
+
         log.info("VNPAY transaction SUCCESS for HoaDon {}: {} VND via {}", hoaDonId, amount, vnpBankCode);
 
         return new VnPayResult(true, "00", "Thanh toán thành công", hoaDonId);
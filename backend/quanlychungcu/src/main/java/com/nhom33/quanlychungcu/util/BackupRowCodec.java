@@ -0,0 +1,187 @@
+package com.nhom33.quanlychungcu.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+
+/**
+ * Mã hóa một dòng dữ liệu của bảng trong file backup (nhị phân, không phụ thuộc hệ quản trị).
+ *
+ * Mỗi cột: 1 byte (0 = NULL, 1 = có giá trị) rồi tới giá trị theo kiểu cột.
+ * Kiểu cột được lưu trong manifest, nên mỗi giá trị không cần ghi kèm kiểu.
+ * - Chuỗi / binary: độ dài (int) + byte (chuỗi UTF-8)
+ * - DECIMAL: chuỗi toPlainString (giữ nguyên scale)
+ * - DATE: epoch day; TIME: nano trong ngày; TIMESTAMP: epoch giây (coi như UTC) + nano
+ */
+public final class BackupRowCodec {
+
+    private BackupRowCodec() {
+    }
+
+    public enum Kieu {
+        BOOLEAN, INT, LONG, DOUBLE, DECIMAL, STRING, DATE, TIME, TIMESTAMP, BYTES;
+
+        /**
+         * Kiểu lưu trữ cho một kiểu JDBC (java.sql.Types). Kiểu lạ đọc / ghi dạng chuỗi.
+         */
+        public static Kieu tuJdbc(int sqlType) {
+            return switch (sqlType) {
+                case Types.BIT, Types.BOOLEAN -> BOOLEAN;
+                case Types.TINYINT, Types.SMALLINT, Types.INTEGER -> INT;
+                case Types.BIGINT -> LONG;
+                case Types.REAL, Types.FLOAT, Types.DOUBLE -> DOUBLE;
+                case Types.NUMERIC, Types.DECIMAL -> DECIMAL;
+                case Types.DATE -> DATE;
+                case Types.TIME -> TIME;
+                case Types.TIMESTAMP -> TIMESTAMP;
+                case Types.BINARY, Types.VARBINARY, Types.LONGVARBINARY, Types.BLOB -> BYTES;
+                default -> STRING;
+            };
+        }
+    }
+
+    /**
+     * Ghi cột thứ i (bắt đầu từ 1) của dòng hiện tại.
+     */
+    public static void ghi(ResultSet rs, int i, Kieu kieu, DataOutputStream out) throws SQLException, IOException {
+        switch (kieu) {
+            case BOOLEAN -> {
+                boolean v = rs.getBoolean(i);
+                if (coGiaTri(rs, out)) out.writeBoolean(v);
+            }
+            case INT -> {
+                int v = rs.getInt(i);
+                if (coGiaTri(rs, out)) out.writeInt(v);
+            }
+            case LONG -> {
+                long v = rs.getLong(i);
+                if (coGiaTri(rs, out)) out.writeLong(v);
+            }
+            case DOUBLE -> {
+                double v = rs.getDouble(i);
+                if (coGiaTri(rs, out)) out.writeDouble(v);
+            }
+            case DECIMAL -> {
+                BigDecimal v = rs.getBigDecimal(i);
+                if (coGiaTri(rs, out)) ghiChuoi(out, v.toPlainString());
+            }
+            case DATE -> {
+                Date v = rs.getDate(i);
+                if (coGiaTri(rs, out)) out.writeLong(v.toLocalDate().toEpochDay());
+            }
+            case TIME -> {
+                Time v = rs.getTime(i);
+                if (coGiaTri(rs, out)) out.writeLong(v.toLocalTime().toNanoOfDay());
+            }
+            case TIMESTAMP -> {
+                Timestamp v = rs.getTimestamp(i);
+                if (coGiaTri(rs, out)) {
+                    LocalDateTime t = v.toLocalDateTime();
+                    out.writeLong(t.toEpochSecond(ZoneOffset.UTC));
+                    out.writeInt(t.getNano());
+                }
+            }
+            case BYTES -> {
+                byte[] v = rs.getBytes(i);
+                if (coGiaTri(rs, out)) {
+                    out.writeInt(v.length);
+                    out.write(v);
+                }
+            }
+            case STRING -> {
+                String v = rs.getString(i);
+                if (coGiaTri(rs, out)) ghiChuoi(out, v);
+            }
+        }
+    }
+
+    /**
+     * Đọc một cột từ backup và gán vào tham số thứ i của câu INSERT.
+     */
+    public static void doc(DataInputStream in, Kieu kieu, PreparedStatement ps, int i, int sqlType)
+            throws SQLException, IOException {
+        gan(ps, i, kieu, docGiaTri(in, kieu), sqlType);
+    }
+
+    /**
+     * Đọc một cột từ backup (null nếu NULL), dùng khi cần gán cùng giá trị vào nhiều câu lệnh.
+     */
+    public static Object docGiaTri(DataInputStream in, Kieu kieu) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return switch (kieu) {
+            case BOOLEAN -> in.readBoolean();
+            case INT -> in.readInt();
+            case LONG -> in.readLong();
+            case DOUBLE -> in.readDouble();
+            case DECIMAL -> new BigDecimal(docChuoi(in));
+            case DATE -> Date.valueOf(LocalDate.ofEpochDay(in.readLong()));
+            case TIME -> Time.valueOf(LocalTime.ofNanoOfDay(in.readLong()));
+            case TIMESTAMP -> {
+                long giay = in.readLong();
+                int nano = in.readInt();
+                yield Timestamp.valueOf(LocalDateTime.ofEpochSecond(giay, nano, ZoneOffset.UTC));
+            }
+            case BYTES -> {
+                byte[] v = new byte[in.readInt()];
+                in.readFully(v);
+                yield v;
+            }
+            case STRING -> docChuoi(in);
+        };
+    }
+
+    /**
+     * Gán giá trị đã đọc bằng docGiaTri vào tham số thứ i.
+     */
+    public static void gan(PreparedStatement ps, int i, Kieu kieu, Object v, int sqlType) throws SQLException {
+        if (v == null) {
+            ps.setNull(i, sqlType);
+            return;
+        }
+        switch (kieu) {
+            case BOOLEAN -> ps.setBoolean(i, (Boolean) v);
+            case INT -> ps.setInt(i, (Integer) v);
+            case LONG -> ps.setLong(i, (Long) v);
+            case DOUBLE -> ps.setDouble(i, (Double) v);
+            case DECIMAL -> ps.setBigDecimal(i, (BigDecimal) v);
+            case DATE -> ps.setDate(i, (Date) v);
+            case TIME -> ps.setTime(i, (Time) v);
+            case TIMESTAMP -> ps.setTimestamp(i, (Timestamp) v);
+            case BYTES -> ps.setBytes(i, (byte[]) v);
+            case STRING -> ps.setString(i, (String) v);
+        }
+    }
+
+    private static boolean coGiaTri(ResultSet rs, DataOutputStream out) throws SQLException, IOException {
+        boolean coGiaTri = !rs.wasNull();
+        out.writeBoolean(coGiaTri);
+        return coGiaTri;
+    }
+
+    private static void ghiChuoi(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String docChuoi(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
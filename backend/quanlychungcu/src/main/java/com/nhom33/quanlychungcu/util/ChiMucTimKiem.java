@@ -0,0 +1,516 @@
+package com.nhom33.quanlychungcu.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Chỉ mục đảo ngược trong bộ nhớ cho tìm kiếm toàn văn (họ tên, CCCD, số điện thoại, mã hộ...).
+ *
+ * - Văn bản được bỏ dấu tiếng Việt (đ -> d), chữ thường, tách theo ký tự không phải chữ / số;
+ *   từ lẫn chữ và số (A01, B1203) được tách thêm thành từng đoạn chữ / số.
+ * - Mỗi từ của truy vấn khớp một từ của tài liệu khi là tiền tố của nó (khớp nguyên từ được điểm cao hơn).
+ *   Tài liệu phải khớp mọi từ của truy vấn (AND).
+ * - Thuộc tính lọc (giới tính, trạng thái, hộ gia đình...) khớp chính xác, không phân biệt hoa thường.
+ * - Xếp hạng: tổng điểm giảm dần, rồi tài liệu ít từ hơn (gần truy vấn hơn), rồi id tăng dần.
+ *
+ * Đọc song song, ghi độc quyền (ReadWriteLock). Tài liệu được đánh số slot liên tục nên
+ * bước chấm điểm chỉ dùng mảng int, không tạo object cho từng tài liệu khớp.
+ */
+public final class ChiMucTimKiem {
+
+    /**
+     * Một tài liệu: id (khóa chính), các trường văn bản và thuộc tính lọc (giá trị null bị bỏ qua).
+     */
+    public record TaiLieu(int id, List<String> vanBan, Map<String, String> thuocTinh) {}
+
+    /**
+     * Kết quả một trang: id theo thứ tự xếp hạng và tổng số tài liệu khớp.
+     */
+    public record KetQua(List<Integer> ids, int tongSo) {}
+
+    private static final int DIEM_KHOP_NGUYEN_TU = 2;
+    private static final int DIEM_KHOP_TIEN_TO = 1;
+    // Từ của thuộc tính lọc bắt đầu bằng ký tự này, không bao giờ khớp từ của truy vấn
+    private static final char TIEN_TO_THUOC_TINH = '\u0001';
+
+    private static final Pattern DAU = Pattern.compile("\\p{M}+");
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Kho kho = new Kho();
+    // Khác null trong lúc xayDungLai: thay đổi đồng thời được áp lại lên kho mới
+    private List<Consumer<Kho>> thayDoiTrongLucXay;
+    private volatile boolean sanSang;
+
+    // ===== Cập nhật =====
+
+    public void capNhat(TaiLieu taiLieu) {
+        ghi(k -> k.capNhat(taiLieu));
+    }
+
+    public void xoa(int id) {
+        ghi(k -> k.xoa(id));
+    }
+
+    /**
+     * Dựng lại toàn bộ chỉ mục từ nguồn (đọc DB) mà không chặn tìm kiếm: kho mới được dựng ngoài lock,
+     * các thay đổi xảy ra trong lúc dựng được áp lại lên kho mới trước khi thay thế kho cũ.
+     */
+    public synchronized void xayDungLai(Consumer<Consumer<TaiLieu>> nguon) {
+        lock.writeLock().lock();
+        try {
+            thayDoiTrongLucXay = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Kho moi = new Kho();
+        try {
+            nguon.accept(moi::capNhat);
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                thayDoiTrongLucXay = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Consumer<Kho> thayDoi : thayDoiTrongLucXay) {
+                thayDoi.accept(moi);
+            }
+            thayDoiTrongLucXay = null;
+            kho = moi;
+            sanSang = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Đã dựng xong ít nhất một lần (trước đó nơi gọi tìm trong DB).
+     */
+    public boolean isSanSang() {
+        return sanSang;
+    }
+
+    public int soTaiLieu() {
+        lock.readLock().lock();
+        try {
+            return kho.slotTheoId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int soTu() {
+        lock.readLock().lock();
+        try {
+            return kho.tuDien.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ===== Tìm kiếm =====
+
+    /**
+     * Tìm tài liệu khớp mọi từ của truyVan (tiền tố) và mọi thuộc tính lọc, trả về trang [batDau, batDau + soLuong).
+     * truyVan rỗng: chỉ lọc theo thuộc tính (thứ tự theo id).
+     */
+    public KetQua timKiem(String truyVan, Map<String, String> loc, int batDau, int soLuong) {
+        List<String> tuTruyVan = new ArrayList<>(new LinkedHashSet<>(tachTu(truyVan)));
+        List<String> tuLoc = new ArrayList<>();
+        if (loc != null) {
+            loc.forEach((ten, giaTri) -> {
+                if (giaTri != null && !giaTri.isBlank()) {
+                    tuLoc.add(tuThuocTinh(ten, giaTri));
+                }
+            });
+        }
+        lock.readLock().lock();
+        try {
+            return kho.timKiem(tuTruyVan, tuLoc, batDau, soLuong);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ===== Tách từ =====
+
+    /**
+     * Bỏ dấu tiếng Việt và chuyển chữ thường ("Nguyễn Đức" -> "nguyen duc").
+     */
+    public static String boDau(String s) {
+        if (s == null) {
+            return "";
+        }
+        String kq = DAU.matcher(Normalizer.normalize(s, Normalizer.Form.NFD)).replaceAll("");
+        return kq.replace('đ', 'd').replace('Đ', 'D').toLowerCase();
+    }
+
+    /**
+     * Các từ (đã bỏ dấu) của một chuỗi, theo thứ tự xuất hiện.
+     */
+    public static List<String> tachTu(String s) {
+        List<String> tu = new ArrayList<>();
+        if (s == null || s.isBlank()) {
+            return tu;
+        }
+        String chuan = boDau(s);
+        int i = 0;
+        int n = chuan.length();
+        while (i < n) {
+            while (i < n && !Character.isLetterOrDigit(chuan.charAt(i))) {
+                i++;
+            }
+            int dau = i;
+            boolean coChu = false;
+            boolean coSo = false;
+            while (i < n && Character.isLetterOrDigit(chuan.charAt(i))) {
+                if (Character.isDigit(chuan.charAt(i))) {
+                    coSo = true;
+                } else {
+                    coChu = true;
+                }
+                i++;
+            }
+            if (i > dau) {
+                String t = chuan.substring(dau, i);
+                tu.add(t);
+                if (coChu && coSo) {
+                    tachChuSo(t, tu);
+                }
+            }
+        }
+        return tu;
+    }
+
+    private static void tachChuSo(String t, List<String> tu) {
+        int dau = 0;
+        for (int j = 1; j <= t.length(); j++) {
+            if (j == t.length() || Character.isDigit(t.charAt(j)) != Character.isDigit(t.charAt(j - 1))) {
+                tu.add(t.substring(dau, j));
+                dau = j;
+            }
+        }
+    }
+
+    private static String tuThuocTinh(String ten, String giaTri) {
+        return TIEN_TO_THUOC_TINH + ten + "=" + giaTri.trim().toLowerCase();
+    }
+
+    // ===== Helpers =====
+
+    private void ghi(Consumer<Kho> thayDoi) {
+        lock.writeLock().lock();
+        try {
+            thayDoi.accept(kho);
+            if (thayDoiTrongLucXay != null) {
+                thayDoiTrongLucXay.add(thayDoi);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Danh sách slot tăng dần (posting list) của một từ.
+     */
+    private static final class DanhSachSlot {
+        int[] slot = new int[4];
+        int soLuong;
+
+        void them(int s) {
+            int viTri = Arrays.binarySearch(slot, 0, soLuong, s);
+            if (viTri >= 0) {
+                return;
+            }
+            viTri = -viTri - 1;
+            if (soLuong == slot.length) {
+                slot = Arrays.copyOf(slot, soLuong * 2);
+            }
+            System.arraycopy(slot, viTri, slot, viTri + 1, soLuong - viTri);
+            slot[viTri] = s;
+            soLuong++;
+        }
+
+        void bo(int s) {
+            int viTri = Arrays.binarySearch(slot, 0, soLuong, s);
+            if (viTri >= 0) {
+                System.arraycopy(slot, viTri + 1, slot, viTri, soLuong - viTri - 1);
+                soLuong--;
+            }
+        }
+    }
+
+    /**
+     * Một điều kiện của truy vấn (một từ hoặc một thuộc tính lọc) và các posting list khớp nó.
+     */
+    private record DieuKien(String tu, boolean chinhXac, List<DanhSachSlot> danhSach, List<Integer> diem, long kichThuoc) {}
+
+    /**
+     * Dữ liệu chỉ mục; chỉ truy cập khi giữ lock (hoặc khi đang dựng, chưa công bố).
+     */
+    private static final class Kho {
+        final TreeMap<String, DanhSachSlot> tuDien = new TreeMap<>();
+        final Map<Integer, Integer> slotTheoId = new HashMap<>();
+        int[] idTheoSlot = new int[1024];
+        String[][] tuTheoSlot = new String[1024][];
+        int[] doDai = new int[1024];
+        int soSlot;
+        int[] slotTrong = new int[16];
+        int soSlotTrong;
+
+        void capNhat(TaiLieu taiLieu) {
+            xoa(taiLieu.id());
+            Set<String> tu = new LinkedHashSet<>();
+            int soTuVanBan = 0;
+            for (String truong : taiLieu.vanBan()) {
+                List<String> t = tachTu(truong);
+                soTuVanBan += t.size();
+                tu.addAll(t);
+            }
+            if (taiLieu.thuocTinh() != null) {
+                taiLieu.thuocTinh().forEach((ten, giaTri) -> {
+                    if (giaTri != null && !giaTri.isBlank()) {
+                        tu.add(tuThuocTinh(ten, giaTri));
+                    }
+                });
+            }
+            int s = capSlot();
+            idTheoSlot[s] = taiLieu.id();
+            tuTheoSlot[s] = tu.toArray(new String[0]);
+            doDai[s] = soTuVanBan;
+            slotTheoId.put(taiLieu.id(), s);
+            for (String t : tu) {
+                tuDien.computeIfAbsent(t, k -> new DanhSachSlot()).them(s);
+            }
+        }
+
+        void xoa(int id) {
+            Integer s = slotTheoId.remove(id);
+            if (s == null) {
+                return;
+            }
+            for (String t : tuTheoSlot[s]) {
+                DanhSachSlot ds = tuDien.get(t);
+                if (ds != null) {
+                    ds.bo(s);
+                    if (ds.soLuong == 0) {
+                        tuDien.remove(t);
+                    }
+                }
+            }
+            tuTheoSlot[s] = null;
+            if (soSlotTrong == slotTrong.length) {
+                slotTrong = Arrays.copyOf(slotTrong, soSlotTrong * 2);
+            }
+            slotTrong[soSlotTrong++] = s;
+        }
+
+        private int capSlot() {
+            if (soSlotTrong > 0) {
+                return slotTrong[--soSlotTrong];
+            }
+            if (soSlot == idTheoSlot.length) {
+                int moi = soSlot * 2;
+                idTheoSlot = Arrays.copyOf(idTheoSlot, moi);
+                tuTheoSlot = Arrays.copyOf(tuTheoSlot, moi);
+                doDai = Arrays.copyOf(doDai, moi);
+            }
+            return soSlot++;
+        }
+
+        KetQua timKiem(List<String> tuTruyVan, List<String> tuLoc, int batDau, int soLuong) {
+            if (tuTruyVan.isEmpty() && tuLoc.isEmpty()) {
+                return new KetQua(Collections.emptyList(), 0);
+            }
+            List<DieuKien> dieuKien = new ArrayList<>();
+            for (String t : tuLoc) {
+                DanhSachSlot ds = tuDien.get(t);
+                if (ds == null) {
+                    return new KetQua(Collections.emptyList(), 0);
+                }
+                dieuKien.add(new DieuKien(t, true, List.of(ds), List.of(0), ds.soLuong));
+            }
+            for (String t : tuTruyVan) {
+                NavigableMap<String, DanhSachSlot> khop = tuDien.subMap(t, true, t + Character.MAX_VALUE, false);
+                if (khop.isEmpty()) {
+                    return new KetQua(Collections.emptyList(), 0);
+                }
+                List<DanhSachSlot> ds = new ArrayList<>(khop.size());
+                List<Integer> diem = new ArrayList<>(khop.size());
+                long kichThuoc = 0;
+                for (Map.Entry<String, DanhSachSlot> e : khop.entrySet()) {
+                    ds.add(e.getValue());
+                    diem.add(e.getKey().equals(t) ? DIEM_KHOP_NGUYEN_TU : DIEM_KHOP_TIEN_TO);
+                    kichThuoc += e.getValue().soLuong;
+                }
+                dieuKien.add(new DieuKien(t, false, ds, diem, kichThuoc));
+            }
+            // Điều kiện hẹp nhất trước: tập ứng viên nhỏ nhất
+            dieuKien.sort((a, b) -> Long.compare(a.kichThuoc(), b.kichThuoc()));
+
+            int[] dem = new int[soSlot];
+            int[] diem = new int[soSlot];
+            int[] diemDieuKien = new int[soSlot];
+            int[] ungVien = new int[(int) Math.min(dieuKien.get(0).kichThuoc(), soSlot)];
+            int soUngVien = 0;
+
+            DieuKien dau = dieuKien.get(0);
+            for (int i = 0; i < dau.danhSach().size(); i++) {
+                DanhSachSlot ds = dau.danhSach().get(i);
+                int d = dau.diem().get(i);
+                for (int j = 0; j < ds.soLuong; j++) {
+                    int s = ds.slot[j];
+                    if (dem[s] == 0) {
+                        dem[s] = 1;
+                        diem[s] = d;
+                        diemDieuKien[s] = d;
+                        ungVien[soUngVien++] = s;
+                    } else if (d > diemDieuKien[s]) {
+                        diem[s] += d - diemDieuKien[s];
+                        diemDieuKien[s] = d;
+                    }
+                }
+            }
+
+            for (int k = 1; k < dieuKien.size() && soUngVien > 0; k++) {
+                DieuKien dk = dieuKien.get(k);
+                if (dk.kichThuoc() <= (long) soUngVien * 8) {
+                    // Duyệt posting list
+                    for (int i = 0; i < dk.danhSach().size(); i++) {
+                        DanhSachSlot ds = dk.danhSach().get(i);
+                        int d = dk.diem().get(i);
+                        for (int j = 0; j < ds.soLuong; j++) {
+                            int s = ds.slot[j];
+                            if (dem[s] == k) {
+                                dem[s] = k + 1;
+                                diem[s] += d;
+                                diemDieuKien[s] = d;
+                            } else if (dem[s] == k + 1 && d > diemDieuKien[s]) {
+                                diem[s] += d - diemDieuKien[s];
+                                diemDieuKien[s] = d;
+                            }
+                        }
+                    }
+                } else {
+                    // Ít ứng viên: kiểm tra trực tiếp các từ của từng ứng viên
+                    for (int i = 0; i < soUngVien; i++) {
+                        int s = ungVien[i];
+                        if (dem[s] != k) {
+                            continue;
+                        }
+                        int d = diemKhop(tuTheoSlot[s], dk);
+                        if (d >= 0) {
+                            dem[s] = k + 1;
+                            diem[s] += d;
+                        }
+                    }
+                }
+                // Bỏ ứng viên không khớp điều kiện k
+                int con = 0;
+                for (int i = 0; i < soUngVien; i++) {
+                    if (dem[ungVien[i]] == k + 1) {
+                        ungVien[con++] = ungVien[i];
+                    }
+                }
+                soUngVien = con;
+            }
+
+            // Khóa sắp xếp: điểm giảm dần, độ dài tăng dần, id tăng dần (chỉ lọc: theo id)
+            long[] khoa = new long[soUngVien];
+            int diemToiDa = dieuKien.size() * DIEM_KHOP_NGUYEN_TU;
+            for (int i = 0; i < soUngVien; i++) {
+                int s = ungVien[i];
+                long hang = tuTruyVan.isEmpty() ? 0
+                    : ((long) (diemToiDa - diem[s]) << 16) | Math.min(doDai[s], 0xFFFF);
+                khoa[i] = (hang << 32) | (idTheoSlot[s] & 0xFFFFFFFFL);
+            }
+            int tu = Math.min(Math.max(batDau, 0), soUngVien);
+            int den = (int) Math.min((long) tu + Math.max(soLuong, 0), soUngVien);
+            long[] dauTrang = nhoNhat(khoa, den);
+            List<Integer> ids = new ArrayList<>(den - tu);
+            for (int i = tu; i < den; i++) {
+                ids.add((int) dauTrang[i]);
+            }
+            return new KetQua(ids, soUngVien);
+        }
+
+        /**
+         * k khóa nhỏ nhất, tăng dần. Trang đầu chỉ cần vài phần tử: dùng heap cỡ k thay vì sắp xếp cả mảng.
+         */
+        private static long[] nhoNhat(long[] khoa, int k) {
+            if (k == 0) {
+                return new long[0];
+            }
+            if (k > khoa.length / 8) {
+                Arrays.sort(khoa);
+                return khoa;
+            }
+            // Max-heap k phần tử
+            long[] heap = Arrays.copyOf(khoa, k);
+            for (int i = k / 2 - 1; i >= 0; i--) {
+                vunDong(heap, i, k);
+            }
+            for (int i = k; i < khoa.length; i++) {
+                if (khoa[i] < heap[0]) {
+                    heap[0] = khoa[i];
+                    vunDong(heap, 0, k);
+                }
+            }
+            Arrays.sort(heap);
+            return heap;
+        }
+
+        private static void vunDong(long[] heap, int i, int n) {
+            while (true) {
+                int lon = i;
+                int trai = 2 * i + 1;
+                int phai = trai + 1;
+                if (trai < n && heap[trai] > heap[lon]) {
+                    lon = trai;
+                }
+                if (phai < n && heap[phai] > heap[lon]) {
+                    lon = phai;
+                }
+                if (lon == i) {
+                    return;
+                }
+                long t = heap[i];
+                heap[i] = heap[lon];
+                heap[lon] = t;
+                i = lon;
+            }
+        }
+
+        /**
+         * Điểm khớp tốt nhất của tài liệu (danh sách từ) với một điều kiện, -1 nếu không khớp.
+         */
+        private static int diemKhop(String[] tu, DieuKien dk) {
+            int tot = -1;
+            for (String t : tu) {
+                if (t.equals(dk.tu())) {
+                    return dk.chinhXac() ? 0 : DIEM_KHOP_NGUYEN_TU;
+                }
+                if (!dk.chinhXac() && t.startsWith(dk.tu())) {
+                    tot = DIEM_KHOP_TIEN_TO;
+                }
+            }
+            return tot;
+        }
+    }
+}
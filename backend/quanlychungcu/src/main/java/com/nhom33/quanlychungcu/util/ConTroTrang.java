@@ -0,0 +1,88 @@
+package com.nhom33.quanlychungcu.util;
+
+import com.nhom33.quanlychungcu.dto.TrangConTroDTO;
+import org.springframework.data.domain.PageRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Phân trang theo con trỏ (keyset / seek) trên khóa chính tự tăng.
+ *
+ * - Trang sau được lấy bằng "WHERE id > :id ORDER BY id" (hoặc "<" khi giảm dần) thay cho OFFSET,
+ *   nên trang thứ N tốn như trang đầu (seek trên clustered index của khóa chính), và không cần COUNT.
+ * - Con trỏ là chuỗi Base64 URL-safe không rõ nghĩa với client (gồm chiều sắp xếp và id dòng cuối);
+ *   con trỏ sai định dạng hoặc khác chiều sắp xếp -> IllegalArgumentException (400).
+ * - Repository lấy size + 1 dòng để biết còn trang sau hay không.
+ */
+public final class ConTroTrang {
+
+    public static final int SIZE_TOI_DA = 100;
+
+    private static final String PHIEN_BAN = "v1";
+
+    private ConTroTrang() {
+    }
+
+    /**
+     * Con trỏ tới sau dòng có id này.
+     */
+    public static String maHoa(int id, boolean giamDan) {
+        String giaTri = PHIEN_BAN + ":" + (giamDan ? "d" : "a") + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(giaTri.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Id của dòng cuối trang trước; null khi conTro rỗng (trang đầu).
+     */
+    public static Integer giaiMa(String conTro, boolean giamDan) {
+        if (conTro == null || conTro.isBlank()) {
+            return null;
+        }
+        try {
+            String[] phan = new String(Base64.getUrlDecoder().decode(conTro.trim()), StandardCharsets.UTF_8).split(":");
+            if (phan.length == 3 && PHIEN_BAN.equals(phan[0]) && phan[1].equals(giamDan ? "d" : "a")) {
+                return Integer.parseInt(phan[2]);
+            }
+        } catch (IllegalArgumentException e) {
+            // Base64 hoặc số không hợp lệ: báo lỗi chung bên dưới
+        }
+        throw new IllegalArgumentException("Con trỏ phân trang không hợp lệ hoặc không khớp chiều sắp xếp");
+    }
+
+    /**
+     * Tham số "sau id" cho trang đầu khi không có con trỏ (mọi id đều thỏa).
+     */
+    public static int sauId(String conTro, boolean giamDan) {
+        Integer id = giaiMa(conTro, giamDan);
+        if (id != null) {
+            return id;
+        }
+        return giamDan ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+    }
+
+    /**
+     * Giới hạn truy vấn: size + 1 dòng từ đầu kết quả (không OFFSET, không COUNT).
+     */
+    public static PageRequest gioiHan(int size) {
+        if (size < 1 || size > SIZE_TOI_DA) {
+            throw new IllegalArgumentException("Kích thước trang phải từ 1 đến " + SIZE_TOI_DA);
+        }
+        return PageRequest.of(0, size + 1);
+    }
+
+    /**
+     * Cắt danh sách size + 1 dòng thành một trang và con trỏ tới trang sau.
+     */
+    public static <T> TrangConTroDTO<T> taoTrang(List<T> dong, int size, boolean giamDan,
+                                                Function<T, Integer> layId, Long tongSo) {
+        if (dong.size() <= size) {
+            return new TrangConTroDTO<>(dong, size, null, tongSo);
+        }
+        List<T> trang = dong.subList(0, size);
+        String conTroTiep = maHoa(layId.apply(trang.get(size - 1)), giamDan);
+        return new TrangConTroDTO<>(List.copyOf(trang), size, conTroTiep, tongSo);
+    }
+}
@@ -0,0 +1,376 @@
+package com.nhom33.quanlychungcu.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Gợi ý tự động (typeahead) cho ô chọn hộ gia đình / nhân khẩu, theo từng tòa nhà.
+ *
+ * - Hộ gia đình được gợi ý theo mã hộ, số căn hộ, tên chủ hộ; nhân khẩu theo họ tên.
+ * - Giá trị được bỏ dấu (ChiMucTimKiem.boDau), các ký tự không phải chữ / số gộp thành một dấu cách.
+ *   Khóa là giá trị đó và mọi hậu tố bắt đầu ở đầu một từ ("nguyen van an", "van an", "an");
+ *   mã hộ / số căn hộ có thêm khóa bỏ hết dấu cách ("a-01" -> "a01").
+ * - Khóa nằm trong TreeMap riêng của từng tòa nhà: gợi ý = duyệt subMap theo tiền tố, dừng khi đủ N mục
+ *   (không đếm tổng số). Thứ tự: khớp từ đầu giá trị trước khớp từ giữa ("ng" gợi ý "Nguyễn Văn An"
+ *   trước "Hoài Nam"), rồi theo khóa, rồi id.
+ * - Nhân khẩu thuộc tòa nhà của hộ gia đình; hộ đổi tòa nhà thì nhân khẩu của hộ được chuyển theo.
+ *
+ * Đọc song song, ghi độc quyền (ReadWriteLock), dựng lại không chặn đọc như ChiMucTimKiem.
+ */
+public final class GoiYTuDong {
+
+    public enum Loai { HO_GIA_DINH, NHAN_KHAU }
+
+    /**
+     * Hộ gia đình cần gợi ý (toaNhaId null nếu chưa gán tòa nhà).
+     */
+    public record MucHoGiaDinh(int id, String maHoGiaDinh, String soCanHo, String tenChuHo, Integer toaNhaId) {}
+
+    /**
+     * Nhân khẩu cần gợi ý.
+     */
+    public record MucNhanKhau(int id, String hoTen, Integer hoGiaDinhId) {}
+
+    /**
+     * Một gợi ý: giaTri là giá trị đã khớp (giữ nguyên dấu), moTa là nhãn hiển thị đầy đủ.
+     */
+    public record GoiY(Loai loai, int id, String giaTri, String moTa, Integer hoGiaDinhId, Integer toaNhaId) {}
+
+    private static final Pattern KHONG_PHAI_CHU_SO = Pattern.compile("[^\\p{L}\\p{N}]+");
+    // Ký tự đầu của khóa: khớp từ đầu giá trị / từ một từ ở giữa
+    private static final char KHOP_DAU = '0';
+    private static final char KHOP_GIUA = '1';
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Kho kho = new Kho();
+    // Khác null trong lúc xayDungLai: thay đổi đồng thời được áp lại lên kho mới
+    private List<Consumer<Kho>> thayDoiTrongLucXay;
+    private volatile boolean sanSang;
+
+    // ===== Cập nhật =====
+
+    public void capNhatHoGiaDinh(MucHoGiaDinh muc) {
+        ghi(k -> k.capNhatHoGiaDinh(muc));
+    }
+
+    public void xoaHoGiaDinh(int id) {
+        ghi(k -> k.xoaHoGiaDinh(id));
+    }
+
+    public void capNhatNhanKhau(MucNhanKhau muc) {
+        ghi(k -> k.capNhatNhanKhau(muc));
+    }
+
+    public void xoaNhanKhau(int id) {
+        ghi(k -> k.xoaNhanKhau(id));
+    }
+
+    /**
+     * Dựng lại toàn bộ từ nguồn (đọc DB): hộ gia đình trước, rồi nhân khẩu.
+     * Kho mới được dựng ngoài lock, thay đổi xảy ra trong lúc dựng được áp lại trước khi thay kho cũ.
+     */
+    public synchronized void xayDungLai(Consumer<Consumer<MucHoGiaDinh>> nguonHoGiaDinh,
+                                        Consumer<Consumer<MucNhanKhau>> nguonNhanKhau) {
+        lock.writeLock().lock();
+        try {
+            thayDoiTrongLucXay = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Kho moi = new Kho();
+        try {
+            nguonHoGiaDinh.accept(moi::capNhatHoGiaDinh);
+            nguonNhanKhau.accept(moi::capNhatNhanKhau);
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                thayDoiTrongLucXay = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Consumer<Kho> thayDoi : thayDoiTrongLucXay) {
+                thayDoi.accept(moi);
+            }
+            thayDoiTrongLucXay = null;
+            kho = moi;
+            sanSang = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isSanSang() {
+        return sanSang;
+    }
+
+    public Map<String, Object> getThongKe() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("soHoGiaDinh", kho.hoGiaDinh.size());
+            stats.put("soNhanKhau", kho.nhanKhau.size());
+            stats.put("soToaNha", kho.theoToaNha.size());
+            stats.put("soKhoa", kho.theoToaNha.values().stream().mapToInt(Map::size).sum());
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ===== Gợi ý =====
+
+    /**
+     * Tối đa soLuong gợi ý loại loai có khóa bắt đầu bằng truyVan, trong tòa nhà toaNhaId (null: mọi tòa nhà).
+     */
+    public List<GoiY> goiY(Loai loai, String truyVan, Integer toaNhaId, int soLuong) {
+        String tienTo = chuanHoa(truyVan);
+        if (tienTo.isEmpty() || soLuong <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            return kho.goiY(loai, tienTo, toaNhaId, soLuong);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ===== Helpers =====
+
+    private void ghi(Consumer<Kho> thayDoi) {
+        lock.writeLock().lock();
+        try {
+            thayDoi.accept(kho);
+            if (thayDoiTrongLucXay != null) {
+                thayDoiTrongLucXay.add(thayDoi);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * "Nguyễn  Văn-An" -> "nguyen van an".
+     */
+    private static String chuanHoa(String s) {
+        if (s == null) {
+            return "";
+        }
+        return KHONG_PHAI_CHU_SO.matcher(ChiMucTimKiem.boDau(s)).replaceAll(" ").trim();
+    }
+
+    /**
+     * Các khóa của một giá trị: giá trị (và với mã, dạng bỏ dấu cách) đánh dấu KHOP_DAU,
+     * các hậu tố bắt đầu ở đầu một từ khác đánh dấu KHOP_GIUA.
+     */
+    private static Set<String> khoa(String giaTri, boolean laMa) {
+        Set<String> kq = new HashSet<>();
+        String chuan = chuanHoa(giaTri);
+        if (chuan.isEmpty()) {
+            return kq;
+        }
+        kq.add(KHOP_DAU + chuan);
+        if (laMa) {
+            kq.add(KHOP_DAU + chuan.replace(" ", ""));
+        }
+        for (int i = chuan.indexOf(' '); i >= 0; i = chuan.indexOf(' ', i + 1)) {
+            kq.add(KHOP_GIUA + chuan.substring(i + 1));
+        }
+        return kq;
+    }
+
+    /**
+     * Một giá trị được gợi ý của một hộ / nhân khẩu.
+     */
+    private record Muc(Loai loai, int id, String giaTri) {}
+
+    private record UngVien(String khoa, Muc muc) {}
+
+    private static final Comparator<UngVien> THU_TU = Comparator
+        .comparing(UngVien::khoa)
+        .thenComparingInt(u -> u.muc().id());
+
+    private static final class Kho {
+
+        final Map<Integer, MucHoGiaDinh> hoGiaDinh = new HashMap<>();
+        final Map<Integer, MucNhanKhau> nhanKhau = new HashMap<>();
+        final Map<Integer, Set<Integer>> nhanKhauTheoHo = new HashMap<>();
+        // tòa nhà (null: chưa xác định) -> khóa -> các giá trị có khóa đó
+        final Map<Integer, TreeMap<String, List<Muc>>> theoToaNha = new HashMap<>();
+
+        void capNhatHoGiaDinh(MucHoGiaDinh moi) {
+            MucHoGiaDinh cu = hoGiaDinh.put(moi.id(), moi);
+            if (cu != null) {
+                suaKhoa(cu, cu.toaNhaId(), false);
+            }
+            suaKhoa(moi, moi.toaNhaId(), true);
+            Integer toaNhaCu = cu != null ? cu.toaNhaId() : null;
+            if (!Objects.equals(toaNhaCu, moi.toaNhaId())) {
+                chuyenNhanKhau(moi.id(), toaNhaCu, moi.toaNhaId());
+            }
+        }
+
+        void xoaHoGiaDinh(int id) {
+            MucHoGiaDinh cu = hoGiaDinh.remove(id);
+            if (cu != null) {
+                suaKhoa(cu, cu.toaNhaId(), false);
+                if (cu.toaNhaId() != null) {
+                    chuyenNhanKhau(id, cu.toaNhaId(), null);
+                }
+            }
+        }
+
+        void capNhatNhanKhau(MucNhanKhau moi) {
+            xoaNhanKhau(moi.id());
+            nhanKhau.put(moi.id(), moi);
+            if (moi.hoGiaDinhId() != null) {
+                nhanKhauTheoHo.computeIfAbsent(moi.hoGiaDinhId(), h -> new HashSet<>()).add(moi.id());
+            }
+            suaKhoa(moi, toaNhaCuaHo(moi.hoGiaDinhId()), true);
+        }
+
+        void xoaNhanKhau(int id) {
+            MucNhanKhau cu = nhanKhau.remove(id);
+            if (cu == null) {
+                return;
+            }
+            if (cu.hoGiaDinhId() != null) {
+                Set<Integer> cungHo = nhanKhauTheoHo.get(cu.hoGiaDinhId());
+                if (cungHo != null) {
+                    cungHo.remove(id);
+                    if (cungHo.isEmpty()) {
+                        nhanKhauTheoHo.remove(cu.hoGiaDinhId());
+                    }
+                }
+            }
+            suaKhoa(cu, toaNhaCuaHo(cu.hoGiaDinhId()), false);
+        }
+
+        private void chuyenNhanKhau(int hoGiaDinhId, Integer toaNhaCu, Integer toaNhaMoi) {
+            for (Integer id : nhanKhauTheoHo.getOrDefault(hoGiaDinhId, Set.of())) {
+                MucNhanKhau nk = nhanKhau.get(id);
+                suaKhoa(nk, toaNhaCu, false);
+                suaKhoa(nk, toaNhaMoi, true);
+            }
+        }
+
+        private Integer toaNhaCuaHo(Integer hoGiaDinhId) {
+            MucHoGiaDinh ho = hoGiaDinhId != null ? hoGiaDinh.get(hoGiaDinhId) : null;
+            return ho != null ? ho.toaNhaId() : null;
+        }
+
+        private void suaKhoa(MucHoGiaDinh ho, Integer toaNhaId, boolean them) {
+            suaKhoa(new Muc(Loai.HO_GIA_DINH, ho.id(), ho.maHoGiaDinh()), true, toaNhaId, them);
+            suaKhoa(new Muc(Loai.HO_GIA_DINH, ho.id(), ho.soCanHo()), true, toaNhaId, them);
+            suaKhoa(new Muc(Loai.HO_GIA_DINH, ho.id(), ho.tenChuHo()), false, toaNhaId, them);
+        }
+
+        private void suaKhoa(MucNhanKhau nk, Integer toaNhaId, boolean them) {
+            suaKhoa(new Muc(Loai.NHAN_KHAU, nk.id(), nk.hoTen()), false, toaNhaId, them);
+        }
+
+        private void suaKhoa(Muc muc, boolean laMa, Integer toaNhaId, boolean them) {
+            Set<String> dsKhoa = khoa(muc.giaTri(), laMa);
+            if (dsKhoa.isEmpty()) {
+                return;
+            }
+            TreeMap<String, List<Muc>> cay = them
+                ? theoToaNha.computeIfAbsent(toaNhaId, t -> new TreeMap<>())
+                : theoToaNha.get(toaNhaId);
+            if (cay == null) {
+                return;
+            }
+            for (String k : dsKhoa) {
+                if (them) {
+                    cay.computeIfAbsent(k, x -> new ArrayList<>(1)).add(muc);
+                } else {
+                    List<Muc> ds = cay.get(k);
+                    if (ds != null && ds.remove(muc) && ds.isEmpty()) {
+                        cay.remove(k);
+                    }
+                }
+            }
+            if (!them && cay.isEmpty()) {
+                theoToaNha.remove(toaNhaId);
+            }
+        }
+
+        List<GoiY> goiY(Loai loai, String tienTo, Integer toaNhaId, int soLuong) {
+            Collection<TreeMap<String, List<Muc>>> dsCay;
+            if (toaNhaId != null) {
+                TreeMap<String, List<Muc>> cay = theoToaNha.get(toaNhaId);
+                dsCay = cay != null ? List.of(cay) : List.of();
+            } else {
+                dsCay = theoToaNha.values();
+            }
+
+            // Mỗi hộ / nhân khẩu chỉ thuộc một tòa nhà: N mục đầu của mỗi tòa nhà đủ để chọn N mục đầu chung
+            List<UngVien> ungVien = new ArrayList<>();
+            for (TreeMap<String, List<Muc>> cay : dsCay) {
+                Set<Integer> daChon = new HashSet<>();
+                duyet:
+                for (char khop : new char[] {KHOP_DAU, KHOP_GIUA}) {
+                    String dau = khop + tienTo;
+                    for (Map.Entry<String, List<Muc>> e : cay.subMap(dau, true, dau + Character.MAX_VALUE, false).entrySet()) {
+                        for (Muc muc : e.getValue()) {
+                            if (muc.loai() == loai && daChon.add(muc.id())) {
+                                ungVien.add(new UngVien(e.getKey(), muc));
+                                if (daChon.size() >= soLuong) {
+                                    break duyet;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            if (dsCay.size() > 1) {
+                ungVien.sort(THU_TU);
+            }
+
+            List<GoiY> kq = new ArrayList<>(Math.min(soLuong, ungVien.size()));
+            for (UngVien u : ungVien.subList(0, Math.min(soLuong, ungVien.size()))) {
+                kq.add(taoGoiY(u.muc()));
+            }
+            return kq;
+        }
+
+        private GoiY taoGoiY(Muc muc) {
+            if (muc.loai() == Loai.HO_GIA_DINH) {
+                MucHoGiaDinh ho = hoGiaDinh.get(muc.id());
+                return new GoiY(muc.loai(), ho.id(), muc.giaTri(), moTa(ho), ho.id(), ho.toaNhaId());
+            }
+            MucNhanKhau nk = nhanKhau.get(muc.id());
+            MucHoGiaDinh ho = nk.hoGiaDinhId() != null ? hoGiaDinh.get(nk.hoGiaDinhId()) : null;
+            String moTa = ho != null ? nk.hoTen() + " - " + moTa(ho) : nk.hoTen();
+            return new GoiY(muc.loai(), nk.id(), muc.giaTri(), moTa, nk.hoGiaDinhId(),
+                ho != null ? ho.toaNhaId() : null);
+        }
+
+        private static String moTa(MucHoGiaDinh ho) {
+            StringBuilder sb = new StringBuilder(Objects.toString(ho.maHoGiaDinh(), ""));
+            if (ho.soCanHo() != null && !ho.soCanHo().isBlank()) {
+                sb.append(" - Căn ").append(ho.soCanHo());
+            }
+            if (ho.tenChuHo() != null && !ho.tenChuHo().isBlank()) {
+                sb.append(" - ").append(ho.tenChuHo());
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.nhom33.quanlychungcu.config;
+
+import com.nhom33.quanlychungcu.entity.Role;
+import com.nhom33.quanlychungcu.entity.UserAccount;
+import com.nhom33.quanlychungcu.repository.UserAccountRepository;
+import com.nhom33.quanlychungcu.service.ThuHoiTokenService;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmark: chi phí xác thực JWT mỗi request của JwtAuthenticationFilter (H2, profile test).
+ *
+ * So sánh ba cấu hình trên cùng một token:
+ * - trước: không cache, đọc Users mỗi request (app.jwt.xac-thuc-theo-claims=false)
+ * - không cache, principal dựng từ claims
+ * - sau: có JwtPrincipalCache
+ * Kết quả in ra stdout (micro giây / request); test chỉ kiểm tra mọi request được xác thực
+ * và số lần trúng cache, không assert thời gian để không phụ thuộc máy chạy.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class JwtAuthenticationFilterBenchmarkTest {
+
+    private static final String USERNAME = "benchmark-admin";
+    private static final int SO_REQUEST = 5_000;
+    private static final int SO_REQUEST_KHOI_DONG = 1_000;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private UserDetailsService userDetailsService;
+
+    @Autowired
+    private ThuHoiTokenService thuHoiTokenService;
+
+    @Autowired
+    private UserAccountRepository userRepo;
+
+    private String token;
+
+    @BeforeEach
+    void taoToken() {
+        UserAccount user = userRepo.findByUsername(USERNAME).orElseGet(() -> {
+            UserAccount u = new UserAccount();
+            u.setUsername(USERNAME);
+            u.setPassword("{noop}benchmark");
+            u.setRole(Role.ADMIN);
+            return userRepo.save(u);
+        });
+        token = jwtService.generateToken(user);
+    }
+
+    @Test
+    void soSanhChiPhiXacThuc() throws Exception {
+        JwtAuthenticationFilter docUsers = new JwtAuthenticationFilter(jwtService, userDetailsService,
+            new JwtPrincipalCache(0, 0), thuHoiTokenService, false);
+        JwtAuthenticationFilter theoClaims = new JwtAuthenticationFilter(jwtService, userDetailsService,
+            new JwtPrincipalCache(0, 0), thuHoiTokenService, true);
+        JwtPrincipalCache cache = new JwtPrincipalCache(60, 10_000);
+        JwtAuthenticationFilter coCache = new JwtAuthenticationFilter(jwtService, userDetailsService,
+            cache, thuHoiTokenService, true);
+
+        chay(docUsers, SO_REQUEST_KHOI_DONG);
+        chay(theoClaims, SO_REQUEST_KHOI_DONG);
+        chay(coCache, SO_REQUEST_KHOI_DONG);
+
+        double usDocUsers = chay(docUsers, SO_REQUEST);
+        double usTheoClaims = chay(theoClaims, SO_REQUEST);
+        double usCoCache = chay(coCache, SO_REQUEST);
+
+        System.out.printf("Xác thực JWT (%d request, 1 luồng):%n", SO_REQUEST);
+        System.out.printf("  trước, không cache + đọc Users: %.2f us/request%n", usDocUsers);
+        System.out.printf("  không cache, theo claims:       %.2f us/request%n", usTheoClaims);
+        System.out.printf("  sau, JwtPrincipalCache:         %.2f us/request%n", usCoCache);
+
+        Map<String, Object> thongKe = cache.getThongKe();
+        assertEquals(1L, thongKe.get("misses"));
+        assertEquals((long) SO_REQUEST + SO_REQUEST_KHOI_DONG - 1, thongKe.get("hits"));
+    }
+
+    /**
+     * Gửi soRequest request qua filter, trả về thời gian trung bình (micro giây / request).
+     */
+    private double chay(JwtAuthenticationFilter filter, int soRequest) throws Exception {
+        AtomicLong daXacThuc = new AtomicLong();
+        FilterChain chain = (req, res) -> {
+            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+            if (auth != null && USERNAME.equals(auth.getName())) {
+                daXacThuc.incrementAndGet();
+            }
+        };
+
+        long tong = 0;
+        for (int i = 0; i < soRequest; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/bang-gia/cache");
+            request.addHeader("Authorization", "Bearer " + token);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            long t0 = System.nanoTime();
+            filter.doFilter(request, response, chain);
+            tong += System.nanoTime() - t0;
+            SecurityContextHolder.clearContext();
+        }
+
+        assertEquals(soRequest, daXacThuc.get(), "Mọi request phải được xác thực");
+        return tong / 1000.0 / soRequest;
+    }
+}
@@ -0,0 +1,203 @@
+package com.nhom33.quanlychungcu.service;
+
+import com.nhom33.quanlychungcu.dto.BackupManifestDTO;
+import com.nhom33.quanlychungcu.dto.BackupManifestDTO.BangBackup;
+import com.nhom33.quanlychungcu.dto.BackupManifestDTO.ChunkBackup;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Backup / restore trên H2: backup -> sửa dữ liệu -> restore -> backup lại phải cho đúng dữ liệu
+ * và đúng SHA-256 từng chunk; restore chọn bảng chỉ thay các bảng được chọn.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class BackupServiceIntegrationTest {
+
+    private static final int SO_DONG_MOI_CHUNK = 100;
+    private static final int SO_HO = 250;
+    private static final int SO_NHAN_KHAU = 420;
+    private static final int SO_THONG_BAO = 30;
+
+    private static Path thuMucBackup;
+
+    @Autowired
+    private BackupService backupService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void cauHinh(DynamicPropertyRegistry registry) throws IOException {
+        thuMucBackup = Files.createTempDirectory("backup-test");
+        registry.add("app.backup.directory", () -> thuMucBackup.toString());
+        registry.add("app.backup.rows-per-chunk", () -> SO_DONG_MOI_CHUNK);
+    }
+
+    @AfterAll
+    static void xoaThuMucBackup() throws IOException {
+        try (Stream<Path> files = Files.walk(thuMucBackup)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @BeforeEach
+    void taoDuLieu() {
+        jdbcTemplate.update("DELETE FROM NhanKhau");
+        jdbcTemplate.update("DELETE FROM HoGiaDinh");
+        jdbcTemplate.update("DELETE FROM ToaNha");
+        jdbcTemplate.update("DELETE FROM ThongBao");
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.of(2026, 10, 1, 8, 30));
+        jdbcTemplate.update("INSERT INTO ToaNha (TenToaNha, MoTa) VALUES ('Tòa A', 'Khu phía Bắc'), ('Tòa B', NULL)");
+        List<Integer> toaNha = jdbcTemplate.queryForList("SELECT ID_ToaNha FROM ToaNha ORDER BY ID_ToaNha", Integer.class);
+
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO HoGiaDinh (MaHoGiaDinh, TenChuHo, SoTang, SoCanHo, DienTich, TrangThai, NgayTao, ID_ToaNha) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+            Stream.iterate(1, i -> i + 1).limit(SO_HO).toList(), SO_HO, (ps, i) -> {
+                ps.setString(1, "HO" + i);
+                ps.setString(2, "Chủ hộ " + i);
+                ps.setInt(3, i % 20 + 1);
+                ps.setString(4, String.valueOf(100 + i));
+                ps.setDouble(5, 45.5 + i % 30);
+                ps.setString(6, "Đang ở");
+                ps.setTimestamp(7, now);
+                ps.setInt(8, toaNha.get(i % 2));
+            });
+        List<Integer> ho = jdbcTemplate.queryForList("SELECT ID_HoGiaDinh FROM HoGiaDinh ORDER BY ID_HoGiaDinh", Integer.class);
+
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO NhanKhau (HoTen, SoCCCD, GioiTinh, LaChuHo, TrangThai, ID_HoGiaDinh) VALUES (?, ?, ?, ?, ?, ?)",
+            Stream.iterate(0, i -> i + 1).limit(SO_NHAN_KHAU).toList(), SO_NHAN_KHAU, (ps, i) -> {
+                ps.setString(1, "Nhân khẩu " + i);
+                ps.setString(2, String.format("%012d", i));
+                ps.setString(3, i % 2 == 0 ? "Nam" : "Nữ");
+                ps.setBoolean(4, i < SO_HO);
+                ps.setString(5, "Thường trú");
+                ps.setInt(6, ho.get(i % SO_HO));
+            });
+
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO ThongBao (TieuDe, NoiDung, NgayTao, NguoiTao, LoaiThongBao) VALUES (?, ?, ?, ?, ?)",
+            Stream.iterate(1, i -> i + 1).limit(SO_THONG_BAO).toList(), SO_THONG_BAO, (ps, i) -> {
+                ps.setString(1, "Thông báo " + i);
+                ps.setString(2, "Nội dung thông báo số " + i + "\nDòng thứ hai");
+                ps.setTimestamp(3, now);
+                ps.setString(4, "admin");
+                ps.setString(5, "Chung");
+            });
+    }
+
+    @Test
+    void backupRestoreBackupChecksumKhop() throws Exception {
+        List<Map<String, Object>> hoTruoc = docBang("HoGiaDinh", "ID_HoGiaDinh");
+        List<Map<String, Object>> nhanKhauTruoc = docBang("NhanKhau", "ID_NhanKhau");
+        List<Map<String, Object>> thongBaoTruoc = docBang("ThongBao", "ID_ThongBao");
+        KetQuaBackup truoc = saoLuu();
+        assertTrue(chunkTheoBang(truoc).get("NHANKHAU").size() > 1, "Bảng lớn phải được chia nhiều chunk");
+
+        jdbcTemplate.update("DELETE FROM NhanKhau WHERE ID_NhanKhau % 3 = 0");
+        jdbcTemplate.update("UPDATE HoGiaDinh SET TenChuHo = 'Đã sửa'");
+        jdbcTemplate.update("INSERT INTO ThongBao (TieuDe, LoaiThongBao) VALUES ('Thêm sau backup', 'Chung')");
+
+        backupService.restoreBackup(truoc.tenFile(), null);
+
+        assertEquals(hoTruoc, docBang("HoGiaDinh", "ID_HoGiaDinh"));
+        assertEquals(nhanKhauTruoc, docBang("NhanKhau", "ID_NhanKhau"));
+        assertEquals(thongBaoTruoc, docBang("ThongBao", "ID_ThongBao"));
+        assertEquals(chunkTheoBang(truoc), chunkTheoBang(saoLuu()));
+
+        // Bộ đếm IDENTITY được đặt lại sau restore: dòng mới không trùng khóa đã khôi phục
+        jdbcTemplate.update("INSERT INTO ThongBao (TieuDe, LoaiThongBao) VALUES ('Sau restore', 'Chung')");
+        assertEquals(SO_THONG_BAO + 1, count("ThongBao"));
+    }
+
+    @Test
+    void restoreChonBangChiThayBangDuocChon() throws Exception {
+        List<Map<String, Object>> thongBaoTruoc = docBang("ThongBao", "ID_ThongBao");
+        KetQuaBackup truoc = saoLuu();
+
+        jdbcTemplate.update("DELETE FROM ThongBao WHERE ID_ThongBao % 2 = 0");
+        jdbcTemplate.update("UPDATE ThongBao SET TieuDe = 'Đã sửa'");
+        jdbcTemplate.update("UPDATE HoGiaDinh SET TenChuHo = 'Giữ nguyên sau restore'");
+        List<Map<String, Object>> hoSauKhiSua = docBang("HoGiaDinh", "ID_HoGiaDinh");
+
+        Map<String, Object> ketQua = backupService.restoreBackup(truoc.tenFile(), List.of("ThongBao"));
+
+        assertEquals(1, ketQua.get("soBang"));
+        assertEquals(thongBaoTruoc, docBang("ThongBao", "ID_ThongBao"));
+        assertEquals(hoSauKhiSua, docBang("HoGiaDinh", "ID_HoGiaDinh"));
+        assertEquals(chunkTheoBang(truoc).get("THONGBAO"), chunkTheoBang(saoLuu()).get("THONGBAO"));
+    }
+
+    @Test
+    void restoreChonBangChaThieuBangConThiRollback() throws Exception {
+        KetQuaBackup truoc = saoLuu();
+        jdbcTemplate.update("UPDATE HoGiaDinh SET TenChuHo = 'Sau backup'");
+        List<Map<String, Object>> hoSauKhiSua = docBang("HoGiaDinh", "ID_HoGiaDinh");
+
+        // NhanKhau tham chiếu HoGiaDinh nhưng không được chọn: xóa HoGiaDinh lỗi khóa ngoại
+        assertThrows(DataAccessException.class,
+            () -> backupService.restoreBackup(truoc.tenFile(), List.of("HoGiaDinh")));
+
+        assertEquals(hoSauKhiSua, docBang("HoGiaDinh", "ID_HoGiaDinh"));
+        assertEquals(SO_NHAN_KHAU, count("NhanKhau"));
+    }
+
+    // ===== Helpers =====
+
+    private record KetQuaBackup(String tenFile, BackupManifestDTO manifest) {}
+
+    /**
+     * Backup đầy đủ; tên file theo giây nên chờ sang giây mới để không trùng backup trước.
+     */
+    private KetQuaBackup saoLuu() throws Exception {
+        Thread.sleep(1100);
+        String tenFile = (String) backupService.createBackup().get("fileName");
+        return new KetQuaBackup(tenFile, backupService.getManifest(tenFile));
+    }
+
+    /** SHA-256 các chunk theo tên bảng (tên theo metadata, H2 viết hoa). */
+    private static Map<String, List<String>> chunkTheoBang(KetQuaBackup backup) {
+        Map<String, List<String>> ketQua = new TreeMap<>();
+        for (BangBackup b : backup.manifest().bang()) {
+            ketQua.put(b.ten().toUpperCase(), b.chunk().stream().map(ChunkBackup::sha256).toList());
+        }
+        return ketQua;
+    }
+
+    private List<Map<String, Object>> docBang(String bang, String khoa) {
+        return jdbcTemplate.queryForList("SELECT * FROM " + bang + " ORDER BY " + khoa);
+    }
+
+    private int count(String bang) {
+        Integer n = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + bang, Integer.class);
+        return n != null ? n : 0;
+    }
+}
@@ -0,0 +1,146 @@
+package com.nhom33.quanlychungcu.service;
+
+import com.nhom33.quanlychungcu.dto.ChiSoInputDTO;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Số câu lệnh SQL của prepareInput không phụ thuộc số hộ trong tòa nhà
+ * (đếm bằng Hibernate Statistics, tòa 10 hộ và tòa 2.000 hộ).
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class ChiSoDienNuocServiceQueryCountTest {
+
+    private static final int THANG = 9;
+    private static final int NAM = 2026;
+
+    @Autowired
+    private ChiSoDienNuocService chiSoService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private int loaiPhiId;
+
+    @BeforeEach
+    void taoLoaiPhi() {
+        jdbcTemplate.update("DELETE FROM ChiSoDienNuoc");
+        jdbcTemplate.update("DELETE FROM NhanKhau");
+        jdbcTemplate.update("DELETE FROM HoGiaDinh");
+        jdbcTemplate.update("DELETE FROM ToaNha");
+        jdbcTemplate.update("DELETE FROM LoaiPhi");
+        jdbcTemplate.update("INSERT INTO LoaiPhi (TenLoaiPhi, DonGia, DonViTinh, LoaiThu, DangHoatDong) " +
+            "VALUES ('Điện', 3500, 'kWh', 'BatBuoc', TRUE)");
+        loaiPhiId = jdbcTemplate.queryForObject("SELECT MAX(ID_LoaiPhi) FROM LoaiPhi", Integer.class);
+    }
+
+    @Test
+    void soCauLenhKhongDoiTheoSoHo() {
+        int toaNhaNho = taoToaNha("Tòa 10 hộ", 10);
+        int toaNhaLon = taoToaNha("Tòa 2000 hộ", 2_000);
+
+        long cauLenhNho = demCauLenh(toaNhaNho, 10);
+        long cauLenhLon = demCauLenh(toaNhaLon, 2_000);
+
+        assertTrue(cauLenhNho > 0, "Chưa bật hibernate.generate_statistics");
+        assertEquals(cauLenhNho, cauLenhLon,
+            "prepareInput phải chạy cùng số câu lệnh cho tòa 10 hộ và tòa 2.000 hộ");
+    }
+
+    @Test
+    void chiSoCuLayBanGhiGanNhatTruocThang() {
+        int toaNhaId = taoToaNha("Tòa kiểm tra", 10);
+
+        List<ChiSoInputDTO> ketQua = chiSoService.prepareInput(THANG, NAM, toaNhaId, loaiPhiId);
+
+        assertEquals(10, ketQua.size());
+        for (ChiSoInputDTO dto : ketQua) {
+            int i = soThuTu(dto.getMaHoGiaDinh());
+            // Hộ chẵn có chỉ số tháng 8, hộ lẻ chỉ có chỉ số tháng 6; hộ chia hết cho 3 đã nhập tháng 9
+            assertEquals(i % 2 == 0 ? 1_000 + i : 500 + i, dto.getChiSoCu());
+            if (i % 3 == 0) {
+                assertEquals(2_000 + i, dto.getChiSoMoi());
+            } else {
+                assertNull(dto.getChiSoMoi());
+            }
+        }
+    }
+
+    // ===== Helpers =====
+
+    private long demCauLenh(int toaNhaId, int soHo) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<ChiSoInputDTO> ketQua = chiSoService.prepareInput(THANG, NAM, toaNhaId, loaiPhiId);
+
+        assertEquals(soHo, ketQua.size());
+        System.out.printf("prepareInput, tòa %d hộ: %d câu lệnh%n", soHo, statistics.getPrepareStatementCount());
+        return statistics.getPrepareStatementCount();
+    }
+
+    /**
+     * Tạo tòa nhà với soHo hộ. Chỉ số: hộ chẵn có tháng 8, hộ lẻ chỉ có tháng 6 (lùi về bản ghi cũ hơn),
+     * hộ chia hết cho 3 đã có chỉ số tháng 9.
+     */
+    private int taoToaNha(String ten, int soHo) {
+        jdbcTemplate.update("INSERT INTO ToaNha (TenToaNha) VALUES (?)", ten);
+        int toaNhaId = jdbcTemplate.queryForObject("SELECT MAX(ID_ToaNha) FROM ToaNha", Integer.class);
+
+        List<Integer> thuTu = IntStream.rangeClosed(1, soHo).boxed().toList();
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO HoGiaDinh (MaHoGiaDinh, TenChuHo, SoCanHo, TrangThai, ID_ToaNha) VALUES (?, ?, ?, ?, ?)",
+            thuTu, 500, (ps, i) -> {
+                ps.setString(1, String.format("T%d-%05d", toaNhaId, i));
+                ps.setString(2, "Chủ hộ " + i);
+                ps.setString(3, String.valueOf(i));
+                ps.setString(4, "Đang ở");
+                ps.setInt(5, toaNhaId);
+            });
+
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO ChiSoDienNuoc (ID_HoGiaDinh, ID_LoaiPhi, Thang, Nam, ChiSoMoi) " +
+            "SELECT ID_HoGiaDinh, ?, ?, ?, ? FROM HoGiaDinh WHERE MaHoGiaDinh = ?",
+            thuTu, 500, (ps, i) -> {
+                ps.setInt(1, loaiPhiId);
+                ps.setInt(2, i % 2 == 0 ? 8 : 6);
+                ps.setInt(3, NAM);
+                ps.setInt(4, i % 2 == 0 ? 1_000 + i : 500 + i);
+                ps.setString(5, String.format("T%d-%05d", toaNhaId, i));
+            });
+
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO ChiSoDienNuoc (ID_HoGiaDinh, ID_LoaiPhi, Thang, Nam, ChiSoMoi) " +
+            "SELECT ID_HoGiaDinh, ?, ?, ?, ? FROM HoGiaDinh WHERE MaHoGiaDinh = ?",
+            thuTu.stream().filter(i -> i % 3 == 0).toList(), 500, (ps, i) -> {
+                ps.setInt(1, loaiPhiId);
+                ps.setInt(2, THANG);
+                ps.setInt(3, NAM);
+                ps.setInt(4, 2_000 + i);
+                ps.setString(5, String.format("T%d-%05d", toaNhaId, i));
+            });
+        return toaNhaId;
+    }
+
+    private static int soThuTu(String maHoGiaDinh) {
+        return Integer.parseInt(maHoGiaDinh.substring(maHoGiaDinh.indexOf('-') + 1));
+    }
+}
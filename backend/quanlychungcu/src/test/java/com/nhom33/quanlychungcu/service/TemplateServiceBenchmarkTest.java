@@ -0,0 +1,147 @@
+package com.nhom33.quanlychungcu.service;
+
+import com.nhom33.quanlychungcu.service.TemplateService.EmailHoaDon;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Benchmark: chi phí render email nhắc nợ cho mỗi message.
+ *
+ * So sánh String.format (cách cũ trong NotificationService), template render từng message
+ * và renderHangLoat, trên 2.000 message x 10 vòng sau khi khởi động JIT.
+ * Kết quả in ra stdout (micro giây / message); test chỉ kiểm tra nội dung giống hệt cách cũ,
+ * không assert thời gian để không phụ thuộc máy chạy.
+ */
+class TemplateServiceBenchmarkTest {
+
+    private static final int SO_MESSAGE = 2_000;
+    private static final int SO_VONG = 10;
+    private static final int SO_VONG_KHOI_DONG = 5;
+
+    private final TemplateService templateService = new TemplateService();
+
+    private record NhacNo(String tenChuHo, Integer hoaDonId, String tenDotThu, BigDecimal conNo) {}
+
+    @Test
+    void renderGiongStringFormatCu() {
+        List<NhacNo> danhSach = taoDuLieu();
+        List<String> hangLoat = templateService.renderHangLoat(TemplateService.NHAC_NO, chuyenDoi(danhSach));
+        for (int i = 0; i < danhSach.size(); i++) {
+            NhacNo n = danhSach.get(i);
+            String cu = noiDungNhacNoCu(n.tenChuHo(), n.hoaDonId(), n.tenDotThu(), n.conNo());
+            assertEquals(cu, templateService.render(TemplateService.NHAC_NO, chuyenDoi(n)));
+            assertEquals(cu, hangLoat.get(i));
+        }
+    }
+
+    @Test
+    void soSanhChiPhiRender() {
+        List<NhacNo> danhSach = taoDuLieu();
+        long sink = 0;
+        for (int i = 0; i < SO_VONG_KHOI_DONG; i++) {
+            sink += stringFormat(danhSach) + tungMessage(danhSach) + hangLoat(danhSach);
+        }
+
+        long nsFormat = 0;
+        long nsTungMessage = 0;
+        long nsHangLoat = 0;
+        for (int i = 0; i < SO_VONG; i++) {
+            long t0 = System.nanoTime();
+            sink += stringFormat(danhSach);
+            long t1 = System.nanoTime();
+            sink += tungMessage(danhSach);
+            long t2 = System.nanoTime();
+            sink += hangLoat(danhSach);
+            long t3 = System.nanoTime();
+            nsFormat += t1 - t0;
+            nsTungMessage += t2 - t1;
+            nsHangLoat += t3 - t2;
+        }
+
+        double soMessage = (double) SO_MESSAGE * SO_VONG;
+        System.out.printf("Render nhắc nợ (%d message x %d vòng):%n", SO_MESSAGE, SO_VONG);
+        System.out.printf("  String.format (cũ):     %.2f us/message%n", nsFormat / 1000.0 / soMessage);
+        System.out.printf("  template, từng message: %.2f us/message%n", nsTungMessage / 1000.0 / soMessage);
+        System.out.printf("  template, hàng loạt:    %.2f us/message%n", nsHangLoat / 1000.0 / soMessage);
+        assertTrue(sink > 0);
+    }
+
+    // ===== Ba cách render =====
+
+    private long stringFormat(List<NhacNo> danhSach) {
+        long tong = 0;
+        for (NhacNo n : danhSach) {
+            tong += noiDungNhacNoCu(n.tenChuHo(), n.hoaDonId(), n.tenDotThu(), n.conNo()).length();
+        }
+        return tong;
+    }
+
+    private long tungMessage(List<NhacNo> danhSach) {
+        long tong = 0;
+        for (NhacNo n : danhSach) {
+            tong += templateService.render(TemplateService.NHAC_NO, chuyenDoi(n)).length();
+        }
+        return tong;
+    }
+
+    private long hangLoat(List<NhacNo> danhSach) {
+        long tong = 0;
+        for (String s : templateService.renderHangLoat(TemplateService.NHAC_NO, chuyenDoi(danhSach))) {
+            tong += s.length();
+        }
+        return tong;
+    }
+
+    /**
+     * Nội dung nhắc nợ như NotificationService trước khi chuyển sang template
+     * (Locale.ROOT để phân cách hàng nghìn bằng dấu phẩy trên mọi máy).
+     */
+    private static String noiDungNhacNoCu(String tenChuHo, Integer hoaDonId, String tenDotThu, BigDecimal conNo) {
+        return String.format(Locale.ROOT,
+            "Kính gửi %s,\n\n" +
+            "Hệ thống xin nhắc nhở quý khách về khoản phí chưa thanh toán:\n\n" +
+            "Mã hóa đơn: HD%06d\n" +
+            "Đợt thu: %s\n" +
+            "Số tiền còn nợ: %,.0f VNĐ\n\n" +
+            "Vui lòng thanh toán trước ngày kết thúc đợt thu.\n\n" +
+            "Trân trọng,\nBan quản lý chung cư Blue Moon",
+            tenChuHo,
+            hoaDonId,
+            tenDotThu,
+            conNo.doubleValue()
+        );
+    }
+
+    // ===== Dữ liệu =====
+
+    private static List<NhacNo> taoDuLieu() {
+        Random random = new Random(33);
+        List<NhacNo> danhSach = new ArrayList<>(SO_MESSAGE);
+        for (int i = 1; i <= SO_MESSAGE; i++) {
+            danhSach.add(new NhacNo("Nguyễn Văn " + i, i * 7, "Phí dịch vụ tháng " + (i % 12 + 1) + "/2026",
+                BigDecimal.valueOf(random.nextInt(20_000_000))));
+        }
+        return danhSach;
+    }
+
+    private static EmailHoaDon chuyenDoi(NhacNo n) {
+        return new EmailHoaDon(n.tenChuHo(), TemplateService.maHoaDon(n.hoaDonId()),
+            n.tenDotThu(), TemplateService.dinhDangTien(n.conNo()));
+    }
+
+    private static List<EmailHoaDon> chuyenDoi(List<NhacNo> danhSach) {
+        List<EmailHoaDon> ketQua = new ArrayList<>(danhSach.size());
+        for (NhacNo n : danhSach) {
+            ketQua.add(chuyenDoi(n));
+        }
+        return ketQua;
+    }
+}
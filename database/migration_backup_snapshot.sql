@@ -0,0 +1,14 @@
+-- =============================================
+-- Migration: Cho phép SNAPSHOT isolation
+-- Backup đọc mọi bảng trong một transaction SNAPSHOT để dữ liệu nhất quán khi đang có thao tác ghi.
+-- Không đổi isolation mặc định (READ COMMITTED) của các transaction khác.
+-- =============================================
+
+IF EXISTS (SELECT * FROM sys.databases WHERE name = DB_NAME() AND snapshot_isolation_state = 0)
+BEGIN
+    ALTER DATABASE CURRENT SET ALLOW_SNAPSHOT_ISOLATION ON;
+    PRINT N'Đã bật ALLOW_SNAPSHOT_ISOLATION';
+END
+GO
+
+PRINT N'Migration hoàn tất!';
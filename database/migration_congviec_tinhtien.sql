@@ -0,0 +1,31 @@
+-- =============================================
+-- Migration: Bảng lịch sử job tính tiền chạy nền
+-- =============================================
+
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='CongViecTinhTien' AND xtype='U')
+BEGIN
+    CREATE TABLE CongViecTinhTien (
+        ID_CongViec VARCHAR(36) PRIMARY KEY,
+        ID_DotThu INT NOT NULL,              -- Không dùng FK để giữ lịch sử khi xóa đợt thu
+        TrangThai NVARCHAR(30) NOT NULL,     -- DangChay, HoanThanh, Loi, DaHuy, BiGianDoan
+        TongSoHo INT NULL,
+        SoHoDaXuLy INT NULL,
+        SoHoThieuChiSo INT NULL,
+        DanhSachThieuChiSo NVARCHAR(MAX) NULL,
+        ThongBaoLoi NVARCHAR(1000) NULL,
+        NguoiTao NVARCHAR(100) NULL,
+        NgayBatDau DATETIME NULL,
+        NgayKetThuc DATETIME NULL
+    );
+    PRINT N'Đã tạo bảng CongViecTinhTien';
+END
+GO
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name = 'IX_CongViecTinhTien_DotThu')
+BEGIN
+    CREATE INDEX IX_CongViecTinhTien_DotThu ON CongViecTinhTien(ID_DotThu);
+    PRINT N'Đã tạo index IX_CongViecTinhTien_DotThu';
+END
+GO
+
+PRINT N'Migration hoàn tất!';
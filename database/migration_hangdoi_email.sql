@@ -0,0 +1,47 @@
+-- =============================================
+-- Migration: Hàng đợi email (outbox) cho nhắc hạn hàng loạt
+-- =============================================
+
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='HangDoiEmail' AND xtype='U')
+BEGIN
+    CREATE TABLE HangDoiEmail (
+        ID_Email BIGINT IDENTITY(1,1) PRIMARY KEY,
+        ID_LuotGui NVARCHAR(36) NOT NULL,
+        KhoaChongTrung NVARCHAR(200) NOT NULL,
+        EmailNguoiNhan NVARCHAR(100) NOT NULL,
+        TieuDe NVARCHAR(200) NOT NULL,
+        NoiDung NVARCHAR(MAX) NULL,
+        LoaiThongBao NVARCHAR(50) NULL,
+        TrangThai NVARCHAR(20) NOT NULL,
+        SoLanThu INT NOT NULL DEFAULT 0,
+        LanThuTiepTheo DATETIME NOT NULL,
+        LoiCuoi NVARCHAR(1000) NULL,
+        NgayTao DATETIME NOT NULL,
+        NgayGui DATETIME NULL
+    );
+    PRINT N'Đã tạo bảng HangDoiEmail';
+END
+GO
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name = 'IX_HangDoiEmail_TrangThai_LanThu')
+BEGIN
+    CREATE INDEX IX_HangDoiEmail_TrangThai_LanThu ON HangDoiEmail(TrangThai, LanThuTiepTheo);
+    PRINT N'Đã tạo index IX_HangDoiEmail_TrangThai_LanThu';
+END
+GO
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name = 'IX_HangDoiEmail_LuotGui')
+BEGIN
+    CREATE INDEX IX_HangDoiEmail_LuotGui ON HangDoiEmail(ID_LuotGui);
+    PRINT N'Đã tạo index IX_HangDoiEmail_LuotGui';
+END
+GO
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name = 'UX_HangDoiEmail_KhoaChongTrung')
+BEGIN
+    CREATE UNIQUE INDEX UX_HangDoiEmail_KhoaChongTrung ON HangDoiEmail(KhoaChongTrung);
+    PRINT N'Đã tạo index UX_HangDoiEmail_KhoaChongTrung';
+END
+GO
+
+PRINT N'Migration hoàn tất!';
@@ -0,0 +1,25 @@
+-- =============================================
+-- Migration: Bảng đánh dấu hóa đơn cần tính lại (tính tiền tăng dần)
+-- =============================================
+
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='HoaDonCanTinhLai' AND xtype='U')
+BEGIN
+    CREATE TABLE HoaDonCanTinhLai (
+        ID INT IDENTITY(1,1) PRIMARY KEY,
+        ID_HoGiaDinh INT NOT NULL,
+        ID_DotThu INT NOT NULL,
+        NgayDanhDau DATETIME NULL,
+        CONSTRAINT UQ_HoaDonCanTinhLai UNIQUE (ID_HoGiaDinh, ID_DotThu)
+    );
+    PRINT N'Đã tạo bảng HoaDonCanTinhLai';
+END
+GO
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name = 'IX_HoaDonCanTinhLai_DotThu')
+BEGIN
+    CREATE INDEX IX_HoaDonCanTinhLai_DotThu ON HoaDonCanTinhLai(ID_DotThu);
+    PRINT N'Đã tạo index IX_HoaDonCanTinhLai_DotThu';
+END
+GO
+
+PRINT N'Migration hoàn tất!';
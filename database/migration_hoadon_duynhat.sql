@@ -0,0 +1,25 @@
+-- =============================================
+-- Migration: Mỗi hộ gia đình chỉ có một hóa đơn trong một đợt thu
+-- Chặn ở DB khi hai lượt tính tiền cùng đợt thu chạy đồng thời (nhiều instance).
+-- =============================================
+
+-- Hóa đơn trùng (nếu có) phải được xử lý tay trước khi tạo ràng buộc
+IF EXISTS (
+    SELECT ID_HoGiaDinh, ID_DotThu FROM HoaDon
+    GROUP BY ID_HoGiaDinh, ID_DotThu
+    HAVING COUNT(*) > 1
+)
+BEGIN
+    PRINT N'Có hóa đơn trùng (ID_HoGiaDinh, ID_DotThu), chưa tạo UQ_HoaDon_HoGiaDinh_DotThu. Danh sách:';
+    SELECT ID_HoGiaDinh, ID_DotThu, COUNT(*) AS SoHoaDon FROM HoaDon
+    GROUP BY ID_HoGiaDinh, ID_DotThu
+    HAVING COUNT(*) > 1;
+END
+ELSE IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name = 'UQ_HoaDon_HoGiaDinh_DotThu')
+BEGIN
+    ALTER TABLE HoaDon ADD CONSTRAINT UQ_HoaDon_HoGiaDinh_DotThu UNIQUE (ID_HoGiaDinh, ID_DotThu);
+    PRINT N'Đã tạo ràng buộc UQ_HoaDon_HoGiaDinh_DotThu';
+END
+GO
+
+PRINT N'Migration hoàn tất!';
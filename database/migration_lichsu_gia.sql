@@ -0,0 +1,40 @@
+-- =============================================
+-- Migration: Lịch sử giá theo thời gian hiệu lực
+-- ID_ToaNha = NULL: giá mặc định (LoaiPhi.DonGia), khác NULL: giá riêng (BangGiaDichVu)
+-- =============================================
+
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='LichSuGia' AND xtype='U')
+BEGIN
+    CREATE TABLE LichSuGia (
+        ID_LichSuGia INT IDENTITY(1,1) PRIMARY KEY,
+        ID_LoaiPhi INT NOT NULL,
+        ID_ToaNha INT NULL,
+        DonGia DECIMAL(18,0) NOT NULL,
+        HieuLucTu DATETIME2 NOT NULL,
+        HieuLucDen DATETIME2 NULL
+    );
+    PRINT N'Đã tạo bảng LichSuGia';
+END
+GO
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name = 'IX_LichSuGia_LoaiPhi_ToaNha')
+BEGIN
+    CREATE INDEX IX_LichSuGia_LoaiPhi_ToaNha ON LichSuGia(ID_LoaiPhi, ID_ToaNha, HieuLucTu);
+    PRINT N'Đã tạo index IX_LichSuGia_LoaiPhi_ToaNha';
+END
+GO
+
+-- Giá hiện có được coi là hiệu lực từ 2000-01-01 (ứng dụng cũng tự bổ sung khi khởi động)
+IF NOT EXISTS (SELECT * FROM LichSuGia)
+BEGIN
+    INSERT INTO LichSuGia (ID_LoaiPhi, ID_ToaNha, DonGia, HieuLucTu)
+    SELECT ID_LoaiPhi, NULL, DonGia, '2000-01-01' FROM LoaiPhi WHERE DonGia IS NOT NULL;
+
+    INSERT INTO LichSuGia (ID_LoaiPhi, ID_ToaNha, DonGia, HieuLucTu)
+    SELECT ID_LoaiPhi, ID_ToaNha, DonGia, '2000-01-01' FROM BangGiaDichVu;
+
+    PRINT N'Đã khởi tạo lịch sử giá từ dữ liệu hiện có';
+END
+GO
+
+PRINT N'Migration hoàn tất!';
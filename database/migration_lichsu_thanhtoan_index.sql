@@ -0,0 +1,14 @@
+-- =============================================
+-- Migration: Index cho lịch sử thanh toán theo hóa đơn
+-- Phân trang theo con trỏ của một hóa đơn (WHERE ID_HoaDon = ? AND ID_GiaoDich < ? ORDER BY ID_GiaoDich DESC)
+-- seek thẳng vào các giao dịch của hóa đơn thay vì quét khóa chính của cả bảng.
+-- =============================================
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name = 'IX_LichSuThanhToan_HoaDon_GiaoDich')
+BEGIN
+    CREATE INDEX IX_LichSuThanhToan_HoaDon_GiaoDich ON LichSuThanhToan(ID_HoaDon, ID_GiaoDich);
+    PRINT N'Đã tạo index IX_LichSuThanhToan_HoaDon_GiaoDich';
+END
+GO
+
+PRINT N'Migration hoàn tất!';
@@ -0,0 +1,25 @@
+-- =============================================
+-- Migration: Nhật ký thay đổi cho backup tăng dần (incremental)
+-- =============================================
+
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='NhatKyThayDoi' AND xtype='U')
+BEGIN
+    CREATE TABLE NhatKyThayDoi (
+        ID BIGINT IDENTITY(1,1) PRIMARY KEY,
+        TenBang NVARCHAR(128) NOT NULL,
+        KhoaChinh NVARCHAR(100) NULL,
+        TuKhoa BIGINT NULL,
+        ThoiGian DATETIME NOT NULL
+    );
+    PRINT N'Đã tạo bảng NhatKyThayDoi';
+END
+GO
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name = 'IX_NhatKyThayDoi_ThoiGian')
+BEGIN
+    CREATE INDEX IX_NhatKyThayDoi_ThoiGian ON NhatKyThayDoi(ThoiGian);
+    PRINT N'Đã tạo index IX_NhatKyThayDoi_ThoiGian';
+END
+GO
+
+PRINT N'Migration hoàn tất!';
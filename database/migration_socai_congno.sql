@@ -0,0 +1,74 @@
+-- =============================================
+-- Migration: Sổ cái công nợ theo hộ gia đình
+-- Sổ cái được dựng tự động từ HoaDon và LichSuThanhToan ở lần khởi động đầu tiên.
+-- =============================================
+
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='SoCaiCongNo' AND xtype='U')
+BEGIN
+    CREATE TABLE SoCaiCongNo (
+        ID_ButToan BIGINT IDENTITY(1,1) PRIMARY KEY,
+        ID_HoGiaDinh INT NOT NULL,
+        ID_HoaDon INT NULL,
+        ID_GiaoDich INT NULL,
+        LoaiButToan NVARCHAR(20) NOT NULL,
+        SoTien DECIMAL(18,0) NOT NULL,
+        SoDu DECIMAL(18,0) NOT NULL,
+        NgayPhatSinh DATE NOT NULL,
+        NgayGhiSo DATETIME NOT NULL,
+        DienGiai NVARCHAR(255) NULL
+    );
+    PRINT N'Đã tạo bảng SoCaiCongNo';
+END
+GO
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name = 'IX_SoCaiCongNo_Ho_NgayGhiSo')
+BEGIN
+    CREATE INDEX IX_SoCaiCongNo_Ho_NgayGhiSo ON SoCaiCongNo(ID_HoGiaDinh, NgayGhiSo);
+    PRINT N'Đã tạo index IX_SoCaiCongNo_Ho_NgayGhiSo';
+END
+GO
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name = 'IX_SoCaiCongNo_Ho_NgayPhatSinh')
+BEGIN
+    CREATE INDEX IX_SoCaiCongNo_Ho_NgayPhatSinh ON SoCaiCongNo(ID_HoGiaDinh, NgayPhatSinh);
+    PRINT N'Đã tạo index IX_SoCaiCongNo_Ho_NgayPhatSinh';
+END
+GO
+
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='CongNoHoGiaDinh' AND xtype='U')
+BEGIN
+    CREATE TABLE CongNoHoGiaDinh (
+        ID_HoGiaDinh INT PRIMARY KEY,
+        SoDu DECIMAL(18,0) NOT NULL DEFAULT 0,
+        TongPhatSinh DECIMAL(18,0) NOT NULL DEFAULT 0,
+        TongThanhToan DECIMAL(18,0) NOT NULL DEFAULT 0,
+        NgayCapNhat DATETIME NULL
+    );
+    PRINT N'Đã tạo bảng CongNoHoGiaDinh';
+END
+GO
+
+-- Ngày của khoản nợ cũ nhất chưa trả (xếp hạng / lọc hộ nợ theo tuổi nợ).
+-- Các hộ đang nợ có NgayNoCuNhat NULL được tính lại từ sổ cái khi ứng dụng khởi động.
+IF NOT EXISTS (SELECT * FROM sys.columns WHERE object_id = OBJECT_ID('CongNoHoGiaDinh') AND name = 'NgayNoCuNhat')
+BEGIN
+    ALTER TABLE CongNoHoGiaDinh ADD NgayNoCuNhat DATE NULL;
+    PRINT N'Đã thêm cột CongNoHoGiaDinh.NgayNoCuNhat';
+END
+GO
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name = 'IX_CongNoHoGiaDinh_SoDu')
+BEGIN
+    CREATE INDEX IX_CongNoHoGiaDinh_SoDu ON CongNoHoGiaDinh(SoDu);
+    PRINT N'Đã tạo index IX_CongNoHoGiaDinh_SoDu';
+END
+GO
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name = 'IX_CongNoHoGiaDinh_NgayNoCuNhat')
+BEGIN
+    CREATE INDEX IX_CongNoHoGiaDinh_NgayNoCuNhat ON CongNoHoGiaDinh(NgayNoCuNhat);
+    PRINT N'Đã tạo index IX_CongNoHoGiaDinh_NgayNoCuNhat';
+END
+GO
+
+PRINT N'Migration hoàn tất!';
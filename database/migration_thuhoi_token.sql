@@ -0,0 +1,48 @@
+-- =============================================
+-- Migration: JWT mang role / phiên bản token, danh sách thu hồi token
+-- =============================================
+
+-- Phiên bản token của tài khoản: tăng khi đổi role / mật khẩu để thu hồi các token cũ
+IF NOT EXISTS (
+    SELECT 1 FROM INFORMATION_SCHEMA.COLUMNS
+    WHERE TABLE_NAME = 'Users' AND COLUMN_NAME = 'PhienBanToken'
+)
+BEGIN
+    ALTER TABLE Users ADD PhienBanToken INT NOT NULL DEFAULT 0;
+    PRINT N'Đã thêm cột PhienBanToken vào bảng Users';
+END
+GO
+
+-- Hộ gia đình gắn với tài khoản cư dân (ghi vào token)
+IF NOT EXISTS (
+    SELECT 1 FROM INFORMATION_SCHEMA.COLUMNS
+    WHERE TABLE_NAME = 'Users' AND COLUMN_NAME = 'ID_HoGiaDinh'
+)
+BEGIN
+    ALTER TABLE Users ADD ID_HoGiaDinh INT NULL;
+    PRINT N'Đã thêm cột ID_HoGiaDinh vào bảng Users';
+END
+GO
+
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='ThuHoiToken' AND xtype='U')
+BEGIN
+    CREATE TABLE ThuHoiToken (
+        ID BIGINT IDENTITY(1,1) PRIMARY KEY,
+        Jti NVARCHAR(64) NULL,
+        Username NVARCHAR(100) NULL,
+        PhienBan INT NULL,
+        HetHan DATETIME NOT NULL,
+        NgayTao DATETIME NOT NULL
+    );
+    PRINT N'Đã tạo bảng ThuHoiToken';
+END
+GO
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name = 'IX_ThuHoiToken_HetHan')
+BEGIN
+    CREATE INDEX IX_ThuHoiToken_HetHan ON ThuHoiToken(HetHan);
+    PRINT N'Đã tạo index IX_ThuHoiToken_HetHan';
+END
+GO
+
+PRINT N'Migration hoàn tất!';
@@ -0,0 +1,23 @@
+-- =============================================
+-- Migration: Bảng tổng hợp số liệu theo đợt thu (dashboard báo cáo)
+-- Dữ liệu được tạo dần khi xem báo cáo hoặc khi job đối soát chạy.
+-- =============================================
+
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='TongHopDotThu' AND xtype='U')
+BEGIN
+    CREATE TABLE TongHopDotThu (
+        ID_DotThu INT PRIMARY KEY,
+        TongPhaiThu DECIMAL(18,2) NOT NULL DEFAULT 0,
+        TongDaThu DECIMAL(18,2) NOT NULL DEFAULT 0,
+        SoHoaDon BIGINT NOT NULL DEFAULT 0,
+        SoChuaDong BIGINT NOT NULL DEFAULT 0,
+        SoDangNo BIGINT NOT NULL DEFAULT 0,
+        SoDaDong BIGINT NOT NULL DEFAULT 0,
+        TongSoHo BIGINT NOT NULL DEFAULT 0,
+        NgayCapNhat DATETIME NULL
+    );
+    PRINT N'Đã tạo bảng TongHopDotThu';
+END
+GO
+
+PRINT N'Migration hoàn tất!';
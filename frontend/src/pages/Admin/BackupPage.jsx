@@ -99,7 +99,7 @@ export default function BackupPage() {
             onClick={handleCreateBackup}
             loading={loading}
           >
-            Tạo backup SQL
+            Tạo backup
           </Button>
           <Button
             type="primary"
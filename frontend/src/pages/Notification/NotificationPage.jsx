@@ -49,7 +49,7 @@ export default function NotificationPage() {
     }
     try {
       const result = await notificationService.sendBulkPaymentReminder(selectedDotThu);
-      message.success(`Đã gửi thông báo cho ${result.sentCount} hộ gia đình`);
+      message.success(`Đã xếp hàng gửi thông báo cho ${result.sentCount} hộ gia đình`);
     } catch (error) {
       message.error("Lỗi gửi thông báo hàng loạt");
     }
@@ -7,6 +7,13 @@ const authService = {
   },
 
   logout: () => {
+    // Thu hồi token phía server (gửi header tường minh vì token bị xóa khỏi localStorage ngay sau đó)
+    const token = localStorage.getItem("token");
+    if (token) {
+      axiosClient
+        .post("/auth/logout", null, { headers: { Authorization: `Bearer ${token}` } })
+        .catch(() => {});
+    }
     localStorage.removeItem("token");
     localStorage.removeItem("role");
     localStorage.removeItem("username");